@@ -0,0 +1,324 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.audit.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Layout of the audit log segment files.
+ *
+ * <pre>
+ * header (64 bytes):
+ *   magic "XIAUDLOG" (8), version (4), reserved (4), segment number (8),
+ *   sequence number of the first record (8), hash of the previous record (32)
+ * record:
+ *   length of the message (4), sequence number (8), timestamp in ms (8),
+ *   UTF-8 encoded message, SHA-256(previous hash | sequence number | timestamp | message) (32)
+ * </pre>
+ *
+ * <p>The unused part of a segment is filled with zeros, a record length 0 marks the end.
+ * The hash of the previous record of the first record is 32 zeros.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+final class AuditLogSegment {
+
+    static class ScanResult {
+
+        private final int endPosition;
+
+        private final long records;
+
+        private final long lastSeq;
+
+        private final byte[] lastHash;
+
+        private final String error;
+
+        private ScanResult(final int endPosition, final long records, final long lastSeq,
+                final byte[] lastHash, final String error) {
+            this.endPosition = endPosition;
+            this.records = records;
+            this.lastSeq = lastSeq;
+            this.lastHash = lastHash;
+            this.error = error;
+        }
+
+        /**
+         * Returns the position after the last valid record.
+         */
+        int endPosition() {
+            return endPosition;
+        }
+
+        long records() {
+            return records;
+        }
+
+        long lastSeq() {
+            return lastSeq;
+        }
+
+        byte[] lastHash() {
+            return lastHash;
+        }
+
+        /**
+         * Returns the reason why the scan has stopped before the end marker.
+         *
+         * @return the reason, or {@code null} if all records are valid.
+         */
+        String error() {
+            return error;
+        }
+
+    }
+
+    interface RecordHandler {
+
+        void handle(long seq, long timestamp, byte[] message);
+
+    }
+
+    static final String SUFFIX = ".alog";
+
+    static final int HEADER_SIZE = 64;
+
+    static final int HASH_SIZE = 32;
+
+    static final int RECORD_OVERHEAD = 4 + 8 + 8 + HASH_SIZE;
+
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = "XIAUDLOG".getBytes(StandardCharsets.US_ASCII);
+
+    private AuditLogSegment() {
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+    static String fileName(final String prefix, final long segmentNumber) {
+        return String.format("%s-%010d%s", prefix, segmentNumber, SUFFIX);
+    }
+
+    /**
+     * Lists the segment files in the order of their numbers.
+     */
+    static List<File> listSegments(final File dir, final String prefix) {
+        File[] files = dir.listFiles();
+        TreeMap<Long, File> segments = new TreeMap<>();
+        if (files != null) {
+            for (File file : files) {
+                long number = segmentNumber(file.getName(), prefix);
+                if (number != -1) {
+                    segments.put(number, file);
+                }
+            }
+        }
+        return new ArrayList<>(segments.values());
+    }
+
+    static long segmentNumber(final String fileName, final String prefix) {
+        if (!fileName.startsWith(prefix + "-") || !fileName.endsWith(SUFFIX)) {
+            return -1;
+        }
+
+        String str = fileName.substring(prefix.length() + 1,
+                fileName.length() - SUFFIX.length());
+        if (str.isEmpty()) {
+            return -1;
+        }
+
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) < '0' || str.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(str);
+    }
+
+    static void writeHeader(final ByteBuffer buf, final long segmentNumber, final long firstSeq,
+            final byte[] prevHash) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            buf.put(i, MAGIC[i]);
+        }
+        buf.putInt(8, VERSION);
+        buf.putInt(12, 0);
+        buf.putLong(16, segmentNumber);
+        buf.putLong(24, firstSeq);
+        for (int i = 0; i < HASH_SIZE; i++) {
+            buf.put(32 + i, prevHash[i]);
+        }
+    }
+
+    static void checkHeader(final ByteBuffer buf, final File file) throws IOException {
+        if (buf.limit() < HEADER_SIZE) {
+            throw new IOException("segment " + file.getName() + " is too short");
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.get(i) != MAGIC[i]) {
+                throw new IOException("segment " + file.getName() + " has invalid magic");
+            }
+        }
+
+        int version = buf.getInt(8);
+        if (version != VERSION) {
+            throw new IOException("segment " + file.getName() + " has unsupported version "
+                    + version);
+        }
+    }
+
+    static long segmentNumber(final ByteBuffer buf) {
+        return buf.getLong(16);
+    }
+
+    static long firstSeq(final ByteBuffer buf) {
+        return buf.getLong(24);
+    }
+
+    static byte[] prevHash(final ByteBuffer buf) {
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < HASH_SIZE; i++) {
+            hash[i] = buf.get(32 + i);
+        }
+        return hash;
+    }
+
+    static byte[] hash(final MessageDigest md, final byte[] prevHash, final long seq,
+            final long timestamp, final byte[] message, final int messageLen) {
+        md.reset();
+        md.update(prevHash);
+        for (int i = 56; i >= 0; i -= 8) {
+            md.update((byte) (seq >>> i));
+        }
+        for (int i = 56; i >= 0; i -= 8) {
+            md.update((byte) (timestamp >>> i));
+        }
+        md.update(message, 0, messageLen);
+        return md.digest();
+    }
+
+    /**
+     * Scans and verifies the records of a segment whose header has been checked.
+     *
+     * @param buf
+     *          Content of the segment.
+     * @param handler
+     *          Handler of the valid records. Could be {@code null}.
+     * @return the scan result.
+     */
+    static ScanResult scan(final ByteBuffer buf, final MessageDigest md,
+            final RecordHandler handler) {
+        long expectedSeq = firstSeq(buf);
+        byte[] prevHash = prevHash(buf);
+        int pos = HEADER_SIZE;
+        long records = 0;
+        String error = null;
+        final int limit = buf.limit();
+
+        while (true) {
+            if (pos + 4 > limit) {
+                break;
+            }
+
+            int len = buf.getInt(pos);
+            if (len == 0) {
+                break;
+            }
+
+            if (len < 0 || (long) pos + RECORD_OVERHEAD + len > limit) {
+                error = "invalid record length " + len + " at position " + pos;
+                break;
+            }
+
+            long seq = buf.getLong(pos + 4);
+            long timestamp = buf.getLong(pos + 12);
+            if (seq != expectedSeq) {
+                error = "expected sequence number " + expectedSeq + " but found " + seq
+                        + " at position " + pos;
+                break;
+            }
+
+            byte[] message = new byte[len];
+            ByteBuffer dup = buf.duplicate();
+            dup.position(pos + 20);
+            dup.get(message);
+
+            byte[] hash = hash(md, prevHash, seq, timestamp, message, len);
+            int hashPos = pos + 20 + len;
+            boolean match = true;
+            for (int i = 0; i < HASH_SIZE; i++) {
+                if (buf.get(hashPos + i) != hash[i]) {
+                    match = false;
+                    break;
+                }
+            }
+
+            if (!match) {
+                error = "hash mismatch of record " + seq + " at position " + pos;
+                break;
+            }
+
+            if (handler != null) {
+                handler.handle(seq, timestamp, message);
+            }
+
+            prevHash = hash;
+            expectedSeq++;
+            records++;
+            pos = hashPos + HASH_SIZE;
+        }
+
+        return new ScanResult(pos, records, expectedSeq - 1, prevHash, error);
+    }
+
+}
@@ -0,0 +1,273 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.audit.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Reads and verifies the audit log written by {@link FileAuditServiceImpl}. It checks the
+ * hash chain of the records, the continuity of the sequence numbers and of the segments.
+ *
+ * <p>It can be used as command line tool:
+ * <pre>
+ * java -cp audit.jar:audit-file.jar:slf4j-api.jar org.xipki.audit.file.FileAuditLogReader \
+ *   &lt;directory&gt; [--prefix &lt;prefix&gt;] [--from &lt;sequence number&gt;] [--verify]
+ * </pre>
+ * With --verify only the verification result is printed. The exit code is 1 if the log is
+ * invalid.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class FileAuditLogReader {
+
+    public static class Record {
+
+        private final long seq;
+
+        private final long timestamp;
+
+        private final byte[] message;
+
+        private Record(final long seq, final long timestamp, final byte[] message) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.message = message;
+        }
+
+        public long seq() {
+            return seq;
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+
+        public String message() {
+            return new String(message, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return seq + "\t" + Instant.ofEpochMilli(timestamp) + "\t" + message();
+        }
+
+    }
+
+    public static class VerificationResult {
+
+        private final int segments;
+
+        private final long records;
+
+        private final List<String> errors;
+
+        private VerificationResult(final int segments, final long records,
+                final List<String> errors) {
+            this.segments = segments;
+            this.records = records;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        public int segments() {
+            return segments;
+        }
+
+        public long records() {
+            return records;
+        }
+
+        public List<String> errors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(100);
+            sb.append(isValid() ? "valid" : "INVALID").append(": ")
+                .append(segments).append(" segments, ").append(records).append(" records");
+            for (String error : errors) {
+                sb.append("\n  ").append(error);
+            }
+            return sb.toString();
+        }
+
+    }
+
+    private final File dir;
+
+    private final String prefix;
+
+    public FileAuditLogReader(final File dir, final String prefix) {
+        this.dir = Objects.requireNonNull(dir, "dir must not be null");
+        this.prefix = Objects.requireNonNull(prefix, "prefix must not be null");
+    }
+
+    public VerificationResult verify() throws IOException {
+        return read(Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Reads and verifies all segments.
+     *
+     * @param fromSeq
+     *          The records with smaller sequence number are verified only.
+     * @param handler
+     *          Handler of the valid records. Could be {@code null}.
+     * @return the verification result.
+     * @throws IOException
+     *           if the segments could not be read.
+     */
+    public VerificationResult read(final long fromSeq, final Consumer<Record> handler)
+            throws IOException {
+        MessageDigest md = AuditLogSegment.newDigest();
+        List<File> files = AuditLogSegment.listSegments(dir, prefix);
+        List<String> errors = new ArrayList<>();
+        long records = 0;
+        long prevNumber = -1;
+        long prevLastSeq = 0;
+        byte[] prevLastHash = new byte[AuditLogSegment.HASH_SIZE];
+
+        for (File file : files) {
+            String name = file.getName();
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                MappedByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                try {
+                    AuditLogSegment.checkHeader(buf, file);
+                } catch (IOException ex) {
+                    errors.add(ex.getMessage());
+                    continue;
+                }
+
+                long number = AuditLogSegment.segmentNumber(buf);
+                if (number != AuditLogSegment.segmentNumber(name, prefix)) {
+                    errors.add(name + ": segment number in header is " + number);
+                }
+
+                if (prevNumber == -1) {
+                    if (number != 1) {
+                        errors.add(name + ": segments before it are missing");
+                    }
+                } else if (number != prevNumber + 1) {
+                    errors.add(name + ": segments between " + prevNumber + " and " + number
+                            + " are missing");
+                }
+
+                if (AuditLogSegment.firstSeq(buf) != prevLastSeq + 1) {
+                    errors.add(name + ": expected first sequence number " + (prevLastSeq + 1)
+                            + " but found " + AuditLogSegment.firstSeq(buf));
+                }
+
+                if (!Arrays.equals(prevLastHash, AuditLogSegment.prevHash(buf))) {
+                    errors.add(name + ": hash chain to the previous segment is broken");
+                }
+
+                AuditLogSegment.ScanResult result = AuditLogSegment.scan(buf, md,
+                    (handler == null) ? null : (seq, timestamp, message) -> {
+                        if (seq >= fromSeq) {
+                            handler.accept(new Record(seq, timestamp, message));
+                        }
+                    });
+
+                if (result.error() != null) {
+                    errors.add(name + ": " + result.error());
+                }
+
+                records += result.records();
+                prevNumber = number;
+                prevLastSeq = result.lastSeq();
+                prevLastHash = result.lastHash();
+            }
+        }
+
+        return new VerificationResult(files.size(), records, errors);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        PrintStream out = System.out;
+        if (args.length < 1) {
+            out.println("usage: FileAuditLogReader <directory> [--prefix <prefix>]"
+                    + " [--from <sequence number>] [--verify]");
+            System.exit(2);
+            return;
+        }
+
+        String prefix = FileAuditServiceImpl.DFLT_PREFIX;
+        long fromSeq = 1;
+        boolean verifyOnly = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if ("--prefix".equals(arg) && i + 1 < args.length) {
+                prefix = args[++i];
+            } else if ("--from".equals(arg) && i + 1 < args.length) {
+                fromSeq = Long.parseLong(args[++i]);
+            } else if ("--verify".equals(arg)) {
+                verifyOnly = true;
+            } else {
+                out.println("unknown argument " + arg);
+                System.exit(2);
+                return;
+            }
+        }
+
+        FileAuditLogReader reader = new FileAuditLogReader(new File(args[0]), prefix);
+        VerificationResult result = verifyOnly ? reader.verify()
+                : reader.read(fromSeq, (record) -> out.println(record));
+        out.println(result);
+        System.exit(result.isValid() ? 0 : 1);
+    }
+
+}
@@ -0,0 +1,473 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.audit.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.AuditMessageFormatter;
+import org.xipki.audit.AuditService;
+import org.xipki.audit.PciAuditEvent;
+
+/**
+ * Audit service which appends the events to memory-mapped segment files in a local
+ * directory. Each record contains the hash of the previous record, so that any modification
+ * of the log can be detected by the {@link FileAuditLogReader}.
+ *
+ * <p>The segments are forced to the storage device by a background thread. If sync is
+ * activated, {@link #logEvent(AuditEvent)} returns only after the event has been forced,
+ * the events logged by concurrent threads in the meantime are forced together (group
+ * commit). A new segment is started if the current one is full, or if the last segment
+ * found at the start contains an invalid record, e.g. due to a crash.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class FileAuditServiceImpl extends AuditService {
+
+    public static final String DFLT_PREFIX = "audit";
+
+    /**
+     * The default segment size is 64 MiB.
+     */
+    public static final int DFLT_SEGMENT_SIZE = 64;
+
+    /**
+     * The default sync interval is 10 ms.
+     */
+    public static final int DFLT_SYNC_INTERVAL = 10;
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileAuditServiceImpl.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition syncRequested = lock.newCondition();
+
+    private final Condition synced = lock.newCondition();
+
+    private String directory;
+
+    private String prefix = DFLT_PREFIX;
+
+    private int segmentSize = DFLT_SEGMENT_SIZE * 1024 * 1024;
+
+    private boolean sync = true;
+
+    private int syncInterval = DFLT_SYNC_INTERVAL;
+
+    private File dir;
+
+    private MessageDigest md;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer segment;
+
+    private long segmentNumber;
+
+    private int position;
+
+    private long nextSeq;
+
+    private byte[] lastHash;
+
+    private long appendedSeq;
+
+    private long syncedSeq;
+
+    private long syncs;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    public FileAuditServiceImpl() {
+    }
+
+    public void setDirectory(final String directory) {
+        this.directory = Objects.requireNonNull(directory, "directory must not be null");
+    }
+
+    public void setPrefix(final String prefix) {
+        this.prefix = Objects.requireNonNull(prefix, "prefix must not be null");
+    }
+
+    /**
+     * Sets the size of the segment files.
+     *
+     * @param segmentSize
+     *          Size in MiB, values less than 1 are replaced by the default value.
+     */
+    public void setSegmentSize(final int segmentSize) {
+        this.segmentSize = ((segmentSize < 1) ? DFLT_SEGMENT_SIZE : segmentSize) * 1024 * 1024;
+    }
+
+    public void setSync(final boolean sync) {
+        this.sync = sync;
+    }
+
+    public void setSyncInterval(final int syncInterval) {
+        this.syncInterval = (syncInterval < 1) ? DFLT_SYNC_INTERVAL : syncInterval;
+    }
+
+    public void init() throws IOException {
+        if (running) {
+            return;
+        }
+
+        LOG.info("initializing: {}", FileAuditServiceImpl.class);
+        if (directory == null) {
+            throw new IllegalStateException("directory is not set");
+        }
+
+        dir = new File(directory);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("could not create the directory " + dir.getPath());
+        }
+
+        md = AuditLogSegment.newDigest();
+        lock.lock();
+        try {
+            recover();
+            running = true;
+        } finally {
+            lock.unlock();
+        }
+
+        flusher = new Thread(this::flush, "audit-file-sync");
+        flusher.setDaemon(true);
+        flusher.start();
+        LOG.info("initialized: {}", this);
+    }
+
+    public void destroy() {
+        if (!running) {
+            return;
+        }
+
+        LOG.info("destroying: {}", FileAuditServiceImpl.class);
+        lock.lock();
+        try {
+            running = false;
+            syncRequested.signalAll();
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.lock();
+        try {
+            closeSegment();
+        } catch (IOException ex) {
+            LOG.error("could not close the audit segment: {}", ex.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        LOG.info("destroyed: {}", this);
+    }
+
+    @Override
+    protected void logEvent0(final AuditEvent event) {
+        AuditMessageFormatter formatter = AuditMessageFormatter.acquire();
+        try {
+            formatter.append(event);
+            append(formatter, event.timestamp().getTime());
+        } finally {
+            formatter.release();
+        }
+    }
+
+    @Override
+    protected void logEvent0(final PciAuditEvent event) {
+        AuditMessageFormatter formatter = AuditMessageFormatter.acquire();
+        try {
+            formatter.append(event);
+            append(formatter, System.currentTimeMillis());
+        } finally {
+            formatter.release();
+        }
+    }
+
+    @Override
+    protected void logEvents0(final List<Object> events) {
+        AuditMessageFormatter formatter = AuditMessageFormatter.acquire();
+        long lastSeq = -1;
+        lock.lock();
+        try {
+            for (Object event : events) {
+                formatter.reset();
+                long timestamp;
+                if (event instanceof AuditEvent) {
+                    formatter.append((AuditEvent) event);
+                    timestamp = ((AuditEvent) event).timestamp().getTime();
+                } else {
+                    formatter.append((PciAuditEvent) event);
+                    timestamp = System.currentTimeMillis();
+                }
+
+                long seq = appendRecord(formatter, timestamp);
+                if (seq != -1) {
+                    lastSeq = seq;
+                }
+            }
+        } finally {
+            lock.unlock();
+            formatter.release();
+        }
+
+        if (sync && lastSeq != -1) {
+            awaitSync(lastSeq);
+        }
+    }
+
+    private void append(final AuditMessageFormatter formatter, final long timestamp) {
+        long seq;
+        lock.lock();
+        try {
+            seq = appendRecord(formatter, timestamp);
+        } finally {
+            lock.unlock();
+        }
+
+        if (sync && seq != -1) {
+            awaitSync(seq);
+        }
+    }
+
+    /**
+     * Appends a record, must be called with the lock held.
+     *
+     * @return the sequence number of the record, or -1 if it could not be written.
+     */
+    private long appendRecord(final AuditMessageFormatter formatter, final long timestamp) {
+        if (!running) {
+            LOG.error("file audit not initialized");
+            return -1;
+        }
+
+        final byte[] message = formatter.buffer();
+        final int len = formatter.length();
+        final int recordSize = AuditLogSegment.RECORD_OVERHEAD + len;
+        try {
+            // 4 bytes for the end marker
+            if ((long) position + recordSize + 4 > segment.limit()) {
+                if (AuditLogSegment.HEADER_SIZE + recordSize + 4 > segmentSize) {
+                    LOG.error("audit message exceeds the segment size: {} > {}, ignore it",
+                            len, segmentSize);
+                    return -1;
+                }
+                rotate();
+            }
+        } catch (IOException ex) {
+            LOG.error("could not start new audit segment: {}", ex.getMessage());
+            LOG.debug("could not start new audit segment", ex);
+            return -1;
+        }
+
+        long seq = nextSeq;
+        byte[] hash = AuditLogSegment.hash(md, lastHash, seq, timestamp, message, len);
+        segment.putLong(position + 4, seq);
+        segment.putLong(position + 12, timestamp);
+        segment.position(position + 20);
+        segment.put(message, 0, len);
+        segment.put(hash);
+        // the length is written at last, the record is visible to the readers afterwards
+        segment.putInt(position, len);
+
+        position += recordSize;
+        lastHash = hash;
+        appendedSeq = seq;
+        nextSeq++;
+        return seq;
+    }
+
+    private void awaitSync(final long seq) {
+        lock.lock();
+        try {
+            while (syncedSeq < seq && running) {
+                syncRequested.signal();
+                synced.await(syncInterval, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            long target;
+            MappedByteBuffer tmpSegment;
+            lock.lock();
+            try {
+                if (running && syncedSeq == appendedSeq) {
+                    syncRequested.await(syncInterval, TimeUnit.MILLISECONDS);
+                }
+
+                if (!running) {
+                    return;
+                }
+
+                if (syncedSeq == appendedSeq) {
+                    continue;
+                }
+
+                target = appendedSeq;
+                tmpSegment = segment;
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            // force outside the lock, the records appended in the meantime will be forced
+            // with the next round.
+            tmpSegment.force();
+
+            lock.lock();
+            try {
+                if (target > syncedSeq) {
+                    syncedSeq = target;
+                }
+                syncs++;
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<File> files = AuditLogSegment.listSegments(dir, prefix);
+        if (files.isEmpty()) {
+            nextSeq = 1;
+            lastHash = new byte[AuditLogSegment.HASH_SIZE];
+            openSegment(1);
+            return;
+        }
+
+        File file = files.get(files.size() - 1);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(MapMode.READ_WRITE, 0, channel.size());
+        AuditLogSegment.checkHeader(segment, file);
+        segmentNumber = AuditLogSegment.segmentNumber(segment);
+
+        AuditLogSegment.ScanResult result = AuditLogSegment.scan(segment, md, null);
+        nextSeq = result.lastSeq() + 1;
+        lastHash = result.lastHash();
+        position = result.endPosition();
+        appendedSeq = result.lastSeq();
+        syncedSeq = appendedSeq;
+
+        if (result.error() != null) {
+            // keep the segment untouched for the investigation
+            LOG.error("invalid record in audit segment {}: {}, start new segment",
+                    file.getName(), result.error());
+            rotate();
+        } else {
+            LOG.info("continue audit segment {} with sequence number {}", file.getName(),
+                    nextSeq);
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        openSegment(segmentNumber + 1);
+        LOG.info("started audit segment {}", AuditLogSegment.fileName(prefix, segmentNumber));
+    }
+
+    private void openSegment(final long number) throws IOException {
+        File file = new File(dir, AuditLogSegment.fileName(prefix, number));
+        if (file.exists()) {
+            throw new IOException("audit segment " + file.getPath() + " already exists");
+        }
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+        segmentNumber = number;
+        AuditLogSegment.writeHeader(segment, number, nextSeq, lastHash);
+        segment.force();
+        position = AuditLogSegment.HEADER_SIZE;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            syncedSeq = appendedSeq;
+            synced.signalAll();
+            segment = null;
+        }
+
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(150);
+        sb.append("FileAuditService(directory=").append(directory)
+            .append(", segment=").append(AuditLogSegment.fileName(prefix, segmentNumber))
+            .append(", nextSeq=").append(nextSeq)
+            .append(", syncs=").append(syncs)
+            .append(")");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.audit.file.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.file.FileAuditLogReader;
+import org.xipki.audit.file.FileAuditLogReader.Record;
+import org.xipki.audit.file.FileAuditLogReader.VerificationResult;
+import org.xipki.audit.file.FileAuditServiceImpl;
+
+import junit.framework.Assert;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class FileAuditServiceTest {
+
+    private static final String PREFIX = "test";
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int RECORD_OVERHEAD = 4 + 8 + 8 + 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHashChain() throws Exception {
+        File dir = folder.newFolder("chain");
+        logEvents(dir, 1, 100, 0, true);
+
+        VerificationResult result = verify(dir);
+        Assert.assertTrue(result.toString(), result.isValid());
+        Assert.assertEquals(1, result.segments());
+        Assert.assertEquals(100, result.records());
+
+        List<Record> records = readAll(dir);
+        Assert.assertEquals(100, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(i + 1, records.get(i).seq());
+            Assert.assertTrue(records.get(i).message().contains("event-" + (i + 1)));
+        }
+    }
+
+    @Test
+    public void testChangedByte() throws Exception {
+        File dir = folder.newFolder("changed");
+        logEvents(dir, 1, 10, 0, true);
+
+        File segment = segmentFile(dir, 1);
+        long pos = recordPositions(segment).get(4);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // first byte of the message of the record 5
+            long msgPos = pos + 20;
+            raf.seek(msgPos);
+            int value = raf.read();
+            raf.seek(msgPos);
+            raf.write(value ^ 0x01);
+        }
+
+        VerificationResult result = verify(dir);
+        Assert.assertFalse(result.isValid());
+        Assert.assertEquals(4, result.records());
+        Assert.assertEquals(1, result.errors().size());
+        Assert.assertTrue(result.errors().get(0),
+                result.errors().get(0).contains("hash mismatch of record 5"));
+    }
+
+    @Test
+    public void testWrongSequenceNumber() throws Exception {
+        File dir = folder.newFolder("seq");
+        logEvents(dir, 1, 10, 0, true);
+
+        File segment = segmentFile(dir, 1);
+        long pos = recordPositions(segment).get(2);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(pos + 4);
+            raf.writeLong(4);
+        }
+
+        VerificationResult result = verify(dir);
+        Assert.assertFalse(result.isValid());
+        Assert.assertEquals(2, result.records());
+        Assert.assertEquals(1, result.errors().size());
+        Assert.assertTrue(result.errors().get(0),
+                result.errors().get(0).contains("expected sequence number 3 but found 4"));
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        File dir = folder.newFolder("restart");
+        logEvents(dir, 1, 5, 0, true);
+        logEvents(dir, 6, 5, 0, true);
+
+        VerificationResult result = verify(dir);
+        Assert.assertTrue(result.toString(), result.isValid());
+        Assert.assertEquals(1, result.segments());
+        Assert.assertEquals(10, result.records());
+        assertSequence(readAll(dir), 1, 10);
+    }
+
+    @Test
+    public void testRecoverZeroPaddedTail() throws Exception {
+        File dir = folder.newFolder("zero");
+        logEvents(dir, 1, 10, 0, true);
+
+        // the last two records have not reached the storage device before a crash
+        File segment = segmentFile(dir, 1);
+        long pos = recordPositions(segment).get(8);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(pos);
+            raf.write(new byte[(int) (raf.length() - pos)]);
+        }
+
+        // the service continues the segment after the last valid record
+        logEvents(dir, 9, 3, 0, true);
+
+        VerificationResult result = verify(dir);
+        Assert.assertTrue(result.toString(), result.isValid());
+        Assert.assertEquals(1, result.segments());
+        Assert.assertEquals(11, result.records());
+        assertSequence(readAll(dir), 1, 11);
+    }
+
+    @Test
+    public void testRecoverTruncatedTail() throws Exception {
+        File dir = folder.newFolder("truncated");
+        logEvents(dir, 1, 10, 0, true);
+
+        // the file ends within the record 8
+        File segment = segmentFile(dir, 1);
+        long pos = recordPositions(segment).get(7);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(pos + 30);
+        }
+
+        // the service keeps the damaged segment and continues the chain in a new one
+        logEvents(dir, 8, 5, 0, true);
+        Assert.assertTrue(segmentFile(dir, 2).exists());
+
+        VerificationResult result = verify(dir);
+        Assert.assertEquals(2, result.segments());
+        Assert.assertEquals(12, result.records());
+        Assert.assertEquals(result.toString(), 1, result.errors().size());
+        Assert.assertTrue(result.errors().get(0),
+                result.errors().get(0).startsWith(segmentFile(dir, 1).getName()
+                        + ": invalid record length"));
+        assertSequence(readAll(dir), 1, 12);
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        File dir = folder.newFolder("rotation");
+        // about 2.5 MiB in segments of 1 MiB
+        logEvents(dir, 1, 2500, 1000, false);
+
+        VerificationResult result = verify(dir);
+        Assert.assertTrue(result.toString(), result.isValid());
+        Assert.assertEquals(3, result.segments());
+        Assert.assertEquals(2500, result.records());
+        assertSequence(readAll(dir), 1, 2500);
+
+        // restart in the last segment
+        logEvents(dir, 2501, 10, 1000, false);
+        result = verify(dir);
+        Assert.assertTrue(result.toString(), result.isValid());
+        Assert.assertEquals(2510, result.records());
+    }
+
+    private static void logEvents(final File dir, final int firstIndex, final int num,
+            final int padding, final boolean sync) throws IOException {
+        FileAuditServiceImpl service = new FileAuditServiceImpl();
+        service.setDirectory(dir.getPath());
+        service.setPrefix(PREFIX);
+        service.setSegmentSize(1);
+        service.setSync(sync);
+        service.init();
+        try {
+            StringBuilder sb = new StringBuilder(padding);
+            for (int i = 0; i < padding; i++) {
+                sb.append('x');
+            }
+            String paddingText = sb.toString();
+
+            for (int i = firstIndex; i < firstIndex + num; i++) {
+                AuditEvent event = new AuditEvent(new Date());
+                event.setApplicationName("test");
+                event.setName("event-" + i);
+                if (padding > 0) {
+                    event.addEventData("padding", paddingText);
+                }
+                service.logEvent(event);
+            }
+        } finally {
+            service.destroy();
+        }
+    }
+
+    private static VerificationResult verify(final File dir) throws IOException {
+        return new FileAuditLogReader(dir, PREFIX).verify();
+    }
+
+    private static List<Record> readAll(final File dir) throws IOException {
+        final List<Record> records = new ArrayList<>();
+        new FileAuditLogReader(dir, PREFIX).read(1, (record) -> records.add(record));
+        return records;
+    }
+
+    private static void assertSequence(final List<Record> records, final long firstSeq,
+            final long lastSeq) {
+        Assert.assertEquals(lastSeq - firstSeq + 1, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(firstSeq + i, records.get(i).seq());
+            Assert.assertTrue(records.get(i).message().contains("event-" + (firstSeq + i)));
+        }
+    }
+
+    private static File segmentFile(final File dir, final long number) {
+        return new File(dir, String.format("%s-%010d.alog", PREFIX, number));
+    }
+
+    /**
+     * Returns the positions of the records in the segment.
+     */
+    private static List<Long> recordPositions(final File segment) throws IOException {
+        List<Long> positions = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+            long pos = HEADER_SIZE;
+            while (pos + 4 <= raf.length()) {
+                raf.seek(pos);
+                int len = raf.readInt();
+                if (len == 0) {
+                    break;
+                }
+                positions.add(pos);
+                pos += RECORD_OVERHEAD + len;
+            }
+        }
+        return positions;
+    }
+
+}
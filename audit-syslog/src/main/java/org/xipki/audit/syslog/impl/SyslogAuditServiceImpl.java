@@ -37,13 +37,11 @@ package org.xipki.audit.syslog.impl;
 import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.util.Date;
-import java.util.List;
 import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
-import org.xipki.audit.AuditEventData;
 import org.xipki.audit.AuditLevel;
 import org.xipki.audit.AuditService;
 import org.xipki.audit.AuditStatus;
@@ -145,12 +143,13 @@ public class SyslogAuditServiceImpl extends AuditService {
             sb.append("\tduration: ").append(Long.toString(duration));
         }
 
-        List<AuditEventData> eventDataArray = event.eventDatas();
-        for (AuditEventData m : eventDataArray) {
-            if (duration >= 0 && "duration".equalsIgnoreCase(m.name())) {
+        final int size = event.eventDataCount();
+        for (int i = 0; i < size; i++) {
+            String name = event.eventDataName(i);
+            if (duration >= 0 && "duration".equalsIgnoreCase(name)) {
                 continue;
             }
-            sb.append("\t").append(m.name()).append(": ").append(m.value());
+            sb.append('\t').append(name).append(": ").append(event.eventDataValue(i));
         }
 
         final int n = sb.size();
@@ -331,6 +330,11 @@ public class SyslogAuditServiceImpl extends AuditService {
         this.ssl = ssl;
     }
 
+    @Override
+    public String toString() {
+        return "SyslogAuditService(" + protocol + "://" + host + ":" + port + ")";
+    }
+
     private static boolean notEmpty(final String text) {
         return text != null && !text.isEmpty();
     }
@@ -0,0 +1,427 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.audit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.metrics.Metrics;
+
+/**
+ * Audit service which decouples the callers from a slow {@link AuditService}, e.g. a remote
+ * syslog server. The events are put into a bounded lock-free ring buffer and are forwarded
+ * in batches to the wrapped service by a single dispatcher thread. If the buffer is full,
+ * the configured {@link AuditOverflowPolicy} is applied.
+ *
+ * <p>The events must not be modified after they have been logged.
+ *
+ * <p>The gauges {@code audit.<name>.queueDepth}, {@code .dropped}, {@code .blocked} and
+ * {@code .spilled} are registered while the dispatcher is running.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class AsyncAuditService extends AuditService {
+
+    public static final int DFLT_QUEUE_SIZE = 8192;
+
+    public static final int DFLT_BATCH_SIZE = 256;
+
+    public static final String DFLT_NAME = "async";
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncAuditService.class);
+
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AuditService sink;
+
+    private final LongAdder submittedEvents = new LongAdder();
+
+    private final LongAdder dispatchedEvents = new LongAdder();
+
+    private final LongAdder failedEvents = new LongAdder();
+
+    private final LongAdder droppedEvents = new LongAdder();
+
+    private final LongAdder spilledEvents = new LongAdder();
+
+    private final LongAdder blockedEvents = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * Number of the producers between the check of {@link #running} and the end of
+     * {@link AuditRingBuffer#offer(Object)}. The final drain in {@link #destroy()} waits
+     * till it is 0, so that no event is added to the buffer after the final drain.
+     */
+    private final AtomicInteger activeProducers = new AtomicInteger();
+
+    private String name = DFLT_NAME;
+
+    private int queueSize = DFLT_QUEUE_SIZE;
+
+    private int batchSize = DFLT_BATCH_SIZE;
+
+    private AuditOverflowPolicy overflowPolicy = AuditOverflowPolicy.BLOCK;
+
+    private String spillFile;
+
+    private OutputStream spillStream;
+
+    private AuditRingBuffer buffer;
+
+    private Thread dispatcher;
+
+    private volatile boolean running;
+
+    private volatile boolean dispatcherWaiting;
+
+    public AsyncAuditService(final AuditService sink) {
+        this.sink = Objects.requireNonNull(sink, "sink must not be null");
+    }
+
+    public void setName(final String name) {
+        this.name = (name == null || name.isEmpty()) ? DFLT_NAME : name;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = (batchSize < 1) ? DFLT_BATCH_SIZE : batchSize;
+    }
+
+    public void setOverflowPolicy(final String overflowPolicy) {
+        this.overflowPolicy = AuditOverflowPolicy.forName(overflowPolicy);
+    }
+
+    public void setSpillFile(final String spillFile) {
+        this.spillFile = (spillFile == null || spillFile.isEmpty()) ? null : spillFile;
+    }
+
+    public void init() {
+        if (running) {
+            return;
+        }
+
+        if (queueSize < 2) {
+            LOG.info("queueSize {} < 2, audit events are forwarded to {} synchronously",
+                    queueSize, sink);
+            return;
+        }
+
+        if (overflowPolicy == AuditOverflowPolicy.SPILL && spillFile == null) {
+            throw new IllegalStateException("spillFile is not set");
+        }
+
+        buffer = new AuditRingBuffer(queueSize);
+        running = true;
+        dispatcher = new Thread(this::dispatch, "audit-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        String metricsName = metricsName();
+        Metrics.registerGauge(metricsName + ".queueDepth", this::queueDepth);
+        Metrics.registerGauge(metricsName + ".dropped", this::droppedEvents);
+        Metrics.registerGauge(metricsName + ".blocked", this::blockedEvents);
+        Metrics.registerGauge(metricsName + ".spilled", this::spilledEvents);
+        LOG.info("started audit dispatcher for {}: queueSize={}, batchSize={}, "
+                + "overflowPolicy={}", sink, buffer.capacity(), batchSize, overflowPolicy);
+    }
+
+    public void destroy() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        // wait for the producers which have seen running == true
+        while (activeProducers.get() > 0) {
+            LockSupport.parkNanos(BLOCK_NANOS);
+        }
+
+        if (dispatcher.isAlive()) {
+            LOG.warn("audit dispatcher did not terminate within 10 seconds");
+        } else {
+            // events added by the producers which have not seen running == false
+            List<Object> batch = new ArrayList<>();
+            while (buffer.drainTo(batch, batchSize) > 0) {
+                forward(batch);
+                batch.clear();
+            }
+        }
+
+        synchronized (this) {
+            if (spillStream != null) {
+                try {
+                    spillStream.close();
+                } catch (IOException ex) {
+                    LOG.warn("could not close the spill file: {}", ex.getMessage());
+                }
+                spillStream = null;
+            }
+        }
+
+        String metricsName = metricsName();
+        Metrics.unregisterGauge(metricsName + ".queueDepth");
+        Metrics.unregisterGauge(metricsName + ".dropped");
+        Metrics.unregisterGauge(metricsName + ".blocked");
+        Metrics.unregisterGauge(metricsName + ".spilled");
+
+        LOG.info("stopped audit dispatcher {}", this);
+    }
+
+    @Override
+    protected void logEvent0(final AuditEvent event) {
+        enqueue(event);
+    }
+
+    @Override
+    protected void logEvent0(final PciAuditEvent event) {
+        enqueue(event);
+    }
+
+    private void enqueue(final Object event) {
+        submittedEvents.increment();
+        activeProducers.incrementAndGet();
+        try {
+            if (!running) {
+                forward(event);
+                return;
+            }
+
+            if (!offer(event)) {
+                return;
+            }
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+
+        if (dispatcherWaiting) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * Adds the event to the buffer, or applies the overflow policy if the buffer is full.
+     *
+     * @return whether the event has been added to the buffer.
+     */
+    private boolean offer(final Object event) {
+        if (!buffer.offer(event)) {
+            switch (overflowPolicy) {
+            case DROP:
+                droppedEvents.increment();
+                return false;
+            case SPILL:
+                spill(event);
+                return false;
+            case BLOCK:
+            default:
+                blockedEvents.increment();
+                while (!buffer.offer(event)) {
+                    if (!running) {
+                        forward(event);
+                        return false;
+                    }
+                    LockSupport.parkNanos(BLOCK_NANOS);
+                }
+                break;
+            } // end switch
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (true) {
+            if (buffer.drainTo(batch, batchSize) > 0) {
+                forward(batch);
+                batch.clear();
+                continue;
+            }
+
+            if (!running) {
+                break;
+            }
+
+            dispatcherWaiting = true;
+            if (buffer.isEmpty() && running) {
+                LockSupport.parkNanos(this, MAX_IDLE_NANOS);
+            }
+            dispatcherWaiting = false;
+        }
+    }
+
+    private void forward(final List<Object> batch) {
+        try {
+            sink.logEvents0(batch);
+            dispatchedEvents.add(batch.size());
+            batches.increment();
+        } catch (RuntimeException ex) {
+            failedEvents.add(batch.size());
+            LOG.error("could not forward {} audit events to {}: {}", batch.size(), sink,
+                    ex.getMessage());
+            LOG.debug("could not forward audit events", ex);
+        }
+    }
+
+    private void forward(final Object event) {
+        List<Object> batch = new ArrayList<>(1);
+        batch.add(event);
+        forward(batch);
+    }
+
+    private synchronized void spill(final Object event) {
+        AuditMessageFormatter formatter = AuditMessageFormatter.acquire();
+        try {
+            long time;
+            if (event instanceof AuditEvent) {
+                AuditEvent ae = (AuditEvent) event;
+                time = ae.timestamp().getTime();
+                formatter.append(Instant.ofEpochMilli(time).toString()).append(' ').append(ae);
+            } else {
+                time = System.currentTimeMillis();
+                formatter.append(Instant.ofEpochMilli(time).toString()).append(' ')
+                    .append((PciAuditEvent) event);
+            }
+            formatter.append('\n');
+
+            if (spillStream == null) {
+                File file = new File(spillFile);
+                File parent = file.getParentFile();
+                if (parent != null && !parent.exists()) {
+                    parent.mkdirs();
+                }
+                spillStream = new FileOutputStream(file, true);
+            }
+
+            formatter.writeTo(spillStream);
+            spilledEvents.increment();
+        } catch (IOException ex) {
+            droppedEvents.increment();
+            LOG.error("could not write audit event to the spill file {}: {}", spillFile,
+                    ex.getMessage());
+        } finally {
+            formatter.release();
+        }
+    }
+
+    private String metricsName() {
+        return "audit." + name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int queueDepth() {
+        return (buffer == null) ? 0 : buffer.size();
+    }
+
+    public int queueCapacity() {
+        return (buffer == null) ? 0 : buffer.capacity();
+    }
+
+    public long submittedEvents() {
+        return submittedEvents.sum();
+    }
+
+    public long dispatchedEvents() {
+        return dispatchedEvents.sum();
+    }
+
+    public long failedEvents() {
+        return failedEvents.sum();
+    }
+
+    public long droppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    public long spilledEvents() {
+        return spilledEvents.sum();
+    }
+
+    public long blockedEvents() {
+        return blockedEvents.sum();
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(200);
+        sb.append("AsyncAuditService(name=").append(name)
+            .append(", sink=").append(sink)
+            .append(", queueDepth=").append(queueDepth())
+            .append(", queueCapacity=").append(queueCapacity())
+            .append(", submitted=").append(submittedEvents())
+            .append(", dispatched=").append(dispatchedEvents())
+            .append(", batches=").append(batches())
+            .append(", failed=").append(failedEvents())
+            .append(", dropped=").append(droppedEvents())
+            .append(", spilled=").append(spilledEvents())
+            .append(", blocked=").append(blockedEvents())
+            .append(")");
+        return sb.toString();
+    }
+
+}
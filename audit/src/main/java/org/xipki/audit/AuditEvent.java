@@ -34,19 +34,27 @@
 
 package org.xipki.audit;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
 /**
+ * The event data are stored in parallel arrays in the order they are added, and indexed by
+ * an open-addressing hash table, so that an event data is found, added or replaced in
+ * constant time without creating further objects. The name of an event data is unique,
+ * adding an event data with an existing name replaces the previous value.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 public class AuditEvent {
 
+    private static final int INITIAL_CAPACITY = 8;
+
     /**
      * The name of the application the event belongs to.
      */
@@ -75,9 +83,25 @@ public class AuditEvent {
     private long duration = -1;
 
     /**
-     * The data array belonging to the event.
+     * Names of the event data.
+     */
+    private String[] dataNames = new String[INITIAL_CAPACITY];
+
+    /**
+     * Values of the event data.
+     */
+    private String[] dataValues = new String[INITIAL_CAPACITY];
+
+    /**
+     * Number of the event data.
+     */
+    private int dataSize;
+
+    /**
+     * Hash table with linear probing, contains (position in the arrays + 1), 0 for empty.
+     * Its length is a power of 2 and at least twice of the capacity of the arrays.
      */
-    private final List<AuditEventData> eventDatas = new LinkedList<>();
+    private int[] dataIndex = new int[2 * INITIAL_CAPACITY];
 
     public AuditEvent(final Date timestamp) {
         this.timestamp = (timestamp == null) ? new Date() : timestamp;
@@ -113,8 +137,56 @@ public class AuditEvent {
         return timestamp;
     }
 
+    /**
+     * Returns a snapshot of the event data. Use {@link #eventDataCount()},
+     * {@link #eventDataName(int)} and {@link #eventDataValue(int)} to iterate the event data
+     * without creating objects.
+     *
+     * @return the event data in the order they are added.
+     */
     public List<AuditEventData> eventDatas() {
-        return Collections.unmodifiableList(eventDatas);
+        List<AuditEventData> list = new ArrayList<>(dataSize);
+        for (int i = 0; i < dataSize; i++) {
+            list.add(new AuditEventData(dataNames[i], dataValues[i]));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @since 2.2.0
+     */
+    public int eventDataCount() {
+        return dataSize;
+    }
+
+    /**
+     * @since 2.2.0
+     */
+    public String eventDataName(final int index) {
+        checkIndex(index);
+        return dataNames[index];
+    }
+
+    /**
+     * @since 2.2.0
+     */
+    public String eventDataValue(final int index) {
+        checkIndex(index);
+        return dataValues[index];
+    }
+
+    /**
+     * Returns the value of the event data with given name.
+     *
+     * @param eventDataName
+     *          Name of the event data. Must not be {@code null}.
+     * @return the value, or {@code null} if the event has no such event data.
+     * @since 2.2.0
+     */
+    public String eventDataValue(final String eventDataName) {
+        Objects.requireNonNull(eventDataName, "eventDataName must not be null");
+        int pos = position(eventDataName);
+        return (pos == -1) ? null : dataValues[pos];
     }
 
     public AuditEventData addEventType(String type) {
@@ -122,47 +194,65 @@ public class AuditEvent {
     }
 
     public AuditEventData addEventData(String name, Object value) {
-        return addEventData(new AuditEventData(name, value));
+        Objects.requireNonNull(name, "name must not be null");
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("name must not be empty");
+        }
+        Objects.requireNonNull(value, "value must not be null");
+        return addEventData0(name, (value instanceof String) ? (String) value : value.toString());
     }
 
+    /**
+     * Adds the event data.
+     *
+     * @param eventData
+     *          Event data to be added. Must not be {@code null}.
+     * @return the replaced event data with the same name, or {@code null} if there is none.
+     */
     public AuditEventData addEventData(final AuditEventData eventData) {
         Objects.requireNonNull(eventData, "eventData must not be null");
+        return addEventData0(eventData.name(), eventData.value());
+    }
 
-        int idx = -1;
-        for (int i = 0; i < eventDatas.size(); i++) {
-            AuditEventData ed = eventDatas.get(i);
-            if (ed.name().equals(eventData.name())) {
-                idx = i;
-                break;
-            }
+    private AuditEventData addEventData0(final String dataName, final String dataValue) {
+        int slot = slot(dataName);
+        int pos = dataIndex[slot] - 1;
+        if (pos != -1) {
+            AuditEventData replaced = new AuditEventData(dataName, dataValues[pos]);
+            dataValues[pos] = dataValue;
+            return replaced;
         }
 
-        AuditEventData ret = null;
-        if (idx != -1) {
-            ret = eventDatas.get(idx);
+        if (dataSize == dataNames.length) {
+            grow();
+            slot = slot(dataName);
         }
-        eventDatas.add(eventData);
 
-        return ret;
+        dataNames[dataSize] = dataName;
+        dataValues[dataSize] = dataValue;
+        dataIndex[slot] = ++dataSize;
+        return null;
     }
 
     public boolean removeEventData(String eventDataName) {
         Objects.requireNonNull(eventDataName, "eventDataName must not be null");
 
-        AuditEventData tbr = null;
-        for (AuditEventData ed : eventDatas) {
-            if (ed.name().equals(eventDataName)) {
-                tbr = ed;
-            }
+        int pos = position(eventDataName);
+        if (pos == -1) {
+            return false;
         }
 
-        boolean removed = false;
-        if (tbr != null) {
-            eventDatas.remove(tbr);
-            removed = true;
+        int tail = dataSize - pos - 1;
+        if (tail > 0) {
+            System.arraycopy(dataNames, pos + 1, dataNames, pos, tail);
+            System.arraycopy(dataValues, pos + 1, dataValues, pos, tail);
         }
-
-        return removed;
+        dataSize--;
+        dataNames[dataSize] = null;
+        dataValues[dataSize] = null;
+        // removal is rare, simply rebuild the index
+        rebuildIndex();
+        return true;
     }
 
     public AuditStatus status() {
@@ -181,4 +271,47 @@ public class AuditEvent {
         return duration;
     }
 
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= dataSize) {
+            throw new IndexOutOfBoundsException("index " + index + " not in [0, " + dataSize
+                    + ")");
+        }
+    }
+
+    private int position(final String dataName) {
+        return dataIndex[slot(dataName)] - 1;
+    }
+
+    /**
+     * Returns the slot of the hash table which contains the given name, or the empty slot
+     * where it would be inserted.
+     */
+    private int slot(final String dataName) {
+        int mask = dataIndex.length - 1;
+        int hash = dataName.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            int pos = dataIndex[slot] - 1;
+            if (pos == -1 || dataNames[pos].equals(dataName)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        int newCapacity = dataNames.length << 1;
+        dataNames = Arrays.copyOf(dataNames, newCapacity);
+        dataValues = Arrays.copyOf(dataValues, newCapacity);
+        dataIndex = new int[2 * newCapacity];
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(dataIndex, 0);
+        for (int i = 0; i < dataSize; i++) {
+            dataIndex[slot(dataNames[i])] = i + 1;
+        }
+    }
+
 }
@@ -0,0 +1,288 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.audit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Formats audit events as UTF-8 encoded text directly into a reusable byte buffer. The
+ * instances are pooled: obtain one via {@link #acquire()} and return it via
+ * {@link #release()} after the content has been written. An instance must not be used by
+ * more than one thread at the same time.
+ *
+ * <p>The format of {@link AuditEvent} is the same as that of
+ * {@link AuditService#createMessage(AuditEvent)}, and that of {@link PciAuditEvent} is the
+ * aligned level, followed by " | " and {@link PciAuditEvent#toCharArrayWriter(String)}.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public final class AuditMessageFormatter {
+
+    private static final int MAX_POOL_SIZE = 32;
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    /**
+     * Buffers grown beyond this size are not returned to the pool.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ConcurrentLinkedQueue<AuditMessageFormatter> POOL =
+            new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+    private int count;
+
+    private AuditMessageFormatter() {
+    }
+
+    public static AuditMessageFormatter acquire() {
+        AuditMessageFormatter formatter = POOL.poll();
+        if (formatter == null) {
+            return new AuditMessageFormatter();
+        }
+
+        POOL_SIZE.decrementAndGet();
+        return formatter;
+    }
+
+    /**
+     * Resets this formatter and returns it to the pool. It must not be used afterwards.
+     */
+    public void release() {
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+
+        count = 0;
+        if (POOL_SIZE.incrementAndGet() <= MAX_POOL_SIZE) {
+            POOL.offer(this);
+        } else {
+            POOL_SIZE.decrementAndGet();
+        }
+    }
+
+    public AuditMessageFormatter reset() {
+        count = 0;
+        return this;
+    }
+
+    public AuditMessageFormatter append(final AuditEvent event) {
+        Objects.requireNonNull(event, "event must not be null");
+
+        append(event.level().alignedText()).append(" | ");
+        String str = event.applicationName();
+        append((str == null) ? "undefined" : str).append(" - ");
+        str = event.name();
+        append((str == null) ? "undefined" : str);
+
+        AuditStatus status = event.status();
+        append(":\tstatus: ").append((status == null) ? AuditStatus.UNDEFINED.name()
+                : status.name());
+
+        long duration = event.duration();
+        if (duration >= 0) {
+            append("\tduration: ").append(duration);
+        }
+
+        final int n = event.eventDataCount();
+        for (int i = 0; i < n; i++) {
+            String name = event.eventDataName(i);
+            if (duration >= 0 && "duration".equalsIgnoreCase(name)) {
+                continue;
+            }
+            append('\t').append(name).append(": ").append(event.eventDataValue(i));
+        }
+
+        return this;
+    }
+
+    public AuditMessageFormatter append(final PciAuditEvent event) {
+        Objects.requireNonNull(event, "event must not be null");
+
+        append(event.level().alignedText()).append(" | ");
+        appendPciField(event.userId()).append(' ');
+        appendPciField(event.eventType()).append(' ');
+        appendPciField(event.date()).append(' ');
+        appendPciField(event.time()).append(' ');
+        appendPciField(event.status()).append(' ');
+        appendPciField(event.origination()).append(' ');
+        return appendPciField(event.affectedResource());
+    }
+
+    public AuditMessageFormatter append(final long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+
+        long val = value;
+        if (val < 0) {
+            append('-');
+            val = -val;
+        }
+
+        int digits = 1;
+        for (long tmp = val; tmp >= 10; tmp /= 10) {
+            digits++;
+        }
+
+        ensureCapacity(digits);
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + (val % 10));
+            val /= 10;
+        }
+        count += digits;
+        return this;
+    }
+
+    public AuditMessageFormatter append(final char ch) {
+        if (ch < 0x80) {
+            ensureCapacity(1);
+            buffer[count++] = (byte) ch;
+        } else {
+            appendNonAscii(ch, (char) 0);
+        }
+        return this;
+    }
+
+    public AuditMessageFormatter append(final CharSequence text) {
+        if (text == null) {
+            return append("null");
+        }
+
+        final int len = text.length();
+        // most of the characters are ASCII
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x80) {
+                if (count == buffer.length) {
+                    ensureCapacity(len - i);
+                }
+                buffer[count++] = (byte) ch;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < len
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendNonAscii(ch, text.charAt(++i));
+            } else {
+                appendNonAscii(ch, (char) 0);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the internal buffer, only the first {@link #length()} bytes are valid.
+     *
+     * @return the internal buffer.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return count;
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends the field, replacing the delimiter ' ' by '_'.
+     */
+    private AuditMessageFormatter appendPciField(final String field) {
+        if (field == null) {
+            return append("null");
+        }
+
+        int start = count;
+        append(field);
+        for (int i = start; i < count; i++) {
+            if (buffer[i] == ' ') {
+                buffer[i] = '_';
+            }
+        }
+        return this;
+    }
+
+    private void appendNonAscii(final char ch, final char lowSurrogate) {
+        ensureCapacity(4);
+        if (lowSurrogate != 0) {
+            int cp = Character.toCodePoint(ch, lowSurrogate);
+            buffer[count++] = (byte) (0xF0 | (cp >> 18));
+            buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(ch)) {
+            // unpaired surrogate
+            buffer[count++] = '?';
+        } else if (ch < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (ch >> 6));
+            buffer[count++] = (byte) (0x80 | (ch & 0x3F));
+        } else {
+            buffer[count++] = (byte) (0xE0 | (ch >> 12));
+            buffer[count++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (ch & 0x3F));
+        }
+    }
+
+    private void ensureCapacity(final int extra) {
+        int required = count + extra;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with multiple producers and a single consumer. Each slot
+ * carries a sequence number which tells whether the slot is free for the producer of the
+ * given position or filled for the consumer, so that no locks are required.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+final class AuditRingBuffer {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<Object> slots;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // only modified by the consumer
+    private volatile long head;
+
+    AuditRingBuffer(final int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must not be less than 2: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    int size() {
+        long size = tail.get() - head;
+        return (size < 0) ? 0 : (int) Math.min(size, capacity());
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * Adds the element to the buffer.
+     *
+     * @param element
+     *          Element to be added. Must not be {@code null}.
+     * @return whether the element has been added, {@code false} if the buffer is full.
+     */
+    boolean offer(final Object element) {
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(idx, element);
+                    // publishes the element
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            // else: another producer has taken the position, retry
+        }
+    }
+
+    /**
+     * Moves at most {@code maxElements} elements to the given list. Must be called only
+     * by the consumer.
+     *
+     * @return number of the moved elements.
+     */
+    int drainTo(final List<Object> list, final int maxElements) {
+        int count = 0;
+        long pos = head;
+        while (count < maxElements) {
+            int idx = (int) (pos & mask);
+            if (sequences.get(idx) != pos + 1) {
+                // not published yet
+                break;
+            }
+
+            list.add(slots.get(idx));
+            slots.lazySet(idx, null);
+            // frees the slot for the producer of the next round
+            sequences.set(idx, pos + mask + 1);
+            pos++;
+            count++;
+        }
+        head = pos;
+        return count;
+    }
+
+}
@@ -48,6 +48,25 @@ public abstract class AuditService {
 
     protected abstract void logEvent0(PciAuditEvent event);
 
+    /**
+     * Logs a batch of events. The default implementation logs the events one by one,
+     * services which can write several events at once may overwrite this method.
+     *
+     * @param events
+     *          Events to be logged, each is either {@link AuditEvent} or
+     *          {@link PciAuditEvent}. Must not be {@code null}.
+     * @since 2.2.0
+     */
+    protected void logEvents0(final List<Object> events) {
+        for (Object event : events) {
+            if (event instanceof AuditEvent) {
+                logEvent0((AuditEvent) event);
+            } else {
+                logEvent0((PciAuditEvent) event);
+            }
+        }
+    }
+
     /**
      *
      * @param event
@@ -124,21 +143,20 @@ public abstract class AuditService {
             status = AuditStatus.UNDEFINED;
         }
         sb.append(":\tstatus: ").append(status.name());
-        List<AuditEventData> eventDataArray = event.eventDatas();
 
         long duration = event.duration();
         if (duration >= 0) {
             sb.append("\tduration: ").append(duration);
         }
 
-        if ((eventDataArray != null) && (eventDataArray.size() > 0)) {
-            for (AuditEventData m : eventDataArray) {
-                if (duration >= 0 && "duration".equalsIgnoreCase(m.name())) {
-                    continue;
-                }
-
-                sb.append("\t").append(m.name()).append(": ").append(m.value());
+        final int n = event.eventDataCount();
+        for (int i = 0; i < n; i++) {
+            String dataName = event.eventDataName(i);
+            if (duration >= 0 && "duration".equalsIgnoreCase(dataName)) {
+                continue;
             }
+
+            sb.append('\t').append(dataName).append(": ").append(event.eventDataValue(i));
         }
 
         return sb.toString();
@@ -242,7 +242,11 @@ public class PciAuditEvent {
             return fieldValue;
         }
 
-        return fieldValue.replaceAll("\\" + delimiter, replaceDelimiter);
+        if (fieldValue.indexOf(delimiter) == -1) {
+            return fieldValue;
+        }
+
+        return fieldValue.replace(Character.toString(delimiter), replaceDelimiter);
     }
 
     private static String getHostAddress() {
@@ -102,6 +102,17 @@ public class DiffDigestDbCmd extends DbPortCommandSupport {
     @Completion(FilePathCompleter.class)
     private List<String> caCertFiles;
 
+    @Option(name = "--checkpoint-dir",
+            description = "directory of the checkpoints, only blocks changed since the last\n"
+                    + "checkpoint will be compared (only applied to --ref-db)")
+    @Completion(DirPathCompleter.class)
+    private String checkpointDir;
+
+    @Option(name = "--block-size",
+            description = "average number of certificates per checkpoint block,\n"
+                    + "only applied to a new checkpoint")
+    private Integer blockSize = 10000;
+
     protected DbPortWorker getDbPortWorker() throws Exception {
         Set<byte[]> caCerts = null;
         if (caCertFiles != null && !caCertFiles.isEmpty()) {
@@ -113,7 +124,8 @@ public class DiffDigestDbCmd extends DbPortCommandSupport {
 
         NumThreads numThreads = new NumThreads(numTargetThreads);
         return new DbDigestDiffWorker(datasourceFactory, passwordResolver, revokedOnly, refDir,
-                refDbConf, dbconfFile, reportDir, numCertsPerSelect, numThreads, caCerts);
+                refDbConf, dbconfFile, reportDir, numCertsPerSelect, numThreads, caCerts,
+                checkpointDir, blockSize);
     }
 
 }
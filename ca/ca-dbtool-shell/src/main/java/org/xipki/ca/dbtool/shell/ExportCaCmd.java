@@ -39,7 +39,9 @@ import org.apache.karaf.shell.api.action.Completion;
 import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.xipki.ca.dbtool.port.DbPortWorker;
+import org.xipki.ca.dbtool.port.DbPorter.FileFormat;
 import org.xipki.ca.dbtool.port.ca.CaDbExportWorker;
+import org.xipki.ca.dbtool.shell.completer.DumpFormatCompleter;
 import org.xipki.console.karaf.completer.DirPathCompleter;
 import org.xipki.console.karaf.completer.FilePathCompleter;
 
@@ -68,13 +70,26 @@ public class ExportCaCmd extends DbPortCommandSupport {
     private String outdir;
 
     @Option(name = "-n",
-            description = "number of certificates in one zip file")
+            description = "number of certificates in one file")
     private Integer numCertsInBundle = 10000;
 
     @Option(name = "-k",
             description = "number of certificates per SELECT")
     private Integer numCertsPerCommit = 100;
 
+    @Option(name = "--threads",
+            description = "number of threads to export the tables CERT, REQUEST and REQCERT\n"
+                    + "in ID ranges, a value greater than 1 requires as many\n"
+                    + "additional database connections")
+    private Integer numThreads = 1;
+
+    @Option(name = "--format",
+            description = "format of the files containing the entries, zip or binary.\n"
+                    + "binary is a compact block-compressed format which is faster\n"
+                    + "to write and read, it can only be imported by this version")
+    @Completion(DumpFormatCompleter.class)
+    private String format = "zip";
+
     @Option(name = "--resume")
     private Boolean resume = Boolean.FALSE;
 
@@ -85,7 +100,8 @@ public class ExportCaCmd extends DbPortCommandSupport {
     @Override
     protected DbPortWorker getDbPortWorker() throws Exception {
         return new CaDbExportWorker(datasourceFactory, passwordResolver, dbconfFile, outdir, resume,
-                numCertsInBundle, numCertsPerCommit, onlyTest);
+                numCertsInBundle, numCertsPerCommit, numThreads, FileFormat.forName(format),
+                onlyTest);
     }
 
 }
@@ -71,6 +71,16 @@ public class ImportCaCmd extends DbPortCommandSupport {
             description = "number of certificates per commit")
     private Integer numCertsPerCommit = 100;
 
+    @Option(name = "--threads",
+            description = "number of threads to read and parse the certificates,\n"
+                    + "a value greater than 1 imports the certificates in a pipeline")
+    private Integer numThreads = 1;
+
+    @Option(name = "--db-writers",
+            description = "number of database connections to write the certificates\n"
+                    + "in the pipeline")
+    private Integer numDbWriters = 4;
+
     @Option(name = "--resume")
     private Boolean resume = Boolean.FALSE;
 
@@ -81,7 +91,7 @@ public class ImportCaCmd extends DbPortCommandSupport {
     @Override
     protected DbPortWorker getDbPortWorker() throws Exception {
         return new CaDbImportWorker(datasourceFactory, passwordResolver, dbconfFile, resume, indir,
-                numCertsPerCommit.intValue(), testOnly);
+                numCertsPerCommit.intValue(), numThreads, numDbWriters, testOnly);
     }
 
 }
@@ -77,6 +77,16 @@ public class ImportOcspFromCaCmd extends DbPortCommandSupport {
             description = "number of certificates per commit")
     private Integer numCertsPerCommit = 100;
 
+    @Option(name = "--bulk",
+            description = "bulk load for the initial provisioning of an empty OCSP database,\n"
+                    + "the certificates are read by several threads and written with\n"
+                    + "multi-row INSERT statements if supported by the database")
+    private Boolean bulkLoad = Boolean.FALSE;
+
+    @Option(name = "--threads",
+            description = "number of threads to read the certificates in bulk load")
+    private Integer numThreads = 4;
+
     @Option(name = "--resume")
     private Boolean resume = Boolean.FALSE;
 
@@ -88,7 +98,7 @@ public class ImportOcspFromCaCmd extends DbPortCommandSupport {
     protected DbPortWorker getDbPortWorker() throws Exception {
         return new OcspFromCaDbImportWorker(datasourceFactory, passwordResolver, dbconfFile,
                 publisherName, resume, indir, numCertsPerCommit.intValue(),
-                testOnly.booleanValue());
+                bulkLoad.booleanValue(), numThreads.intValue(), testOnly.booleanValue());
     }
 
 }
@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.shell;
+
+import java.util.Map;
+
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.xipki.console.karaf.IllegalCmdParamException;
+import org.xipki.dbtool.LiquibaseDatabaseConf;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+@Command(scope = "xipki-db", name = "initdb-ca-shard",
+        description = "reset and initialize a shard of the CA certificate store")
+@Service
+public class InitDbCaShardCmd extends LiquibaseCommandSupport {
+
+    private static final String SCHEMA_FILE = "xipki/sql/ca-shard-init.xml";
+
+    @Option(name = "--shard",
+            required = true,
+            description = "name of the datasource of the shard\n"
+                    + "(required)")
+    private String shard;
+
+    @Override
+    protected Object execute0() throws Exception {
+        if ("ca".equalsIgnoreCase(shard)) {
+            throw new IllegalCmdParamException("the CA database is not a shard");
+        }
+
+        Map<String, LiquibaseDatabaseConf> dbConfs = getDatabaseConfs();
+
+        LiquibaseDatabaseConf dbConf = dbConfs.get(shard);
+        if (dbConf == null) {
+            throw new IllegalCmdParamException("no datasource named '" + shard + "' configured");
+        }
+        resetAndInit(dbConf, SCHEMA_FILE);
+        return null;
+    }
+
+}
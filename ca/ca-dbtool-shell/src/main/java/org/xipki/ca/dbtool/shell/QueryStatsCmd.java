@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.shell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.xipki.common.metrics.LatencyHistogram;
+import org.xipki.console.karaf.IllegalCmdParamException;
+import org.xipki.console.karaf.XipkiCommandSupport;
+import org.xipki.datasource.QueryMetrics;
+import org.xipki.datasource.QueryMetrics.SlowQuery;
+import org.xipki.datasource.QueryMetrics.SqlStats;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+@Command(scope = "xipki-db", name = "query-stats",
+        description = "show the SQL statistics of the datasources with queryMetrics = true")
+@Service
+public class QueryStatsCmd extends XipkiCommandSupport {
+
+    @Option(name = "--datasource",
+            description = "name of the datasource, default to all datasources")
+    private String datasource;
+
+    @Option(name = "--top",
+            description = "number of the SQL templates with the highest total time to show")
+    private Integer top = 20;
+
+    @Option(name = "--slow",
+            description = "show also the sampled slow queries")
+    private Boolean slow = Boolean.FALSE;
+
+    @Option(name = "--reset",
+            description = "reset the statistics after showing them")
+    private Boolean reset = Boolean.FALSE;
+
+    @Override
+    protected Object execute0() throws Exception {
+        Collection<QueryMetrics> instances;
+        if (datasource == null) {
+            instances = new ArrayList<>(QueryMetrics.instances());
+        } else {
+            QueryMetrics instance = QueryMetrics.instance(datasource);
+            if (instance == null) {
+                throw new IllegalCmdParamException("queryMetrics is not activated for datasource "
+                        + datasource);
+            }
+            instances = Collections.singletonList(instance);
+        }
+
+        if (instances.isEmpty()) {
+            println("queryMetrics is not activated for any datasource");
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(2000);
+        for (QueryMetrics instance : instances) {
+            LatencyHistogram.Snapshot poolWait = instance.poolWait().snapshot();
+            sb.append("datasource ").append(instance.datasourceName()).append('\n');
+            sb.append("  pool wait: count=").append(poolWait.count())
+                .append(" mean=").append(millis(poolWait.mean()))
+                .append(" p99=").append(millis(poolWait.percentile(99)))
+                .append(" max=").append(millis(poolWait.max()))
+                .append(" ms, timeouts=").append(instance.poolTimeouts()).append('\n');
+
+            sb.append(String.format("  %-8s %10s %10s %10s %10s %10s %8s  %s%n", "id", "count",
+                    "total ms", "mean ms", "p99 ms", "rows", "errors", "SQL"));
+            List<SqlStats> sqlStats = instance.sqlStats();
+            int num = Math.min(top, sqlStats.size());
+            for (int i = 0; i < num; i++) {
+                SqlStats entry = sqlStats.get(i);
+                LatencyHistogram.Snapshot snapshot = entry.histogram().snapshot();
+                sb.append(String.format("  %-8s %10d %10s %10s %10s %10d %8d  %s%n", entry.id(),
+                        snapshot.count(), millis(snapshot.count() * snapshot.mean()),
+                        millis(snapshot.mean()), millis(snapshot.percentile(99)), entry.rows(),
+                        entry.errors(), entry.sql()));
+            }
+
+            if (slow.booleanValue()) {
+                sb.append("  slow queries (threshold ")
+                    .append(instance.slowQueryThresholdMillis()).append(" ms):\n");
+                for (SlowQuery slowQuery : instance.slowQueries()) {
+                    sb.append("    ").append(slowQuery).append('\n');
+                }
+            }
+
+            if (reset.booleanValue()) {
+                instance.reset();
+            }
+        }
+
+        print(sb.toString());
+        return null;
+    }
+
+    private static String millis(final long nanos) {
+        return String.format("%.3f", nanos / 1000000.0);
+    }
+
+}
@@ -44,14 +44,19 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.ca.dbtool.IdRange;
 import org.xipki.ca.dbtool.StopMe;
 import org.xipki.ca.dbtool.diffdb.io.DbSchemaType;
 import org.xipki.ca.dbtool.diffdb.io.TargetDigestRetriever;
@@ -62,6 +67,7 @@ import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.datasource.springframework.dao.DataAccessException;
+import org.xipki.security.HashAlgoType;
 import org.xipki.security.util.X509Util;
 
 /**
@@ -93,6 +99,10 @@ public class DbDigestDiff {
 
     private final int numTargetThreads;
 
+    private String checkpointDir;
+
+    private int blockSize;
+
     private DbDigestDiff(final String refDir, final DataSourceWrapper refDatasource,
             final DataSourceWrapper targetDatasource, final String reportDirName,
             final boolean revokedOnly, final AtomicBoolean stopMe, final int numPerSelect,
@@ -133,6 +143,26 @@ public class DbDigestDiff {
         this.includeCaCerts = includeCaCerts;
     }
 
+    /**
+     * Enables the checkpointing, only applied to the reference database. The certificates are
+     * compared in blocks of consecutive IDs, and blocks which have not been changed in both
+     * databases since the last checkpoint are not compared again.
+     *
+     * @param checkpointDir
+     *          Directory of the checkpoints. {@code null} to disable the checkpointing.
+     * @param blockSize
+     *          Average number of certificates per block. Only applied if no checkpoint
+     *          exists yet, since the blocks of an existing checkpoint are kept.
+     * @since 2.2.0
+     */
+    public void setCheckpoint(final String checkpointDir, final int blockSize) {
+        if (checkpointDir != null) {
+            ParamUtil.requireMin("blockSize", blockSize, 1);
+        }
+        this.checkpointDir = checkpointDir;
+        this.blockSize = blockSize;
+    }
+
     public void diff() throws Exception {
         Map<Integer, byte[]> caIdCertMap = getCas(targetDatasource, targetDbControl);
 
@@ -177,7 +207,15 @@ public class DbDigestDiff {
             }
 
             final int numBlocksToRead = (numTargetThreads * 3 / 2);
+            Map<Integer, byte[]> refCaIdCertMap = (checkpointDir == null) ? null
+                    : getCas(refDatasource, refDbControl);
             for (Integer refCaId : refCaIds) {
+                if (checkpointDir != null) {
+                    diffSingleCaWithCheckpoint(refDbSchemaType, refDbControl, refCaId,
+                            refCaIdCertMap.get(refCaId), caIdCertMap, numBlocksToRead);
+                    continue;
+                }
+
                 DigestReader refReader = XipkiDbDigestReader.getInstance(refDatasource,
                         refDbSchemaType, refCaId, numBlocksToRead, numPerSelect,
                         new StopMe(stopMe));
@@ -186,9 +224,143 @@ public class DbDigestDiff {
         }
     } // method diff
 
+    private void diffSingleCaWithCheckpoint(final DbSchemaType refDbSchemaType,
+            final XipkiDbControl refDbControl, final int refCaId, final byte[] refCaCertBytes,
+            final Map<Integer, byte[]> caIdCertBytesMap, final int numBlocksToRead)
+            throws Exception {
+        Integer caId = getCaId(refCaCertBytes, caIdCertBytesMap);
+        if (caId == null) {
+            // no checkpoint, diffSingleCa() reports that no CA matches
+            DigestReader refReader = XipkiDbDigestReader.getInstance(refDatasource,
+                    refDbSchemaType, refCaId, numBlocksToRead, numPerSelect,
+                    new StopMe(stopMe));
+            diffSingleCa(refReader, caIdCertBytesMap);
+            return;
+        }
+
+        File checkpointFile = new File(checkpointDir,
+                "ca-" + HashAlgoType.SHA1.hexHash(refCaCertBytes).toLowerCase() + ".properties");
+        DigestCheckpoint oldCheckpoint = DigestCheckpoint.load(checkpointFile);
+        int blockBits = (oldCheckpoint != null) ? oldCheckpoint.blockBits()
+                : DigestCheckpoint.blockBits(refDatasource, refDbControl, refCaId, blockSize);
+
+        Map<Long, String> refFps = DigestCheckpoint.queryFingerprints(refDatasource,
+                refDbControl, refCaId, blockBits);
+        Map<Long, String> targetFps = DigestCheckpoint.queryFingerprints(targetDatasource,
+                targetDbControl, caId, blockBits);
+        SortedMap<Long, String> blockHashes = DigestCheckpoint.blockHashes(refFps, targetFps);
+
+        DigestCheckpoint newCheckpoint = new DigestCheckpoint(blockBits, blockHashes);
+        List<Long> changedBlocks = newCheckpoint.hashTree().changedBlocks(
+                (oldCheckpoint == null) ? null : oldCheckpoint.hashTree());
+        Set<Long> changedBlockSet = new HashSet<>(changedBlocks);
+
+        int numUnchanged = 0;
+        int numChanged = 0;
+        for (Long block : refFps.keySet()) {
+            int num = certCount(refFps.get(block));
+            if (changedBlockSet.contains(block)) {
+                numChanged += num;
+            } else {
+                numUnchanged += num;
+            }
+        }
+
+        Set<Long> dirtyIds = null;
+        boolean successful;
+        if (changedBlocks.isEmpty()) {
+            X509Certificate caCert = X509Util.parseCert(refCaCertBytes);
+            System.out.println("No changes of CA \n\t'"
+                    + X509Util.getRfc4519Name(caCert.getSubjectX500Principal())
+                    + "'\nsince the last checkpoint");
+            DbDigestReporter reporter = createReporter(caCert);
+            reporter.addUnchanged(numUnchanged);
+            reporter.close();
+            successful = true;
+        } else {
+            dirtyIds = ConcurrentHashMap.newKeySet();
+            List<IdRange> idRanges = newCheckpoint.toIdRanges(changedBlocks);
+            DigestReader refReader = XipkiDbDigestReader.getInstance(refDatasource,
+                    refDbSchemaType, refCaId, idRanges, numChanged,
+                    numBlocksToRead, numPerSelect, new StopMe(stopMe));
+            successful = diffSingleCa(refReader, caIdCertBytesMap, numUnchanged, dirtyIds)
+                    && !stopMe.get();
+        }
+
+        if (!successful) {
+            return;
+        }
+
+        // only the blocks which are identical in both databases are kept in the checkpoint
+        Set<Long> dirtyBlocks = new HashSet<>();
+        if (dirtyIds != null) {
+            for (Long id : dirtyIds) {
+                dirtyBlocks.add(newCheckpoint.block(id));
+            }
+        }
+
+        SortedMap<Long, String> cleanHashes = new TreeMap<>();
+        for (Long block : blockHashes.keySet()) {
+            if (changedBlockSet.contains(block)) {
+                if (dirtyBlocks.contains(block)) {
+                    continue;
+                }
+
+                int refNum = certCount(refFps.get(block));
+                int targetNum = certCount(targetFps.get(block));
+                if (!revokedOnly && refNum != targetNum) {
+                    continue;
+                }
+            }
+            cleanHashes.put(block, blockHashes.get(block));
+        }
+
+        new DigestCheckpoint(blockBits, cleanHashes).save(checkpointFile);
+    } // method diffSingleCaWithCheckpoint
+
+    private static int certCount(final String fingerprint) {
+        if (fingerprint == null) {
+            return 0;
+        }
+
+        int idx = fingerprint.indexOf(',');
+        return Integer.parseInt((idx == -1) ? fingerprint : fingerprint.substring(0, idx));
+    }
+
+    private static Integer getCaId(final byte[] caCertBytes,
+            final Map<Integer, byte[]> caIdCertBytesMap) {
+        Integer caId = null;
+        for (Integer i : caIdCertBytesMap.keySet()) {
+            if (Arrays.equals(caCertBytes, caIdCertBytesMap.get(i))) {
+                caId = i;
+            }
+        }
+        return caId;
+    }
+
+    private DbDigestReporter createReporter(final X509Certificate caCert)
+            throws CertificateException, IOException {
+        String commonName = X509Util.getCommonName(caCert.getSubjectX500Principal());
+        File caReportDir = new File(reportDirName, "ca-" + commonName);
+
+        int idx = 2;
+        while (caReportDir.exists()) {
+            caReportDir = new File(reportDirName, "ca-" + commonName + "-" + (idx++));
+        }
+
+        return new DbDigestReporter(caReportDir.getPath(), caCert.getEncoded());
+    }
+
     private void diffSingleCa(final DigestReader refReader,
             final Map<Integer, byte[]> caIdCertBytesMap)
             throws CertificateException, IOException, InterruptedException {
+        diffSingleCa(refReader, caIdCertBytesMap, 0, null);
+    }
+
+    private boolean diffSingleCa(final DigestReader refReader,
+            final Map<Integer, byte[]> caIdCertBytesMap, final int numUnchanged,
+            final Set<Long> dirtyIds)
+            throws CertificateException, IOException, InterruptedException {
         X509Certificate caCert = refReader.caCert();
         byte[] caCertBytes = caCert.getEncoded();
 
@@ -205,28 +377,15 @@ public class DbDigestDiff {
             }
         }
 
-        String commonName = X509Util.getCommonName(caCert.getSubjectX500Principal());
-        File caReportDir = new File(reportDirName, "ca-" + commonName);
-
-        int idx = 2;
-        while (caReportDir.exists()) {
-            caReportDir = new File(reportDirName, "ca-" + commonName + "-" + (idx++));
-        }
-
-        DbDigestReporter reporter = new DbDigestReporter(caReportDir.getPath(), caCertBytes);
-
-        Integer caId = null;
-        for (Integer i : caIdCertBytesMap.keySet()) {
-            if (Arrays.equals(caCertBytes, caIdCertBytesMap.get(i))) {
-                caId = i;
-            }
-        }
+        DbDigestReporter reporter = createReporter(caCert);
+        reporter.addUnchanged(numUnchanged);
 
+        Integer caId = getCaId(caCertBytes, caIdCertBytesMap);
         if (caId == null) {
             reporter.addNoCaMatch();
             refReader.close();
             reporter.close();
-            return;
+            return false;
         }
 
         TargetDigestRetriever target = null;
@@ -240,16 +399,18 @@ public class DbDigestDiff {
 
             target = new TargetDigestRetriever(revokedOnly, processLog, refReader, reporter,
                     targetDatasource, targetDbControl, caId, numPerSelect, numTargetThreads,
-                    new StopMe(stopMe));
+                    new StopMe(stopMe), dirtyIds);
 
             target.awaitTerminiation();
             processLog.printTrailer();
+            return true;
         } catch (InterruptedException ex) {
             throw ex;
         } catch (Exception ex) {
             reporter.addError("Exception thrown: " + ex.getClass().getName() + ": "
                     + ex.getMessage());
             LOG.error("exception in diffSingleCa", ex);
+            return false;
         } finally {
             reporter.close();
             refReader.close();
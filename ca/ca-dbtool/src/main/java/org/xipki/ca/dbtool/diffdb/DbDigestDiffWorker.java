@@ -80,11 +80,15 @@ public class DbDigestDiffWorker extends DbPortWorker {
 
     private final NumThreads numThreads;
 
+    private final String checkpointDir;
+
+    private final int blockSize;
+
     public DbDigestDiffWorker(final DataSourceFactory datasourceFactory,
             final PasswordResolver passwordResolver, final boolean revokedOnly,
             final String refDirname, final String refDbConfFile, final String dbConfFile,
             final String reportDirName, final int numCertsPerSelect, final NumThreads numThreads,
-            final Set<byte[]> includeCaCerts)
+            final Set<byte[]> includeCaCerts, final String checkpointDir, final int blockSize)
             throws DataAccessException, PasswordResolverException, IOException, JAXBException {
         ParamUtil.requireNonNull("datasourceFactory", datasourceFactory);
         this.reportDir = ParamUtil.requireNonBlank("reportDirName", reportDirName);
@@ -99,6 +103,13 @@ public class DbDigestDiffWorker extends DbPortWorker {
 
         this.includeCaCerts = includeCaCerts;
 
+        if (checkpointDir != null && refDbConfFile == null) {
+            throw new IllegalArgumentException(
+                    "checkpointDir is only supported for the reference database");
+        }
+        this.checkpointDir = (checkpointDir == null) ? null : IoUtil.expandFilepath(checkpointDir);
+        this.blockSize = ParamUtil.requireMin("blockSize", blockSize, 1);
+
         File file = new File(reportDirName);
         if (!file.exists()) {
             file.mkdirs();
@@ -146,6 +157,9 @@ public class DbDigestDiffWorker extends DbPortWorker {
                 : DbDigestDiff.getInstanceForDbRef(refDatasource, datasource, reportDir,
                         revokedOnly, stopMe, numCertsPerSelect, numThreads);
             diff.setIncludeCaCerts(includeCaCerts);
+            if (checkpointDir != null) {
+                diff.setCheckpoint(checkpointDir, blockSize);
+            }
             diff.diff();
         } finally {
             if (refDatasource != null) {
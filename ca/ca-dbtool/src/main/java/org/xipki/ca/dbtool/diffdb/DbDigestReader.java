@@ -170,13 +170,15 @@ abstract class DbDigestReader implements DigestReader {
 
         List<BigInteger> serialNumbers = new LinkedList<>();
         Map<BigInteger, DbDigestEntry> certsMap = new HashMap<>();
+        Map<BigInteger, Long> ids = new HashMap<>();
         for (IdentifiedDbDigestEntry m : certSet.entries()) {
             BigInteger sn = m.content().serialNumber();
             serialNumbers.add(sn);
             certsMap.put(sn, m.content());
+            ids.put(sn, m.id());
         }
 
-        return new CertsBundle(certsMap, serialNumbers);
+        return new CertsBundle(certsMap, serialNumbers, ids);
     } // method nextCerts
 
     public void close() {
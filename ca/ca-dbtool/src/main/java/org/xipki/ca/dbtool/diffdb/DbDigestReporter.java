@@ -84,6 +84,8 @@ public class DbDigestReporter {
 
     private AtomicInteger numError = new AtomicInteger(0);
 
+    private AtomicInteger numUnchanged = new AtomicInteger(0);
+
     public DbDigestReporter(final String reportDirname, final byte[] caCertBytes)
             throws IOException {
         this.reportDirname = ParamUtil.requireNonBlank("reportDirname", reportDirname);
@@ -133,7 +135,7 @@ public class DbDigestReporter {
         ParamUtil.requireNonNull("refCert", refCert);
         ParamUtil.requireNonNull("targetCert", targetCert);
 
-        if (refCert.serialNumber().equals(targetCert.serialNumber())) {
+        if (!refCert.serialNumber().equals(targetCert.serialNumber())) {
             throw new IllegalArgumentException(
                     "refCert and targetCert do not have the same serialNumber");
         }
@@ -149,6 +151,18 @@ public class DbDigestReporter {
         }
     }
 
+    /**
+     * Adds the number of certificates which have not been compared since they have not
+     * been changed since the last checkpoint.
+     *
+     * @param num
+     *          Number of certificates.
+     * @since 2.2.0
+     */
+    public void addUnchanged(final int num) {
+        numUnchanged.addAndGet(num);
+    }
+
     public void addError(final String errorMessage) throws IOException {
         ParamUtil.requireNonNull("errorMessage", errorMessage);
 
@@ -192,6 +206,11 @@ public class DbDigestReporter {
         .append(StringUtil.formatAccount(numUnexpected.get(), false)).append("\n");
         sb.append("     error: ")
             .append(StringUtil.formatAccount(numError.get(), false)).append("\n");
+        if (numUnchanged.get() > 0) {
+            sb.append(" unchanged: ")
+                .append(StringUtil.formatAccount(numUnchanged.get(), false))
+                .append(" (since the last checkpoint, not compared)\n");
+        }
         sb.append("  duration: ")
             .append(StringUtil.formatTime(durationSec, false)).append("\n");
         sb.append("start time: ").append(startTime).append("\n");
@@ -0,0 +1,435 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.diffdb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.xipki.ca.dbtool.IdRange;
+import org.xipki.ca.dbtool.diffdb.io.XipkiDbControl;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.springframework.dao.DataAccessException;
+import org.xipki.security.HashAlgoType;
+
+/**
+ * Checkpoint of the digest diff of a single CA. The certificates are divided into blocks
+ * of consecutive IDs, the block {@code k} covers the IDs {@code [k << blockBits,
+ * ((k + 1) << blockBits) - 1]}. Since the IDs generated by the CA are not consecutive but
+ * contain the time in milliseconds in the high bits, the number of bits is derived from
+ * the span of the IDs and the number of certificates, so that the blocks contain the
+ * requested number of certificates on average. For each block whose certificates were
+ * identical in the reference and target databases, the hash of the fingerprints of both
+ * sides is stored. The blocks are organized in a hash tree, so that only the blocks whose
+ * hash has been changed since the last checkpoint need to be compared again.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class DigestCheckpoint {
+
+    public static class HashTree {
+
+        private static final int FANOUT = 16;
+
+        /**
+         * Nodes of each level, the level 0 contains the leaves. The node with key {@code k}
+         * in the level {@code L} covers the blocks {@code [k * 16^L, (k + 1) * 16^L)}.
+         */
+        private final List<SortedMap<Long, String>> levels = new ArrayList<>();
+
+        public HashTree(final SortedMap<Long, String> leaves) {
+            ParamUtil.requireNonNull("leaves", leaves);
+            SortedMap<Long, String> level = leaves;
+            levels.add(level);
+
+            while (level.size() > 1 || (level.size() == 1 && level.firstKey() != 0)) {
+                SortedMap<Long, StringBuilder> parents = new TreeMap<>();
+                for (Long key : level.keySet()) {
+                    long parentKey = key / FANOUT;
+                    StringBuilder sb = parents.get(parentKey);
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                        parents.put(parentKey, sb);
+                    }
+                    sb.append(key).append(':').append(level.get(key)).append(';');
+                }
+
+                SortedMap<Long, String> parentLevel = new TreeMap<>();
+                for (Long key : parents.keySet()) {
+                    parentLevel.put(key, hash(parents.get(key).toString()));
+                }
+                levels.add(parentLevel);
+                level = parentLevel;
+            }
+        } // constructor
+
+        private String node(final int level, final long key) {
+            return (level < levels.size()) ? levels.get(level).get(key) : null;
+        }
+
+        /**
+         * Returns the indexes of the blocks whose hash differs from the one in the
+         * {@code oldTree}.
+         *
+         * @param oldTree
+         *          The hash tree of the last checkpoint. Could be {@code null}.
+         * @return the indexes of the changed blocks in ascending order.
+         */
+        public List<Long> changedBlocks(final HashTree oldTree) {
+            List<Long> blocks = new ArrayList<>();
+            int rootLevel = levels.size() - 1;
+            for (Long key : levels.get(rootLevel).keySet()) {
+                collectChangedBlocks(oldTree, rootLevel, key, blocks);
+            }
+            return blocks;
+        }
+
+        private void collectChangedBlocks(final HashTree oldTree, final int level,
+                final long key, final List<Long> blocks) {
+            String hash = node(level, key);
+            if (oldTree != null && hash.equals(oldTree.node(level, key))) {
+                return;
+            }
+
+            if (level == 0) {
+                blocks.add(key);
+                return;
+            }
+
+            SortedMap<Long, String> children = levels.get(level - 1);
+            for (Long childKey : children.subMap(key * FANOUT, (key + 1) * FANOUT).keySet()) {
+                collectChangedBlocks(oldTree, level - 1, childKey, blocks);
+            }
+        }
+
+    } // class HashTree
+
+    private static final String VERSION = "3";
+
+    private static final String PROP_VERSION = "version";
+
+    private static final String PROP_BLOCK_BITS = "blockBits";
+
+    private static final String PROP_BLOCK_PREFIX = "block.";
+
+    private final int blockBits;
+
+    private final SortedMap<Long, String> blockHashes;
+
+    public DigestCheckpoint(final int blockBits, final SortedMap<Long, String> blockHashes) {
+        this.blockBits = ParamUtil.requireRange("blockBits", blockBits, 0, 62);
+        this.blockHashes = ParamUtil.requireNonNull("blockHashes", blockHashes);
+    }
+
+    int blockBits() {
+        return blockBits;
+    }
+
+    long block(final long id) {
+        return id >>> blockBits;
+    }
+
+    SortedMap<Long, String> blockHashes() {
+        return Collections.unmodifiableSortedMap(blockHashes);
+    }
+
+    public HashTree hashTree() {
+        return new HashTree(blockHashes);
+    }
+
+    IdRange idRange(final long block) {
+        return new IdRange(block << blockBits, ((block + 1) << blockBits) - 1);
+    }
+
+    /**
+     * Merges the blocks to ID ranges.
+     *
+     * @param blocks
+     *          Indexes of the blocks in ascending order.
+     * @return the ID ranges.
+     */
+    public List<IdRange> toIdRanges(final List<Long> blocks) {
+        List<IdRange> ranges = new ArrayList<>();
+        long from = -1;
+        long to = -1;
+        for (Long block : blocks) {
+            IdRange range = idRange(block);
+            if (from != -1 && range.from() == to + 1) {
+                to = range.to();
+            } else {
+                if (from != -1) {
+                    ranges.add(new IdRange(from, to));
+                }
+                from = range.from();
+                to = range.to();
+            }
+        }
+
+        if (from != -1) {
+            ranges.add(new IdRange(from, to));
+        }
+        return ranges;
+    }
+
+    /**
+     * Loads the checkpoint.
+     *
+     * @param file
+     *          The checkpoint file. Must not be {@code null}.
+     * @return the checkpoint, or {@code null} if the file does not exist or is invalid.
+     */
+    static DigestCheckpoint load(final File file) {
+        ParamUtil.requireNonNull("file", file);
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream stream = new FileInputStream(file)) {
+            props.load(stream);
+        } catch (IOException ex) {
+            return null;
+        }
+
+        if (!VERSION.equals(props.getProperty(PROP_VERSION))) {
+            return null;
+        }
+
+        int blockBits;
+        try {
+            blockBits = Integer.parseInt(props.getProperty(PROP_BLOCK_BITS));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+
+        if (blockBits < 0 || blockBits > 62) {
+            return null;
+        }
+
+        SortedMap<Long, String> blockHashes = new TreeMap<>();
+        for (String name : props.stringPropertyNames()) {
+            if (!name.startsWith(PROP_BLOCK_PREFIX)) {
+                continue;
+            }
+
+            try {
+                long block = Long.parseLong(name.substring(PROP_BLOCK_PREFIX.length()));
+                blockHashes.put(block, props.getProperty(name));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+
+        return new DigestCheckpoint(blockBits, blockHashes);
+    } // method load
+
+    void save(final File file) throws IOException {
+        ParamUtil.requireNonNull("file", file);
+        Properties props = new Properties();
+        props.setProperty(PROP_VERSION, VERSION);
+        props.setProperty(PROP_BLOCK_BITS, Integer.toString(blockBits));
+        for (Long block : blockHashes.keySet()) {
+            props.setProperty(PROP_BLOCK_PREFIX + block, blockHashes.get(block));
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("could not create the directory " + parent.getPath());
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            props.store(out, null);
+        }
+
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    } // method save
+
+    /**
+     * Computes the hash of each block from the fingerprints of the reference and target
+     * databases.
+     */
+    static SortedMap<Long, String> blockHashes(final Map<Long, String> refFingerprints,
+            final Map<Long, String> targetFingerprints) {
+        TreeSet<Long> blocks = new TreeSet<>(refFingerprints.keySet());
+        blocks.addAll(targetFingerprints.keySet());
+
+        SortedMap<Long, String> hashes = new TreeMap<>();
+        for (Long block : blocks) {
+            String refFp = refFingerprints.get(block);
+            String targetFp = targetFingerprints.get(block);
+            hashes.put(block, hash(refFp + "|" + targetFp));
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns the number of bits of the IDs covered by one block, so that a block contains
+     * {@code certsPerBlock} certificates on average.
+     */
+    static int blockBits(final DataSourceWrapper datasource, final XipkiDbControl dbControl,
+            final int caId, final int certsPerBlock) throws DataAccessException {
+        ParamUtil.requireMin("certsPerBlock", certsPerBlock, 1);
+        String sql = "SELECT COUNT(*),MIN(ID),MAX(ID) FROM CERT WHERE "
+                + dbControl.colCaId() + "=?";
+        long count = 0;
+        long minId = 0;
+        long maxId = 0;
+        PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+        ResultSet rs = null;
+        try {
+            ps.setInt(1, caId);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                count = rs.getLong(1);
+                minId = rs.getLong(2);
+                maxId = rs.getLong(3);
+            }
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            datasource.releaseResources(ps, rs);
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        double idsPerBlock = ((double) (maxId - minId) + 1) / count * certsPerBlock;
+        int bits = 0;
+        while (bits < 62 && (1L << bits) < idsPerBlock) {
+            bits++;
+        }
+        return bits;
+    } // method blockBits
+
+    /**
+     * Retrieves the fingerprint of each block of the certificates issued by the given CA.
+     * The fingerprint is aggregated by the database and consists of the number of
+     * certificates, the sum of the IDs, the sum and maximum of the last update time, the sums
+     * of the revocation status, reason, time and invalidity time, and the sums of the first
+     * characters of the certificate hashes. The rows themselves are not read.
+     */
+    static Map<Long, String> queryFingerprints(final DataSourceWrapper datasource,
+            final XipkiDbControl dbControl, final int caId, final int blockBits)
+            throws DataAccessException {
+        String blockSize = Long.toString(1L << blockBits);
+        String blockExpr = "FLOOR(CERT.ID/" + blockSize + ")";
+        String hashCol = dbControl.tblCerthash() + "." + dbControl.colCerthash();
+        // the IDs are summed relative to the block start to avoid the overflow
+        String sql = "SELECT MIN(CERT.ID),COUNT(*),SUM(MOD(CERT.ID," + blockSize
+                + ")),SUM(LUPDATE),MAX(LUPDATE),SUM(REV),SUM(RR),SUM(RT),SUM(RIT),"
+                + "SUM(" + hashCharsExpr(hashCol, 1) + "),SUM(" + hashCharsExpr(hashCol, 5)
+                + ") FROM CERT INNER JOIN " + dbControl.tblCerthash() + " ON CERT.ID="
+                + dbControl.tblCerthash() + ".CID WHERE CERT." + dbControl.colCaId()
+                + "=? GROUP BY " + blockExpr;
+
+        Map<Long, String> fingerprints = new HashMap<>();
+        PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+        ResultSet rs = null;
+        try {
+            ps.setInt(1, caId);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                // the number of certificates must be the first field, see certCount()
+                StringBuilder sb = new StringBuilder();
+                for (int i = 2; i <= 11; i++) {
+                    if (i > 2) {
+                        sb.append(',');
+                    }
+                    // the sums may exceed the range of long
+                    String value = rs.getString(i);
+                    sb.append((value == null) ? "0" : new BigDecimal(value).toBigInteger());
+                }
+                // FLOOR may return a floating-point number, hence the block is computed
+                // from the smallest ID
+                fingerprints.put(rs.getLong(1) >>> blockBits, sb.toString());
+            }
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            datasource.releaseResources(ps, rs);
+        }
+
+        return fingerprints;
+    } // method queryFingerprints
+
+    /**
+     * Returns the SQL expression which combines the ASCII codes of four characters of the
+     * Base64 encoded hash, starting at the given position, to one number.
+     */
+    private static String hashCharsExpr(final String hashCol, final int start) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            if (i > 0) {
+                sb.append('+');
+            }
+            sb.append("ASCII(SUBSTR(").append(hashCol).append(',').append(start + i)
+                .append(",1))");
+            if (i < 3) {
+                sb.append('*').append(1 << (7 * (3 - i)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String hash(final String text) {
+        return HashAlgoType.SHA256.hexHash(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -41,10 +41,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.ca.dbtool.DbToolBase;
+import org.xipki.ca.dbtool.IdRange;
 import org.xipki.ca.dbtool.StopMe;
 import org.xipki.ca.dbtool.diffdb.io.DbDigestEntry;
 import org.xipki.ca.dbtool.diffdb.io.DbSchemaType;
@@ -74,10 +76,13 @@ public class XipkiDbDigestReader extends DbDigestReader {
 
     private String selectCertSql;
 
+    private List<IdRange> idRanges;
+
     private class XipkiDbRetriever implements Retriever {
 
         private PreparedStatement selectCertStmt;
         private boolean endReached;
+        private int rangeIndex;
 
         XipkiDbRetriever() throws DataAccessException {
             try {
@@ -106,11 +111,18 @@ public class XipkiDbDigestReader extends DbDigestReader {
 
         private void query() throws InterruptedException {
             long startId = lastProcessedId + 1;
+            long endId = Long.MAX_VALUE;
+            if (idRanges != null) {
+                IdRange range = idRanges.get(rangeIndex);
+                startId = Math.max(startId, range.from());
+                endId = range.to();
+            }
             DigestDbEntrySet result = new DigestDbEntrySet(startId);
 
             ResultSet rs = null;
             try {
                 selectCertStmt.setLong(1, startId);
+                selectCertStmt.setLong(2, endId);
 
                 rs = selectCertStmt.executeQuery();
 
@@ -151,6 +163,13 @@ public class XipkiDbDigestReader extends DbDigestReader {
             }
 
             if (result.entries().isEmpty()) {
+                if (result.exception() == null && idRanges != null
+                        && rangeIndex < idRanges.size() - 1) {
+                    // continue with the next ID range
+                    rangeIndex++;
+                    return;
+                }
+
                 endReached = true;
                 outQueue.put(EndOfQueue.INSTANCE);
             } else {
@@ -166,9 +185,10 @@ public class XipkiDbDigestReader extends DbDigestReader {
         super(datasource, caCert, totalAccount, minId, numBlocksToRead, stopMe);
     } // constructor
 
-    private void init(final DbSchemaType dbSchemaType, final int caId, final int numPerSelect)
-            throws Exception {
+    private void init(final DbSchemaType dbSchemaType, final int caId,
+            final List<IdRange> idRanges, final int numPerSelect) throws Exception {
         this.caId = caId;
+        this.idRanges = idRanges;
         this.conn = datasource.getConnection();
         this.dbControl = new XipkiDbControl(dbSchemaType);
 
@@ -177,7 +197,8 @@ public class XipkiDbDigestReader extends DbDigestReader {
         sb.append(dbControl.colCerthash());
         sb.append(" FROM CERT INNER JOIN ").append(dbControl.tblCerthash());
         sb.append(" ON CERT.").append(dbControl.colCaId()).append("=").append(caId);
-        sb.append(" AND CERT.ID>=? AND CERT.ID=").append(dbControl.tblCerthash()).append(".CID");
+        sb.append(" AND CERT.ID>=? AND CERT.ID<=? AND CERT.ID=");
+        sb.append(dbControl.tblCerthash()).append(".CID");
 
         this.selectCertSql = datasource.buildSelectFirstSql(numPerSelect, "ID ASC", sb.toString());
 
@@ -198,7 +219,28 @@ public class XipkiDbDigestReader extends DbDigestReader {
     public static XipkiDbDigestReader getInstance(final DataSourceWrapper datasource,
             final DbSchemaType dbSchemaType, final int caId, final int numBlocksToRead,
             final int numPerSelect, final StopMe stopMe) throws Exception {
+        return getInstance(datasource, dbSchemaType, caId, null, -1, numBlocksToRead,
+                numPerSelect, stopMe);
+    }
+
+    /**
+     * Returns a reader which reads only the certificates within the given ID ranges.
+     *
+     * @param idRanges
+     *          ID ranges in ascending order. {@code null} to read all certificates of the CA.
+     * @param totalAccount
+     *          Number of certificates within the ID ranges. Negative value to count the
+     *          certificates of the whole CA.
+     * @since 2.2.0
+     */
+    public static XipkiDbDigestReader getInstance(final DataSourceWrapper datasource,
+            final DbSchemaType dbSchemaType, final int caId, final List<IdRange> idRanges,
+            final int totalAccount, final int numBlocksToRead, final int numPerSelect,
+            final StopMe stopMe) throws Exception {
         ParamUtil.requireNonNull("datasource", datasource);
+        if (idRanges != null) {
+            ParamUtil.requireNonEmpty("idRanges", idRanges);
+        }
 
         Connection conn = datasource.getConnection();
 
@@ -209,7 +251,7 @@ public class XipkiDbDigestReader extends DbDigestReader {
         String sql = null;
 
         X509Certificate caCert;
-        int totalAccount;
+        int account = totalAccount;
         long minId;
 
         try {
@@ -224,19 +266,25 @@ public class XipkiDbDigestReader extends DbDigestReader {
             caCert = X509Util.parseBase64EncodedCert(rs.getString("CERT"));
             rs.close();
 
-            sql = "SELECT COUNT(*) FROM CERT WHERE " + dbControl.colCaId() + "=" + caId;
-            rs = stmt.executeQuery(sql);
+            if (account < 0) {
+                sql = "SELECT COUNT(*) FROM CERT WHERE " + dbControl.colCaId() + "=" + caId;
+                rs = stmt.executeQuery(sql);
 
-            totalAccount = rs.next() ? rs.getInt(1) : 0;
-            rs.close();
+                account = rs.next() ? rs.getInt(1) : 0;
+                rs.close();
+            }
 
-            sql = "SELECT MIN(ID) FROM CERT WHERE " + dbControl.colCaId() + "=" + caId;
-            rs = stmt.executeQuery(sql);
-            minId = rs.next() ? rs.getLong(1) : 1;
+            if (idRanges == null) {
+                sql = "SELECT MIN(ID) FROM CERT WHERE " + dbControl.colCaId() + "=" + caId;
+                rs = stmt.executeQuery(sql);
+                minId = rs.next() ? rs.getLong(1) : 1;
+            } else {
+                minId = idRanges.get(0).from();
+            }
 
             XipkiDbDigestReader reader = new XipkiDbDigestReader(datasource, caCert,
-                    totalAccount, minId, numBlocksToRead, numPerSelect, stopMe);
-            reader.init(dbSchemaType, caId, numPerSelect);
+                    account, minId, numBlocksToRead, numPerSelect, stopMe);
+            reader.init(dbSchemaType, caId, idRanges, numPerSelect);
             return reader;
         } catch (SQLException ex) {
             throw datasource.translate(sql, ex);
@@ -51,10 +51,29 @@ public class CertsBundle {
 
     private List<BigInteger> serialNumbers;
 
+    private Map<BigInteger, Long> ids;
+
     public CertsBundle(final Map<BigInteger, DbDigestEntry> certs,
             final List<BigInteger> serialNumbers) {
+        this(certs, serialNumbers, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param certs
+     *          Certificates. Must not be {@code null} and empty.
+     * @param serialNumbers
+     *          Serial numbers of the certificates. Must not be {@code null} and empty.
+     * @param ids
+     *          Database IDs of the certificates. Could be {@code null}.
+     * @since 2.2.0
+     */
+    public CertsBundle(final Map<BigInteger, DbDigestEntry> certs,
+            final List<BigInteger> serialNumbers, final Map<BigInteger, Long> ids) {
         this.certs = ParamUtil.requireNonEmpty("certs", certs);
         this.serialNumbers = ParamUtil.requireNonEmpty("serialNumbers", serialNumbers);
+        this.ids = ids;
     }
 
     public Map<BigInteger, DbDigestEntry> certs() {
@@ -65,4 +84,14 @@ public class CertsBundle {
         return serialNumbers;
     }
 
+    /**
+     * Returns the database IDs of the certificates.
+     *
+     * @return the IDs, or {@code null} if unknown.
+     * @since 2.2.0
+     */
+    public Map<BigInteger, Long> ids() {
+        return ids;
+    }
+
 }
@@ -45,6 +45,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -120,6 +121,7 @@ public class TargetDigestRetriever {
                         if (revokedOnly) {
                             if (!refCert.isRevoked() && targetCert != null) {
                                 reporter.addUnexpected(serialNumber);
+                                markDirty(bundle, serialNumber);
                                 continue;
                             }
                         }
@@ -129,9 +131,11 @@ public class TargetDigestRetriever {
                                 reporter.addGood(serialNumber);
                             } else {
                                 reporter.addDiff(refCert, targetCert);
+                                markDirty(bundle, serialNumber);
                             }
                         } else {
                             reporter.addMissing(serialNumber);
+                            markDirty(bundle, serialNumber);
                         }
                     }
                     processLog.addNumProcessed(size);
@@ -158,6 +162,15 @@ public class TargetDigestRetriever {
                 : getCertsViaSingleSelectInB(singleSelectStmt, serialNumbers);
         } // method query
 
+        private void markDirty(final CertsBundle bundle, final BigInteger serialNumber) {
+            if (dirtyIds != null && bundle.ids() != null) {
+                Long id = bundle.ids().get(serialNumber);
+                if (id != null) {
+                    dirtyIds.add(id);
+                }
+            }
+        }
+
     } // class Retriever
 
     private final XipkiDbControl dbControl;
@@ -184,11 +197,31 @@ public class TargetDigestRetriever {
 
     private final List<Retriever> retrievers;
 
+    private final Set<Long> dirtyIds;
+
     public TargetDigestRetriever(final boolean revokedOnly, final ProcessLog processLog,
             final DigestReader reader, final DbDigestReporter reporter,
             final DataSourceWrapper datasource, final XipkiDbControl dbControl, final int caId,
             final int numPerSelect, final int numThreads, final StopMe stopMe)
             throws DataAccessException {
+        this(revokedOnly, processLog, reader, reporter, datasource, dbControl, caId,
+                numPerSelect, numThreads, stopMe, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dirtyIds
+     *          If not {@code null}, the IDs of all reference certificates which are not
+     *          identical in the target will be added to this set. The set must be thread-safe.
+     * @since 2.2.0
+     */
+    public TargetDigestRetriever(final boolean revokedOnly, final ProcessLog processLog,
+            final DigestReader reader, final DbDigestReporter reporter,
+            final DataSourceWrapper datasource, final XipkiDbControl dbControl, final int caId,
+            final int numPerSelect, final int numThreads, final StopMe stopMe,
+            final Set<Long> dirtyIds) throws DataAccessException {
+        this.dirtyIds = dirtyIds;
         this.processLog = ParamUtil.requireNonNull("processLog", processLog);
         this.numPerSelect = numPerSelect;
         this.datasource = ParamUtil.requireNonNull("datasource", datasource);
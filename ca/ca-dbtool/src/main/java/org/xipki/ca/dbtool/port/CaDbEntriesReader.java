@@ -0,0 +1,222 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.port;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.dbtool.port.DbPorter.CaDbEntryType;
+import org.xipki.ca.dbtool.port.DbPorter.FileFormat;
+import org.xipki.ca.dbtool.xmlio.DbiBinaryReader;
+import org.xipki.ca.dbtool.xmlio.DbiXmlReader;
+import org.xipki.ca.dbtool.xmlio.IdentifidDbObjectType;
+import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
+import org.xipki.ca.dbtool.xmlio.ca.CaBinaryCodec;
+import org.xipki.ca.dbtool.xmlio.ca.CaUsersReader;
+import org.xipki.ca.dbtool.xmlio.ca.CertsReader;
+import org.xipki.ca.dbtool.xmlio.ca.CrlsReader;
+import org.xipki.ca.dbtool.xmlio.ca.RequestCertsReader;
+import org.xipki.ca.dbtool.xmlio.ca.RequestsReader;
+import org.xipki.ca.dbtool.xmlio.ca.UsersReader;
+import org.xipki.common.util.IoUtil;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Reader of a file containing exported entries of a CA table. The {@link FileFormat} is
+ * determined by the suffix of the file name.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public abstract class CaDbEntriesReader {
+
+    private static class ZipEntriesReader extends CaDbEntriesReader {
+
+        private final ZipFile zipFile;
+
+        private final DbiXmlReader overview;
+
+        ZipEntriesReader(final CaDbEntryType type, final File file)
+                throws IOException, XMLStreamException, InvalidDataObjectException {
+            this.zipFile = new ZipFile(file);
+            try {
+                ZipEntry overviewEntry = zipFile.getEntry("overview.xml");
+                this.overview = createXmlReader(type, zipFile.getInputStream(overviewEntry));
+            } catch (IOException | XMLStreamException | InvalidDataObjectException
+                    | RuntimeException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return overview.hasNext();
+        }
+
+        @Override
+        public IdentifidDbObjectType next()
+                throws InvalidDataObjectException, XMLStreamException {
+            return (IdentifidDbObjectType) overview.next();
+        }
+
+        @Override
+        public byte[] content(final String filename) throws IOException {
+            ZipEntry zipEntry = zipFile.getEntry(filename);
+            if (zipEntry == null) {
+                throw new IOException("could not find entry " + filename + " in "
+                        + zipFile.getName());
+            }
+            return IoUtil.read(zipFile.getInputStream(zipEntry));
+        }
+
+        @Override
+        public void close() {
+            try {
+                zipFile.close();
+            } catch (IOException ex) {
+                LOG.error("could not close ZIP file {}: {}", zipFile.getName(), ex.getMessage());
+                LOG.debug("could not close ZIP file " + zipFile.getName(), ex);
+            }
+        }
+
+    } // class ZipEntriesReader
+
+    private static class BinaryEntriesReader extends CaDbEntriesReader {
+
+        private final DbiBinaryReader reader;
+
+        private byte[] lastContent;
+
+        BinaryEntriesReader(final CaDbEntryType type, final File file) throws IOException {
+            this.reader = DbiBinaryReader.open(file);
+            int expectedType = CaDbEntriesWriter.binaryRecordType(type);
+            if (reader.recordType() != expectedType) {
+                close();
+                throw new IOException("file " + file.getPath() + " does not contain entries of "
+                        + type + ", but of type " + reader.recordType());
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return reader.hasNext();
+        }
+
+        @Override
+        public IdentifidDbObjectType next() throws IOException, InvalidDataObjectException {
+            CaBinaryCodec.Entry entry = CaBinaryCodec.decode(reader.recordType(), reader.next());
+            lastContent = entry.content();
+            return entry.object();
+        }
+
+        @Override
+        public byte[] content(final String filename) {
+            return lastContent;
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                LOG.error("could not close binary dump: {}", ex.getMessage());
+            }
+        }
+
+    } // class BinaryEntriesReader
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaDbEntriesReader.class);
+
+    public static CaDbEntriesReader open(final CaDbEntryType type, final File file)
+            throws IOException, XMLStreamException, InvalidDataObjectException {
+        ParamUtil.requireNonNull("type", type);
+        ParamUtil.requireNonNull("file", file);
+
+        FileFormat format = FileFormat.forFilename(file.getName());
+        if (format == FileFormat.BINARY) {
+            return new BinaryEntriesReader(type, file);
+        } else {
+            return new ZipEntriesReader(type, file);
+        }
+    }
+
+    public abstract boolean hasNext() throws IOException;
+
+    public abstract IdentifidDbObjectType next()
+            throws IOException, InvalidDataObjectException, XMLStreamException;
+
+    /**
+     * Returns the certificate, CRL or request of the entry last returned by {@link #next()}.
+     *
+     * @param filename
+     *          Name of the file of the content, as specified in the entry.
+     * @return the content.
+     * @throws IOException
+     *           if the content could not be read.
+     */
+    public abstract byte[] content(String filename) throws IOException;
+
+    public abstract void close();
+
+    private static DbiXmlReader createXmlReader(final CaDbEntryType type, final InputStream is)
+            throws XMLStreamException, InvalidDataObjectException {
+        switch (type) {
+        case CERT:
+            return new CertsReader(is);
+        case CRL:
+            return new CrlsReader(is);
+        case USER:
+            return new UsersReader(is);
+        case CAUSER:
+            return new CaUsersReader(is);
+        case REQUEST:
+            return new RequestsReader(is);
+        case REQCERT:
+            return new RequestCertsReader(is);
+        default:
+            throw new RuntimeException("unknown CaDbEntryType " + type);
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.port;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.dbtool.DbToolBase;
+import org.xipki.ca.dbtool.port.DbPorter.CaDbEntryType;
+import org.xipki.ca.dbtool.port.DbPorter.FileFormat;
+import org.xipki.ca.dbtool.xmlio.DbDataObject;
+import org.xipki.ca.dbtool.xmlio.DbiBinaryWriter;
+import org.xipki.ca.dbtool.xmlio.DbiXmlWriter;
+import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
+import org.xipki.ca.dbtool.xmlio.ca.CaBinaryCodec;
+import org.xipki.ca.dbtool.xmlio.ca.CaUserType;
+import org.xipki.ca.dbtool.xmlio.ca.CaUsersWriter;
+import org.xipki.ca.dbtool.xmlio.ca.CertType;
+import org.xipki.ca.dbtool.xmlio.ca.CertsWriter;
+import org.xipki.ca.dbtool.xmlio.ca.CrlType;
+import org.xipki.ca.dbtool.xmlio.ca.CrlsWriter;
+import org.xipki.ca.dbtool.xmlio.ca.RequestCertType;
+import org.xipki.ca.dbtool.xmlio.ca.RequestCertsWriter;
+import org.xipki.ca.dbtool.xmlio.ca.RequestType;
+import org.xipki.ca.dbtool.xmlio.ca.RequestsWriter;
+import org.xipki.ca.dbtool.xmlio.ca.UserType;
+import org.xipki.ca.dbtool.xmlio.ca.UsersWriter;
+import org.xipki.common.util.IoUtil;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Writer of a file containing exported entries of a CA table, in one of the
+ * {@link FileFormat}s.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public abstract class CaDbEntriesWriter {
+
+    private static class ZipEntriesWriter extends CaDbEntriesWriter {
+
+        private final ZipOutputStream zip;
+
+        private final DbiXmlWriter overview;
+
+        private final boolean evaluateOnly;
+
+        ZipEntriesWriter(final CaDbEntryType type, final File file, final boolean evaluateOnly)
+                throws IOException, XMLStreamException {
+            this.overview = createXmlWriter(type);
+            this.zip = DbToolBase.getZipOutputStream(file);
+            this.evaluateOnly = evaluateOnly;
+        }
+
+        @Override
+        public void add(final DbDataObject entry, final String filename, final byte[] content)
+                throws IOException, XMLStreamException, InvalidDataObjectException {
+            if (content != null && !evaluateOnly) {
+                zip.putNextEntry(new ZipEntry(filename));
+                try {
+                    zip.write(content);
+                } finally {
+                    zip.closeEntry();
+                }
+            }
+
+            if (entry instanceof CertType) {
+                ((CertsWriter) overview).add((CertType) entry);
+            } else if (entry instanceof CrlType) {
+                ((CrlsWriter) overview).add((CrlType) entry);
+            } else if (entry instanceof UserType) {
+                ((UsersWriter) overview).add((UserType) entry);
+            } else if (entry instanceof CaUserType) {
+                ((CaUsersWriter) overview).add((CaUserType) entry);
+            } else if (entry instanceof RequestType) {
+                ((RequestsWriter) overview).add((RequestType) entry);
+            } else if (entry instanceof RequestCertType) {
+                ((RequestCertsWriter) overview).add((RequestCertType) entry);
+            } else {
+                throw new IllegalArgumentException("unsupported entry "
+                        + entry.getClass().getName());
+            }
+        }
+
+        @Override
+        public void close() throws IOException, XMLStreamException {
+            zip.putNextEntry(new ZipEntry("overview.xml"));
+            try {
+                overview.rewriteToZipStream(zip);
+            } finally {
+                zip.closeEntry();
+            }
+            zip.close();
+        }
+
+        @Override
+        public void abort() {
+            IoUtil.closeStream(zip);
+        }
+
+    } // class ZipEntriesWriter
+
+    private static class BinaryEntriesWriter extends CaDbEntriesWriter {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private final FileOutputStream out;
+
+        private final DbiBinaryWriter writer;
+
+        private final boolean evaluateOnly;
+
+        BinaryEntriesWriter(final CaDbEntryType type, final File file,
+                final boolean evaluateOnly) throws IOException {
+            this.out = new FileOutputStream(file);
+            this.writer = new DbiBinaryWriter(new BufferedOutputStream(out, 64 * 1024),
+                    binaryRecordType(type));
+            this.evaluateOnly = evaluateOnly;
+        }
+
+        @Override
+        public void add(final DbDataObject entry, final String filename, final byte[] content)
+                throws IOException, InvalidDataObjectException {
+            entry.validate();
+            byte[] tmpContent = (content == null || !evaluateOnly) ? content : EMPTY;
+            writer.add(CaBinaryCodec.encode(entry, tmpContent));
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        @Override
+        public void abort() {
+            IoUtil.closeStream(out);
+        }
+
+    } // class BinaryEntriesWriter
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaDbEntriesWriter.class);
+
+    public static CaDbEntriesWriter create(final CaDbEntryType type, final FileFormat format,
+            final File file, final boolean evaluateOnly) throws IOException, XMLStreamException {
+        ParamUtil.requireNonNull("type", type);
+        ParamUtil.requireNonNull("format", format);
+        ParamUtil.requireNonNull("file", file);
+        LOG.debug("writing {} entries to {}", type, file);
+
+        switch (format) {
+        case ZIP:
+            return new ZipEntriesWriter(type, file, evaluateOnly);
+        case BINARY:
+            return new BinaryEntriesWriter(type, file, evaluateOnly);
+        default:
+            throw new RuntimeException("unknown FileFormat " + format);
+        }
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param entry
+     *          Entry to be added. Must not be {@code null}.
+     * @param filename
+     *          Name of the file of the content within a ZIP file.
+     * @param content
+     *          The certificate, CRL or request of the entry. {@code null} if the entry
+     *          does not have any content.
+     * @throws IOException
+     *           if an I/O error occurs.
+     * @throws XMLStreamException
+     *           if the overview could not be written.
+     * @throws InvalidDataObjectException
+     *           if the entry is invalid.
+     */
+    public abstract void add(DbDataObject entry, String filename, byte[] content)
+            throws IOException, XMLStreamException, InvalidDataObjectException;
+
+    /**
+     * Completes and closes the file.
+     *
+     * @throws IOException
+     *           if an I/O error occurs.
+     * @throws XMLStreamException
+     *           if the overview could not be written.
+     */
+    public abstract void close() throws IOException, XMLStreamException;
+
+    /**
+     * Closes the file without completing it.
+     */
+    public abstract void abort();
+
+    static int binaryRecordType(final CaDbEntryType type) {
+        switch (type) {
+        case CERT:
+            return CaBinaryCodec.TYPE_CERT;
+        case CRL:
+            return CaBinaryCodec.TYPE_CRL;
+        case USER:
+            return CaBinaryCodec.TYPE_USER;
+        case CAUSER:
+            return CaBinaryCodec.TYPE_CAUSER;
+        case REQUEST:
+            return CaBinaryCodec.TYPE_REQUEST;
+        case REQCERT:
+            return CaBinaryCodec.TYPE_REQCERT;
+        default:
+            throw new RuntimeException("unknown CaDbEntryType " + type);
+        }
+    }
+
+    private static DbiXmlWriter createXmlWriter(final CaDbEntryType type)
+            throws IOException, XMLStreamException {
+        switch (type) {
+        case CERT:
+            return new CertsWriter();
+        case CRL:
+            return new CrlsWriter();
+        case USER:
+            return new UsersWriter();
+        case CAUSER:
+            return new CaUsersWriter();
+        case REQUEST:
+            return new RequestsWriter();
+        case REQCERT:
+            return new RequestCertsWriter();
+        default:
+            throw new RuntimeException("unknown CaDbEntryType " + type);
+        }
+    }
+
+}
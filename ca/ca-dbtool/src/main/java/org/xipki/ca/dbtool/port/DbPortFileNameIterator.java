@@ -99,7 +99,8 @@ public class DbPortFileNameIterator implements Iterator<String> {
         String line;
         while ((line = reader.readLine()) != null) {
             line = line.trim();
-            if (StringUtil.isBlank(line) || line.startsWith("#") || !line.endsWith(".zip")) {
+            if (StringUtil.isBlank(line) || line.startsWith("#")
+                    || DbPorter.FileFormat.forFilename(line) == null) {
                 continue;
             }
             return line;
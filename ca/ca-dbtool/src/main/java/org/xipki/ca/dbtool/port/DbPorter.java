@@ -127,6 +127,60 @@ public class DbPorter extends DbToolBase {
 
     }
 
+    /**
+     * Format of the files containing the exported entries of a table.
+     */
+    public enum FileFormat {
+
+        /**
+         * ZIP file with one entry per certificate, CRL or request and an XML overview.
+         */
+        ZIP(".zip"),
+
+        /**
+         * Binary dump with compressed and checksummed blocks of length-prefixed records.
+         */
+        BINARY(".bin");
+
+        private final String suffix;
+
+        private FileFormat(final String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String suffix() {
+            return suffix;
+        }
+
+        public static FileFormat forName(final String name) {
+            ParamUtil.requireNonNull("name", name);
+            for (FileFormat format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("unknown file format " + name);
+        }
+
+        /**
+         * Returns the format of the given file.
+         *
+         * @param filename
+         *          Name of the file. Must not be {@code null}.
+         * @return the format, or {@code null} if the file does not have the suffix of any format.
+         */
+        public static FileFormat forFilename(final String filename) {
+            ParamUtil.requireNonNull("filename", filename);
+            for (FileFormat format : values()) {
+                if (filename.endsWith(format.suffix)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+
+    }
+
     public static final String FILENAME_CA_CONFIGURATION = "ca-configuration.xml";
 
     public static final String FILENAME_CA_CERTSTORE = "ca-certstore.xml";
@@ -34,25 +34,34 @@
 
 package org.xipki.ca.dbtool.port.ca;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.stream.XMLStreamException;
 
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DEROctetString;
@@ -65,20 +74,15 @@ import org.xipki.ca.dbtool.jaxb.ca.CertStoreType.PublishQueue;
 import org.xipki.ca.dbtool.jaxb.ca.DeltaCRLCacheEntryType;
 import org.xipki.ca.dbtool.jaxb.ca.ObjectFactory;
 import org.xipki.ca.dbtool.jaxb.ca.ToPublishType;
+import org.xipki.ca.dbtool.port.CaDbEntriesWriter;
 import org.xipki.ca.dbtool.port.DbPorter;
-import org.xipki.ca.dbtool.xmlio.DbiXmlWriter;
+import org.xipki.ca.dbtool.port.DbPorter.FileFormat;
 import org.xipki.ca.dbtool.xmlio.ca.CaUserType;
-import org.xipki.ca.dbtool.xmlio.ca.CaUsersWriter;
 import org.xipki.ca.dbtool.xmlio.ca.CertType;
-import org.xipki.ca.dbtool.xmlio.ca.CertsWriter;
 import org.xipki.ca.dbtool.xmlio.ca.CrlType;
-import org.xipki.ca.dbtool.xmlio.ca.CrlsWriter;
 import org.xipki.ca.dbtool.xmlio.ca.RequestCertType;
-import org.xipki.ca.dbtool.xmlio.ca.RequestCertsWriter;
 import org.xipki.ca.dbtool.xmlio.ca.RequestType;
-import org.xipki.ca.dbtool.xmlio.ca.RequestsWriter;
 import org.xipki.ca.dbtool.xmlio.ca.UserType;
-import org.xipki.ca.dbtool.xmlio.ca.UsersWriter;
 import org.xipki.common.ProcessLog;
 import org.xipki.common.util.Base64;
 import org.xipki.common.util.IoUtil;
@@ -99,8 +103,169 @@ import org.xipki.security.util.X509Util;
 
 class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
 
+    private class PartitionExporter implements Callable<Void> {
+
+        private final CaDbEntryType type;
+
+        private final String sql;
+
+        private final PartitionedExportState state;
+
+        private final PartitionedExportState.Partition partition;
+
+        private final ProcessLog processLog;
+
+        private final AtomicBoolean failed;
+
+        PartitionExporter(final CaDbEntryType type, final String sql,
+                final PartitionedExportState state,
+                final PartitionedExportState.Partition partition, final ProcessLog processLog,
+                final AtomicBoolean failed) {
+            this.type = type;
+            this.sql = sql;
+            this.state = state;
+            this.partition = partition;
+            this.processLog = processLog;
+            this.failed = failed;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if (partition.finished()) {
+                return null;
+            }
+
+            FileOutputStream filenameListOs = null;
+            Connection conn = datasource.getConnection();
+            PreparedStatement ps = null;
+            try {
+                ps = datasource.prepareStatement(conn, sql);
+                filenameListOs = new FileOutputStream(
+                        partitionFilenameListFile(type, partition), true);
+                export(ps, filenameListOs);
+            } catch (SQLException ex) {
+                failed.set(true);
+                throw datasource.translate(sql, ex);
+            } catch (Exception ex) {
+                failed.set(true);
+                throw ex;
+            } finally {
+                IoUtil.closeStream(filenameListOs);
+                if (ps == null) {
+                    datasource.returnConnection(conn);
+                } else {
+                    datasource.releaseResources(ps, null);
+                }
+            }
+            return null;
+        }
+
+        private void export(final PreparedStatement ps, final OutputStream filenameListOs)
+                throws Exception {
+            final int numEntriesPerZip = Math.max(1,
+                    Math.round(type.sqlBatchFactor() * numCertsInBundle));
+            final File entriesDir = new File(baseDir, type.dirName());
+            final long toId = partition.range().to();
+
+            File currentEntriesFile = null;
+            CaDbEntriesWriter currentEntriesWriter = null;
+            int numEntriesInCurrentFile = 0;
+            long minIdOfCurrentFile = -1;
+            long maxIdOfCurrentFile = -1;
+            long lastMaxId = partition.nextId() - 1;
+
+            try {
+                while (true) {
+                    if (stopMe.get()) {
+                        throw new InterruptedException("interrupted by the user");
+                    }
+
+                    if (failed.get()) {
+                        throw new InterruptedException("cancelled due to error in other range");
+                    }
+
+                    ps.setLong(1, lastMaxId + 1);
+                    ps.setLong(2, toId);
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        // no entries anymore
+                        if (!rs.next()) {
+                            break;
+                        }
+
+                        do {
+                            long id = rs.getLong("ID");
+                            if (lastMaxId < id) {
+                                lastMaxId = id;
+                            }
+
+                            if (currentEntriesWriter == null) {
+                                currentEntriesFile = new File(baseDir, "tmp-" + type.dirName()
+                                        + "-" + partition.index() + "-"
+                                        + System.currentTimeMillis() + format.suffix());
+                                currentEntriesWriter = CaDbEntriesWriter.create(type, format,
+                                        currentEntriesFile, evaulateOnly);
+                                minIdOfCurrentFile = id;
+                            }
+                            maxIdOfCurrentFile = id;
+
+                            if (!exportEntry(type, rs, id, currentEntriesWriter)) {
+                                continue;
+                            }
+
+                            numEntriesInCurrentFile++;
+                            if (numEntriesInCurrentFile == numEntriesPerZip) {
+                                String currentEntriesFilename = buildFilename(
+                                        type.dirName() + "_", format.suffix(),
+                                        minIdOfCurrentFile, maxIdOfCurrentFile, state.maxId());
+                                currentEntriesWriter.close();
+                                currentEntriesWriter = null;
+                                currentEntriesFile.renameTo(
+                                        new File(entriesDir, currentEntriesFilename));
+                                writeLine(filenameListOs, currentEntriesFilename);
+                                state.update(partition, id + 1, numEntriesInCurrentFile);
+
+                                processLog.addNumProcessed(numEntriesInCurrentFile);
+                                processLog.printStatus();
+                                numEntriesInCurrentFile = 0;
+                            }
+                        } while (rs.next());
+                    } finally {
+                        rs.close();
+                    }
+                }
+
+                if (numEntriesInCurrentFile > 0) {
+                    String currentEntriesFilename = buildFilename(type.dirName() + "_",
+                            format.suffix(), minIdOfCurrentFile, maxIdOfCurrentFile,
+                            state.maxId());
+                    currentEntriesWriter.close();
+                    currentEntriesWriter = null;
+                    currentEntriesFile.renameTo(new File(entriesDir, currentEntriesFilename));
+                    writeLine(filenameListOs, currentEntriesFilename);
+
+                    processLog.addNumProcessed(numEntriesInCurrentFile);
+                    processLog.printStatus();
+                }
+                state.update(partition, toId + 1, numEntriesInCurrentFile);
+            } finally {
+                if (currentEntriesWriter != null) {
+                    currentEntriesWriter.abort();
+                    currentEntriesFile.delete();
+                }
+            }
+        } // method export
+
+    } // class PartitionExporter
+
+
     private static final Logger LOG = LoggerFactory.getLogger(CaCertStoreDbExporter.class);
 
+    private static final Set<CaDbEntryType> PARTITIONED_TYPES = EnumSet.of(
+            CaDbEntryType.CERT, CaDbEntryType.REQUEST, CaDbEntryType.REQCERT);
+
+    private static final int PARTITIONS_PER_THREAD = 4;
+
     private final Marshaller marshaller;
 
     private final Unmarshaller unmarshaller;
@@ -111,16 +276,23 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
 
     private final boolean resume;
 
+    private final int numThreads;
+
+    private final FileFormat format;
+
     CaCertStoreDbExporter(final DataSourceWrapper datasource, final Marshaller marshaller,
             final Unmarshaller unmarshaller, final String baseDir, final int numCertsInBundle,
-            final int numCertsPerSelect, final boolean resume, final AtomicBoolean stopMe,
-            final boolean evaluateOnly) throws DataAccessException {
+            final int numCertsPerSelect, final boolean resume, final int numThreads,
+            final FileFormat format, final AtomicBoolean stopMe, final boolean evaluateOnly)
+            throws DataAccessException {
         super(datasource, baseDir, stopMe, evaluateOnly);
         this.marshaller = ParamUtil.requireNonNull("marshaller", marshaller);
         this.unmarshaller = ParamUtil.requireNonNull("unmarshaller", unmarshaller);
         this.numCertsInBundle = ParamUtil.requireMin("numCertsInBundle", numCertsInBundle, 1);
         this.numCertsPerSelect = ParamUtil.requireMin("numCertsPerSelect", numCertsPerSelect, 1);
         this.resume = resume;
+        this.numThreads = ParamUtil.requireMin("numThreads", numThreads, 1);
+        this.format = ParamUtil.requireNonNull("format", format);
     }
 
     @SuppressWarnings("unchecked")
@@ -283,6 +455,14 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
             throw new RuntimeException("unknown CaDbEntryType " + type);
         }
 
+        // a partitioned export is always resumed as partitioned export
+        if (PARTITIONED_TYPES.contains(type)
+                && (numThreads > 1 || new File(baseDir, type.dirName() + ".ranges").exists())) {
+            exportEntriesInParallel(type, certstore, processLogFile, filenameListOs,
+                    idProcessedInLastProcess, coreSql, numProcessedBefore);
+            return;
+        }
+
         Long minId = null;
         if (idProcessedInLastProcess != null) {
             minId = idProcessedInLastProcess + 1;
@@ -302,15 +482,15 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
 
         String sql = datasource.buildSelectFirstSql(numEntriesPerSelect, "ID ASC", coreSql);
 
-        DbiXmlWriter entriesInCurrentFile = createWriter(type);
         PreparedStatement ps = prepareStatement(sql.toString());
 
         int numEntriesInCurrentFile = 0;
 
         int sum = 0;
-        File currentEntriesZipFile = new File(baseDir,
-                "tmp-" + type.dirName() + "-" + System.currentTimeMillis() + ".zip");
-        ZipOutputStream currentEntriesZip = getZipOutputStream(currentEntriesZipFile);
+        File currentEntriesFile = new File(baseDir,
+                "tmp-" + type.dirName() + "-" + System.currentTimeMillis() + format.suffix());
+        CaDbEntriesWriter currentEntriesWriter = CaDbEntriesWriter.create(type, format,
+                currentEntriesFile, evaulateOnly);
 
         long minIdOfCurrentFile = -1;
         long maxIdOfCurrentFile = -1;
@@ -356,189 +536,8 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
                         maxIdOfCurrentFile = id;
                     }
 
-                    if (CaDbEntryType.CERT == type) {
-                        String b64Cert = rs.getString("CERT");
-                        byte[] certBytes = Base64.decodeFast(b64Cert);
-
-                        String sha1 = HashAlgoType.SHA1.hexHash(certBytes);
-                        String certFileName = sha1 + ".der";
-                        if (!evaulateOnly) {
-                            ZipEntry certZipEntry = new ZipEntry(certFileName);
-                            currentEntriesZip.putNextEntry(certZipEntry);
-                            try {
-                                currentEntriesZip.write(certBytes);
-                            } finally {
-                                currentEntriesZip.closeEntry();
-                            }
-                        }
-
-                        CertType cert = new CertType();
-                        cert.setId(id);
-
-                        int art = rs.getInt("ART");
-                        cert.setArt(art);
-
-                        int cainfoId = rs.getInt("CA_ID");
-                        cert.setCaId(cainfoId);
-
-                        boolean ee = rs.getBoolean("EE");
-                        cert.setEe(ee);
-
-                        cert.setFile(certFileName);
-
-                        long fpReqSubject = rs.getLong("FP_RS");
-                        if (fpReqSubject != 0) {
-                            cert.setFpRs(fpReqSubject);
-                            String reqSubject = rs.getString("REQ_SUBJECT");
-                            cert.setRs(reqSubject);
-                        }
-
-                        int certprofileId = rs.getInt("PID");
-                        cert.setPid(certprofileId);
-
-                        int reqType = rs.getInt("RTYPE");
-                        cert.setReqType(reqType);
-
-                        int requestorinfoId = rs.getInt("RID");
-                        cert.setRid(requestorinfoId);
-
-                        String serial = rs.getString("SN");
-                        cert.setSn(serial);
-
-                        String str = rs.getString("TID");
-                        if (StringUtil.isNotBlank(str)) {
-                            cert.setTid(str);
-                        }
-
-                        int userId = rs.getInt("UID");
-                        if (userId != 0) {
-                            cert.setUid(userId);
-                        }
-                        long lastUpdate = rs.getLong("LUPDATE");
-                        cert.setUpdate(lastUpdate);
-
-                        boolean revoked = rs.getBoolean("REV");
-                        cert.setRev(revoked);
-
-                        if (revoked) {
-                            int revReason = rs.getInt("RR");
-                            long revTime = rs.getLong("RT");
-                            long revInvTime = rs.getLong("RIT");
-                            cert.setRr(revReason);
-                            cert.setRt(revTime);
-                            if (revInvTime != 0) {
-                                cert.setRit(revInvTime);
-                            }
-                        }
-
-                        ((CertsWriter) entriesInCurrentFile).add(cert);
-                    } else if (CaDbEntryType.CRL == type) {
-                        String b64Crl = rs.getString("CRL");
-                        byte[] crlBytes = Base64.decodeFast(b64Crl);
-
-                        X509CRL x509Crl = null;
-                        try {
-                            x509Crl = X509Util.parseCrl(crlBytes);
-                        } catch (Exception ex) {
-                            LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
-                            if (ex instanceof CRLException) {
-                                throw (CRLException) ex;
-                            } else {
-                                throw new CRLException(ex.getMessage(), ex);
-                            }
-                        }
-
-                        byte[] octetString = x509Crl.getExtensionValue(Extension.cRLNumber.getId());
-                        if (octetString == null) {
-                            LOG.warn("CRL without CRL number, ignore it");
-                            continue;
-                        }
-                        String sha1 = HashAlgoType.SHA1.hexHash(crlBytes);
-
-                        final String crlFilename = sha1 + ".crl";
-                        if (!evaulateOnly) {
-                            ZipEntry certZipEntry = new ZipEntry(crlFilename);
-                            currentEntriesZip.putNextEntry(certZipEntry);
-                            try {
-                                currentEntriesZip.write(crlBytes);
-                            } finally {
-                                currentEntriesZip.closeEntry();
-                            }
-                        }
-
-                        CrlType crl = new CrlType();
-                        crl.setId(id);
-
-                        int caId = rs.getInt("CA_ID");
-                        crl.setCaId(caId);
-
-                        byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
-                        BigInteger crlNumber = ASN1Integer.getInstance(extnValue)
-                                .getPositiveValue();
-                        crl.setCrlNo(crlNumber.toString());
-                        crl.setFile(crlFilename);
-
-                        ((CrlsWriter) entriesInCurrentFile).add(crl);
-                    } else if (CaDbEntryType.USER == type) {
-                        String name = rs.getString("NAME");
-                        UserType user = new UserType();
-                        user.setId(id);
-                        user.setName(name);
-
-                        boolean active = rs.getBoolean("ACTIVE");
-                        user.setActive(active);
-
-                        String password = rs.getString("PASSWORD");
-                        user.setPassword(password);
-
-                        ((UsersWriter) entriesInCurrentFile).add(user);
-                    } else if (CaDbEntryType.CAUSER == type) {
-                        CaUserType causer = new CaUserType();
-                        causer.setId(id);
-
-                        int caId = rs.getInt("CA_ID");
-                        causer.setCaId(caId);
-
-                        int uid = rs.getInt("USER_ID");
-                        causer.setUid(uid);
-
-                        int permission = rs.getInt("PERMISSION");
-                        causer.setPermission(permission);
-
-                        String profiles = rs.getString("PROFILES");
-                        causer.setProfiles(profiles);
-
-                        ((CaUsersWriter) entriesInCurrentFile).add(causer);
-                    } else if (CaDbEntryType.REQUEST == type) {
-                        long update = rs.getLong("LUPDATE");
-                        String b64Data = rs.getString("DATA");
-                        byte[] dataBytes = Base64.decodeFast(b64Data);
-                        String sha1 = HashAlgoType.SHA1.hexHash(dataBytes);
-                        final String dataFilename = sha1 + ".req";
-                        if (!evaulateOnly) {
-                            ZipEntry certZipEntry = new ZipEntry(dataFilename);
-                            currentEntriesZip.putNextEntry(certZipEntry);
-                            try {
-                                currentEntriesZip.write(dataBytes);
-                            } finally {
-                                currentEntriesZip.closeEntry();
-                            }
-                        }
-                        RequestType entry = new RequestType();
-                        entry.setId(id);
-                        entry.setUpdate(update);
-                        entry.setFile(dataFilename);
-                        ((RequestsWriter) entriesInCurrentFile).add(entry);
-                    } else if (CaDbEntryType.REQCERT == type) {
-                        long cid = rs.getLong("CID");
-                        long rid = rs.getLong("RID");
-                        RequestCertType entry = new RequestCertType();
-                        entry.setId(id);
-                        entry.setCid(cid);
-                        entry.setRid(rid);
-                        ((RequestCertsWriter) entriesInCurrentFile).add(entry);
-                    } else {
-                        throw new RuntimeException("unknown CaDbEntryType " + type);
+                    if (!exportEntry(type, rs, id, currentEntriesWriter)) {
+                        continue;
                     }
 
                     numEntriesInCurrentFile++;
@@ -546,9 +545,9 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
 
                     if (numEntriesInCurrentFile == numEntriesPerZip) {
                         String currentEntriesFilename = buildFilename(type.dirName() + "_",
-                                ".zip", minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
-                        finalizeZip(currentEntriesZip, "overview.xml", entriesInCurrentFile);
-                        currentEntriesZipFile.renameTo(
+                                format.suffix(), minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
+                        currentEntriesWriter.close();
+                        currentEntriesFile.renameTo(
                                 new File(entriesDir, currentEntriesFilename));
 
                         writeLine(filenameListOs, currentEntriesFilename);
@@ -559,13 +558,13 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
                         processLog.printStatus();
 
                         // reset
-                        entriesInCurrentFile = createWriter(type);
                         numEntriesInCurrentFile = 0;
                         minIdOfCurrentFile = -1;
                         maxIdOfCurrentFile = -1;
-                        currentEntriesZipFile = new File(baseDir, "tmp-" + type.dirName() + "-"
-                                + System.currentTimeMillis() + ".zip");
-                        currentEntriesZip = getZipOutputStream(currentEntriesZipFile);
+                        currentEntriesFile = new File(baseDir, "tmp-" + type.dirName() + "-"
+                                + System.currentTimeMillis() + format.suffix());
+                        currentEntriesWriter = CaDbEntriesWriter.create(type, format,
+                                currentEntriesFile, evaulateOnly);
                     }
                 }
                 while (rs.next());
@@ -574,16 +573,16 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
             } // end for
 
             if (interrupted) {
-                currentEntriesZip.close();
+                currentEntriesWriter.abort();
                 throw new InterruptedException("interrupted by the user");
             }
 
             if (numEntriesInCurrentFile > 0) {
-                finalizeZip(currentEntriesZip, "overview.xml", entriesInCurrentFile);
+                currentEntriesWriter.close();
 
-                String currentEntriesFilename = buildFilename(type.dirName() + "_", ".zip",
-                        minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
-                currentEntriesZipFile.renameTo(new File(entriesDir, currentEntriesFilename));
+                String currentEntriesFilename = buildFilename(type.dirName() + "_",
+                        format.suffix(), minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
+                currentEntriesFile.renameTo(new File(entriesDir, currentEntriesFilename));
 
                 writeLine(filenameListOs, currentEntriesFilename);
                 setCount(type, certstore, numProcessedBefore + sum);
@@ -593,8 +592,8 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
 
                 processLog.addNumProcessed(numEntriesInCurrentFile);
             } else {
-                currentEntriesZip.close();
-                currentEntriesZipFile.delete();
+                currentEntriesWriter.abort();
+                currentEntriesFile.delete();
             }
 
         } catch (SQLException ex) {
@@ -609,6 +608,279 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
         System.out.println(exportedText() + sum + " entries from " + tablesText);
     } // method exportEntries
 
+    /**
+     * Exports the entries of the given type with several threads. The ID space is split into
+     * ranges, each range is exported into its own files by a dedicated connection. The
+     * file names of each range are collected in a separate list and appended to the list
+     * of the given type in the order of the ranges, after all ranges have been exported.
+     */
+    private void exportEntriesInParallel(final CaDbEntryType type,
+            final CertStoreType certstore, final File processLogFile,
+            final FileOutputStream filenameListOs, final Long idProcessedInLastProcess,
+            final String coreSql, final int numProcessedBefore) throws Exception {
+        final String tableName = type.tableName();
+        final File stateFile = new File(baseDir, type.dirName() + ".ranges");
+
+        PartitionedExportState state;
+        if (stateFile.exists()) {
+            state = PartitionedExportState.load(stateFile);
+        } else {
+            long minId = (idProcessedInLastProcess != null) ? idProcessedInLastProcess + 1
+                    : min(tableName, "ID");
+            long maxId = Math.max(minId, max(tableName, "ID"));
+            state = PartitionedExportState.create(stateFile, minId, maxId,
+                    numThreads * PARTITIONS_PER_THREAD, numProcessedBefore);
+            state.save();
+            echoToFile(tableName + ":" + (minId - 1), processLogFile);
+        }
+
+        String tablesText = (CaDbEntryType.CERT == type)
+                ? "tables " + tableName + " and CRAW" : "table " + type.tableName();
+        System.out.println(exportingText() + tablesText + " with " + numThreads
+                + " threads in " + state.partitions().size() + " ID ranges");
+
+        long total = count(tableName) - state.count();
+        if (total < 1) {
+            total = 1; // to avoid exception
+        }
+
+        final String idColumn = (CaDbEntryType.CERT == type) ? "CERT.ID" : "ID";
+        final String sql = datasource.buildSelectFirstSql(
+                Math.max(1, Math.round(type.sqlBatchFactor() * numCertsPerSelect)), "ID ASC",
+                coreSql + " AND " + idColumn + "<=?");
+
+        ProcessLog processLog = new ProcessLog(total);
+        processLog.printHeader();
+
+        AtomicBoolean failed = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Void>> futures = new ArrayList<>(state.partitions().size());
+        try {
+            for (PartitionedExportState.Partition partition : state.partitions()) {
+                futures.add(executor.submit(new PartitionExporter(type, sql, state, partition,
+                        processLog, failed)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Exception exception = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (exception == null) {
+                    exception = (cause instanceof Exception) ? (Exception) cause
+                            : new Exception(cause);
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+
+        // all ranges are exported, collect the file names in the order of the ranges
+        for (PartitionedExportState.Partition partition : state.partitions()) {
+            File partitionListFile = partitionFilenameListFile(type, partition);
+            if (!partitionListFile.exists()) {
+                continue;
+            }
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(partitionListFile))) {
+                String lastLine = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // the same file is written twice if the process has been interrupted
+                    // after the file has been listed but before the state was saved.
+                    if (!line.equals(lastLine)) {
+                        writeLine(filenameListOs, line);
+                    }
+                    lastLine = line;
+                }
+            }
+            partitionListFile.delete();
+        }
+
+        setCount(type, certstore, (int) state.count());
+        state.delete();
+
+        processLog.printTrailer();
+        // all successful, delete the processLogFile
+        processLogFile.delete();
+        System.out.println(exportedText() + processLog.numProcessed() + " entries from "
+                + tablesText);
+    } // method exportEntriesInParallel
+
+    private File partitionFilenameListFile(final CaDbEntryType type,
+            final PartitionedExportState.Partition partition) {
+        return new File(baseDir, type.dirName() + ".mf." + partition.index());
+    }
+
+    private boolean exportEntry(final CaDbEntryType type, final ResultSet rs, final long id,
+            final CaDbEntriesWriter writer) throws Exception {
+        if (CaDbEntryType.CERT == type) {
+            String b64Cert = rs.getString("CERT");
+            byte[] certBytes = Base64.decodeFast(b64Cert);
+
+            String sha1 = HashAlgoType.SHA1.hexHash(certBytes);
+            String certFileName = sha1 + ".der";
+
+            CertType cert = new CertType();
+            cert.setId(id);
+
+            int art = rs.getInt("ART");
+            cert.setArt(art);
+
+            int cainfoId = rs.getInt("CA_ID");
+            cert.setCaId(cainfoId);
+
+            boolean ee = rs.getBoolean("EE");
+            cert.setEe(ee);
+
+            cert.setFile(certFileName);
+
+            long fpReqSubject = rs.getLong("FP_RS");
+            if (fpReqSubject != 0) {
+                cert.setFpRs(fpReqSubject);
+                String reqSubject = rs.getString("REQ_SUBJECT");
+                cert.setRs(reqSubject);
+            }
+
+            int certprofileId = rs.getInt("PID");
+            cert.setPid(certprofileId);
+
+            int reqType = rs.getInt("RTYPE");
+            cert.setReqType(reqType);
+
+            int requestorinfoId = rs.getInt("RID");
+            cert.setRid(requestorinfoId);
+
+            String serial = rs.getString("SN");
+            cert.setSn(serial);
+
+            String str = rs.getString("TID");
+            if (StringUtil.isNotBlank(str)) {
+                cert.setTid(str);
+            }
+
+            int userId = rs.getInt("UID");
+            if (userId != 0) {
+                cert.setUid(userId);
+            }
+            long lastUpdate = rs.getLong("LUPDATE");
+            cert.setUpdate(lastUpdate);
+
+            boolean revoked = rs.getBoolean("REV");
+            cert.setRev(revoked);
+
+            if (revoked) {
+                int revReason = rs.getInt("RR");
+                long revTime = rs.getLong("RT");
+                long revInvTime = rs.getLong("RIT");
+                cert.setRr(revReason);
+                cert.setRt(revTime);
+                if (revInvTime != 0) {
+                    cert.setRit(revInvTime);
+                }
+            }
+
+            writer.add(cert, certFileName, certBytes);
+        } else if (CaDbEntryType.CRL == type) {
+            String b64Crl = rs.getString("CRL");
+            byte[] crlBytes = Base64.decodeFast(b64Crl);
+
+            X509CRL x509Crl = null;
+            try {
+                x509Crl = X509Util.parseCrl(crlBytes);
+            } catch (Exception ex) {
+                LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
+                if (ex instanceof CRLException) {
+                    throw (CRLException) ex;
+                } else {
+                    throw new CRLException(ex.getMessage(), ex);
+                }
+            }
+
+            byte[] octetString = x509Crl.getExtensionValue(Extension.cRLNumber.getId());
+            if (octetString == null) {
+                LOG.warn("CRL without CRL number, ignore it");
+                return false;
+            }
+            String sha1 = HashAlgoType.SHA1.hexHash(crlBytes);
+
+            final String crlFilename = sha1 + ".crl";
+
+            CrlType crl = new CrlType();
+            crl.setId(id);
+
+            int caId = rs.getInt("CA_ID");
+            crl.setCaId(caId);
+
+            byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
+            BigInteger crlNumber = ASN1Integer.getInstance(extnValue)
+                    .getPositiveValue();
+            crl.setCrlNo(crlNumber.toString());
+            crl.setFile(crlFilename);
+
+            writer.add(crl, crlFilename, crlBytes);
+        } else if (CaDbEntryType.USER == type) {
+            String name = rs.getString("NAME");
+            UserType user = new UserType();
+            user.setId(id);
+            user.setName(name);
+
+            boolean active = rs.getBoolean("ACTIVE");
+            user.setActive(active);
+
+            String password = rs.getString("PASSWORD");
+            user.setPassword(password);
+
+            writer.add(user, null, null);
+        } else if (CaDbEntryType.CAUSER == type) {
+            CaUserType causer = new CaUserType();
+            causer.setId(id);
+
+            int caId = rs.getInt("CA_ID");
+            causer.setCaId(caId);
+
+            int uid = rs.getInt("USER_ID");
+            causer.setUid(uid);
+
+            int permission = rs.getInt("PERMISSION");
+            causer.setPermission(permission);
+
+            String profiles = rs.getString("PROFILES");
+            causer.setProfiles(profiles);
+
+            writer.add(causer, null, null);
+        } else if (CaDbEntryType.REQUEST == type) {
+            long update = rs.getLong("LUPDATE");
+            String b64Data = rs.getString("DATA");
+            byte[] dataBytes = Base64.decodeFast(b64Data);
+            String sha1 = HashAlgoType.SHA1.hexHash(dataBytes);
+            final String dataFilename = sha1 + ".req";
+            RequestType entry = new RequestType();
+            entry.setId(id);
+            entry.setUpdate(update);
+            entry.setFile(dataFilename);
+            writer.add(entry, dataFilename, dataBytes);
+        } else if (CaDbEntryType.REQCERT == type) {
+            long cid = rs.getLong("CID");
+            long rid = rs.getLong("RID");
+            RequestCertType entry = new RequestCertType();
+            entry.setId(id);
+            entry.setCid(cid);
+            entry.setRid(rid);
+            writer.add(entry, null, null);
+        } else {
+            throw new RuntimeException("unknown CaDbEntryType " + type);
+        }
+
+        return true;
+    } // method exportEntry
+
     private void exportPublishQueue(final CertStoreType certstore)
             throws DataAccessException, IOException, JAXBException {
         System.out.println("exporting table PUBLISHQUEUE");
@@ -694,39 +966,6 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
         System.out.println(" exported table DELTACRL_CACHE");
     } // method exportDeltaCrlCache
 
-    private void finalizeZip(final ZipOutputStream zipOutStream, final String filename,
-            final DbiXmlWriter os) throws JAXBException, IOException, XMLStreamException {
-        ZipEntry certZipEntry = new ZipEntry(filename);
-        zipOutStream.putNextEntry(certZipEntry);
-        try {
-            os.rewriteToZipStream(zipOutStream);
-        } finally {
-            zipOutStream.closeEntry();
-        }
-
-        zipOutStream.close();
-    }
-
-    private static DbiXmlWriter createWriter(final CaDbEntryType type)
-            throws IOException, XMLStreamException {
-        switch (type) {
-        case CERT:
-            return new CertsWriter();
-        case CRL:
-            return new CrlsWriter();
-        case USER:
-            return new UsersWriter();
-        case CAUSER:
-            return new CaUsersWriter();
-        case REQUEST:
-            return new RequestsWriter();
-        case REQCERT:
-            return new RequestCertsWriter();
-        default:
-            throw new RuntimeException("unknown CaDbEntryType " + type);
-        }
-    }
-
     private static void setCount(final CaDbEntryType type, final CertStoreType certstore,
             final int num) {
         switch (type) {
@@ -35,23 +35,37 @@
 package org.xipki.ca.dbtool.port.ca;
 
 import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.stream.XMLStreamException;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1Integer;
@@ -67,23 +81,16 @@ import org.xipki.ca.dbtool.jaxb.ca.CertStoreType.DeltaCRLCache;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType.PublishQueue;
 import org.xipki.ca.dbtool.jaxb.ca.DeltaCRLCacheEntryType;
 import org.xipki.ca.dbtool.jaxb.ca.ToPublishType;
+import org.xipki.ca.dbtool.port.CaDbEntriesReader;
 import org.xipki.ca.dbtool.port.DbPortFileNameIterator;
 import org.xipki.ca.dbtool.port.DbPorter;
-import org.xipki.ca.dbtool.xmlio.DbiXmlReader;
 import org.xipki.ca.dbtool.xmlio.IdentifidDbObjectType;
-import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
 import org.xipki.ca.dbtool.xmlio.ca.CaUserType;
-import org.xipki.ca.dbtool.xmlio.ca.CaUsersReader;
 import org.xipki.ca.dbtool.xmlio.ca.CertType;
-import org.xipki.ca.dbtool.xmlio.ca.CertsReader;
 import org.xipki.ca.dbtool.xmlio.ca.CrlType;
-import org.xipki.ca.dbtool.xmlio.ca.CrlsReader;
 import org.xipki.ca.dbtool.xmlio.ca.RequestCertType;
-import org.xipki.ca.dbtool.xmlio.ca.RequestCertsReader;
 import org.xipki.ca.dbtool.xmlio.ca.RequestType;
-import org.xipki.ca.dbtool.xmlio.ca.RequestsReader;
 import org.xipki.ca.dbtool.xmlio.ca.UserType;
-import org.xipki.ca.dbtool.xmlio.ca.UsersReader;
 import org.xipki.common.ProcessLog;
 import org.xipki.common.util.Base64;
 import org.xipki.common.util.IoUtil;
@@ -103,6 +110,235 @@ import org.xipki.security.util.X509Util;
 
 class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
 
+    /**
+     * Certificate with the values derived from its encoded form.
+     */
+    private static class ParsedCert {
+
+        private final CertType cert;
+
+        private String b64Sha1FpCert;
+
+        private String b64Cert;
+
+        private String serial;
+
+        private String subjectText;
+
+        private long fpSubject;
+
+        private long notBefore;
+
+        private long notAfter;
+
+        private long fpKey;
+
+        private boolean ee;
+
+        ParsedCert(final CertType cert) {
+            this.cert = cert;
+        }
+
+    } // class ParsedCert
+
+    /**
+     * Certificates to be written to the database in one transaction.
+     */
+    private static class CertBatch {
+
+        private final long seq;
+
+        private final List<ParsedCert> certs;
+
+        CertBatch(final long seq, final List<ParsedCert> certs) {
+            this.seq = seq;
+            this.certs = certs;
+        }
+
+        long lastId() {
+            return certs.get(certs.size() - 1).cert.id();
+        }
+
+    } // class CertBatch
+
+    /**
+     * Reads and parses the certificates of one file.
+     */
+    private class CertFileParser implements Callable<List<ParsedCert>> {
+
+        private final String entriesFile;
+
+        private final long minId;
+
+        CertFileParser(final String entriesFile, final long minId) {
+            this.entriesFile = entriesFile;
+            this.minId = minId;
+        }
+
+        @Override
+        public List<ParsedCert> call() throws Exception {
+            List<ParsedCert> ret = new ArrayList<>();
+            CaDbEntriesReader entries = null;
+            try {
+                entries = CaDbEntriesReader.open(CaDbEntryType.CERT, new File(entriesFile));
+                while (entries.hasNext()) {
+                    if (stopMe.get()) {
+                        throw new InterruptedException("interrupted by the user");
+                    }
+
+                    CertType cert = (CertType) entries.next();
+                    if (cert.id() < minId) {
+                        continue;
+                    }
+
+                    ret.add(parseCert(cert, entries.content(cert.file())));
+                }
+            } catch (Exception ex) {
+                System.err.println("\ncould not import entries from file " + entriesFile);
+                throw ex;
+            } finally {
+                if (entries != null) {
+                    entries.close();
+                }
+            }
+            return ret;
+        }
+
+    } // class CertFileParser
+
+    /**
+     * Writes batches of certificates with its own connection.
+     */
+    private class CertBatchWriter implements Callable<Void> {
+
+        private final BlockingQueue<CertBatch> queue;
+
+        private final CommitTracker tracker;
+
+        private final AtomicBoolean failed;
+
+        CertBatchWriter(final BlockingQueue<CertBatch> queue, final CommitTracker tracker,
+                final AtomicBoolean failed) {
+            this.queue = queue;
+            this.tracker = tracker;
+            this.failed = failed;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            Connection conn = datasource.getConnection();
+            PreparedStatement psCert = null;
+            PreparedStatement psRawcert = null;
+            boolean autoCommit = true;
+            try {
+                autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+                psCert = datasource.prepareStatement(conn, SQL_ADD_CERT);
+                psRawcert = datasource.prepareStatement(conn, SQL_ADD_CRAW);
+
+                while (true) {
+                    CertBatch batch = queue.poll(1, TimeUnit.SECONDS);
+                    if (batch == END_OF_BATCHES || failed.get()) {
+                        return null;
+                    } else if (batch == null) {
+                        continue;
+                    }
+
+                    for (ParsedCert cert : batch.certs) {
+                        bindCert(psCert, psRawcert, cert);
+                    }
+
+                    if (evaulateOnly) {
+                        psCert.clearBatch();
+                        psRawcert.clearBatch();
+                    } else {
+                        String sql = SQL_ADD_CERT;
+                        try {
+                            psCert.executeBatch();
+                            sql = SQL_ADD_CRAW;
+                            psRawcert.executeBatch();
+                            sql = null;
+                            conn.commit();
+                        } catch (SQLException ex) {
+                            conn.rollback();
+                            throw datasource.translate(sql, ex);
+                        }
+                    }
+
+                    tracker.committed(batch);
+                }
+            } catch (Exception ex) {
+                failed.set(true);
+                throw (ex instanceof SQLException)
+                    ? datasource.translate(null, (SQLException) ex) : ex;
+            } finally {
+                datasource.releaseResources(psCert, null, false);
+                datasource.releaseResources(psRawcert, null, false);
+                try {
+                    conn.setAutoCommit(autoCommit);
+                } catch (SQLException ex) {
+                    LOG.warn("could not recover the auto-commit mode: {}", ex.getMessage());
+                }
+                datasource.returnConnection(conn);
+            }
+        } // method call
+
+    } // class CertBatchWriter
+
+    /**
+     * Tracks the committed batches. Since the batches are committed by several connections,
+     * they may be committed in a different order than they were read. Only the IDs up to
+     * the last batch for which all previous batches have been committed are recorded in the
+     * process log, so that '--resume' continues as in the sequential import.
+     */
+    private class CommitTracker {
+
+        private final Map<Long, CertBatch> committedBatches = new HashMap<>();
+
+        private final File processLogFile;
+
+        private final ProcessLog processLog;
+
+        private final int numProcessedBefore;
+
+        private long nextSeq;
+
+        private long lastCommittedId;
+
+        CommitTracker(final long lastCommittedId, final File processLogFile,
+                final ProcessLog processLog, final int numProcessedBefore) {
+            this.lastCommittedId = lastCommittedId;
+            this.processLogFile = processLogFile;
+            this.processLog = processLog;
+            this.numProcessedBefore = numProcessedBefore;
+        }
+
+        synchronized void committed(final CertBatch batch) throws IOException {
+            committedBatches.put(batch.seq, batch);
+
+            int num = 0;
+            CertBatch next;
+            while ((next = committedBatches.remove(nextSeq)) != null) {
+                num += next.certs.size();
+                lastCommittedId = next.lastId();
+                nextSeq++;
+            }
+
+            if (num > 0) {
+                processLog.addNumProcessed(num);
+                echoToFile(CaDbEntryType.CERT + ":"
+                        + (numProcessedBefore + processLog.numProcessed()) + ":"
+                        + lastCommittedId, processLogFile);
+                processLog.printStatus();
+            }
+        }
+
+        synchronized long lastCommittedId() {
+            return lastCommittedId;
+        }
+
+    } // class CommitTracker
+
     private static final Logger LOG = LoggerFactory.getLogger(CaConfigurationDbImporter.class);
 
     private static final String SQL_ADD_CERT =
@@ -129,19 +365,29 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
     private static final String SQL_ADD_REQCERT =
             "INSERT INTO REQCERT (ID,RID,CID) VALUES (?,?,?)";
 
+    private static final CertBatch END_OF_BATCHES =
+            new CertBatch(-1, Collections.<ParsedCert>emptyList());
+
     private final Unmarshaller unmarshaller;
 
     private final boolean resume;
 
     private final int numCertsPerCommit;
 
+    private final int numThreads;
+
+    private final int numDbWriters;
+
     CaCertStoreDbImporter(final DataSourceWrapper datasource, final Unmarshaller unmarshaller,
-            final String srcDir, final int numCertsPerCommit, final boolean resume,
-            final AtomicBoolean stopMe, final boolean evaluateOnly) throws Exception {
+            final String srcDir, final int numCertsPerCommit, final int numThreads,
+            final int numDbWriters, final boolean resume, final AtomicBoolean stopMe,
+            final boolean evaluateOnly) throws Exception {
         super(datasource, srcDir, stopMe, evaluateOnly);
 
         this.unmarshaller = ParamUtil.requireNonNull("unmarshaller", unmarshaller);
         this.numCertsPerCommit = ParamUtil.requireMin("numCertsPerCommit", numCertsPerCommit, 1);
+        this.numThreads = ParamUtil.requireMin("numThreads", numThreads, 1);
+        this.numDbWriters = ParamUtil.requireMin("numDbWriters", numDbWriters, 1);
         this.resume = resume;
 
         File processLogFile = new File(baseDir, DbPorter.IMPORT_PROCESS_LOG_FILENAME);
@@ -377,8 +623,12 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
             final long remainingTotal = total - numProcessedBefore;
             final ProcessLog processLog = new ProcessLog(remainingTotal);
 
+            final boolean pipelined = (CaDbEntryType.CERT == type) && numThreads > 1;
+            List<String> pipelinedEntriesFiles = new ArrayList<>();
+
             System.out.println(importingText() + "entries to " + tablesText + " from ID "
-                    + minId);
+                    + minId + (pipelined ? " with " + numThreads + " parsing threads and "
+                            + numDbWriters + " database writers" : ""));
             processLog.printHeader();
 
             DbPortFileNameIterator entriesFileIterator = null;
@@ -399,7 +649,7 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
 
                     // extract the toId from the filename
                     int fromIdx = entriesFile.indexOf('-');
-                    int toIdx = entriesFile.indexOf(".zip");
+                    int toIdx = entriesFile.lastIndexOf('.');
                     if (fromIdx != -1 && toIdx != -1) {
                         try {
                             long toId = Integer.parseInt(entriesFile.substring(fromIdx + 1, toIdx));
@@ -416,6 +666,11 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
                                 entriesFile);
                     }
 
+                    if (pipelined) {
+                        pipelinedEntriesFiles.add(entriesFile);
+                        continue;
+                    }
+
                     try {
                         long lastId = importEntries(type, entriesFile, minId, processLogFile,
                                 processLog, numProcessedBefore, statements, sqls);
@@ -427,6 +682,18 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
                         return ex;
                     }
                 } // end for
+
+                if (pipelined && !pipelinedEntriesFiles.isEmpty()) {
+                    try {
+                        importCertsInPipeline(pipelinedEntriesFiles, minId,
+                                processLogFile, processLog, numProcessedBefore);
+                    } catch (Exception ex) {
+                        System.err.println("\ncould not import entries to " + tablesText
+                                + ".\nplease continue with the option '--resume'");
+                        LOG.error("Exception", ex);
+                        return ex;
+                    }
+                }
             } finally {
                 if (statements != null) {
                     for (PreparedStatement stmt : statements) {
@@ -454,7 +721,7 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
         }
     }
 
-    private long importEntries(final CaDbEntryType type, final String entriesZipFile,
+    private long importEntries(final CaDbEntryType type, final String entriesFile,
             final long minId, final File processLogFile, final ProcessLog processLog,
             final int numProcessedInLastProcess, final PreparedStatement[] statements,
             final String[] sqls)
@@ -462,21 +729,7 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
         final int numEntriesPerCommit = Math.max(1,
                 Math.round(type.sqlBatchFactor() * numCertsPerCommit));
 
-        ZipFile zipFile = new ZipFile(new File(entriesZipFile));
-        ZipEntry entriesXmlEntry = zipFile.getEntry("overview.xml");
-
-        DbiXmlReader entries;
-        try {
-            entries = createReader(type, zipFile.getInputStream(entriesXmlEntry));
-        } catch (Exception ex) {
-            try {
-                zipFile.close();
-            } catch (Exception e2) {
-                LOG.error("could not close ZIP file {}: {}", entriesZipFile, e2.getMessage());
-                LOG.debug("could not close ZIP file " + entriesZipFile, e2);
-            }
-            throw ex;
-        }
+        CaDbEntriesReader entries = CaDbEntriesReader.open(type, new File(entriesFile));
 
         disableAutoCommit();
 
@@ -489,7 +742,7 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
                     throw new InterruptedException("interrupted by the user");
                 }
 
-                IdentifidDbObjectType entry = (IdentifidDbObjectType) entries.next();
+                IdentifidDbObjectType entry = entries.next();
                 long id = entry.id();
                 if (id < minId) {
                     continue;
@@ -499,96 +752,9 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
 
                 if (CaDbEntryType.CERT == type) {
                     CertType cert = (CertType) entry;
-                    int certArt = (cert.art() == null) ? 1 : cert.art();
-
-                    String filename = cert.file();
                     // rawcert
-                    ZipEntry certZipEnty = zipFile.getEntry(filename);
-                    // rawcert
-                    byte[] encodedCert = IoUtil.read(zipFile.getInputStream(certZipEnty));
-
-                    TBSCertificate tbsCert;
-                    try {
-                        Certificate cc = Certificate.getInstance(encodedCert);
-                        tbsCert = cc.getTBSCertificate();
-                    } catch (RuntimeException ex) {
-                        LOG.error("could not parse certificate in file {}", filename);
-                        LOG.debug("could not parse certificate in file " + filename, ex);
-                        throw new CertificateException(ex.getMessage(), ex);
-                    }
-
-                    byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData()
-                            .getBytes();
-
-                    String b64Sha1FpCert = HashAlgoType.SHA1.base64Hash(encodedCert);
-
-                    // cert
-                    String subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
-
-                    PreparedStatement psCert = statements[0];
-                    PreparedStatement psRawcert = statements[1];
-
-                    try {
-                        int idx = 1;
-
-                        psCert.setLong(idx++, id);
-                        psCert.setInt(idx++, certArt);
-                        psCert.setLong(idx++, cert.update());
-                        psCert.setString(idx++,
-                                tbsCert.getSerialNumber().getPositiveValue().toString(16));
-
-                        psCert.setString(idx++, subjectText);
-                        long fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
-                        psCert.setLong(idx++, fpSubject);
-
-                        if (cert.fpRs() != null) {
-                            psCert.setLong(idx++, cert.fpRs());
-                        } else {
-                            psCert.setNull(idx++, Types.BIGINT);
-                        }
-
-                        psCert.setLong(idx++, tbsCert.getStartDate().getDate().getTime() / 1000);
-                        psCert.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
-                        setBoolean(psCert, idx++, cert.rev());
-                        setInt(psCert, idx++, cert.rr());
-                        setLong(psCert, idx++, cert.rt());
-                        setLong(psCert, idx++, cert.rit());
-                        setInt(psCert, idx++, cert.pid());
-                        setInt(psCert, idx++, cert.caId());
-
-                        setInt(psCert, idx++, cert.rid());
-                        setInt(psCert, idx++, cert.uid());
-                        psCert.setLong(idx++, FpIdCalculator.hash(encodedKey));
-                        Extension extension =
-                                tbsCert.getExtensions().getExtension(Extension.basicConstraints);
-                        boolean ee = true;
-                        if (extension != null) {
-                            ASN1Encodable asn1 = extension.getParsedValue();
-                            ee = !BasicConstraints.getInstance(asn1).isCA();
-                        }
-
-                        psCert.setInt(idx++, ee ? 1 : 0);
-                        psCert.setInt(idx++, cert.reqType());
-                        String tidS = null;
-                        if (cert.tid() != null) {
-                            tidS = cert.tid();
-                        }
-                        psCert.setString(idx++, tidS);
-                        psCert.addBatch();
-                    } catch (SQLException ex) {
-                        throw translate(SQL_ADD_CERT, ex);
-                    }
-
-                    try {
-                        int idx = 1;
-                        psRawcert.setLong(idx++, cert.id());
-                        psRawcert.setString(idx++, b64Sha1FpCert);
-                        psRawcert.setString(idx++, cert.rs());
-                        psRawcert.setString(idx++, Base64.encodeToString(encodedCert));
-                        psRawcert.addBatch();
-                    } catch (SQLException ex) {
-                        throw translate(SQL_ADD_CRAW, ex);
-                    }
+                    byte[] encodedCert = entries.content(cert.file());
+                    bindCert(statements[0], statements[1], parseCert(cert, encodedCert));
                 } else if (CaDbEntryType.CRL == type) {
                     PreparedStatement psAddCrl = statements[0];
 
@@ -597,10 +763,7 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
                     String filename = crl.file();
 
                     // CRL
-                    ZipEntry zipEnty = zipFile.getEntry(filename);
-
-                    // rawcert
-                    byte[] encodedCrl = IoUtil.read(zipFile.getInputStream(zipEnty));
+                    byte[] encodedCrl = entries.content(filename);
 
                     X509CRL x509crl = null;
                     try {
@@ -702,8 +865,7 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
 
                     String filename = request.file();
 
-                    ZipEntry zipEnty = zipFile.getEntry(filename);
-                    byte[] encodedRequest = IoUtil.read(zipFile.getInputStream(zipEnty));
+                    byte[] encodedRequest = entries.content(filename);
 
                     try {
                         int idx = 1;
@@ -784,29 +946,194 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
             return lastSuccessfulEntryId;
         } finally {
             recoverAutoCommit();
-            zipFile.close();
+            entries.close();
         }
     } // method importEntries
 
-    private static DbiXmlReader createReader(final CaDbEntryType type, final InputStream is)
-            throws XMLStreamException, InvalidDataObjectException {
-        switch (type) {
-        case CERT:
-            return new CertsReader(is);
-        case CRL:
-            return new CrlsReader(is);
-        case USER:
-            return new UsersReader(is);
-        case CAUSER:
-            return new CaUsersReader(is);
-        case REQUEST:
-            return new RequestsReader(is);
-        case REQCERT:
-            return new RequestCertsReader(is);
-        default:
-            throw new RuntimeException("unknown CaDbEntryType " + type);
+    /**
+     * Imports the certificates in a pipeline: the files are read and the certificates
+     * are parsed by {@code numThreads} threads, the batches of {@code numCertsPerCommit}
+     * certificates are written by {@code numDbWriters} connections.
+     *
+     * @return the ID of the last certificate, for which it and all certificates with
+     *         smaller ID are committed.
+     */
+    private long importCertsInPipeline(final List<String> entriesFiles, final long minId,
+            final File processLogFile, final ProcessLog processLog,
+            final int numProcessedBefore) throws Exception {
+        final int numEntriesPerCommit = Math.max(1,
+                Math.round(CaDbEntryType.CERT.sqlBatchFactor() * numCertsPerCommit));
+        final BlockingQueue<CertBatch> batchQueue = new ArrayBlockingQueue<>(2 * numDbWriters);
+        final CommitTracker tracker = new CommitTracker(minId - 1, processLogFile, processLog,
+                numProcessedBefore);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        ExecutorService writers = Executors.newFixedThreadPool(numDbWriters);
+        List<Future<Void>> writerFutures = new ArrayList<>(numDbWriters);
+        for (int i = 0; i < numDbWriters; i++) {
+            writerFutures.add(writers.submit(new CertBatchWriter(batchQueue, tracker, failed)));
         }
-    }
+        writers.shutdown();
+
+        ExecutorService parsers = Executors.newFixedThreadPool(numThreads);
+        // parsed ZIP files are kept in memory, limit their number
+        Deque<Future<List<ParsedCert>>> parsedFiles = new ArrayDeque<>(numThreads);
+        Iterator<String> fileIterator = entriesFiles.iterator();
+        long seq = 0;
+
+        Exception exception = null;
+        try {
+            while (fileIterator.hasNext() || !parsedFiles.isEmpty()) {
+                while (fileIterator.hasNext() && parsedFiles.size() < numThreads) {
+                    parsedFiles.addLast(parsers.submit(
+                            new CertFileParser(fileIterator.next(), minId)));
+                }
+
+                List<ParsedCert> certs = parsedFiles.removeFirst().get();
+                for (int from = 0; from < certs.size(); from += numEntriesPerCommit) {
+                    int to = Math.min(certs.size(), from + numEntriesPerCommit);
+                    CertBatch batch = new CertBatch(seq++, certs.subList(from, to));
+                    while (!batchQueue.offer(batch, 1, TimeUnit.SECONDS)) {
+                        if (failed.get()) {
+                            throw new Exception("cancelled due to error in database writer");
+                        }
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            exception = (cause instanceof Exception) ? (Exception) cause : new Exception(cause);
+        } catch (Exception ex) {
+            exception = ex;
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        if (exception != null) {
+            failed.set(true);
+        } else {
+            for (int i = 0; i < numDbWriters; i++) {
+                while (!failed.get() && !batchQueue.offer(END_OF_BATCHES, 1, TimeUnit.SECONDS)) {
+                    // wait until the writers have consumed the batches
+                }
+            }
+        }
+
+        for (Future<Void> future : writerFutures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                if (exception == null) {
+                    Throwable cause = ex.getCause();
+                    exception = (cause instanceof Exception) ? (Exception) cause
+                            : new Exception(cause);
+                }
+            }
+        }
+
+        long lastCommittedId = tracker.lastCommittedId();
+        if (exception != null) {
+            // remove the batches committed after a not yet committed one
+            deleteFromTableWithLargerId(CaDbEntryType.CERT.tableName(), "ID", lastCommittedId,
+                    LOG);
+            deleteFromTableWithLargerId("CRAW", "CID", lastCommittedId, LOG);
+            throw exception;
+        }
+
+        return lastCommittedId;
+    } // method importCertsInPipeline
+
+    private ParsedCert parseCert(final CertType cert, final byte[] encodedCert)
+            throws CertificateException {
+        TBSCertificate tbsCert;
+        try {
+            Certificate cc = Certificate.getInstance(encodedCert);
+            tbsCert = cc.getTBSCertificate();
+        } catch (RuntimeException ex) {
+            LOG.error("could not parse certificate in file {}", cert.file());
+            LOG.debug("could not parse certificate in file " + cert.file(), ex);
+            throw new CertificateException(ex.getMessage(), ex);
+        }
+
+        byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
+
+        ParsedCert ret = new ParsedCert(cert);
+        ret.b64Sha1FpCert = HashAlgoType.SHA1.base64Hash(encodedCert);
+        ret.b64Cert = Base64.encodeToString(encodedCert);
+        ret.serial = tbsCert.getSerialNumber().getPositiveValue().toString(16);
+        ret.subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
+        ret.fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
+        ret.notBefore = tbsCert.getStartDate().getDate().getTime() / 1000;
+        ret.notAfter = tbsCert.getEndDate().getDate().getTime() / 1000;
+        ret.fpKey = FpIdCalculator.hash(encodedKey);
+
+        Extension extension = tbsCert.getExtensions().getExtension(Extension.basicConstraints);
+        boolean ee = true;
+        if (extension != null) {
+            ASN1Encodable asn1 = extension.getParsedValue();
+            ee = !BasicConstraints.getInstance(asn1).isCA();
+        }
+        ret.ee = ee;
+        return ret;
+    } // method parseCert
+
+    private void bindCert(final PreparedStatement psCert, final PreparedStatement psRawcert,
+            final ParsedCert parsedCert) throws DataAccessException {
+        CertType cert = parsedCert.cert;
+        int certArt = (cert.art() == null) ? 1 : cert.art();
+
+        try {
+            int idx = 1;
+
+            psCert.setLong(idx++, cert.id());
+            psCert.setInt(idx++, certArt);
+            psCert.setLong(idx++, cert.update());
+            psCert.setString(idx++, parsedCert.serial);
+
+            psCert.setString(idx++, parsedCert.subjectText);
+            psCert.setLong(idx++, parsedCert.fpSubject);
+
+            if (cert.fpRs() != null) {
+                psCert.setLong(idx++, cert.fpRs());
+            } else {
+                psCert.setNull(idx++, Types.BIGINT);
+            }
+
+            psCert.setLong(idx++, parsedCert.notBefore);
+            psCert.setLong(idx++, parsedCert.notAfter);
+            setBoolean(psCert, idx++, cert.rev());
+            setInt(psCert, idx++, cert.rr());
+            setLong(psCert, idx++, cert.rt());
+            setLong(psCert, idx++, cert.rit());
+            setInt(psCert, idx++, cert.pid());
+            setInt(psCert, idx++, cert.caId());
+
+            setInt(psCert, idx++, cert.rid());
+            setInt(psCert, idx++, cert.uid());
+            psCert.setLong(idx++, parsedCert.fpKey);
+            psCert.setInt(idx++, parsedCert.ee ? 1 : 0);
+            psCert.setInt(idx++, cert.reqType());
+            String tidS = null;
+            if (cert.tid() != null) {
+                tidS = cert.tid();
+            }
+            psCert.setString(idx++, tidS);
+            psCert.addBatch();
+        } catch (SQLException ex) {
+            throw translate(SQL_ADD_CERT, ex);
+        }
+
+        try {
+            int idx = 1;
+            psRawcert.setLong(idx++, cert.id());
+            psRawcert.setString(idx++, parsedCert.b64Sha1FpCert);
+            psRawcert.setString(idx++, cert.rs());
+            psRawcert.setString(idx++, parsedCert.b64Cert);
+            psRawcert.addBatch();
+        } catch (SQLException ex) {
+            throw translate(SQL_ADD_CRAW, ex);
+        }
+    } // method bindCert
 
     private void dropIndexes() throws DataAccessException {
         long start = System.currentTimeMillis();
@@ -49,6 +49,7 @@ import org.slf4j.LoggerFactory;
 import org.xipki.ca.dbtool.jaxb.ca.ObjectFactory;
 import org.xipki.ca.dbtool.port.DbPortWorker;
 import org.xipki.ca.dbtool.port.DbPorter;
+import org.xipki.ca.dbtool.port.DbPorter.FileFormat;
 import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.StringUtil;
@@ -81,12 +82,17 @@ public class CaDbExportWorker extends DbPortWorker {
 
     private final int numCertsPerSelect;
 
+    private final int numThreads;
+
+    private final FileFormat format;
+
     private final boolean evaluateOnly;
 
     public CaDbExportWorker(final DataSourceFactory datasourceFactory,
             final PasswordResolver passwordResolver, final String dbConfFile,
             final String destFolder, final boolean resume, final int numCertsInBundle,
-            final int numCertsPerSelect, final boolean evaluateOnly)
+            final int numCertsPerSelect, final int numThreads, final FileFormat format,
+            final boolean evaluateOnly)
             throws DataAccessException, PasswordResolverException, IOException, JAXBException {
         ParamUtil.requireNonBlank("dbConfFile", dbConfFile);
         ParamUtil.requireNonBlank("destFolder", destFolder);
@@ -102,6 +108,8 @@ public class CaDbExportWorker extends DbPortWorker {
         this.resume = resume;
         this.numCertsInBundle = numCertsInBundle;
         this.numCertsPerSelect = numCertsPerSelect;
+        this.numThreads = numThreads;
+        this.format = ParamUtil.requireNonNull("format", format);
         this.evaluateOnly = evaluateOnly;
         checkDestFolder();
     }
@@ -148,7 +156,7 @@ public class CaDbExportWorker extends DbPortWorker {
             // CertStore
             CaCertStoreDbExporter certStoreExporter = new CaCertStoreDbExporter(datasource,
                     marshaller, unmarshaller, destFolder, numCertsInBundle, numCertsPerSelect,
-                    resume, stopMe, evaluateOnly);
+                    resume, numThreads, format, stopMe, evaluateOnly);
             certStoreExporter.export();
             certStoreExporter.shutdown();
         } finally {
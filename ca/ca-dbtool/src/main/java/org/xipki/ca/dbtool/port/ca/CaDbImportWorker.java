@@ -76,11 +76,16 @@ public class CaDbImportWorker extends DbPortWorker {
 
     private final int batchEntriesPerCommit;
 
+    private final int numThreads;
+
+    private final int numDbWriters;
+
     private final boolean evaluateOnly;
 
     public CaDbImportWorker(final DataSourceFactory datasourceFactory,
             final PasswordResolver passwordResolver, final String dbConfFile, final boolean resume,
-            final String srcFolder, final int batchEntriesPerCommit, final boolean evaluateOnly)
+            final String srcFolder, final int batchEntriesPerCommit, final int numThreads,
+            final int numDbWriters, final boolean evaluateOnly)
             throws DataAccessException, PasswordResolverException, IOException, JAXBException {
         ParamUtil.requireNonNull("datasourceFactory", datasourceFactory);
 
@@ -94,6 +99,8 @@ public class CaDbImportWorker extends DbPortWorker {
         this.resume = resume;
         this.srcFolder = IoUtil.expandFilepath(srcFolder);
         this.batchEntriesPerCommit = batchEntriesPerCommit;
+        this.numThreads = numThreads;
+        this.numDbWriters = numDbWriters;
         this.evaluateOnly = evaluateOnly;
     }
 
@@ -123,7 +130,8 @@ public class CaDbImportWorker extends DbPortWorker {
 
             // CertStore
             CaCertStoreDbImporter certStoreImporter = new CaCertStoreDbImporter(datasource,
-                    unmarshaller, srcFolder, batchEntriesPerCommit, resume, stopMe, evaluateOnly);
+                    unmarshaller, srcFolder, batchEntriesPerCommit, numThreads, numDbWriters,
+                    resume, stopMe, evaluateOnly);
             certStoreImporter.importToDb();
             certStoreImporter.shutdown();
         } finally {
@@ -0,0 +1,283 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.port.ca;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.xipki.ca.dbtool.IdRange;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Progress of a partitioned export of one table. The ID space of the table is split into
+ * several {@link IdRange}s, each of them is exported independently. The progress of all
+ * ranges is persisted in a single file, so that an interrupted export can be resumed
+ * per range.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+class PartitionedExportState {
+
+    static final class Partition {
+
+        private final int index;
+
+        private final IdRange range;
+
+        private long nextId;
+
+        private long count;
+
+        private Partition(final int index, final IdRange range, final long nextId,
+                final long count) {
+            this.index = index;
+            this.range = range;
+            this.nextId = nextId;
+            this.count = count;
+        }
+
+        int index() {
+            return index;
+        }
+
+        IdRange range() {
+            return range;
+        }
+
+        /**
+         * Returns the smallest ID which has not been exported yet.
+         *
+         * @return the next ID to be exported, greater than {@code range().to()} if
+         *         the whole range has been exported.
+         */
+        synchronized long nextId() {
+            return nextId;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized boolean finished() {
+            return nextId > range.to();
+        }
+
+    } // class Partition
+
+    private static final String VERSION = "1";
+
+    private static final String PROP_VERSION = "version";
+
+    private static final String PROP_MAX_ID = "maxId";
+
+    private static final String PROP_BASE_COUNT = "baseCount";
+
+    private static final String PROP_PARTITIONS = "partitions";
+
+    private static final String PROP_PARTITION_PREFIX = "partition.";
+
+    private final File file;
+
+    private final long maxId;
+
+    private final long baseCount;
+
+    private final List<Partition> partitions;
+
+    private PartitionedExportState(final File file, final long maxId, final long baseCount,
+            final List<Partition> partitions) {
+        this.file = file;
+        this.maxId = maxId;
+        this.baseCount = baseCount;
+        this.partitions = Collections.unmodifiableList(partitions);
+    }
+
+    /**
+     * Splits the ID space [minId, maxId] into ranges of equal size.
+     *
+     * @param file
+     *          File to persist the state. Must not be {@code null}.
+     * @param minId
+     *          The smallest ID to be exported.
+     * @param maxId
+     *          The largest ID to be exported.
+     * @param numPartitions
+     *          Maximal number of ranges.
+     * @param baseCount
+     *          Number of entries exported before this partitioned export.
+     * @return the new state.
+     */
+    static PartitionedExportState create(final File file, final long minId, final long maxId,
+            final int numPartitions, final long baseCount) {
+        ParamUtil.requireNonNull("file", file);
+        ParamUtil.requireMin("numPartitions", numPartitions, 1);
+
+        final long span = maxId - minId + 1;
+        final int num = (int) Math.max(1, Math.min(numPartitions, span));
+        final long size = span / num;
+        final long remainder = span % num;
+
+        List<Partition> partitions = new ArrayList<>(num);
+        long from = minId;
+        for (int i = 0; i < num; i++) {
+            long to = from + size - 1 + ((i < remainder) ? 1 : 0);
+            partitions.add(new Partition(i, new IdRange(from, to), from, 0));
+            from = to + 1;
+        }
+        return new PartitionedExportState(file, maxId, baseCount, partitions);
+    }
+
+    static PartitionedExportState load(final File file) throws IOException {
+        ParamUtil.requireNonNull("file", file);
+        Properties props = new Properties();
+        try (InputStream stream = new FileInputStream(file)) {
+            props.load(stream);
+        }
+
+        if (!VERSION.equals(props.getProperty(PROP_VERSION))) {
+            throw new IOException("unsupported version of " + file.getPath());
+        }
+
+        try {
+            long maxId = Long.parseLong(props.getProperty(PROP_MAX_ID));
+            long baseCount = Long.parseLong(props.getProperty(PROP_BASE_COUNT));
+            int num = Integer.parseInt(props.getProperty(PROP_PARTITIONS));
+            List<Partition> partitions = new ArrayList<>(num);
+            for (int i = 0; i < num; i++) {
+                String value = props.getProperty(PROP_PARTITION_PREFIX + i);
+                if (value == null) {
+                    throw new IOException("missing partition " + i + " in " + file.getPath());
+                }
+
+                String[] tokens = value.split(",");
+                if (tokens.length != 4) {
+                    throw new IOException("invalid partition " + i + " in " + file.getPath());
+                }
+
+                IdRange range = new IdRange(Long.parseLong(tokens[0]), Long.parseLong(tokens[1]));
+                partitions.add(new Partition(i, range, Long.parseLong(tokens[2]),
+                        Long.parseLong(tokens[3])));
+            }
+            return new PartitionedExportState(file, maxId, baseCount, partitions);
+        } catch (NumberFormatException ex) {
+            throw new IOException("invalid content in " + file.getPath(), ex);
+        }
+    } // method load
+
+    List<Partition> partitions() {
+        return partitions;
+    }
+
+    long maxId() {
+        return maxId;
+    }
+
+    /**
+     * Returns the number of exported entries, including those exported before this
+     * partitioned export.
+     *
+     * @return number of exported entries.
+     */
+    long count() {
+        long sum = baseCount;
+        for (Partition partition : partitions) {
+            sum += partition.count();
+        }
+        return sum;
+    }
+
+    /**
+     * Records that the entries of the given partition with ID less than {@code nextId}
+     * have been exported and persists the state.
+     *
+     * @param partition
+     *          Partition. Must not be {@code null}.
+     * @param nextId
+     *          The smallest ID which has not been exported yet.
+     * @param numExported
+     *          Number of entries exported since the last call.
+     * @throws IOException
+     *           if the state could not be saved.
+     */
+    void update(final Partition partition, final long nextId, final long numExported)
+            throws IOException {
+        ParamUtil.requireNonNull("partition", partition);
+        synchronized (partition) {
+            partition.nextId = nextId;
+            partition.count += numExported;
+        }
+        save();
+    }
+
+    synchronized void save() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(PROP_VERSION, VERSION);
+        props.setProperty(PROP_MAX_ID, Long.toString(maxId));
+        props.setProperty(PROP_BASE_COUNT, Long.toString(baseCount));
+        props.setProperty(PROP_PARTITIONS, Integer.toString(partitions.size()));
+        for (Partition partition : partitions) {
+            StringBuilder sb = new StringBuilder(80);
+            sb.append(partition.range().from()).append(',').append(partition.range().to());
+            sb.append(',').append(partition.nextId()).append(',').append(partition.count());
+            props.setProperty(PROP_PARTITION_PREFIX + partition.index(), sb.toString());
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            props.store(out, null);
+        }
+
+        // the state file is replaced atomically, so that it is never lost or half written
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    } // method save
+
+    void delete() {
+        file.delete();
+    }
+
+}
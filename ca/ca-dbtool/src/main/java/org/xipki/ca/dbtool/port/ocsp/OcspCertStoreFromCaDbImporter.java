@@ -39,17 +39,24 @@ import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
@@ -65,10 +72,10 @@ import org.xipki.ca.dbtool.jaxb.ca.CaType;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType;
 import org.xipki.ca.dbtool.jaxb.ca.ProfileType;
 import org.xipki.ca.dbtool.jaxb.ca.PublisherType;
+import org.xipki.ca.dbtool.port.CaDbEntriesReader;
 import org.xipki.ca.dbtool.port.DbPortFileNameIterator;
 import org.xipki.ca.dbtool.port.DbPorter;
 import org.xipki.ca.dbtool.xmlio.ca.CertType;
-import org.xipki.ca.dbtool.xmlio.ca.CertsReader;
 import org.xipki.common.ConfPairs;
 import org.xipki.common.ProcessLog;
 import org.xipki.common.util.Base64;
@@ -102,8 +109,140 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
         }
     }
 
+    /**
+     * Values of a certificate in the tables CERT, CHASH and CRAW.
+     */
+    private static final class CertRow {
+
+        private long id;
+
+        private int caId;
+
+        private String serial;
+
+        private long update;
+
+        private long notBefore;
+
+        private long notAfter;
+
+        private boolean rev;
+
+        private Integer rr;
+
+        private Long rt;
+
+        private Long rit;
+
+        private String profile;
+
+        private String sha1;
+
+        private String sha224;
+
+        private String sha256;
+
+        private String sha384;
+
+        private String sha512;
+
+        private String subject;
+
+        private String b64Cert;
+
+    } // class CertRow
+
+    private static final class ParsedCertFile {
+
+        private final List<CertRow> rows = new ArrayList<>();
+
+        private int numProcessed;
+
+        private long lastId;
+
+    } // class ParsedCertFile
+
+    /**
+     * Reads one file and computes the values of the certificates to be imported.
+     */
+    private class CertFileParser implements Callable<ParsedCertFile> {
+
+        private final String certsFile;
+
+        private final Map<Integer, String> profileMap;
+
+        private final boolean revokedOnly;
+
+        private final List<Integer> caIds;
+
+        private final long minId;
+
+        CertFileParser(final String certsFile, final Map<Integer, String> profileMap,
+                final boolean revokedOnly, final List<Integer> caIds, final long minId) {
+            this.certsFile = certsFile;
+            this.profileMap = profileMap;
+            this.revokedOnly = revokedOnly;
+            this.caIds = caIds;
+            this.minId = minId;
+        }
+
+        @Override
+        public ParsedCertFile call() throws Exception {
+            ParsedCertFile ret = new ParsedCertFile();
+            CaDbEntriesReader certs = null;
+            try {
+                certs = CaDbEntriesReader.open(CaDbEntryType.CERT, new File(certsFile));
+                while (certs.hasNext()) {
+                    if (stopMe.get()) {
+                        throw new InterruptedException("interrupted by the user");
+                    }
+
+                    CertType cert = (CertType) certs.next();
+                    if (cert.id() < minId) {
+                        continue;
+                    }
+
+                    ret.numProcessed++;
+                    ret.lastId = cert.id();
+                    if ((!revokedOnly || cert.rev().booleanValue())
+                            && caIds.contains(cert.caId())) {
+                        ret.rows.add(toRow(cert, certs.content(cert.file()), profileMap));
+                    }
+                }
+            } catch (Exception ex) {
+                System.err.println("\ncould not import certificates from file " + certsFile
+                        + ".\nplease continue with the option '--resume'");
+                throw ex;
+            } finally {
+                if (certs != null) {
+                    certs.close();
+                }
+            }
+            return ret;
+        }
+
+    } // class CertFileParser
+
     private static final Logger LOG = LoggerFactory.getLogger(OcspCertStoreFromCaDbImporter.class);
 
+    private static final int TABLE_CERT = 0;
+
+    private static final int TABLE_CHASH = 1;
+
+    private static final int TABLE_CRAW = 2;
+
+    private static final String[] BULK_TABLES = {"CERT", "CHASH", "CRAW"};
+
+    private static final String[][] BULK_COLUMNS = {
+        {"ID", "IID", "SN", "LUPDATE", "NBEFORE", "NAFTER", "REV", "RR", "RT", "RIT", "PN"},
+        {"CID", "S1", "S224", "S256", "S384", "S512"},
+        {"CID", "SUBJECT", "CERT"}};
+
+    private static final String[] BULK_SINGLE_ROW_SQLS = {SQL_ADD_CERT, SQL_ADD_CHASH,
+        SQL_ADD_CRAW};
+
+    private static final int ROWS_PER_INSERT = 100;
+
     private final Unmarshaller unmarshaller;
 
     private final String publisherName;
@@ -112,16 +251,23 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
 
     private final int numCertsPerCommit;
 
+    private final boolean bulkLoad;
+
+    private final int numThreads;
+
     OcspCertStoreFromCaDbImporter(final DataSourceWrapper datasource,
             final Unmarshaller unmarshaller, final String srcDir, final String publisherName,
-            final int numCertsPerCommit, final boolean resume, final AtomicBoolean stopMe,
-            final boolean evaluateOnly) throws Exception {
+            final int numCertsPerCommit, final boolean resume, final boolean bulkLoad,
+            final int numThreads, final AtomicBoolean stopMe, final boolean evaluateOnly)
+            throws Exception {
         super(datasource, srcDir, stopMe, evaluateOnly);
 
         this.unmarshaller = ParamUtil.requireNonNull("unmarshaller", unmarshaller);
         ParamUtil.requireNonBlank("publisherName", publisherName);
         this.publisherName = publisherName.toUpperCase();
         this.numCertsPerCommit = ParamUtil.requireMin("numCertsPerCommit", numCertsPerCommit, 1);
+        this.bulkLoad = bulkLoad;
+        this.numThreads = ParamUtil.requireMin("numThreads", numThreads, 1);
 
         File processLogFile = new File(baseDir, DbPorter.IMPORT_TO_OCSP_PROCESS_LOG_FILENAME);
         if (resume) {
@@ -136,6 +282,11 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
             }
         }
         this.resume = resume;
+
+        if (bulkLoad && !resume && count("CERT") > 0) {
+            throw new InvalidInputException(
+                    "bulk load is only allowed if the table CERT is empty");
+        }
     }
 
     public void importToDb() throws Exception {
@@ -376,6 +527,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
 
         CaDbEntryType type = CaDbEntryType.CERT;
 
+        List<String> bulkCertsFiles = bulkLoad ? new LinkedList<String>() : null;
         DbPortFileNameIterator certsFileIterator = new DbPortFileNameIterator(
                 baseDir + File.separator + type.dirName() + ".mf");
         try {
@@ -384,7 +536,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
                         + certsFileIterator.next();
                 // extract the toId from the filename
                 int fromIdx = certsFile.indexOf('-');
-                int toIdx = certsFile.indexOf(".zip");
+                int toIdx = certsFile.lastIndexOf('.');
                 if (fromIdx != -1 && toIdx != -1) {
                     try {
                         long toId = Integer.parseInt(certsFile.substring(fromIdx + 1, toIdx));
@@ -399,6 +551,11 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
                     LOG.warn("invalid file name '{}', but will still be processed", certsFile);
                 }
 
+                if (bulkLoad) {
+                    bulkCertsFiles.add(certsFile);
+                    continue;
+                }
+
                 try {
                     long lastId = importCert0(statments, certsFile, profileMap, revokedOnly, caIds,
                             minId, processLogFile, processLog, numProcessedBefore, importLog);
@@ -410,6 +567,11 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
                     throw ex;
                 }
             }
+
+            if (bulkLoad) {
+                importCertInBulk(bulkCertsFiles, profileMap, revokedOnly, caIds, minId,
+                        processLogFile, processLog, numProcessedBefore, importLog);
+            }
         } finally {
             releaseResources(psCert, null);
             releaseResources(psCerthash, null);
@@ -423,26 +585,13 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
                 + importedText() + importLog.numProcessed() + " certificates");
     } // method importCert
 
-    private long importCert0(final ImportStatements statments, final String certsZipFile,
+    private long importCert0(final ImportStatements statments, final String certsFile,
             final Map<Integer, String> profileMap, final boolean revokedOnly,
             final List<Integer> caIds, final long minId, final File processLogFile,
             final ProcessLog processLog, final int numProcessedInLastProcess,
             final ProcessLog importLog) throws Exception {
-        ZipFile zipFile = new ZipFile(new File(certsZipFile));
-        ZipEntry certsXmlEntry = zipFile.getEntry("overview.xml");
-
-        CertsReader certs;
-        try {
-            certs = new CertsReader(zipFile.getInputStream(certsXmlEntry));
-        } catch (Exception ex) {
-            try {
-                zipFile.close();
-            } catch (Exception ex2) {
-                LOG.error("could not close ZIP file {}: {}", certsZipFile, ex2.getMessage());
-                LOG.debug("could not close ZIP file " + certsZipFile, ex2);
-            }
-            throw ex;
-        }
+        CaDbEntriesReader certs = CaDbEntriesReader.open(CaDbEntryType.CERT,
+                new File(certsFile));
 
         disableAutoCommit();
 
@@ -475,42 +624,13 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
                     if (caIds.contains(caId)) {
                         numImportedEntriesInBatch++;
 
-                        String filename = cert.file();
-
                         // rawcert
-                        ZipEntry certZipEnty = zipFile.getEntry(filename);
-                        // rawcert
-                        byte[] encodedCert = IoUtil.read(zipFile.getInputStream(certZipEnty));
-
-                        TBSCertificate tbsCert;
-                        try {
-                            Certificate cc = Certificate.getInstance(encodedCert);
-                            tbsCert = cc.getTBSCertificate();
-                        } catch (RuntimeException ex) {
-                            LOG.error("could not parse certificate in file {}", filename);
-                            LOG.debug("could not parse certificate in file " + filename, ex);
-                            throw new CertificateException(ex.getMessage(), ex);
-                        }
+                        byte[] encodedCert = certs.content(cert.file());
+                        CertRow row = toRow(cert, encodedCert, profileMap);
 
                         // cert
                         try {
-                            int idx = 1;
-                            psCert.setLong(idx++, id);
-                            psCert.setInt(idx++, caId);
-                            psCert.setString(idx++,
-                                    tbsCert.getSerialNumber().getPositiveValue().toString(16));
-                            psCert.setLong(idx++, cert.update());
-                            psCert.setLong(idx++,
-                                    tbsCert.getStartDate().getDate().getTime() / 1000);
-                            psCert.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
-                            setBoolean(psCert, idx++, cert.rev());
-                            setInt(psCert, idx++, cert.rr());
-                            setLong(psCert, idx++, cert.rt());
-                            setLong(psCert, idx++, cert.rit());
-
-                            int certprofileId = cert.pid();
-                            String certprofileName = profileMap.get(certprofileId);
-                            psCert.setString(idx++, certprofileName);
+                            bindRow(TABLE_CERT, psCert, 1, row);
                             psCert.addBatch();
                         } catch (SQLException ex) {
                             throw translate(SQL_ADD_CERT, ex);
@@ -518,17 +638,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
 
                         // certhash
                         try {
-                            int idx = 1;
-                            psCerthash.setLong(idx++, id);
-                            psCerthash.setString(idx++, HashAlgoType.SHA1.base64Hash(encodedCert));
-                            psCerthash.setString(idx++,
-                                    HashAlgoType.SHA224.base64Hash(encodedCert));
-                            psCerthash.setString(idx++,
-                                    HashAlgoType.SHA256.base64Hash(encodedCert));
-                            psCerthash.setString(idx++,
-                                    HashAlgoType.SHA384.base64Hash(encodedCert));
-                            psCerthash.setString(idx++,
-                                    HashAlgoType.SHA512.base64Hash(encodedCert));
+                            bindRow(TABLE_CHASH, psCerthash, 1, row);
                             psCerthash.addBatch();
                         } catch (SQLException ex) {
                             throw translate(SQL_ADD_CHASH, ex);
@@ -536,11 +646,7 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
 
                         // rawcert
                         try {
-                            int idx = 1;
-                            psRawCert.setLong(idx++, id);
-                            psRawCert.setString(idx++,
-                                    X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen));
-                            psRawCert.setString(idx++, Base64.encodeToString(encodedCert));
+                            bindRow(TABLE_CRAW, psRawCert, 1, row);
                             psRawCert.addBatch();
                         } catch (SQLException ex) {
                             throw translate(SQL_ADD_CRAW, ex);
@@ -610,8 +716,224 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertStoreDbImporter {
             return lastSuccessfulCertId;
         } finally {
             recoverAutoCommit();
-            zipFile.close();
+            certs.close();
         }
     } // method importCert0
 
+    /**
+     * Imports the certificates for the initial provisioning of an OCSP database: the files
+     * are read and the certificates are parsed and hashed by {@code numThreads} threads,
+     * the rows are written with multi-row INSERT statements if supported by the database,
+     * and with JDBC batches otherwise. The indexes have been dropped before and will be
+     * recreated afterwards. Each file is committed at once.
+     */
+    private void importCertInBulk(final List<String> certsFiles,
+            final Map<Integer, String> profileMap, final boolean revokedOnly,
+            final List<Integer> caIds, final long minId, final File processLogFile,
+            final ProcessLog processLog, final int numProcessedInLastProcess,
+            final ProcessLog importLog) throws Exception {
+        final int rowsPerInsert = Math.min(ROWS_PER_INSERT, numCertsPerCommit);
+        final boolean multiRowInsert =
+                datasource.buildMultiRowInsertSql(1, BULK_TABLES[0], BULK_COLUMNS[0]) != null;
+
+        PreparedStatement[] statements = new PreparedStatement[BULK_TABLES.length];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = prepareStatement(multiRowInsert
+                    ? datasource.buildMultiRowInsertSql(rowsPerInsert, BULK_TABLES[i],
+                            BULK_COLUMNS[i])
+                    : BULK_SINGLE_ROW_SQLS[i]);
+        }
+
+        System.out.println("bulk loading with " + numThreads + " reader threads and "
+                + (multiRowInsert ? rowsPerInsert + " rows per INSERT" : "JDBC batches"));
+
+        ExecutorService parsers = Executors.newFixedThreadPool(numThreads);
+        // parsed files are kept in memory, limit their number
+        Deque<Future<ParsedCertFile>> parsedFiles = new ArrayDeque<>(numThreads);
+        Iterator<String> fileIterator = certsFiles.iterator();
+        long lastCommittedId = minId - 1;
+
+        disableAutoCommit();
+        try {
+            while (fileIterator.hasNext() || !parsedFiles.isEmpty()) {
+                while (fileIterator.hasNext() && parsedFiles.size() < numThreads) {
+                    parsedFiles.addLast(parsers.submit(new CertFileParser(fileIterator.next(),
+                            profileMap, revokedOnly, caIds, minId)));
+                }
+
+                ParsedCertFile parsed;
+                try {
+                    parsed = parsedFiles.removeFirst().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    throw (cause instanceof Exception) ? (Exception) cause
+                            : new Exception(cause);
+                }
+
+                if (parsed.numProcessed == 0) {
+                    continue;
+                }
+
+                if (!evaulateOnly && !parsed.rows.isEmpty()) {
+                    try {
+                        for (int i = 0; i < statements.length; i++) {
+                            if (multiRowInsert) {
+                                insertMultiRows(i, statements[i], rowsPerInsert, parsed.rows);
+                            } else {
+                                insertBatches(i, statements[i], parsed.rows);
+                            }
+                        }
+                        commit("(commit bulk import cert to OCSP)");
+                    } catch (Throwable th) {
+                        rollback();
+                        deleteCertGreatherThan(lastCommittedId, LOG);
+                        if (th instanceof Exception) {
+                            throw (Exception) th;
+                        } else {
+                            throw new Exception(th);
+                        }
+                    }
+                }
+
+                lastCommittedId = parsed.lastId;
+                processLog.addNumProcessed(parsed.numProcessed);
+                importLog.addNumProcessed(parsed.rows.size());
+                echoToFile((numProcessedInLastProcess + processLog.numProcessed()) + ":"
+                        + lastCommittedId, processLogFile);
+                processLog.printStatus();
+            }
+        } finally {
+            parsers.shutdownNow();
+            recoverAutoCommit();
+            for (PreparedStatement ps : statements) {
+                releaseResources(ps, null);
+            }
+        }
+    } // method importCertInBulk
+
+    private void insertMultiRows(final int table, final PreparedStatement fullStatement,
+            final int rowsPerInsert, final List<CertRow> rows) throws DataAccessException {
+        final int size = rows.size();
+        for (int from = 0; from < size; from += rowsPerInsert) {
+            final int num = Math.min(rowsPerInsert, size - from);
+            String sql = null;
+            PreparedStatement ps = fullStatement;
+            if (num < rowsPerInsert) {
+                sql = datasource.buildMultiRowInsertSql(num, BULK_TABLES[table],
+                        BULK_COLUMNS[table]);
+                ps = prepareStatement(sql);
+            }
+
+            try {
+                int idx = 1;
+                for (int i = from; i < from + num; i++) {
+                    idx = bindRow(table, ps, idx, rows.get(i));
+                }
+                ps.executeUpdate();
+            } catch (SQLException ex) {
+                throw translate(sql, ex);
+            } finally {
+                if (ps != fullStatement) {
+                    releaseResources(ps, null);
+                }
+            }
+        }
+    }
+
+    private void insertBatches(final int table, final PreparedStatement ps,
+            final List<CertRow> rows) throws DataAccessException {
+        try {
+            int numInBatch = 0;
+            for (CertRow row : rows) {
+                bindRow(table, ps, 1, row);
+                ps.addBatch();
+                if (++numInBatch == numCertsPerCommit) {
+                    ps.executeBatch();
+                    numInBatch = 0;
+                }
+            }
+
+            if (numInBatch > 0) {
+                ps.executeBatch();
+            }
+        } catch (SQLException ex) {
+            throw translate(BULK_SINGLE_ROW_SQLS[table], ex);
+        }
+    }
+
+    private CertRow toRow(final CertType cert, final byte[] encodedCert,
+            final Map<Integer, String> profileMap) throws CertificateException {
+        TBSCertificate tbsCert;
+        try {
+            Certificate cc = Certificate.getInstance(encodedCert);
+            tbsCert = cc.getTBSCertificate();
+        } catch (RuntimeException ex) {
+            LOG.error("could not parse certificate in file {}", cert.file());
+            LOG.debug("could not parse certificate in file " + cert.file(), ex);
+            throw new CertificateException(ex.getMessage(), ex);
+        }
+
+        CertRow row = new CertRow();
+        row.id = cert.id();
+        row.caId = cert.caId();
+        row.serial = tbsCert.getSerialNumber().getPositiveValue().toString(16);
+        row.update = cert.update();
+        row.notBefore = tbsCert.getStartDate().getDate().getTime() / 1000;
+        row.notAfter = tbsCert.getEndDate().getDate().getTime() / 1000;
+        row.rev = cert.rev();
+        row.rr = cert.rr();
+        row.rt = cert.rt();
+        row.rit = cert.rit();
+        row.profile = profileMap.get(cert.pid());
+        row.sha1 = HashAlgoType.SHA1.base64Hash(encodedCert);
+        row.sha224 = HashAlgoType.SHA224.base64Hash(encodedCert);
+        row.sha256 = HashAlgoType.SHA256.base64Hash(encodedCert);
+        row.sha384 = HashAlgoType.SHA384.base64Hash(encodedCert);
+        row.sha512 = HashAlgoType.SHA512.base64Hash(encodedCert);
+        row.subject = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
+        row.b64Cert = Base64.encodeToString(encodedCert);
+        return row;
+    } // method toRow
+
+    /**
+     * Sets the parameters of the given table for the row.
+     *
+     * @return index of the first parameter following the parameters of this row.
+     */
+    private static int bindRow(final int table, final PreparedStatement ps,
+            final int startIndex, final CertRow row) throws SQLException {
+        int idx = startIndex;
+        switch (table) {
+        case TABLE_CERT:
+            ps.setLong(idx++, row.id);
+            ps.setInt(idx++, row.caId);
+            ps.setString(idx++, row.serial);
+            ps.setLong(idx++, row.update);
+            ps.setLong(idx++, row.notBefore);
+            ps.setLong(idx++, row.notAfter);
+            setBoolean(ps, idx++, row.rev);
+            setInt(ps, idx++, row.rr);
+            setLong(ps, idx++, row.rt);
+            setLong(ps, idx++, row.rit);
+            ps.setString(idx++, row.profile);
+            break;
+        case TABLE_CHASH:
+            ps.setLong(idx++, row.id);
+            ps.setString(idx++, row.sha1);
+            ps.setString(idx++, row.sha224);
+            ps.setString(idx++, row.sha256);
+            ps.setString(idx++, row.sha384);
+            ps.setString(idx++, row.sha512);
+            break;
+        case TABLE_CRAW:
+            ps.setLong(idx++, row.id);
+            ps.setString(idx++, row.subject);
+            ps.setString(idx++, row.b64Cert);
+            break;
+        default:
+            throw new RuntimeException("unknown table " + table);
+        }
+        return idx;
+    } // method bindRow
+
 }
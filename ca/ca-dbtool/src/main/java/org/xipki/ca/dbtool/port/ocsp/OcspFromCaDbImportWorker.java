@@ -77,12 +77,17 @@ public class OcspFromCaDbImportWorker extends DbPortWorker {
 
     private final int batchEntriesPerCommit;
 
+    private final boolean bulkLoad;
+
+    private final int numThreads;
+
     private final boolean evaluateOnly;
 
     public OcspFromCaDbImportWorker(final DataSourceFactory datasourceFactory,
             final PasswordResolver passwordResolver, final String dbConfFile,
             final String publisherName, final boolean resume, final String srcFolder,
-            final int batchEntriesPerCommit, final boolean evaluateOnly)
+            final int batchEntriesPerCommit, final boolean bulkLoad, final int numThreads,
+            final boolean evaluateOnly)
             throws DataAccessException, PasswordResolverException, IOException, JAXBException {
         ParamUtil.requireNonNull("dbConfFile", dbConfFile);
         ParamUtil.requireNonNull("datasourceFactory", datasourceFactory);
@@ -98,6 +103,8 @@ public class OcspFromCaDbImportWorker extends DbPortWorker {
         this.resume = resume;
         this.srcFolder = IoUtil.expandFilepath(srcFolder);
         this.batchEntriesPerCommit = batchEntriesPerCommit;
+        this.bulkLoad = bulkLoad;
+        this.numThreads = numThreads;
         this.evaluateOnly = evaluateOnly;
     }
 
@@ -108,7 +115,7 @@ public class OcspFromCaDbImportWorker extends DbPortWorker {
         try {
             OcspCertStoreFromCaDbImporter certStoreImporter = new OcspCertStoreFromCaDbImporter(
                     datasource, unmarshaller, srcFolder, publisherName, batchEntriesPerCommit,
-                    resume, stopMe, evaluateOnly);
+                    resume, bulkLoad, numThreads, stopMe, evaluateOnly);
             certStoreImporter.importToDb();
             certStoreImporter.shutdown();
         } finally {
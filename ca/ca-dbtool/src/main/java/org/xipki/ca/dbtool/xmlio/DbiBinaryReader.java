@@ -0,0 +1,297 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.xmlio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Reader of the binary dump format written by {@link DbiBinaryWriter}. The records are
+ * read block by block, the checksum of each block is verified before its records are
+ * returned.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class DbiBinaryReader {
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int num = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, num);
+            return num;
+        }
+
+        @Override
+        public long skip(final long num) {
+            int skipped = (int) Math.min(num, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    } // class ByteBufferInputStream
+
+    private final DataInputStream in;
+
+    private final int recordType;
+
+    private final Inflater inflater = new Inflater(true);
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] stored = new byte[0];
+
+    private byte[] raw = new byte[0];
+
+    private int rawLen;
+
+    private int offset;
+
+    private int numRecordsInBlock;
+
+    private int blockIndex;
+
+    private boolean finished;
+
+    public DbiBinaryReader(final InputStream in) throws IOException {
+        ParamUtil.requireNonNull("in", in);
+        this.in = new DataInputStream(in);
+
+        byte[] magic = new byte[DbiBinaryWriter.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(DbiBinaryWriter.MAGIC, magic)) {
+            throw new IOException("not a binary dump file");
+        }
+
+        int version = this.in.readUnsignedByte();
+        if (version != DbiBinaryWriter.VERSION) {
+            throw new IOException("unsupported version of binary dump: " + version);
+        }
+        this.recordType = this.in.readUnsignedByte();
+    }
+
+    /**
+     * Opens the given file. The file is mapped into the memory instead of being read via
+     * a stream.
+     *
+     * @param file
+     *          the binary dump file. Must not be {@code null}.
+     * @return the reader.
+     * @throws IOException
+     *           if the file could not be opened or is not a binary dump file.
+     */
+    public static DbiBinaryReader open(final File file) throws IOException {
+        ParamUtil.requireNonNull("file", file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                // too large to be mapped in one buffer
+                return new DbiBinaryReader(new BufferedInputStream(
+                        new FileInputStream(file), DbiBinaryWriter.DFLT_BLOCK_SIZE));
+            }
+
+            // the mapping remains valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return new DbiBinaryReader(new ByteBufferInputStream(buffer));
+        }
+    }
+
+    public int recordType() {
+        return recordType;
+    }
+
+    public boolean hasNext() throws IOException {
+        while (numRecordsInBlock == 0) {
+            if (finished || !readBlock()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] next() throws IOException {
+        if (!hasNext()) {
+            throw new IllegalStateException("no more next record exists");
+        }
+
+        int len = 0;
+        int shift = 0;
+        while (true) {
+            if (offset >= rawLen || shift > 28) {
+                throw new IOException("corrupted record in block " + blockIndex);
+            }
+
+            int bt = raw[offset++] & 0xFF;
+            len |= (bt & 0x7F) << shift;
+            if ((bt & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+
+        if (len < 0 || offset + len > rawLen) {
+            throw new IOException("corrupted record in block " + blockIndex);
+        }
+
+        byte[] record = Arrays.copyOfRange(raw, offset, offset + len);
+        offset += len;
+        numRecordsInBlock--;
+        return record;
+    } // method next
+
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException ex) {
+            throw new IOException("truncated binary dump, end marker is missing");
+        }
+
+        if (len == 0) {
+            finished = true;
+            return false;
+        }
+
+        int storedLen = in.readInt();
+        int numRecords = in.readInt();
+        int checksum = in.readInt();
+        int codec = in.readUnsignedByte();
+        // check the lengths before the buffers are allocated, each record has at least one byte
+        if (len < 0 || len > DbiBinaryWriter.MAX_BLOCK_SIZE
+                || storedLen < 0 || storedLen > DbiBinaryWriter.MAX_BLOCK_SIZE
+                || numRecords < 1 || numRecords > len) {
+            throw new IOException("corrupted header of block " + blockIndex);
+        }
+
+        if (stored.length < storedLen) {
+            stored = new byte[storedLen];
+        }
+        in.readFully(stored, 0, storedLen);
+
+        if (raw.length < len) {
+            raw = new byte[len];
+        }
+
+        if (codec == DbiBinaryWriter.CODEC_NONE) {
+            if (storedLen != len) {
+                throw new IOException("corrupted header of block " + blockIndex);
+            }
+            System.arraycopy(stored, 0, raw, 0, len);
+        } else if (codec == DbiBinaryWriter.CODEC_DEFLATE) {
+            inflater.reset();
+            inflater.setInput(stored, 0, storedLen);
+            try {
+                int num = 0;
+                while (num < len && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, num, len - num);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    num += inflated;
+                }
+
+                if (num != len) {
+                    throw new IOException("corrupted data in block " + blockIndex);
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("corrupted data in block " + blockIndex + ": "
+                        + ex.getMessage(), ex);
+            }
+        } else {
+            throw new IOException("unknown codec " + codec + " in block " + blockIndex);
+        }
+
+        crc.reset();
+        crc.update(raw, 0, len);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("checksum mismatch in block " + blockIndex);
+        }
+
+        rawLen = len;
+        offset = 0;
+        numRecordsInBlock = numRecords;
+        blockIndex++;
+        return true;
+    } // method readBlock
+
+}
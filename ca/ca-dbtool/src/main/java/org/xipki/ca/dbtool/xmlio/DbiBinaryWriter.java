@@ -0,0 +1,210 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.xmlio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Writer of the binary dump format. A dump file consists of
+ * <pre>
+ *   header:  magic 'XDBI' (4 bytes), version (1 byte), record type (1 byte)
+ *   block*:  length of the raw data (int), length of the stored data (int),
+ *            number of records (int), CRC-32 of the raw data (int), codec (1 byte),
+ *            stored data
+ *   end:     0 (int)
+ * </pre>
+ * The raw data of a block is the concatenation of the records, each prefixed by its
+ * length as unsigned varint. The stored data is the raw data compressed with DEFLATE
+ * ({@link #CODEC_DEFLATE}), or the raw data itself ({@link #CODEC_NONE}) if it could not
+ * be compressed. The raw data of a block is at most {@link #MAX_BLOCK_SIZE} bytes long.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class DbiBinaryWriter {
+
+    public static final byte[] MAGIC = new byte[]{'X', 'D', 'B', 'I'};
+
+    public static final int VERSION = 1;
+
+    public static final int CODEC_NONE = 0;
+
+    public static final int CODEC_DEFLATE = 1;
+
+    public static final int DFLT_BLOCK_SIZE = 256 * 1024;
+
+    public static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private final DataOutputStream out;
+
+    private final int blockSize;
+
+    private final ByteArrayOutputStream block;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] compressBuffer = new byte[0];
+
+    private int numRecordsInBlock;
+
+    private boolean closed;
+
+    public DbiBinaryWriter(final OutputStream out, final int recordType) throws IOException {
+        this(out, recordType, DFLT_BLOCK_SIZE);
+    }
+
+    public DbiBinaryWriter(final OutputStream out, final int recordType, final int blockSize)
+            throws IOException {
+        ParamUtil.requireNonNull("out", out);
+        ParamUtil.requireRange("recordType", recordType, 0, 255);
+        this.blockSize = ParamUtil.requireRange("blockSize", blockSize, 1024,
+                MAX_BLOCK_SIZE);
+        this.block = new ByteArrayOutputStream(blockSize + 1024);
+        this.out = new DataOutputStream(out);
+
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeByte(recordType);
+    }
+
+    public void add(final byte[] record) throws IOException {
+        ParamUtil.requireNonNull("record", record);
+        if (closed) {
+            throw new IllegalStateException("writer is closed");
+        }
+
+        int len = record.length;
+        int encodedLen = len + varintLength(len);
+        if (encodedLen > MAX_BLOCK_SIZE) {
+            throw new IOException("record too large: " + len + " bytes");
+        }
+
+        if (numRecordsInBlock > 0 && block.size() + encodedLen > MAX_BLOCK_SIZE) {
+            writeBlock();
+        }
+
+        while ((len & ~0x7F) != 0) {
+            block.write((len & 0x7F) | 0x80);
+            len >>>= 7;
+        }
+        block.write(len);
+        block.write(record);
+        numRecordsInBlock++;
+
+        if (block.size() >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the pending records and the end marker, and closes the underlying stream.
+     *
+     * @throws IOException
+     *           if an I/O error occurs.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            if (numRecordsInBlock > 0) {
+                writeBlock();
+            }
+            out.writeInt(0);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] raw = block.toByteArray();
+        crc.reset();
+        crc.update(raw, 0, raw.length);
+
+        if (compressBuffer.length < raw.length) {
+            compressBuffer = new byte[raw.length];
+        }
+
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int compressedLen = 0;
+        while (!deflater.finished() && compressedLen < compressBuffer.length) {
+            compressedLen += deflater.deflate(compressBuffer, compressedLen,
+                    compressBuffer.length - compressedLen);
+        }
+
+        boolean compressed = deflater.finished() && compressedLen < raw.length;
+
+        out.writeInt(raw.length);
+        out.writeInt(compressed ? compressedLen : raw.length);
+        out.writeInt(numRecordsInBlock);
+        out.writeInt((int) crc.getValue());
+        out.writeByte(compressed ? CODEC_DEFLATE : CODEC_NONE);
+        if (compressed) {
+            out.write(compressBuffer, 0, compressedLen);
+        } else {
+            out.write(raw);
+        }
+
+        block.reset();
+        numRecordsInBlock = 0;
+    } // method writeBlock
+
+    private static int varintLength(final int value) {
+        int len = 1;
+        int rest = value >>> 7;
+        while (rest != 0) {
+            len++;
+            rest >>>= 7;
+        }
+        return len;
+    }
+
+}
@@ -119,7 +119,7 @@ public class DbiXmlWriter {
             throws IOException, XMLStreamException {
         ParamUtil.requireNonNull("zipStream", zipStream);
         flush();
-        zipStream.write(stream.toByteArray());
+        stream.writeTo(zipStream);
     }
 
 }
@@ -0,0 +1,302 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.xmlio.ca;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.xipki.ca.dbtool.xmlio.DbDataObject;
+import org.xipki.ca.dbtool.xmlio.IdentifidDbObjectType;
+import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Encodes the CA database entries as records of the binary dump format. Unlike in the
+ * ZIP format, the certificate, CRL and request are contained in the record itself.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class CaBinaryCodec {
+
+    public static class Entry {
+
+        private final IdentifidDbObjectType object;
+
+        private final byte[] content;
+
+        private Entry(final IdentifidDbObjectType object, final byte[] content) {
+            this.object = object;
+            this.content = content;
+        }
+
+        public IdentifidDbObjectType object() {
+            return object;
+        }
+
+        /**
+         * Returns the encoded certificate, CRL or request.
+         *
+         * @return the content, or {@code null} if the entry does not have any content.
+         */
+        public byte[] content() {
+            return content;
+        }
+
+    } // class Entry
+
+    public static final int TYPE_CERT = 1;
+
+    public static final int TYPE_CRL = 2;
+
+    public static final int TYPE_USER = 3;
+
+    public static final int TYPE_CAUSER = 4;
+
+    public static final int TYPE_REQUEST = 5;
+
+    public static final int TYPE_REQCERT = 6;
+
+    private CaBinaryCodec() {
+    }
+
+    public static byte[] encode(final DbDataObject entry, final byte[] content)
+            throws IOException {
+        ParamUtil.requireNonNull("entry", entry);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(
+                (content == null) ? 100 : content.length + 200);
+        DataOutputStream out = new DataOutputStream(bout);
+
+        if (entry instanceof CertType) {
+            CertType cert = (CertType) entry;
+            out.writeLong(cert.id());
+            out.writeInt(cert.art());
+            out.writeInt(cert.caId());
+            out.writeUTF(cert.sn());
+            out.writeInt(cert.pid());
+            out.writeInt(cert.rid());
+            out.writeBoolean(cert.isEe());
+            out.writeLong(cert.update());
+            out.writeBoolean(cert.rev());
+            writeOptional(out, cert.rr());
+            writeOptional(out, cert.rt());
+            writeOptional(out, cert.rit());
+            writeOptional(out, cert.uid());
+            writeOptional(out, cert.tid());
+            out.writeInt(cert.reqType());
+            writeOptional(out, cert.fpRs());
+            writeOptional(out, cert.rs());
+            writeContent(out, content);
+        } else if (entry instanceof CrlType) {
+            CrlType crl = (CrlType) entry;
+            out.writeLong(crl.id());
+            out.writeInt(crl.caId());
+            out.writeUTF(crl.crlNo());
+            writeContent(out, content);
+        } else if (entry instanceof UserType) {
+            UserType user = (UserType) entry;
+            out.writeLong(user.id());
+            out.writeUTF(user.name());
+            out.writeBoolean(user.active());
+            writeOptional(out, user.password());
+        } else if (entry instanceof CaUserType) {
+            CaUserType causer = (CaUserType) entry;
+            out.writeLong(causer.id());
+            out.writeInt(causer.aId());
+            out.writeInt(causer.uid());
+            out.writeInt(causer.permission());
+            writeOptional(out, causer.profiles());
+        } else if (entry instanceof RequestType) {
+            RequestType request = (RequestType) entry;
+            out.writeLong(request.id());
+            out.writeLong(request.update());
+            writeContent(out, content);
+        } else if (entry instanceof RequestCertType) {
+            RequestCertType reqcert = (RequestCertType) entry;
+            out.writeLong(reqcert.id());
+            out.writeLong(reqcert.rid());
+            out.writeLong(reqcert.cid());
+        } else {
+            throw new IllegalArgumentException("unsupported entry " + entry.getClass().getName());
+        }
+
+        out.flush();
+        return bout.toByteArray();
+    } // method encode
+
+    public static Entry decode(final int type, final byte[] record)
+            throws IOException, InvalidDataObjectException {
+        ParamUtil.requireNonNull("record", record);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+        IdentifidDbObjectType object;
+        byte[] content = null;
+
+        switch (type) {
+        case TYPE_CERT:
+            CertType cert = new CertType();
+            cert.setId(in.readLong());
+            cert.setArt(in.readInt());
+            cert.setCaId(in.readInt());
+            cert.setSn(in.readUTF());
+            cert.setPid(in.readInt());
+            cert.setRid(in.readInt());
+            cert.setEe(in.readBoolean());
+            cert.setUpdate(in.readLong());
+            cert.setRev(in.readBoolean());
+            cert.setRr(readOptionalInt(in));
+            cert.setRt(readOptionalLong(in));
+            cert.setRit(readOptionalLong(in));
+            cert.setUid(readOptionalInt(in));
+            cert.setTid(readOptionalString(in));
+            cert.setReqType(in.readInt());
+            cert.setFpRs(readOptionalLong(in));
+            cert.setRs(readOptionalString(in));
+            content = readContent(in);
+            cert.setFile(cert.id() + ".der");
+            object = cert;
+            break;
+        case TYPE_CRL:
+            CrlType crl = new CrlType();
+            crl.setId(in.readLong());
+            crl.setCaId(in.readInt());
+            crl.setCrlNo(in.readUTF());
+            content = readContent(in);
+            crl.setFile(crl.id() + ".crl");
+            object = crl;
+            break;
+        case TYPE_USER:
+            UserType user = new UserType();
+            user.setId(in.readLong());
+            user.setName(in.readUTF());
+            user.setActive(in.readBoolean());
+            user.setPassword(readOptionalString(in));
+            object = user;
+            break;
+        case TYPE_CAUSER:
+            CaUserType causer = new CaUserType();
+            causer.setId(in.readLong());
+            causer.setCaId(in.readInt());
+            causer.setUid(in.readInt());
+            causer.setPermission(in.readInt());
+            causer.setProfiles(readOptionalString(in));
+            object = causer;
+            break;
+        case TYPE_REQUEST:
+            RequestType request = new RequestType();
+            request.setId(in.readLong());
+            request.setUpdate(in.readLong());
+            content = readContent(in);
+            request.setFile(request.id() + ".req");
+            object = request;
+            break;
+        case TYPE_REQCERT:
+            RequestCertType reqcert = new RequestCertType();
+            reqcert.setId(in.readLong());
+            reqcert.setRid(in.readLong());
+            reqcert.setCid(in.readLong());
+            object = reqcert;
+            break;
+        default:
+            throw new InvalidDataObjectException("unknown record type " + type);
+        }
+
+        if (in.available() != 0) {
+            throw new InvalidDataObjectException("record of type " + type
+                    + " contains trailing data");
+        }
+
+        object.validate();
+        return new Entry(object, content);
+    } // method decode
+
+    private static void writeContent(final DataOutputStream out, final byte[] content)
+            throws IOException {
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    private static byte[] readContent(final DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > in.available()) {
+            throw new IOException("invalid length of content: " + len);
+        }
+        byte[] content = new byte[len];
+        in.readFully(content);
+        return content;
+    }
+
+    private static void writeOptional(final DataOutputStream out, final Integer value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeOptional(final DataOutputStream out, final Long value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static void writeOptional(final DataOutputStream out, final String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static Integer readOptionalInt(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static Long readOptionalLong(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static String readOptionalString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.diffdb.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.xipki.ca.dbtool.IdRange;
+import org.xipki.ca.dbtool.diffdb.DigestCheckpoint;
+import org.xipki.ca.dbtool.diffdb.DigestCheckpoint.HashTree;
+
+import junit.framework.Assert;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class DigestCheckpointTest {
+
+    @Test
+    public void testAllBlocksChangedWithoutOldTree() {
+        SortedMap<Long, String> leaves = leaves(0, 5, 17, 300);
+        Assert.assertEquals(Arrays.asList(0L, 5L, 17L, 300L),
+                new HashTree(leaves).changedBlocks(null));
+    }
+
+    @Test
+    public void testNoChangedBlocks() {
+        HashTree oldTree = new HashTree(leaves(0, 1, 2, 100, 1000, 5000));
+        HashTree newTree = new HashTree(leaves(0, 1, 2, 100, 1000, 5000));
+        Assert.assertTrue(newTree.changedBlocks(oldTree).isEmpty());
+    }
+
+    @Test
+    public void testChangedBlock() {
+        SortedMap<Long, String> oldLeaves = leaves(0, 1, 2, 100, 1000, 5000);
+        SortedMap<Long, String> newLeaves = new TreeMap<>(oldLeaves);
+        newLeaves.put(1000L, "changed");
+
+        List<Long> changed = new HashTree(newLeaves).changedBlocks(new HashTree(oldLeaves));
+        Assert.assertEquals(Collections.singletonList(1000L), changed);
+    }
+
+    @Test
+    public void testAddedBlocks() {
+        SortedMap<Long, String> oldLeaves = leaves(0, 1, 2, 100);
+        SortedMap<Long, String> newLeaves = new TreeMap<>(oldLeaves);
+        newLeaves.putAll(leaves(3, 4096));
+
+        List<Long> changed = new HashTree(newLeaves).changedBlocks(new HashTree(oldLeaves));
+        Assert.assertEquals(Arrays.asList(3L, 4096L), changed);
+    }
+
+    @Test
+    public void testToIdRanges() {
+        DigestCheckpoint checkpoint = new DigestCheckpoint(4, new TreeMap<Long, String>());
+        List<IdRange> ranges = checkpoint.toIdRanges(Arrays.asList(1L, 2L, 3L, 7L, 9L));
+        Assert.assertEquals(3, ranges.size());
+        assertRange(16, 63, ranges.get(0));
+        assertRange(112, 127, ranges.get(1));
+        assertRange(144, 159, ranges.get(2));
+
+        Assert.assertTrue(checkpoint.toIdRanges(Collections.<Long>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testToIdRangesSingleIdBlocks() {
+        DigestCheckpoint checkpoint = new DigestCheckpoint(0, new TreeMap<Long, String>());
+        List<IdRange> ranges = checkpoint.toIdRanges(Arrays.asList(5L, 6L, 8L));
+        Assert.assertEquals(2, ranges.size());
+        assertRange(5, 6, ranges.get(0));
+        assertRange(8, 8, ranges.get(1));
+    }
+
+    private static void assertRange(final long from, final long to, final IdRange range) {
+        Assert.assertEquals(from, range.from());
+        Assert.assertEquals(to, range.to());
+    }
+
+    private static SortedMap<Long, String> leaves(final long... blocks) {
+        SortedMap<Long, String> leaves = new TreeMap<>();
+        for (long block : blocks) {
+            leaves.put(block, "hash-" + block);
+        }
+        return leaves;
+    }
+
+}
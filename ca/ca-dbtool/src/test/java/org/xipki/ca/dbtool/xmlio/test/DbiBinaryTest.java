@@ -0,0 +1,336 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ca.dbtool.xmlio.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xipki.ca.dbtool.xmlio.DbiBinaryReader;
+import org.xipki.ca.dbtool.xmlio.DbiBinaryWriter;
+import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
+import org.xipki.ca.dbtool.xmlio.ca.CaBinaryCodec;
+import org.xipki.ca.dbtool.xmlio.ca.CertType;
+import org.xipki.ca.dbtool.xmlio.ca.CrlType;
+
+import junit.framework.Assert;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class DbiBinaryTest {
+
+    // magic, version and record type
+    private static final int FILE_HEADER_LEN = 6;
+
+    // lengths, number of records, checksum and codec
+    private static final int BLOCK_HEADER_LEN = 17;
+
+    @Test
+    public void testRoundTripCompressible() throws Exception {
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] record = new byte[200];
+            Arrays.fill(record, (byte) i);
+            records.add(record);
+        }
+
+        byte[] dump = write(records, DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        Assert.assertEquals("codec", DbiBinaryWriter.CODEC_DEFLATE,
+                dump[FILE_HEADER_LEN + BLOCK_HEADER_LEN - 1]);
+        assertRecords(records, dump);
+    }
+
+    @Test
+    public void testRoundTripIncompressible() throws Exception {
+        List<byte[]> records = randomRecords(10, 500);
+        byte[] dump = write(records, DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        Assert.assertEquals("codec", DbiBinaryWriter.CODEC_NONE,
+                dump[FILE_HEADER_LEN + BLOCK_HEADER_LEN - 1]);
+        assertRecords(records, dump);
+    }
+
+    @Test
+    public void testRoundTripMultipleBlocks() throws Exception {
+        List<byte[]> records = randomRecords(100, 300);
+        // empty record and record whose length needs more than one byte
+        records.add(new byte[0]);
+        records.add(new byte[5000]);
+        assertRecords(records, write(records, 1024));
+    }
+
+    @Test
+    public void testRoundTripEmpty() throws Exception {
+        assertRecords(new ArrayList<byte[]>(), write(new ArrayList<byte[]>(), 1024));
+    }
+
+    @Test
+    public void testCorruptedData() throws Exception {
+        byte[] dump = write(randomRecords(10, 100), DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        dump[FILE_HEADER_LEN + BLOCK_HEADER_LEN + 10] ^= 0x01;
+        assertCorrupted(dump, "checksum mismatch in block 0");
+    }
+
+    @Test
+    public void testTooLargeLength() throws Exception {
+        byte[] dump = write(randomRecords(10, 100), DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        // length of the raw data
+        writeInt(dump, FILE_HEADER_LEN, Integer.MAX_VALUE);
+        assertCorrupted(dump, "corrupted header of block 0");
+    }
+
+    @Test
+    public void testTooLargeStoredLength() throws Exception {
+        byte[] dump = write(randomRecords(10, 100), DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        writeInt(dump, FILE_HEADER_LEN + 4, DbiBinaryWriter.MAX_BLOCK_SIZE + 1);
+        assertCorrupted(dump, "corrupted header of block 0");
+    }
+
+    @Test
+    public void testNegativeLength() throws Exception {
+        byte[] dump = write(randomRecords(10, 100), DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        writeInt(dump, FILE_HEADER_LEN, -1);
+        assertCorrupted(dump, "corrupted header of block 0");
+    }
+
+    @Test
+    public void testTooManyRecords() throws Exception {
+        byte[] dump = write(randomRecords(10, 100), DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        writeInt(dump, FILE_HEADER_LEN + 8, Integer.MAX_VALUE);
+        assertCorrupted(dump, "corrupted header of block 0");
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        byte[] dump = write(randomRecords(10, 100), DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        // without end marker
+        assertCorrupted(Arrays.copyOf(dump, dump.length - 4), null);
+        // within the block
+        assertCorrupted(Arrays.copyOf(dump, dump.length / 2), null);
+    }
+
+    @Test
+    public void testInvalidMagic() throws Exception {
+        byte[] dump = write(randomRecords(1, 10), DbiBinaryWriter.DFLT_BLOCK_SIZE);
+        dump[0] = 'Y';
+        try {
+            new DbiBinaryReader(new ByteArrayInputStream(dump));
+            Assert.fail("IOException expected");
+        } catch (IOException ex) {
+            Assert.assertEquals("not a binary dump file", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testInvalidBlockSize() throws Exception {
+        try {
+            new DbiBinaryWriter(new ByteArrayOutputStream(), 1,
+                    DbiBinaryWriter.MAX_BLOCK_SIZE + 1);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCertRoundTrip() throws Exception {
+        CertType cert = new CertType();
+        cert.setId(10L);
+        cert.setArt(1);
+        cert.setCaId(2);
+        cert.setSn("1a2b");
+        cert.setPid(3);
+        cert.setRid(4);
+        cert.setEe(true);
+        cert.setUpdate(1500000000L);
+        cert.setRev(true);
+        cert.setRr(1);
+        cert.setRt(1500000100L);
+        cert.setRit(null);
+        cert.setUid(5);
+        cert.setTid("tid");
+        cert.setReqType(0);
+        cert.setFpRs(123L);
+        cert.setRs("CN=test");
+
+        byte[] content = new byte[]{0x30, 0x03, 0x02, 0x01, 0x01};
+        CaBinaryCodec.Entry entry = CaBinaryCodec.decode(CaBinaryCodec.TYPE_CERT,
+                CaBinaryCodec.encode(cert, content));
+
+        CertType decoded = (CertType) entry.object();
+        Assert.assertEquals(cert.id(), decoded.id());
+        Assert.assertEquals(cert.art(), decoded.art());
+        Assert.assertEquals(cert.caId(), decoded.caId());
+        Assert.assertEquals(cert.sn(), decoded.sn());
+        Assert.assertEquals(cert.pid(), decoded.pid());
+        Assert.assertEquals(cert.rid(), decoded.rid());
+        Assert.assertEquals(cert.isEe(), decoded.isEe());
+        Assert.assertEquals(cert.update(), decoded.update());
+        Assert.assertEquals(cert.rev(), decoded.rev());
+        Assert.assertEquals(cert.rr(), decoded.rr());
+        Assert.assertEquals(cert.rt(), decoded.rt());
+        Assert.assertNull(decoded.rit());
+        Assert.assertEquals(cert.uid(), decoded.uid());
+        Assert.assertEquals(cert.tid(), decoded.tid());
+        Assert.assertEquals(cert.reqType(), decoded.reqType());
+        Assert.assertEquals(cert.fpRs(), decoded.fpRs());
+        Assert.assertEquals(cert.rs(), decoded.rs());
+        Assert.assertEquals("10.der", decoded.file());
+        Assert.assertTrue(Arrays.equals(content, entry.content()));
+    }
+
+    @Test
+    public void testCrlRoundTrip() throws Exception {
+        CrlType crl = new CrlType();
+        crl.setId(7L);
+        crl.setCaId(2);
+        crl.setCrlNo("12");
+
+        byte[] content = new byte[1000];
+        new Random(1).nextBytes(content);
+        CaBinaryCodec.Entry entry = CaBinaryCodec.decode(CaBinaryCodec.TYPE_CRL,
+                CaBinaryCodec.encode(crl, content));
+
+        CrlType decoded = (CrlType) entry.object();
+        Assert.assertEquals(crl.id(), decoded.id());
+        Assert.assertEquals(crl.caId(), decoded.caId());
+        Assert.assertEquals(crl.crlNo(), decoded.crlNo());
+        Assert.assertEquals("7.crl", decoded.file());
+        Assert.assertTrue(Arrays.equals(content, entry.content()));
+    }
+
+    @Test
+    public void testCorruptedCrlContentLength() throws Exception {
+        CrlType crl = new CrlType();
+        crl.setId(7L);
+        crl.setCaId(2);
+        crl.setCrlNo("12");
+
+        byte[] record = CaBinaryCodec.encode(crl, new byte[100]);
+        // the length of content precedes the last 100 bytes
+        writeInt(record, record.length - 104, 101);
+        try {
+            CaBinaryCodec.decode(CaBinaryCodec.TYPE_CRL, record);
+            Assert.fail("IOException expected");
+        } catch (IOException ex) {
+            Assert.assertEquals("invalid length of content: 101", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testTrailingData() throws Exception {
+        CrlType crl = new CrlType();
+        crl.setId(7L);
+        crl.setCaId(2);
+        crl.setCrlNo("12");
+
+        byte[] record = CaBinaryCodec.encode(crl, new byte[10]);
+        try {
+            CaBinaryCodec.decode(CaBinaryCodec.TYPE_CRL, Arrays.copyOf(record, record.length + 1));
+            Assert.fail("InvalidDataObjectException expected");
+        } catch (InvalidDataObjectException ex) {
+            Assert.assertEquals("record of type 2 contains trailing data", ex.getMessage());
+        }
+    }
+
+    private static byte[] write(final List<byte[]> records, final int blockSize)
+            throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DbiBinaryWriter writer = new DbiBinaryWriter(bout, CaBinaryCodec.TYPE_CERT, blockSize);
+        for (byte[] record : records) {
+            writer.add(record);
+        }
+        writer.close();
+        return bout.toByteArray();
+    }
+
+    private static void assertRecords(final List<byte[]> expected, final byte[] dump)
+            throws IOException {
+        DbiBinaryReader reader = new DbiBinaryReader(new ByteArrayInputStream(dump));
+        try {
+            Assert.assertEquals(CaBinaryCodec.TYPE_CERT, reader.recordType());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertTrue("record " + i, reader.hasNext());
+                Assert.assertTrue("record " + i, Arrays.equals(expected.get(i), reader.next()));
+            }
+            Assert.assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void assertCorrupted(final byte[] dump, final String expectedMessage)
+            throws IOException {
+        DbiBinaryReader reader = new DbiBinaryReader(new ByteArrayInputStream(dump));
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            Assert.fail("IOException expected");
+        } catch (IOException ex) {
+            if (expectedMessage != null) {
+                Assert.assertEquals(expectedMessage, ex.getMessage());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static List<byte[]> randomRecords(final int num, final int size) {
+        Random random = new Random(num);
+        List<byte[]> records = new ArrayList<>(num);
+        for (int i = 0; i < num; i++) {
+            byte[] record = new byte[size];
+            random.nextBytes(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+}
@@ -52,6 +52,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -239,6 +240,30 @@ public class CaManagerImpl implements CaManager, CmpResponderManager, ScepManage
 
     } // class ScheduledDeleteUnreferencedRequstervice
 
+    private class ChangeLogCleaner implements Runnable {
+
+        private boolean inProcess;
+
+        @Override
+        public void run() {
+            if (inProcess) {
+                return;
+            }
+
+            inProcess = true;
+            try {
+                long time = System.currentTimeMillis() - changeLogRetentionDays * DAY_IN_MS;
+                int num = certstore.deleteChangeLog(time);
+                LOG.info("deleted {} entries of the change log", num);
+            } catch (Throwable th) {
+                LogUtil.error(LOG, th, "could not delete entries of the change log");
+            } finally {
+                inProcess = false;
+            }
+        } // method run
+
+    } // class ChangeLogCleaner
+
     private class CaRestarter implements Runnable {
 
         private boolean inProcess;
@@ -280,6 +305,8 @@ public class CaManagerImpl implements CaManager, CmpResponderManager, ScepManage
 
     private static final String EVENT_CACHAGNE = "CA_CHANGE";
 
+    private static final long DAY_IN_MS = 24L * 60 * 60 * 1000;
+
     private final String lockInstanceId;
 
     private final CaIdNameMap idNameMap = new CaIdNameMap();
@@ -381,6 +408,10 @@ public class CaManagerImpl implements CaManager, CmpResponderManager, ScepManage
 
     private CertificateStore certstore;
 
+    private boolean changeLogEnabled;
+
+    private int changeLogRetentionDays;
+
     private SecurityFactory securityFactory;
 
     private CaManagerQueryExecutor queryExecutor;
@@ -560,14 +591,77 @@ public class CaManagerImpl implements CaManager, CmpResponderManager, ScepManage
         LOG.info("use EPOCH: {}", envEpoch);
         long epoch = DateUtil.parseUtcTimeyyyyMMdd(envEpoch).getTime();
 
-        UniqueIdGenerator idGen = new UniqueIdGenerator(epoch, shardId);
+        // shards of the certificate store, the first one is the CA database
+        List<String> shardNames = new ArrayList<>();
+        shardNames.add("ca");
+        String str = caConfProps.getProperty("certstore.shards");
+        if (StringUtil.isNotBlank(str)) {
+            for (String name : StringUtil.split(str, ", ")) {
+                if (shardNames.contains(name)) {
+                    throw new CaMgmtException("duplicated certstore shard '" + name + "'");
+                }
+                shardNames.add(name);
+            }
+        }
+
+        List<DataSourceWrapper> shardDatasources = new ArrayList<>(shardNames.size());
+        for (String name : shardNames) {
+            DataSourceWrapper shardDatasource = datasources.get(name);
+            if (shardDatasource == null) {
+                throw new CaMgmtException("no datasource named '" + name + "' configured");
+            }
+            shardDatasources.add(shardDatasource);
+        }
+
+        if ((shardId + 1) * shardNames.size() > 128) {
+            throw new CaMgmtException("ca.shardId must be less than "
+                    + (128 / shardNames.size()) + " for " + shardNames.size() + " shards");
+        }
+
+        Map<String, Integer> caShards = new HashMap<>();
+        for (Object objKey : caConfProps.keySet()) {
+            String key = (String) objKey;
+            if (!StringUtil.startsWithIgnoreCase(key, "certstore.ca.")) {
+                continue;
+            }
+
+            String caName = key.substring("certstore.ca.".length());
+            String name = caConfProps.getProperty(key).trim();
+            int idx = shardNames.indexOf(name);
+            if (idx == -1) {
+                throw new CaMgmtException("datasource '" + name + "' of CA " + caName
+                        + " is not a certstore shard");
+            }
+            caShards.put(caName, idx);
+        }
+
+        if (shardNames.size() > 1) {
+            LOG.info("certstore shards: {}, CA shards: {}", shardNames, caShards);
+        }
 
         try {
-            this.certstore = new CertificateStore(datasource, idGen);
+            this.certstore = new CertificateStore(shardDatasources, epoch, shardId, caShards);
         } catch (DataAccessException ex) {
             throw new CaMgmtException(ex.getMessage(), ex);
         }
 
+        changeLogEnabled = Boolean.parseBoolean(
+                caConfProps.getProperty("certstore.changelog", "false").trim());
+        if (changeLogEnabled) {
+            str = caConfProps.getProperty("certstore.changelog.retention", "7").trim();
+            try {
+                changeLogRetentionDays = Integer.parseInt(str);
+            } catch (NumberFormatException ex) {
+                throw new CaMgmtException("invalid certstore.changelog.retention '" + str + "'");
+            }
+
+            if (changeLogRetentionDays < 1) {
+                throw new CaMgmtException("certstore.changelog.retention must be at least 1");
+            }
+            LOG.info("certstore change log enabled, retention: {} days", changeLogRetentionDays);
+        }
+        certstore.setChangeLogEnabled(changeLogEnabled);
+
         initCaAliases();
         initCertprofiles();
         initPublishers();
@@ -773,6 +867,11 @@ public class CaManagerImpl implements CaManager, CmpResponderManager, ScepManage
                 scheduledThreadPoolExecutor.scheduleAtFixedRate(
                         new UnreferencedRequstCleaner(), 60, 24 * 60 * 60, // 1 DAY
                         TimeUnit.SECONDS);
+                if (changeLogEnabled) {
+                    scheduledThreadPoolExecutor.scheduleAtFixedRate(
+                            new ChangeLogCleaner(), 300, 60 * 60, // 1 hour
+                            TimeUnit.SECONDS);
+                }
             } else {
                 sb.append(": no CA is configured");
             }
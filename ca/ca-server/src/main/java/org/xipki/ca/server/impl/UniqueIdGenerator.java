@@ -69,6 +69,9 @@ public class UniqueIdGenerator {
     // maximal 10 bits
     private static final int MAX_OFFSET = 0x3FF;
 
+    // 7 bits
+    private static final int SHARD_MASK = 0x7F;
+
     private final long epoch; // in milliseconds
 
     private final int shardId; // 7 bits
@@ -95,4 +98,15 @@ public class UniqueIdGenerator {
         return ret;
     }
 
+    /**
+     * Returns the shard id embedded in the given id.
+     *
+     * @param id
+     *          ID generated by a {@link UniqueIdGenerator}.
+     * @return the shard id, between 0 and 127.
+     */
+    public static int shardId(final long id) {
+        return (int) (id & SHARD_MASK);
+    }
+
 }
@@ -133,6 +133,9 @@ import org.xipki.ca.server.mgmt.api.x509.CrlControl;
 import org.xipki.ca.server.mgmt.api.x509.CrlControl.HourMinute;
 import org.xipki.ca.server.mgmt.api.x509.CrlControl.UpdateMode;
 import org.xipki.common.HealthCheckResult;
+import org.xipki.common.metrics.LatencyHistogram;
+import org.xipki.common.metrics.Metrics;
+import org.xipki.common.metrics.PhaseTimer;
 import org.xipki.common.util.CollectionUtil;
 import org.xipki.common.util.CompareUtil;
 import org.xipki.common.util.DateUtil;
@@ -419,6 +422,17 @@ public class X509Ca {
 
     private static final Logger LOG = LoggerFactory.getLogger(X509Ca.class);
 
+    private static final LatencyHistogram H_GEN_PROFILE =
+            Metrics.histogram("ca.generate.profile");
+
+    private static final LatencyHistogram H_GEN_SIGN = Metrics.histogram("ca.generate.sign");
+
+    private static final LatencyHistogram H_GEN_VERIFY = Metrics.histogram("ca.generate.verify");
+
+    private static final LatencyHistogram H_GEN_STORE = Metrics.histogram("ca.generate.store");
+
+    private static final LatencyHistogram H_GEN_TOTAL = Metrics.histogram("ca.generate.total");
+
     private final X509CaInfo caInfo;
 
     private final NameId caIdent;
@@ -1780,19 +1794,21 @@ public class X509Ca {
         AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_cert, msgId);
 
         boolean successful = false;
+        PhaseTimer timer = new PhaseTimer();
         try {
             X509CertificateInfo ret = generateCertificate0(gct, requestor,
-                    keyUpdate, reqType, transactionId, event);
+                    keyUpdate, reqType, transactionId, event, timer);
             successful = (ret != null);
             return ret;
         } finally {
+            timer.total(H_GEN_TOTAL);
             finish(event, successful);
         }
     }
 
     private X509CertificateInfo generateCertificate0(final GrantedCertTemplate gct,
             final RequestorInfo requestor, final boolean keyUpdate, final RequestType reqType,
-            final byte[] transactionId, final AuditEvent event)
+            final byte[] transactionId, final AuditEvent event, final PhaseTimer timer)
             throws OperationException {
         ParamUtil.requireNonNull("gct", gct);
 
@@ -1836,6 +1852,7 @@ public class X509Ca {
 
             X509CertificateInfo ret;
 
+            timer.skip();
             try {
                 X509CrlSignerEntryWrapper crlSigner = getCrlSigner();
                 X509Certificate crlSignerCert = (crlSigner == null) ? null : crlSigner.cert();
@@ -1852,6 +1869,8 @@ public class X509Ca {
                     }
                 }
 
+                timer.phase(H_GEN_PROFILE);
+
                 ConcurrentBagEntrySigner signer0;
                 try {
                     signer0 = gct.signer.borrowContentSigner();
@@ -1865,6 +1884,7 @@ public class X509Ca {
                 } finally {
                     gct.signer.requiteContentSigner(signer0);
                 }
+                timer.phase(H_GEN_SIGN);
 
                 Certificate bcCert = certHolder.toASN1Structure();
                 byte[] encodedCert = bcCert.getEncoded();
@@ -1891,6 +1911,7 @@ public class X509Ca {
                     throw new OperationException(ErrorCode.SYSTEM_FAILURE,
                             "could not verify the signature of generated certificate");
                 }
+                timer.phase(H_GEN_VERIFY);
 
                 X509CertWithDbId certWithMeta = new X509CertWithDbId(cert, encodedCert);
                 ret = new X509CertificateInfo(certWithMeta, caIdent, caCert,
@@ -1906,6 +1927,7 @@ public class X509Ca {
                     throw new OperationException(ErrorCode.SYSTEM_FAILURE,
                             "could not save certificate");
                 }
+                timer.phase(H_GEN_STORE);
             } catch (BadCertTemplateException ex) {
                 throw new OperationException(ErrorCode.BAD_CERT_TEMPLATE, ex);
             } catch (OperationException ex) {
@@ -71,6 +71,9 @@ import org.xipki.ca.common.cmp.ProtectionVerificationResult;
 import org.xipki.ca.server.impl.CaAuditConstants;
 import org.xipki.ca.server.mgmt.api.CmpControl;
 import org.xipki.ca.server.mgmt.api.RequestorInfo;
+import org.xipki.common.metrics.LatencyHistogram;
+import org.xipki.common.metrics.Metrics;
+import org.xipki.common.metrics.PhaseTimer;
 import org.xipki.common.util.LogUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.RandomUtil;
@@ -87,6 +90,14 @@ abstract class CmpResponder {
 
     private static final Logger LOG = LoggerFactory.getLogger(CmpResponder.class);
 
+    private static final LatencyHistogram H_VERIFY = Metrics.histogram("cmp.verify");
+
+    private static final LatencyHistogram H_PROCESS = Metrics.histogram("cmp.process");
+
+    private static final LatencyHistogram H_PROTECT = Metrics.histogram("cmp.protect");
+
+    private static final LatencyHistogram H_TOTAL = Metrics.histogram("cmp.total");
+
     protected final SecurityFactory securityFactory;
 
     private final SecureRandom random = new SecureRandom();
@@ -152,6 +163,17 @@ abstract class CmpResponder {
             final X509Certificate tlsClientCert, final String tidStr, final AuditEvent event) {
         ParamUtil.requireNonNull("pkiMessage", pkiMessage);
         ParamUtil.requireNonNull("event", event);
+        PhaseTimer timer = new PhaseTimer();
+        try {
+            return processPkiMessage1(pkiMessage, tlsClientCert, tidStr, event, timer);
+        } finally {
+            timer.total(H_TOTAL);
+        }
+    }
+
+    private PKIMessage processPkiMessage1(final PKIMessage pkiMessage,
+            final X509Certificate tlsClientCert, final String tidStr, final AuditEvent event,
+            final PhaseTimer timer) {
         GeneralPKIMessage message = new GeneralPKIMessage(pkiMessage);
 
         PKIHeader reqHeader = message.getHeader();
@@ -291,16 +313,19 @@ abstract class CmpResponder {
                     errorStatus);
         }
 
+        timer.phase(H_VERIFY);
         PKIMessage resp = processPkiMessage0(pkiMessage, requestor, tid, message, msgId, event);
+        timer.phase(H_PROCESS);
 
         if (isProtected) {
             resp = addProtection(resp, event);
+            timer.phase(H_PROTECT);
         } else {
             // protected by TLS connection
         }
 
         return resp;
-    } // method processPkiMessage
+    } // method processPkiMessage1
 
     protected byte[] randomTransactionId() {
         byte[] bytes = new byte[10];
@@ -110,6 +110,14 @@ class CertStoreQueryExecutor {
 
     private static final Logger LOG = LoggerFactory.getLogger(CertStoreQueryExecutor.class);
 
+    private static final int CHANGE_ADD = 1;
+
+    private static final int CHANGE_REVOKE = 2;
+
+    private static final int CHANGE_UNREVOKE = 3;
+
+    private static final int CHANGE_REMOVE = 4;
+
     private final DataSourceWrapper datasource;
 
     @SuppressWarnings("unused")
@@ -121,6 +129,8 @@ class CertStoreQueryExecutor {
 
     private final SQLs sqls;
 
+    private boolean changeLogEnabled;
+
     CertStoreQueryExecutor(final DataSourceWrapper datasource, final UniqueIdGenerator idGenerator)
             throws DataAccessException {
         this.datasource = ParamUtil.requireNonNull("datasource", datasource);
@@ -134,6 +144,18 @@ class CertStoreQueryExecutor {
         this.sqls = new SQLs(datasource);
     } // constructor
 
+    /**
+     * Enables the change log. If enabled, every change of the table CERT is appended to the
+     * table CHANGELOG in the same transaction.
+     *
+     * @param changeLogEnabled
+     *          Whether the change log is enabled.
+     * @since 2.2.0
+     */
+    void setChangeLogEnabled(final boolean changeLogEnabled) {
+        this.changeLogEnabled = changeLogEnabled;
+    }
+
     void addCert(final NameId ca, final X509CertWithDbId certificate,
             final byte[] encodedSubjectPublicKey, final NameId certProfile,
             final NameId requestor, final Integer userId, final RequestType reqType,
@@ -173,7 +195,10 @@ class CertStoreQueryExecutor {
         long notAfterSeconds = cert.getNotAfter().getTime() / 1000;
 
         Connection conn = null;
-        PreparedStatement[] pss = borrowPreparedStatements(SQLs.SQL_ADD_CERT, SQLs.SQL_ADD_CRAW);
+        PreparedStatement[] pss = changeLogEnabled
+                ? borrowPreparedStatements(SQLs.SQL_ADD_CERT, SQLs.SQL_ADD_CRAW,
+                        SQLs.SQL_ADD_CHANGELOG)
+                : borrowPreparedStatements(SQLs.SQL_ADD_CERT, SQLs.SQL_ADD_CRAW);
 
         try {
             PreparedStatement psAddcert = pss[0];
@@ -225,6 +250,12 @@ class CertStoreQueryExecutor {
                 sql = SQLs.SQL_ADD_CRAW;
                 psAddRawcert.executeUpdate();
 
+                if (changeLogEnabled) {
+                    sql = SQLs.SQL_ADD_CHANGELOG;
+                    setChangeLogParams(pss[2], CHANGE_ADD, ca, certId, serialNumber);
+                    pss[2].executeUpdate();
+                }
+
                 sql = "(commit add cert to CA certstore)";
                 conn.commit();
             } catch (Throwable th) {
@@ -522,7 +553,7 @@ class CertStoreQueryExecutor {
             ps.setInt(idx++, revInfo.reason().code());
             ps.setLong(idx++, certId);
 
-            int count = ps.executeUpdate();
+            int count = executeUpdateWithChangeLog(ps, CHANGE_REVOKE, ca, certId, serialNumber);
             if (count != 1) {
                 String message = (count > 1)
                         ? count + " rows modified, but exactly one is expected"
@@ -580,7 +611,7 @@ class CertStoreQueryExecutor {
             ps.setInt(idx++, reason.code());
             ps.setLong(idx++, certId);
 
-            int count = ps.executeUpdate();
+            int count = executeUpdateWithChangeLog(ps, CHANGE_REVOKE, ca, certId, serialNumber);
             if (count != 1) {
                 String message = (count > 1)
                         ? count + " rows modified, but exactly one is expected"
@@ -643,7 +674,8 @@ class CertStoreQueryExecutor {
             ps.setNull(idx++, Types.INTEGER);
             ps.setLong(idx++, certId);
 
-            int count = ps.executeUpdate();
+            int count = executeUpdateWithChangeLog(ps, CHANGE_UNREVOKE, ca, certId,
+                    serialNumber);
             if (count != 1) {
                 String message = (count > 1)
                         ? count + " rows modified, but exactly one is expected"
@@ -705,7 +737,7 @@ class CertStoreQueryExecutor {
             ps.setInt(idx++, ca.id());
             ps.setString(idx++, serialNumber.toString(16));
 
-            int count = ps.executeUpdate();
+            int count = executeUpdateWithChangeLog(ps, CHANGE_REMOVE, ca, null, serialNumber);
             if (count != 1) {
                 String message = (count > 1)
                         ? count + " rows modified, but exactly one is expected"
@@ -719,6 +751,124 @@ class CertStoreQueryExecutor {
         }
     } // method removeCertificate
 
+    /**
+     * Executes the update of the table CERT, and appends the change to the change log in the
+     * same transaction if the change log is enabled.
+     */
+    private int executeUpdateWithChangeLog(final PreparedStatement ps, final int op,
+            final NameId ca, final Long certId, final BigInteger serialNumber)
+            throws SQLException, DataAccessException {
+        if (!changeLogEnabled) {
+            return ps.executeUpdate();
+        }
+
+        Connection conn = ps.getConnection();
+        PreparedStatement psChangeLog = datasource.prepareStatement(conn,
+                SQLs.SQL_ADD_CHANGELOG);
+        final boolean origAutoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int count = ps.executeUpdate();
+            if (count > 0) {
+                setChangeLogParams(psChangeLog, op, ca, certId, serialNumber);
+                psChangeLog.executeUpdate();
+            }
+            conn.commit();
+            return count;
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(origAutoCommit);
+            releaseStatement(psChangeLog);
+        }
+    } // method executeUpdateWithChangeLog
+
+    private void setChangeLogParams(final PreparedStatement ps, final int op, final NameId ca,
+            final Long certId, final BigInteger serialNumber) throws SQLException {
+        int idx = 1;
+        ps.setLong(idx++, idGenerator.nextId());
+        ps.setLong(idx++, System.currentTimeMillis());
+        ps.setInt(idx++, op);
+        ps.setInt(idx++, ca.id());
+        setLong(ps, idx++, certId);
+        ps.setString(idx++, serialNumber.toString(16));
+    }
+
+    /**
+     * Deletes the entries of the change log which are older than the given time. The
+     * greatest deleted ID is recorded as CHANGELOG_PURGED in the table DBSCHEMA before the
+     * entries are deleted, so that the consumers of the change log can detect that entries
+     * have been deleted before they were read.
+     *
+     * @param time
+     *          Time in milliseconds.
+     * @return number of deleted entries.
+     * @since 2.2.0
+     */
+    int deleteChangeLog(final long time) throws DataAccessException {
+        if (!changeLogEnabled) {
+            return 0;
+        }
+
+        String sql = SQLs.SQL_MAXID_CHANGELOG;
+        PreparedStatement ps = borrowPreparedStatement(sql);
+        ResultSet rs = null;
+        long maxId;
+        try {
+            ps.setLong(1, time);
+            rs = ps.executeQuery();
+            maxId = rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            releaseDbResources(ps, rs);
+        }
+
+        if (maxId == 0) {
+            return 0;
+        }
+
+        sql = SQLs.SQL_CHANGELOG_PURGED;
+        ps = borrowPreparedStatement(sql);
+        rs = null;
+        String purgedId;
+        try {
+            rs = ps.executeQuery();
+            purgedId = rs.next() ? rs.getString(1) : null;
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            releaseDbResources(ps, rs);
+        }
+
+        if (purgedId == null || Long.parseLong(purgedId) < maxId) {
+            sql = (purgedId == null) ? SQLs.SQL_ADD_CHANGELOG_PURGED
+                    : SQLs.SQL_UPDATE_CHANGELOG_PURGED;
+            ps = borrowPreparedStatement(sql);
+            try {
+                ps.setString(1, Long.toString(maxId));
+                ps.executeUpdate();
+            } catch (SQLException ex) {
+                throw datasource.translate(sql, ex);
+            } finally {
+                releaseDbResources(ps, null);
+            }
+        }
+
+        sql = SQLs.SQL_DELETE_CHANGELOG;
+        ps = borrowPreparedStatement(sql);
+        try {
+            ps.setLong(1, time);
+            ps.setLong(2, maxId);
+            return ps.executeUpdate();
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            releaseDbResources(ps, null);
+        }
+    } // method deleteChangeLog
+
     List<Long> getPublishQueueEntries(final NameId ca, final NameId publisher, final int numEntries)
             throws DataAccessException, OperationException {
         final String sql = sqls.getSqlCidFromPublishQueue(numEntries);
@@ -923,7 +1073,7 @@ class CertStoreQueryExecutor {
 
         String sql = (crlNumber == null) ? sqls.sqlCrl : sqls.sqlCrlWithNo;
         ResultSet rs = null;
-        PreparedStatement ps = borrowPreparedStatement(sql);
+        PreparedStatement ps = borrowReadOnlyPreparedStatement(sql);
 
         String b64Crl = null;
         try {
@@ -1362,15 +1512,17 @@ class CertStoreQueryExecutor {
             releaseDbResources(ps, rs);
         }
 
-        if (reqId == null) {
-            return null;
-        }
+        return (reqId == null) ? null : getRequest(reqId);
+    }
+
+    byte[] getRequest(final long requestId) throws DataAccessException {
+        final String sql = sqls.sqlReqForId;
+        ResultSet rs = null;
+        PreparedStatement ps = borrowPreparedStatement(sql);
 
         String b64Req = null;
-        sql = sqls.sqlReqForId;
-        ps = borrowPreparedStatement(sql);
         try {
-            ps.setLong(1, reqId);
+            ps.setLong(1, requestId);
             rs = ps.executeQuery();
             if (rs.next()) {
                 b64Req = rs.getString("DATA");
@@ -1460,7 +1612,7 @@ class CertStoreQueryExecutor {
 
         final String sql = datasource.buildSelectFirstSql(numEntries, sortByStr, sb.toString());
         ResultSet rs = null;
-        PreparedStatement ps = borrowPreparedStatement(sql);
+        PreparedStatement ps = borrowReadOnlyPreparedStatement(sql);
 
         try {
             ps.setInt(1, ca.id());
@@ -1618,6 +1770,23 @@ class CertStoreQueryExecutor {
         }
     } // method knowsCertForSerial
 
+    boolean knowsCertForId(final long certId) throws DataAccessException {
+        final String sql = sqls.sqlKnowsCertForId;
+
+        ResultSet rs = null;
+        PreparedStatement ps = borrowPreparedStatement(sql);
+
+        try {
+            ps.setLong(1, certId);
+            rs = ps.executeQuery();
+            return rs.next();
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            releaseDbResources(ps, rs);
+        }
+    } // method knowsCertForId
+
     List<CertRevInfoWithSerial> getRevokedCertificates(final NameId ca,
             final Date notExpiredAt, final long startId, final int numEntries,
             final boolean onlyCaCerts, final boolean onlyUserCerts)
@@ -1882,12 +2051,28 @@ class CertStoreQueryExecutor {
         throw new DataAccessException("could not create prepared statement for " + sqlQuery);
     } // method borrowPreparedStatement
 
+    /**
+     * Borrows a prepared statement for queries which tolerate the replication lag. It uses
+     * the read replicas if configured.
+     */
+    private PreparedStatement borrowReadOnlyPreparedStatement(final String sqlQuery)
+            throws DataAccessException {
+        Connection conn = datasource.getReadOnlyConnection();
+        PreparedStatement ps = datasource.prepareStatement(conn, sqlQuery);
+        if (ps != null) {
+            return ps;
+        }
+
+        datasource.returnConnection(conn);
+        throw new DataAccessException("could not create prepared statement for " + sqlQuery);
+    } // method borrowReadOnlyPreparedStatement
+
     private void releaseDbResources(final Statement ps, final ResultSet rs) {
         datasource.releaseResources(ps, rs);
     }
 
     boolean isHealthy() {
-        final String sql = "SELECT ID FROM CA";
+        final String sql = "SELECT NAME FROM DBSCHEMA";
 
         try {
             PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1906,7 +2091,8 @@ class CertStoreQueryExecutor {
         }
     } // method isHealthy
 
-    String getLatestSerialNumber(final X500Name nameWithSn) throws OperationException {
+    CertListInfo getLatestCertForSubjectLike(final X500Name nameWithSn)
+            throws OperationException {
         RDN[] rdns1 = nameWithSn.getRDNs();
         RDN[] rdns2 = new RDN[rdns1.length];
         for (int i = 0; i < rdns1.length; i++) {
@@ -1926,8 +2112,6 @@ class CertStoreQueryExecutor {
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
         }
 
-        String subjectStr;
-
         try {
             ps.setString(1, namePattern);
             rs = ps.executeQuery();
@@ -1935,21 +2119,16 @@ class CertStoreQueryExecutor {
                 return null;
             }
 
-            subjectStr = rs.getString("SUBJECT");
+            BigInteger sn = new BigInteger(rs.getString("SN"), 16);
+            Date notBefore = new Date(rs.getLong("NBEFORE") * 1000);
+            Date notAfter = new Date(rs.getLong("NAFTER") * 1000);
+            return new CertListInfo(sn, rs.getString("SUBJECT"), notBefore, notAfter);
         } catch (SQLException ex) {
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
         } finally {
             releaseDbResources(ps, rs);
         }
-
-        X500Name lastName = new X500Name(subjectStr);
-        RDN[] rdns = lastName.getRDNs(ObjectIdentifiers.DN_SERIALNUMBER);
-        if (rdns == null || rdns.length == 0) {
-            return null;
-        }
-
-        return X509Util.rdnValueToString(rdns[0].getFirst().getValue());
-    } // method getLatestSerialNumber
+    } // method getLatestCertForSubjectLike
 
     Long getNotBeforeOfFirstCertStartsWithCommonName(final String commonName,
             final NameId profile) throws DataAccessException {
@@ -1994,6 +2173,13 @@ class CertStoreQueryExecutor {
         ParamUtil.requireNonNull("request", request);
 
         long id = idGenerator.nextId();
+        addRequest(id, request);
+        return id;
+    }
+
+    void addRequest(final long id, final byte[] request) throws DataAccessException {
+        ParamUtil.requireNonNull("request", request);
+
         long currentTimeSeconds = System.currentTimeMillis() / 1000;
         String b64Request = Base64.encodeToString(request);
         final String sql = SQLs.SQL_ADD_REQUEST;
@@ -2009,8 +2195,6 @@ class CertStoreQueryExecutor {
         } finally {
             releaseDbResources(ps, null);
         }
-
-        return id;
     }
 
     void addRequestCert(long requestId, long certId) throws DataAccessException {
@@ -38,11 +38,17 @@ import java.math.BigInteger;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.security.auth.x500.X500Principal;
 
+import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,7 +73,9 @@ import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.datasource.springframework.dao.DataAccessException;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
+import org.xipki.security.ObjectIdentifiers;
 import org.xipki.security.X509Cert;
+import org.xipki.security.util.X509Util;
 
 /**
  * @author Lijun Liao
@@ -78,18 +86,249 @@ public class CertificateStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(CertificateStore.class);
 
+    private static final Comparator<SerialWithId> SERIAL_BY_ID = new Comparator<SerialWithId>() {
+
+        @Override
+        public int compare(final SerialWithId o1, final SerialWithId o2) {
+            return Long.compare(o1.id(), o2.id());
+        }
+
+    };
+
+    private static final Comparator<CertRevInfoWithSerial> REVINFO_BY_ID =
+            new Comparator<CertRevInfoWithSerial>() {
+
+        @Override
+        public int compare(final CertRevInfoWithSerial o1, final CertRevInfoWithSerial o2) {
+            return Long.compare(o1.id(), o2.id());
+        }
+
+    };
+
+    /**
+     * Shards of the certificate store. The first one is the CA database, which holds
+     * also the CRLs, the users and the requests.
+     */
+    private final List<CertStoreQueryExecutor> shards;
+
     private final CertStoreQueryExecutor queryExecutor;
 
+    /**
+     * Index of the shard holding all certificates of a CA, by CA name.
+     */
+    private final Map<String, Integer> caShards;
+
     public CertificateStore(final DataSourceWrapper datasource,
             final UniqueIdGenerator idGenerator) throws DataAccessException {
         ParamUtil.requireNonNull("datasource", datasource);
         this.queryExecutor = new CertStoreQueryExecutor(datasource, idGenerator);
+        this.shards = Collections.singletonList(queryExecutor);
+        this.caShards = Collections.emptyMap();
+    }
+
+    /**
+     * Creates a certificate store whose certificates are partitioned across several databases.
+     * The certificates of a CA are distributed over all shards by serial number, unless the
+     * CA is assigned to a single shard. The IDs generated for the shard with index {@code i}
+     * embed the shard id {@code shardId * n + i}, where {@code n} is the number of shards,
+     * so that an ID can be routed to its shard without querying the databases.
+     *
+     * @param datasources
+     *          Datasources of the shards, the first one is the CA database.
+     *          Must not be {@code null} and empty.
+     * @param epoch
+     *          Epoch of the ID generators.
+     * @param shardId
+     *          Shard id of this CA system. {@code (shardId + 1) * datasources.size()} must
+     *          not be greater than 128.
+     * @param caShards
+     *          Index of the shard holding all certificates of a CA, by CA name.
+     *          Could be {@code null}.
+     * @throws DataAccessException
+     *          if the schema information of a shard could not be read.
+     */
+    public CertificateStore(final List<DataSourceWrapper> datasources, final long epoch,
+            final int shardId, final Map<String, Integer> caShards) throws DataAccessException {
+        ParamUtil.requireNonEmpty("datasources", datasources);
+        final int num = datasources.size();
+        ParamUtil.requireRange("shardId", shardId, 0, 128 / num - 1);
+
+        List<CertStoreQueryExecutor> list = new ArrayList<>(num);
+        for (int i = 0; i < num; i++) {
+            UniqueIdGenerator idGen = new UniqueIdGenerator(epoch, shardId * num + i);
+            list.add(new CertStoreQueryExecutor(datasources.get(i), idGen));
+        }
+        this.shards = Collections.unmodifiableList(list);
+        this.queryExecutor = list.get(0);
+
+        Map<String, Integer> map = new HashMap<>();
+        if (caShards != null) {
+            for (String caName : caShards.keySet()) {
+                int idx = ParamUtil.requireRange("shard of CA " + caName, caShards.get(caName),
+                        0, num - 1);
+                map.put(caName.toUpperCase(), idx);
+            }
+        }
+        this.caShards = map;
+    }
+
+    public int numberOfShards() {
+        return shards.size();
+    }
+
+    /**
+     * Enables the change log in all shards. Each change of the certificates is then appended
+     * to the table CHANGELOG of its shard, in the same transaction as the change itself.
+     *
+     * @param changeLogEnabled
+     *          Whether the change log is enabled.
+     * @since 2.2.0
+     */
+    public void setChangeLogEnabled(final boolean changeLogEnabled) {
+        for (CertStoreQueryExecutor shard : shards) {
+            shard.setChangeLogEnabled(changeLogEnabled);
+        }
+    }
+
+    private int shardIndex(final NameId ca, final BigInteger serialNumber) {
+        Integer idx = caShards.get(ca.name().toUpperCase());
+        if (idx != null) {
+            return idx;
+        }
+
+        return Math.floorMod(serialNumber.hashCode(), shards.size());
+    }
+
+    private CertStoreQueryExecutor shardForId(final long id) {
+        return shards.get(UniqueIdGenerator.shardId(id) % shards.size());
+    }
+
+    /**
+     * Returns all shards, beginning with the one to which the given ID is routed.
+     */
+    private List<CertStoreQueryExecutor> shardsForId(final long id) {
+        if (shards.size() == 1) {
+            return shards;
+        }
+
+        CertStoreQueryExecutor home = shardForId(id);
+        List<CertStoreQueryExecutor> ret = new ArrayList<>(shards.size());
+        ret.add(home);
+        for (CertStoreQueryExecutor shard : shards) {
+            if (shard != home) {
+                ret.add(shard);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the shards which may contain certificates of the given CA.
+     */
+    private List<CertStoreQueryExecutor> shardsOfCa(final NameId ca) {
+        if (ca != null) {
+            Integer idx = caShards.get(ca.name().toUpperCase());
+            if (idx != null) {
+                return Collections.singletonList(shards.get(idx));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Returns the shard holding the given certificate. A certificate written before the
+     * current shard layout was configured may reside in another shard than the one its
+     * serial number is routed to, hence the other shards are searched if required.
+     */
+    private CertStoreQueryExecutor shardOfCert(final NameId ca, final BigInteger serialNumber)
+            throws DataAccessException, OperationException {
+        CertStoreQueryExecutor home = shards.get(shardIndex(ca, serialNumber));
+        if (shards.size() == 1 || home.knowsCertForSerial(ca, serialNumber).isKnown()) {
+            return home;
+        }
+
+        for (CertStoreQueryExecutor shard : shards) {
+            if (shard != home && shard.knowsCertForSerial(ca, serialNumber).isKnown()) {
+                return shard;
+            }
+        }
+        return home;
+    }
+
+    /**
+     * Returns the shard holding the certificate with the given ID. Like
+     * {@link #shardOfCert(NameId, BigInteger)}, the other shards are searched if the
+     * certificate does not reside in the shard its ID is routed to.
+     */
+    private CertStoreQueryExecutor shardOfCertId(final long certId)
+            throws DataAccessException {
+        CertStoreQueryExecutor home = shardForId(certId);
+        if (shards.size() == 1 || home.knowsCertForId(certId)) {
+            return home;
+        }
+
+        for (CertStoreQueryExecutor shard : shards) {
+            if (shard != home && shard.knowsCertForId(certId)) {
+                return shard;
+            }
+        }
+        return home;
+    }
+
+    private static <T> List<T> merge(final List<List<T>> lists, final Comparator<T> comparator,
+            final int numEntries) {
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+
+        List<T> ret = new ArrayList<>();
+        for (List<T> list : lists) {
+            ret.addAll(list);
+        }
+
+        if (comparator != null) {
+            Collections.sort(ret, comparator);
+        }
+
+        return (ret.size() > numEntries) ? new ArrayList<>(ret.subList(0, numEntries)) : ret;
+    }
+
+    private static Comparator<CertListInfo> certListComparator(final CertListOrderBy orderBy) {
+        if (orderBy == null) {
+            return null;
+        }
+
+        return new Comparator<CertListInfo>() {
+
+            @Override
+            public int compare(final CertListInfo o1, final CertListInfo o2) {
+                switch (orderBy) {
+                case NOT_BEFORE:
+                    return o1.notBefore().compareTo(o2.notBefore());
+                case NOT_BEFORE_DESC:
+                    return o2.notBefore().compareTo(o1.notBefore());
+                case NOT_AFTER:
+                    return o1.notAfter().compareTo(o2.notAfter());
+                case NOT_AFTER_DESC:
+                    return o2.notAfter().compareTo(o1.notAfter());
+                case SUBJECT:
+                    return o1.subject().compareTo(o2.subject());
+                case SUBJECT_DESC:
+                    return o2.subject().compareTo(o1.subject());
+                default:
+                    throw new RuntimeException("unknown CertListOrderBy " + orderBy);
+                }
+            }
+
+        };
     }
 
     public boolean addCertificate(final X509CertificateInfo certInfo) {
         ParamUtil.requireNonNull("certInfo", certInfo);
         try {
-            queryExecutor.addCert(certInfo.issuer(), certInfo.cert(),
+            BigInteger serialNumber = certInfo.cert().cert().getSerialNumber();
+            CertStoreQueryExecutor shard = shards.get(shardIndex(certInfo.issuer(), serialNumber));
+            shard.addCert(certInfo.issuer(), certInfo.cert(),
                     certInfo.subjectPublicKey(), certInfo.profile(),
                     certInfo.requestor(), certInfo.user(), certInfo.reqType(),
                     certInfo.transactionId(), certInfo.requestedSubject());
@@ -108,7 +347,7 @@ public class CertificateStore {
     public void addToPublishQueue(final NameId publisher, final long certId,
             final NameId ca) throws OperationException {
         try {
-            queryExecutor.addToPublishQueue(publisher, certId, ca);
+            shardOfCertId(certId).addToPublishQueue(publisher, certId, ca);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -121,7 +360,9 @@ public class CertificateStore {
     public void removeFromPublishQueue(final NameId publisher, final long certId)
             throws OperationException {
         try {
-            queryExecutor.removeFromPublishQueue(publisher, certId);
+            for (CertStoreQueryExecutor shard : shardsForId(certId)) {
+                shard.removeFromPublishQueue(publisher, certId);
+            }
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -134,7 +375,9 @@ public class CertificateStore {
     public void clearPublishQueue(final NameId ca, final NameId publisher)
             throws OperationException {
         try {
-            queryExecutor.clearPublishQueue(ca, publisher);
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                shard.clearPublishQueue(ca, publisher);
+            }
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -146,7 +389,11 @@ public class CertificateStore {
 
     public long getMaxIdOfDeltaCrlCache(final NameId ca) throws OperationException {
         try {
-            return queryExecutor.getMaxIdOfDeltaCrlCache(ca);
+            long maxId = 0;
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                maxId = Math.max(maxId, shard.getMaxIdOfDeltaCrlCache(ca));
+            }
+            return maxId;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -159,7 +406,9 @@ public class CertificateStore {
     public void clearDeltaCrlCache(final NameId ca, final long maxId)
             throws OperationException {
         try {
-            queryExecutor.clearDeltaCrlCache(ca, maxId);
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                shard.clearDeltaCrlCache(ca, maxId);
+            }
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -174,8 +423,8 @@ public class CertificateStore {
             final boolean publishToDeltaCrlCache, final CaIdNameMap idNameMap)
             throws OperationException {
         try {
-            X509CertWithRevocationInfo revokedCert = queryExecutor.revokeCert(ca, serialNumber,
-                    revInfo, force, publishToDeltaCrlCache, idNameMap);
+            X509CertWithRevocationInfo revokedCert = shardOfCert(ca, serialNumber).revokeCert(
+                    ca, serialNumber, revInfo, force, publishToDeltaCrlCache, idNameMap);
             if (revokedCert == null) {
                 LOG.info("could not revoke non-existing certificate CA={}, serialNumber={}",
                     ca.name(), LogUtil.formatCsn(serialNumber));
@@ -199,8 +448,9 @@ public class CertificateStore {
             final boolean publishToDeltaCrlCache, final CaIdNameMap idNameMap)
             throws OperationException {
         try {
-            X509CertWithRevocationInfo revokedCert = queryExecutor.revokeSuspendedCert(ca,
-                    serialNumber, reason, publishToDeltaCrlCache, idNameMap);
+            X509CertWithRevocationInfo revokedCert = shardOfCert(ca, serialNumber)
+                    .revokeSuspendedCert(ca, serialNumber, reason, publishToDeltaCrlCache,
+                            idNameMap);
             if (revokedCert == null) {
                 LOG.info("could not revoke non-existing certificate CA={}, serialNumber={}",
                     ca.name(), LogUtil.formatCsn(serialNumber));
@@ -224,8 +474,8 @@ public class CertificateStore {
             final boolean publishToDeltaCrlCache, final CaIdNameMap idNameMap)
             throws OperationException {
         try {
-            X509CertWithDbId unrevokedCert = queryExecutor.unrevokeCert(ca, serialNumber, force,
-                    publishToDeltaCrlCache, idNameMap);
+            X509CertWithDbId unrevokedCert = shardOfCert(ca, serialNumber).unrevokeCert(ca,
+                    serialNumber, force, publishToDeltaCrlCache, idNameMap);
             if (unrevokedCert == null) {
                 LOG.info("could not unrevoke non-existing certificate CA={}, serialNumber={}",
                     ca.name(), LogUtil.formatCsn(serialNumber));
@@ -247,7 +497,7 @@ public class CertificateStore {
     X509CertWithDbId getCert(final NameId ca, final BigInteger serialNumber,
             final CaIdNameMap idNameMap) throws OperationException {
         try {
-            return queryExecutor.getCert(ca, serialNumber, idNameMap);
+            return shardOfCert(ca, serialNumber).getCert(ca, serialNumber, idNameMap);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -260,7 +510,7 @@ public class CertificateStore {
     public void removeCertificate(final NameId ca, final BigInteger serialNumber)
             throws OperationException {
         try {
-            queryExecutor.removeCertificate(ca, serialNumber);
+            shardOfCert(ca, serialNumber).removeCertificate(ca, serialNumber);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -342,7 +592,16 @@ public class CertificateStore {
     public CertStatus getCertStatusForSubject(final NameId ca,
             final X500Principal subject) {
         try {
-            return queryExecutor.getCertStatusForSubject(ca, subject);
+            CertStatus status = CertStatus.UNKNOWN;
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                CertStatus shardStatus = shard.getCertStatusForSubject(ca, subject);
+                if (shardStatus == CertStatus.GOOD) {
+                    return shardStatus;
+                } else if (shardStatus == CertStatus.REVOKED) {
+                    status = shardStatus;
+                }
+            }
+            return status;
         } catch (DataAccessException ex) {
             LOG.error("queryExecutor.getCertStatusForSubject. DataAccessException: {}",
                     ex.getMessage());
@@ -353,7 +612,16 @@ public class CertificateStore {
 
     public CertStatus getCertStatusForSubject(final NameId ca, final X500Name subject) {
         try {
-            return queryExecutor.getCertStatusForSubject(ca, subject);
+            CertStatus status = CertStatus.UNKNOWN;
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                CertStatus shardStatus = shard.getCertStatusForSubject(ca, subject);
+                if (shardStatus == CertStatus.GOOD) {
+                    return shardStatus;
+                } else if (shardStatus == CertStatus.REVOKED) {
+                    status = shardStatus;
+                }
+            }
+            return status;
         } catch (DataAccessException ex) {
             LogUtil.error(LOG, ex, "queryExecutor.getCertStatusForSubject");
             return CertStatus.UNKNOWN;
@@ -368,8 +636,12 @@ public class CertificateStore {
             final Date notExpiredAt, final long startId, final int numEntries,
             final boolean onlyCaCerts, final boolean onlyUserCerts) throws OperationException {
         try {
-            return queryExecutor.getRevokedCertificates(ca, notExpiredAt, startId,
-                    numEntries, onlyCaCerts, onlyUserCerts);
+            List<List<CertRevInfoWithSerial>> lists = new ArrayList<>(shards.size());
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                lists.add(shard.getRevokedCertificates(ca, notExpiredAt, startId,
+                        numEntries, onlyCaCerts, onlyUserCerts));
+            }
+            return merge(lists, REVINFO_BY_ID, numEntries);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -383,8 +655,12 @@ public class CertificateStore {
             final long startId, final int numEntries, final boolean onlyCaCerts,
             final boolean onlyUserCerts) throws OperationException {
         try {
-            return queryExecutor.getCertificatesForDeltaCrl(ca, startId, numEntries,
-                    onlyCaCerts, onlyUserCerts);
+            List<List<CertRevInfoWithSerial>> lists = new ArrayList<>(shards.size());
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                lists.add(shard.getCertificatesForDeltaCrl(ca, startId, numEntries,
+                        onlyCaCerts, onlyUserCerts));
+            }
+            return merge(lists, REVINFO_BY_ID, numEntries);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -397,7 +673,11 @@ public class CertificateStore {
     public long getCountOfCerts(final NameId ca, final boolean onlyRevoked)
             throws OperationException {
         try {
-            return queryExecutor.getCountOfCerts(ca, onlyRevoked);
+            long count = 0;
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                count += shard.getCountOfCerts(ca, onlyRevoked);
+            }
+            return count;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -410,7 +690,11 @@ public class CertificateStore {
     public List<SerialWithId> getCertSerials(final NameId ca, final long startId,
             final int numEntries, final boolean onlyRevoked) throws OperationException {
         try {
-            return queryExecutor.getSerialNumbers(ca, startId, numEntries, onlyRevoked);
+            List<List<SerialWithId>> lists = new ArrayList<>(shards.size());
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                lists.add(shard.getSerialNumbers(ca, startId, numEntries, onlyRevoked));
+            }
+            return merge(lists, SERIAL_BY_ID, numEntries);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -424,8 +708,12 @@ public class CertificateStore {
             final long startId, final int numEntries, final boolean onlyRevoked,
             final boolean onlyCaCerts, final boolean onlyUserCerts) throws OperationException {
         try {
-            return queryExecutor.getSerialNumbers(ca, notExpiredAt, startId, numEntries,
-                    onlyRevoked, onlyCaCerts, onlyUserCerts);
+            List<List<SerialWithId>> lists = new ArrayList<>(shards.size());
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                lists.add(shard.getSerialNumbers(ca, notExpiredAt, startId, numEntries,
+                        onlyRevoked, onlyCaCerts, onlyUserCerts));
+            }
+            return merge(lists, SERIAL_BY_ID, numEntries);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -438,7 +726,14 @@ public class CertificateStore {
     public List<BigInteger> getExpiredCertSerials(final NameId ca, final long expiredAt,
             final int numEntries) throws OperationException {
         try {
-            return queryExecutor.getExpiredSerialNumbers(ca, expiredAt, numEntries);
+            List<BigInteger> ret = new ArrayList<>();
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                ret.addAll(shard.getExpiredSerialNumbers(ca, expiredAt, numEntries - ret.size()));
+                if (ret.size() >= numEntries) {
+                    break;
+                }
+            }
+            return ret;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -451,7 +746,15 @@ public class CertificateStore {
     public List<BigInteger> getSuspendedCertSerials(final NameId ca,
             final long latestLastUpdate, final int numEntries) throws OperationException {
         try {
-            return queryExecutor.getSuspendedCertSerials(ca, latestLastUpdate, numEntries);
+            List<BigInteger> ret = new ArrayList<>();
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                ret.addAll(shard.getSuspendedCertSerials(ca, latestLastUpdate,
+                        numEntries - ret.size()));
+                if (ret.size() >= numEntries) {
+                    break;
+                }
+            }
+            return ret;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -464,7 +767,11 @@ public class CertificateStore {
     public List<Long> getPublishQueueEntries(final NameId ca,
             final NameId publisher, final int numEntries) throws OperationException {
         try {
-            return queryExecutor.getPublishQueueEntries(ca, publisher, numEntries);
+            List<List<Long>> lists = new ArrayList<>(shards.size());
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                lists.add(shard.getPublishQueueEntries(ca, publisher, numEntries));
+            }
+            return merge(lists, Comparator.<Long>naturalOrder(), numEntries);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -476,7 +783,7 @@ public class CertificateStore {
     public X509CertWithRevocationInfo getCertWithRevocationInfo(final NameId ca,
             final BigInteger serial, final CaIdNameMap idNameMap) throws OperationException {
         try {
-            return queryExecutor.getCertWithRevocationInfo(ca, serial, idNameMap);
+            return shardOfCert(ca, serial).getCertWithRevocationInfo(ca, serial, idNameMap);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -490,7 +797,7 @@ public class CertificateStore {
             final X509Cert caCert, final BigInteger serial, final CaIdNameMap idNameMap)
             throws OperationException, CertificateException {
         try {
-            return queryExecutor.getCertificateInfo(ca, caCert, serial, idNameMap);
+            return shardOfCert(ca, serial).getCertificateInfo(ca, caCert, serial, idNameMap);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -503,7 +810,13 @@ public class CertificateStore {
     public Integer getCertProfileForId(final NameId ca, final long id)
             throws OperationException {
         try {
-            return queryExecutor.getCertProfileForCertId(ca, id);
+            for (CertStoreQueryExecutor shard : shardsForId(id)) {
+                Integer profileId = shard.getCertProfileForCertId(ca, id);
+                if (profileId != null) {
+                    return profileId;
+                }
+            }
+            return null;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -516,7 +829,7 @@ public class CertificateStore {
     public Integer getCertProfileForSerial(final NameId ca, final BigInteger serial)
             throws OperationException {
         try {
-            return queryExecutor.getCertProfileForSerial(ca, serial);
+            return shardOfCert(ca, serial).getCertProfileForSerial(ca, serial);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -529,7 +842,11 @@ public class CertificateStore {
     public List<X509Certificate> getCertificate(final X500Name subjectName,
             final byte[] transactionId) throws OperationException {
         try {
-            return queryExecutor.getCertificate(subjectName, transactionId);
+            List<X509Certificate> certs = new ArrayList<>();
+            for (CertStoreQueryExecutor shard : shards) {
+                certs.addAll(shard.getCertificate(subjectName, transactionId));
+            }
+            return certs;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -542,7 +859,7 @@ public class CertificateStore {
     public byte[] getCertRequest(final NameId ca, final BigInteger serialNumber)
             throws OperationException {
         try {
-            return queryExecutor.getCertRequest(ca, serialNumber);
+            return shardOfCert(ca, serialNumber).getCertRequest(ca, serialNumber);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -557,8 +874,12 @@ public class CertificateStore {
             final Date validFrom, final Date validTo, final CertListOrderBy orderBy,
             final int numEntries) throws OperationException {
         try {
-            return queryExecutor.listCertificates(ca, subjectPattern, validFrom, validTo,
-                    orderBy, numEntries);
+            List<List<CertListInfo>> lists = new ArrayList<>(shards.size());
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                lists.add(shard.listCertificates(ca, subjectPattern, validFrom, validTo,
+                        orderBy, numEntries));
+            }
+            return merge(lists, certListComparator(orderBy), numEntries);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -611,7 +932,7 @@ public class CertificateStore {
     public KnowCertResult knowsCertForSerial(final NameId ca, final BigInteger serial)
             throws OperationException {
         try {
-            return queryExecutor.knowsCertForSerial(ca, serial);
+            return shardOfCert(ca, serial).knowsCertForSerial(ca, serial);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -622,13 +943,23 @@ public class CertificateStore {
     }
 
     public boolean isHealthy() {
-        return queryExecutor.isHealthy();
+        for (CertStoreQueryExecutor shard : shards) {
+            if (!shard.isHealthy()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public boolean isCertForSubjectIssued(final NameId ca, final long subjectFp)
             throws OperationException {
         try {
-            return queryExecutor.isCertForSubjectIssued(ca, subjectFp);
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                if (shard.isCertForSubjectIssued(ca, subjectFp)) {
+                    return true;
+                }
+            }
+            return false;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -641,7 +972,12 @@ public class CertificateStore {
     public boolean isCertForKeyIssued(final NameId ca, final long keyFp)
             throws OperationException {
         try {
-            return queryExecutor.isCertForKeyIssued(ca, keyFp);
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                if (shard.isCertForKeyIssued(ca, keyFp)) {
+                    return true;
+                }
+            }
+            return false;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -655,7 +991,13 @@ public class CertificateStore {
             final X509Cert caCert,final long certId, final CaIdNameMap idNameMap)
             throws OperationException, CertificateException {
         try {
-            return queryExecutor.getCertForId(ca, caCert, certId, idNameMap);
+            for (CertStoreQueryExecutor shard : shardsForId(certId)) {
+                X509CertificateInfo certInfo = shard.getCertForId(ca, caCert, certId, idNameMap);
+                if (certInfo != null) {
+                    return certInfo;
+                }
+            }
+            return null;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -667,7 +1009,13 @@ public class CertificateStore {
 
     public X509CertWithDbId getCertForId(final long certId) throws OperationException {
         try {
-            return queryExecutor.getCertForId(certId);
+            for (CertStoreQueryExecutor shard : shardsForId(certId)) {
+                X509CertWithDbId cert = shard.getCertForId(certId);
+                if (cert != null) {
+                    return cert;
+                }
+            }
+            return null;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -680,7 +1028,25 @@ public class CertificateStore {
     public String getLatestSerialNumber(final X500Name nameWithSerialNumber)
             throws OperationException {
         try {
-            return queryExecutor.getLatestSerialNumber(nameWithSerialNumber);
+            CertListInfo latest = null;
+            for (CertStoreQueryExecutor shard : shards) {
+                CertListInfo info = shard.getLatestCertForSubjectLike(nameWithSerialNumber);
+                if (info != null
+                        && (latest == null || info.notBefore().after(latest.notBefore()))) {
+                    latest = info;
+                }
+            }
+
+            if (latest == null) {
+                return null;
+            }
+
+            RDN[] rdns = new X500Name(latest.subject()).getRDNs(ObjectIdentifiers.DN_SERIALNUMBER);
+            if (rdns == null || rdns.length == 0) {
+                return null;
+            }
+
+            return X509Util.rdnValueToString(rdns[0].getFirst().getValue());
         } catch (RuntimeException ex) {
             LOG.debug("RuntimeException", ex);
             throw new OperationException(ErrorCode.SYSTEM_FAILURE, ex.getMessage());
@@ -690,7 +1056,16 @@ public class CertificateStore {
     public Long getNotBeforeOfFirstCertStartsWithCommonName(final String commonName,
             final NameId profile) throws OperationException {
         try {
-            return queryExecutor.getNotBeforeOfFirstCertStartsWithCommonName(commonName, profile);
+            Long notBefore = null;
+            for (CertStoreQueryExecutor shard : shards) {
+                Long shardNotBefore =
+                        shard.getNotBeforeOfFirstCertStartsWithCommonName(commonName, profile);
+                if (shardNotBefore != null
+                        && (notBefore == null || shardNotBefore < notBefore)) {
+                    notBefore = shardNotBefore;
+                }
+            }
+            return notBefore;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -702,7 +1077,12 @@ public class CertificateStore {
 
     public boolean containsCaCertificates(final NameId ca) throws OperationException {
         try {
-            return queryExecutor.containsCertificates(ca, false);
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                if (shard.containsCertificates(ca, false)) {
+                    return true;
+                }
+            }
+            return false;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -713,7 +1093,12 @@ public class CertificateStore {
 
     public boolean containsEeCertificates(final NameId ca) throws OperationException {
         try {
-            return queryExecutor.containsCertificates(ca, true);
+            for (CertStoreQueryExecutor shard : shardsOfCa(ca)) {
+                if (shard.containsCertificates(ca, true)) {
+                    return true;
+                }
+            }
+            return false;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -725,7 +1110,33 @@ public class CertificateStore {
 
     public void deleteUnreferencedRequests() throws OperationException {
         try {
-            queryExecutor.deleteUnreferencedRequests();
+            for (CertStoreQueryExecutor shard : shards) {
+                shard.deleteUnreferencedRequests();
+            }
+        } catch (DataAccessException ex) {
+            LOG.debug("DataAccessException", ex);
+            throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
+        } catch (RuntimeException ex) {
+            LOG.debug("RuntimeException", ex);
+            throw new OperationException(ErrorCode.SYSTEM_FAILURE, ex.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the entries of the change log of all shards which are older than the given time.
+     *
+     * @param time
+     *          Time in milliseconds.
+     * @return number of deleted entries.
+     * @since 2.2.0
+     */
+    public int deleteChangeLog(final long time) throws OperationException {
+        try {
+            int num = 0;
+            for (CertStoreQueryExecutor shard : shards) {
+                num += shard.deleteChangeLog(time);
+            }
+            return num;
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
@@ -749,7 +1160,13 @@ public class CertificateStore {
 
     public void addRequestCert(long requestId, long certId) throws OperationException {
         try {
-            queryExecutor.addRequestCert(requestId, certId);
+            CertStoreQueryExecutor shard = shardOfCertId(certId);
+            if (shard != queryExecutor && shard.getRequest(requestId) == null) {
+                // requests are added to the CA database, copy it to the shard of the
+                // certificate so that the request and the certificate are linked there.
+                shard.addRequest(requestId, queryExecutor.getRequest(requestId));
+            }
+            shard.addRequestCert(requestId, certId);
         } catch (DataAccessException ex) {
             LOG.debug("DataAccessException", ex);
             throw new OperationException(ErrorCode.DATABASE_FAILURE, ex.getMessage());
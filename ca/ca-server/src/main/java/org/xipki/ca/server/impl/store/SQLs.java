@@ -89,6 +89,24 @@ class SQLs {
     static final String SQL_REMOVE_CERT =
             "DELETE FROM CERT WHERE CA_ID=? AND SN=?";
 
+    static final String SQL_ADD_CHANGELOG =
+            "INSERT INTO CHANGELOG (ID,CTIME,OP,CA_ID,CID,SN) VALUES (?,?,?,?,?,?)";
+
+    static final String SQL_MAXID_CHANGELOG =
+            "SELECT MAX(ID) FROM CHANGELOG WHERE CTIME<?";
+
+    static final String SQL_DELETE_CHANGELOG =
+            "DELETE FROM CHANGELOG WHERE CTIME<? AND ID<=?";
+
+    static final String SQL_CHANGELOG_PURGED =
+            "SELECT VALUE2 FROM DBSCHEMA WHERE NAME='CHANGELOG_PURGED'";
+
+    static final String SQL_UPDATE_CHANGELOG_PURGED =
+            "UPDATE DBSCHEMA SET VALUE2=? WHERE NAME='CHANGELOG_PURGED'";
+
+    static final String SQL_ADD_CHANGELOG_PURGED =
+            "INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES ('CHANGELOG_PURGED',?)";
+
     static final String SQL_DELETE_UNREFERENCED_REQUEST =
             "DELETE FROM REQUEST WHERE ID NOT IN (SELECT req.RID FROM REQCERT req)";
 
@@ -122,6 +140,8 @@ class SQLs {
 
     final String sqlKnowsCertForSerial;
 
+    final String sqlKnowsCertForId;
+
     final String sqlRevForId;
 
     final String sqlCertStatusForSubjectFp;
@@ -191,6 +211,8 @@ class SQLs {
                 "PERMISSION,PROFILES FROM CA_HAS_USER WHERE CA_ID=? AND USER_ID=?");
         this.sqlKnowsCertForSerial = datasource.buildSelectFirstSql(1,
                 "UID FROM CERT WHERE SN=? AND CA_ID=?");
+        this.sqlKnowsCertForId = datasource.buildSelectFirstSql(1,
+                "ID FROM CERT WHERE ID=?");
         this.sqlRevForId = datasource.buildSelectFirstSql(1,
                 "SN,EE,REV,RR,RT,RIT FROM CERT WHERE ID=?");
         this.sqlCertStatusForSubjectFp = datasource.buildSelectFirstSql(1,
@@ -200,7 +222,7 @@ class SQLs {
         this.sqlCertForKeyIssued = datasource.buildSelectFirstSql(1,
                 "ID FROM CERT WHERE CA_ID=? AND FP_K=?");
         this.sqlLatestSerialForSubjectLike = datasource.buildSelectFirstSql(1, "NBEFORE DESC",
-                "SUBJECT FROM CERT WHERE SUBJECT LIKE ?");
+                "SN,NBEFORE,NAFTER,SUBJECT FROM CERT WHERE SUBJECT LIKE ?");
         this.sqlLatestSerialForCertprofileAndSubjectLike = datasource.buildSelectFirstSql(1,
                 "NBEFORE ASC",
                 "NBEFORE FROM CERT WHERE PID=? AND SUBJECT LIKE ?");
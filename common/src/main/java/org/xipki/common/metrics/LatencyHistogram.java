@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in the manner of HdrHistogram. Each
+ * power of two is divided into 32 buckets, so that the relative error of the percentiles is
+ * at most 1/32. Values above about 73 minutes are recorded in the highest bucket.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public final class LatencyHistogram {
+
+    public static final class Snapshot {
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        private final long[] counts;
+
+        private Snapshot(final long count, final long sum, final long max, final long[] counts) {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+            this.counts = counts;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the mean value in nanoseconds.
+         */
+        public long mean() {
+            return (count == 0) ? 0 : sum / count;
+        }
+
+        /**
+         * Returns the maximal value in nanoseconds.
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * Returns the value in nanoseconds at the given percentile.
+         *
+         * @param percentile
+         *          Percentile between 0 and 100.
+         * @return the highest value of the bucket containing the percentile.
+         */
+        public long percentile(final double percentile) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+            rank = Math.max(1, rank);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // the highest bucket is open-ended
+                    return (i == counts.length - 1) ? max : Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(120);
+            sb.append("count=").append(count)
+                .append(" mean=").append(formatMillis(mean()))
+                .append(" p50=").append(formatMillis(percentile(50)))
+                .append(" p90=").append(formatMillis(percentile(90)))
+                .append(" p99=").append(formatMillis(percentile(99)))
+                .append(" p99.9=").append(formatMillis(percentile(99.9)))
+                .append(" max=").append(formatMillis(max));
+            return sb.toString();
+        }
+
+    }
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // 2^42 ns: about 73 minutes
+    private static final int MAX_EXPONENT = 42;
+
+    private static final int BUCKETS = SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+
+    private final String name;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram(final String name) {
+        this.name = ParamUtil.requireNonBlank("name", name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param nanos
+     *          Value in nanoseconds, negative values are ignored.
+     */
+    public void record(final long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+
+        counts.incrementAndGet(bucketIndex(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public void record(final long duration, final TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(count.sum(), sum.sum(), max.get(), copy);
+    }
+
+    /**
+     * Resets the histogram. Values recorded concurrently may be partly lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + snapshot();
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (shift + 1) + subBucket;
+    }
+
+    static long highestValue(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    static String formatMillis(final long nanos) {
+        long micros = nanos / 1000;
+        StringBuilder sb = new StringBuilder(12);
+        sb.append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) {
+            sb.append('0');
+        }
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction).append("ms");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.common.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Registry of the latency histograms and gauges of this JVM. The histograms are usually
+ * looked up once and kept in static fields, and fed via {@link PhaseTimer}.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public final class Metrics {
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> HISTOGRAMS =
+            new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, LongSupplier> GAUGES =
+            new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the histogram with given name, it will be created if not exists.
+     *
+     * @param name
+     *          Name of the histogram, e.g. ocsp.answer.sign. Must not be blank.
+     * @return the histogram.
+     */
+    public static LatencyHistogram histogram(final String name) {
+        ParamUtil.requireNonBlank("name", name);
+        LatencyHistogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            histogram = HISTOGRAMS.computeIfAbsent(name, LatencyHistogram::new);
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, an existing one with the same name will be replaced.
+     *
+     * @param name
+     *          Name of the gauge. Must not be blank.
+     * @param gauge
+     *          Supplier of the current value. Must not be {@code null}.
+     */
+    public static void registerGauge(final String name, final LongSupplier gauge) {
+        ParamUtil.requireNonBlank("name", name);
+        ParamUtil.requireNonNull("gauge", gauge);
+        GAUGES.put(name, gauge);
+    }
+
+    public static void unregisterGauge(final String name) {
+        ParamUtil.requireNonNull("name", name);
+        GAUGES.remove(name);
+    }
+
+    public static SortedMap<String, LatencyHistogram> histograms() {
+        return new TreeMap<>(HISTOGRAMS);
+    }
+
+    public static SortedMap<String, Long> gauges() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    /**
+     * Resets all histograms.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Returns the text report of the histograms and gauges, one line per metric.
+     *
+     * @param prefix
+     *          Only the metrics whose names start with it are reported. {@code null} for
+     *          all metrics.
+     * @return the report.
+     */
+    public static String report(final String prefix) {
+        StringBuilder sb = new StringBuilder(1000);
+        for (LatencyHistogram histogram : histograms().values()) {
+            if (prefix == null || histogram.name().startsWith(prefix)) {
+                sb.append(histogram).append('\n');
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : gauges().entrySet()) {
+            if (prefix == null || entry.getKey().startsWith(prefix)) {
+                sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.common.metrics;
+
+/**
+ * Measures the phases of a single request. A timer is created at the start of the request,
+ * {@link #phase(LatencyHistogram)} records the time elapsed since the previous phase, and
+ * {@link #total(LatencyHistogram)} records the time elapsed since the start.
+ *
+ * <pre>
+ * PhaseTimer timer = new PhaseTimer();
+ * parse();
+ * timer.phase(PARSE);
+ * sign();
+ * timer.phase(SIGN);
+ * timer.total(TOTAL);
+ * </pre>
+ *
+ * <p>A timer is not thread-safe.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public final class PhaseTimer {
+
+    private final long start;
+
+    private long last;
+
+    public PhaseTimer() {
+        this.start = System.nanoTime();
+        this.last = start;
+    }
+
+    /**
+     * Records the time elapsed since the previous phase and starts the next phase.
+     *
+     * @param histogram
+     *          Histogram of the finished phase. Must not be {@code null}.
+     */
+    public void phase(final LatencyHistogram histogram) {
+        long now = System.nanoTime();
+        histogram.record(now - last);
+        last = now;
+    }
+
+    /**
+     * Starts the next phase without recording the previous one.
+     */
+    public void skip() {
+        last = System.nanoTime();
+    }
+
+    /**
+     * Records the time elapsed since the creation of this timer.
+     *
+     * @param histogram
+     *          Histogram of the whole request. Must not be {@code null}.
+     */
+    public void total(final LatencyHistogram histogram) {
+        histogram.record(System.nanoTime() - start);
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+}
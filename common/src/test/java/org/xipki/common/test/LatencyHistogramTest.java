@@ -0,0 +1,193 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.common.test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xipki.common.metrics.LatencyHistogram;
+import org.xipki.common.metrics.LatencyHistogram.Snapshot;
+
+import junit.framework.Assert;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class LatencyHistogramTest {
+
+    // larger than all other recorded values, so that the percentiles are not capped by max
+    private static final long LARGE = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testEmpty() {
+        Snapshot snapshot = new LatencyHistogram("test").snapshot();
+        Assert.assertEquals(0, snapshot.count());
+        Assert.assertEquals(0, snapshot.mean());
+        Assert.assertEquals(0, snapshot.max());
+        Assert.assertEquals(0, snapshot.percentile(50));
+        Assert.assertEquals(0, snapshot.percentile(100));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        // values below 64 have their own bucket
+        for (long value = 0; value < 64; value++) {
+            Assert.assertEquals("value " + value, value, median(value));
+        }
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        // from 64 to 127 the width of the buckets is 2
+        Assert.assertEquals(65, median(64));
+        Assert.assertEquals(65, median(65));
+        Assert.assertEquals(67, median(66));
+        Assert.assertEquals(127, median(126));
+        // from 128 to 255 the width of the buckets is 4
+        Assert.assertEquals(131, median(128));
+        Assert.assertEquals(131, median(131));
+        Assert.assertEquals(135, median(132));
+        Assert.assertEquals(255, median(252));
+        // power of two
+        Assert.assertEquals((1L << 20) + (1L << 15) - 1, median(1L << 20));
+        Assert.assertEquals((1L << 21) - 1, median((1L << 21) - 1));
+    }
+
+    @Test
+    public void testRelativeError() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            long value = 1 + (long) (random.nextDouble() * (LARGE - 1));
+            long median = median(value);
+            Assert.assertTrue("value " + value + ", median " + median,
+                    median >= value && median - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1000, snapshot.count());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), snapshot.max());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(500500), snapshot.mean());
+
+        assertPercentile(snapshot, 50, 500);
+        assertPercentile(snapshot, 90, 900);
+        assertPercentile(snapshot, 99, 990);
+        assertPercentile(snapshot, 99.9, 999);
+        // the maximum is exact
+        Assert.assertEquals(snapshot.max(), snapshot.percentile(100));
+        // the percentile is clamped to [0, 100]
+        Assert.assertEquals(snapshot.percentile(0), snapshot.percentile(-1));
+        Assert.assertEquals(snapshot.percentile(100), snapshot.percentile(200));
+    }
+
+    @Test
+    public void testPercentileCappedByMax() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(1000);
+        // the highest value of the bucket is 1023
+        Assert.assertEquals(1000, histogram.snapshot().percentile(50));
+    }
+
+    @Test
+    public void testValuesAboveHighestBucket() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(1L << 50);
+        histogram.record(1L << 51);
+
+        Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(2, snapshot.count());
+        Assert.assertEquals(1L << 51, snapshot.max());
+        // both values are in the highest bucket, which is bounded only by max
+        Assert.assertEquals(1L << 51, snapshot.percentile(50));
+        Assert.assertEquals(1L << 51, snapshot.percentile(100));
+    }
+
+    @Test
+    public void testNegativeValueIgnored() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(-1);
+        Assert.assertEquals(0, histogram.snapshot().count());
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(100);
+        histogram.reset();
+
+        Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(0, snapshot.count());
+        Assert.assertEquals(0, snapshot.max());
+        Assert.assertEquals(0, snapshot.percentile(99));
+    }
+
+    @Test
+    public void testToString() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(1500, TimeUnit.MICROSECONDS);
+        Assert.assertEquals("test count=1 mean=1.500ms p50=1.500ms p90=1.500ms p99=1.500ms "
+                + "p99.9=1.500ms max=1.500ms", histogram.toString());
+    }
+
+    /**
+     * Returns the median of value and {@link #LARGE}, namely the highest value of the
+     * bucket containing value.
+     */
+    private static long median(final long value) {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(value);
+        histogram.record(LARGE);
+        return histogram.snapshot().percentile(50);
+    }
+
+    private static void assertPercentile(final Snapshot snapshot, final double percentile,
+            final long expectedMillis) {
+        long expected = TimeUnit.MILLISECONDS.toNanos(expectedMillis);
+        long actual = snapshot.percentile(percentile);
+        Assert.assertTrue("p" + percentile + ": " + actual,
+                actual >= expected && actual - expected <= expected / 32);
+    }
+
+}
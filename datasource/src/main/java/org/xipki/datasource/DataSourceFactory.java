@@ -115,8 +115,14 @@ public class DataSourceFactory {
 
         Set<Object> keySet = new HashSet<>(conf.keySet());
         for (Object key : keySet) {
-            if (((String) key).startsWith("liquibase")) {
+            String str = (String) key;
+            if (str.startsWith("liquibase")) {
                 conf.remove(key);
+            } else if (str.startsWith("replica.") && passwordResolver != null
+                    && str.endsWith(".password")) {
+                // password of a read replica, e.g. replica.1.password
+                password = conf.getProperty(str);
+                conf.setProperty(str, new String(passwordResolver.resolvePassword(password)));
             }
         }
 
@@ -47,6 +47,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.common.LruCache;
+import org.xipki.common.metrics.Metrics;
 import org.xipki.common.util.LogUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.StringUtil;
@@ -389,6 +390,16 @@ public abstract class DataSourceWrapper {
             return sql.toString();
         }
 
+        /*
+         * Oracle supports multi-row INSERT only with INSERT ALL, which is slower
+         * than JDBC batches.
+         */
+        @Override
+        public String buildMultiRowInsertSql(final int rows, final String table,
+                final String... columns) {
+            return null;
+        }
+
         @Override
         protected String getSqlToDropPrimaryKey(final String primaryKeyName, final String table) {
             return getSqlToDropUniqueConstraint(primaryKeyName, table);
@@ -543,6 +554,10 @@ public abstract class DataSourceWrapper {
 
     private static final Logger LOG = LoggerFactory.getLogger(DataSourceWrapper.class);
 
+    private static final String PROP_STATEMENT_CACHE_SIZE = "statementCacheSize";
+
+    private static final int DFLT_STATEMENT_CACHE_SIZE = 20;
+
     /**
      * References the real data source implementation this class acts as pure
      * proxy for. Derived classes must set this field at construction time.
@@ -564,6 +579,24 @@ public abstract class DataSourceWrapper {
 
     private final LruCache<String, String> cacheSeqNameSqls;
 
+    /**
+     * Read replicas, {@code null} if no replica is configured. It is set only once in
+     * {@link #createDataSource(String, Properties, DatabaseType)}.
+     */
+    private ReadReplicas replicas;
+
+    /**
+     * Cache of the prepared statements, {@code null} if disabled. It is set only once in
+     * {@link #createDataSource(String, Properties, DatabaseType)}.
+     */
+    private PreparedStatementCache statementCache;
+
+    /**
+     * Instrumentation of the statements, {@code null} if disabled. It is set only once in
+     * {@link #createDataSource(String, Properties, DatabaseType)}.
+     */
+    private QueryMetrics queryMetrics;
+
     private DataSourceWrapper(final String name, final HikariDataSource service,
             final DatabaseType dbType) {
         this.service = ParamUtil.requireNonNull("service", service);
@@ -604,6 +637,40 @@ public abstract class DataSourceWrapper {
         }
     }
 
+    /**
+     * Returns a connection for read-only queries which tolerate the replication lag. If read
+     * replicas are configured, the connection of a healthy replica is returned, otherwise
+     * (or if no replica is healthy) the connection of the primary database. The connection
+     * must be returned via {@link #returnConnection(Connection)} or
+     * {@link #releaseResources(Statement, ResultSet)} as usual.
+     *
+     * @return the connection.
+     * @throws DataAccessException
+     *          if no connection could be created.
+     */
+    public final Connection getReadOnlyConnection() throws DataAccessException {
+        if (replicas != null) {
+            Connection conn = replicas.getConnection();
+            if (conn != null) {
+                return conn;
+            }
+        }
+        return getConnection();
+    }
+
+    public final boolean hasReadReplicas() {
+        return replicas != null;
+    }
+
+    /**
+     * Returns the number of the healthy read replicas.
+     *
+     * @return number of the healthy read replicas, 0 if no replica is configured.
+     */
+    public final int healthyReadReplicas() {
+        return (replicas == null) ? 0 : replicas.healthyReplicas();
+    }
+
     public void returnConnection(final Connection conn) {
         if (conn == null) {
             return;
@@ -621,6 +688,23 @@ public abstract class DataSourceWrapper {
     }
 
     public void close() {
+        if (statementCache != null) {
+            String prefix = "datasource." + name + ".statementCache.";
+            Metrics.unregisterGauge(prefix + "hits");
+            Metrics.unregisterGauge(prefix + "misses");
+            Metrics.unregisterGauge(prefix + "evictions");
+            Metrics.unregisterGauge(prefix + "size");
+            statementCache.close();
+        }
+
+        if (replicas != null) {
+            replicas.close();
+        }
+
+        if (queryMetrics != null) {
+            queryMetrics.close();
+        }
+
         try {
             service.close();
         } catch (Exception ex) {
@@ -636,17 +720,33 @@ public abstract class DataSourceWrapper {
     public Statement createStatement(final Connection conn) throws DataAccessException {
         ParamUtil.requireNonNull("conn", conn);
         try {
-            return conn.createStatement();
+            Statement stmt = conn.createStatement();
+            return (queryMetrics == null) ? stmt : queryMetrics.instrument(stmt);
         } catch (SQLException ex) {
             throw translate(null, ex);
         }
     }
 
+    /**
+     * Returns a prepared statement. If the statement cache is enabled (datasource property
+     * statementCacheSize, default to 20), the statement is taken from the cache of the
+     * connection, and closing it puts it back to the cache.
+     *
+     * @param conn
+     *          Connection. Must not be {@code null}.
+     * @param sqlQuery
+     *          SQL query.
+     * @return the prepared statement.
+     * @throws DataAccessException
+     *          if the statement could not be prepared.
+     */
     public PreparedStatement prepareStatement(final Connection conn, final String sqlQuery)
             throws DataAccessException {
         ParamUtil.requireNonNull("conn", conn);
         try {
-            return conn.prepareStatement(sqlQuery);
+            PreparedStatement ps = (statementCache == null) ? conn.prepareStatement(sqlQuery)
+                    : statementCache.prepareStatement(conn, sqlQuery);
+            return (queryMetrics == null) ? ps : queryMetrics.instrument(ps, sqlQuery);
         } catch (SQLException ex) {
             throw translate(sqlQuery, ex);
         }
@@ -1230,6 +1330,51 @@ public abstract class DataSourceWrapper {
         executeUpdate(conn, getSqlToAddUniqueConstrain(constraintName, table, columns));
     }
 
+    /**
+     * Builds the SQL statement which inserts several rows with one statement, e.g.
+     * {@code INSERT INTO T (A,B) VALUES (?,?),(?,?)}.
+     *
+     * @param rows
+     *          Number of rows. Must be greater than 0.
+     * @param table
+     *          Table name. Must not be blank.
+     * @param columns
+     *          Columns. Must not be empty.
+     * @return the SQL statement, or {@code null} if the database does not support
+     *         multi-row INSERT statements.
+     */
+    public String buildMultiRowInsertSql(final int rows, final String table,
+            final String... columns) {
+        ParamUtil.requireMin("rows", rows, 1);
+        ParamUtil.requireNonBlank("table", table);
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("columns must not be null and empty");
+        }
+
+        final int n = columns.length;
+        final StringBuilder sb = new StringBuilder(50 + 10 * n + rows * (2 * n + 2));
+        sb.append("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < n; i++) {
+            if (i != 0) {
+                sb.append(",");
+            }
+            sb.append(columns[i]);
+        }
+        sb.append(") VALUES ");
+
+        for (int i = 0; i < rows; i++) {
+            if (i != 0) {
+                sb.append(",");
+            }
+            sb.append("(?");
+            for (int j = 1; j < n; j++) {
+                sb.append(",?");
+            }
+            sb.append(")");
+        }
+        return sb.toString();
+    }
+
     public DataAccessException translate(final String sql, final SQLException ex) {
         ParamUtil.requireNonNull("ex", ex);
 
@@ -1412,24 +1557,56 @@ public abstract class DataSourceWrapper {
                 || databaseType == DatabaseType.HSQL || databaseType == DatabaseType.MYSQL
                 || databaseType == DatabaseType.MARIADB || databaseType == DatabaseType.ORACLE
                 || databaseType == DatabaseType.POSTGRES) {
+            int statementCacheSize = DFLT_STATEMENT_CACHE_SIZE;
+            String str = (String) props.remove(PROP_STATEMENT_CACHE_SIZE);
+            if (str != null) {
+                statementCacheSize = Integer.parseInt(str.trim());
+            }
+
+            // removes also the instrumentation and replica properties from props
+            QueryMetrics queryMetrics = QueryMetrics.create(name, props);
+            ReadReplicas replicas = ReadReplicas.create(name, props);
             HikariConfig conf = new HikariConfig(props);
+            if (queryMetrics != null) {
+                conf.setMetricsTrackerFactory(queryMetrics.trackerFactory());
+            }
             HikariDataSource service = new HikariDataSource(conf);
+            DataSourceWrapper ds;
             switch (databaseType) {
             case DB2:
-                return new DB2(name, service);
+                ds = new DB2(name, service);
+                break;
             case H2:
-                return new H2(name, service);
+                ds = new H2(name, service);
+                break;
             case HSQL:
-                return new HSQL(name, service);
+                ds = new HSQL(name, service);
+                break;
             case MYSQL:
-                return new MySQL(name, service);
+                ds = new MySQL(name, service);
+                break;
             case MARIADB:
-                return new MariaDB(name, service);
+                ds = new MariaDB(name, service);
+                break;
             case ORACLE:
-                return new Oracle(name, service);
+                ds = new Oracle(name, service);
+                break;
             default: // POSTGRESQL:
-                return new PostgreSQL(name, service);
+                ds = new PostgreSQL(name, service);
+                break;
+            }
+            ds.replicas = replicas;
+            ds.queryMetrics = queryMetrics;
+            if (statementCacheSize > 0) {
+                PreparedStatementCache cache = new PreparedStatementCache(statementCacheSize);
+                ds.statementCache = cache;
+                String prefix = "datasource." + name + ".statementCache.";
+                Metrics.registerGauge(prefix + "hits", cache::hits);
+                Metrics.registerGauge(prefix + "misses", cache::misses);
+                Metrics.registerGauge(prefix + "evictions", cache::evictions);
+                Metrics.registerGauge(prefix + "size", cache::cachedStatements);
             }
+            return ds;
         } else {
             throw new IllegalArgumentException("unknown datasource type " + databaseType);
         }
@@ -0,0 +1,347 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.LruCache;
+
+/**
+ * Cache of the prepared statements per physical connection, keyed by the SQL text.
+ *
+ * <p>The statements are prepared on the physical connection unwrapped from the pooled
+ * connection, since the pool closes all statements of a pooled connection when it is returned.
+ * The returned statement is a proxy: {@link PreparedStatement#close()} puts the statement
+ * back to the cache, and {@link PreparedStatement#getConnection()} returns the pooled
+ * connection, so that the callers can release the statement and connection as usual.
+ *
+ * <p>Statements are only cached for connections in auto-commit mode, so that the pool still
+ * rolls back unfinished transactions. When a statement is put back, its open result set is
+ * closed, and the fetch size, maximal rows and query timeout are reset to the values of the
+ * driver. Statements whose other properties, e.g. the cursor name, have been changed are
+ * closed instead of cached.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+final class PreparedStatementCache {
+
+    /**
+     * Prepared statement with the properties set by the driver.
+     */
+    private static final class CachedStatement {
+
+        private final PreparedStatement statement;
+
+        private final int fetchSize;
+
+        private final int maxRows;
+
+        private final int queryTimeout;
+
+        private CachedStatement(final PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+
+        private void resetProperties() throws SQLException {
+            statement.setFetchSize(fetchSize);
+            statement.setMaxRows(maxRows);
+            statement.setQueryTimeout(queryTimeout);
+        }
+
+    } // class CachedStatement
+
+    private final class ConnectionCache extends LruCache<String, CachedStatement> {
+
+        private ConnectionCache(final int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected void entryRemoved(final boolean evicted, final String key,
+                final CachedStatement oldValue, final CachedStatement newValue) {
+            // the statement is removed without replacement when it is borrowed
+            if (evicted || newValue != null) {
+                evictions.increment();
+                closeQuietly(oldValue.statement);
+            }
+        }
+
+    } // class ConnectionCache
+
+    private final class CachedStatementHandler implements InvocationHandler {
+
+        private final CachedStatement cached;
+
+        private final PreparedStatement target;
+
+        private final Connection connection;
+
+        private final ConnectionCache cache;
+
+        private final String sql;
+
+        private boolean closed;
+
+        private boolean propertiesChanged;
+
+        private boolean reusable = true;
+
+        private CachedStatementHandler(final CachedStatement cached,
+                final Connection connection, final ConnectionCache cache, final String sql) {
+            this.cached = cached;
+            this.target = cached.statement;
+            this.connection = connection;
+            this.cache = cache;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            switch (method.getName()) {
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    giveBack();
+                }
+                return null;
+            case "isClosed":
+                return closed;
+            case "getConnection":
+                return connection;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "cached " + target;
+            case "setFetchSize":
+            case "setMaxRows":
+            case "setLargeMaxRows":
+            case "setQueryTimeout":
+                propertiesChanged = true;
+                return invokeTarget(method, args);
+            case "setCursorName":
+            case "setEscapeProcessing":
+            case "setFetchDirection":
+            case "setMaxFieldSize":
+            case "setPoolable":
+            case "closeOnCompletion":
+                reusable = false;
+                return invokeTarget(method, args);
+            default:
+                return invokeTarget(method, args);
+            }
+        }
+
+        private Object invokeTarget(final Method method, final Object[] args) throws Throwable {
+            if (closed) {
+                throw new SQLException("statement is closed");
+            }
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private void giveBack() {
+            if (!reusable) {
+                closeQuietly(target);
+                return;
+            }
+
+            try {
+                ResultSet rs = target.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+
+                target.clearParameters();
+                target.clearBatch();
+                target.clearWarnings();
+                if (propertiesChanged) {
+                    cached.resetProperties();
+                }
+            } catch (SQLException ex) {
+                closeQuietly(target);
+                return;
+            }
+            cache.put(sql, cached);
+        }
+
+    } // class CachedStatementHandler
+
+    private static final Logger LOG = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+    private final ConcurrentHashMap<Connection, ConnectionCache> caches =
+            new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize
+     *          Maximal number of the cached statements per connection. Must be at least 1.
+     */
+    PreparedStatementCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must not be less than 1: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    PreparedStatement prepareStatement(final Connection conn, final String sql)
+            throws SQLException {
+        if (!conn.getAutoCommit()) {
+            return conn.prepareStatement(sql);
+        }
+
+        Connection physicalConn = conn.isWrapperFor(Connection.class)
+                ? conn.unwrap(Connection.class) : conn;
+        if (physicalConn == conn) {
+            // not a pooled connection
+            return conn.prepareStatement(sql);
+        }
+
+        ConnectionCache cache = caches.get(physicalConn);
+        if (cache == null) {
+            removeClosedConnections();
+            cache = new ConnectionCache(maxSize);
+            caches.put(physicalConn, cache);
+        }
+
+        CachedStatement cached = cache.remove(sql);
+        if (cached != null && !cached.statement.isClosed()) {
+            hits.increment();
+        } else {
+            misses.increment();
+            PreparedStatement ps = physicalConn.prepareStatement(sql);
+            try {
+                cached = new CachedStatement(ps);
+            } catch (SQLException ex) {
+                closeQuietly(ps);
+                throw ex;
+            }
+        }
+
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                new CachedStatementHandler(cached, conn, cache, sql));
+    }
+
+    /**
+     * Removes the caches of the physical connections closed by the pool.
+     */
+    private void removeClosedConnections() {
+        Iterator<Map.Entry<Connection, ConnectionCache>> it = caches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Connection, ConnectionCache> entry = it.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            } catch (SQLException ex) {
+                closed = true;
+            }
+
+            if (closed) {
+                it.remove();
+                entry.getValue().evictAll();
+            }
+        }
+    }
+
+    void close() {
+        for (ConnectionCache cache : caches.values()) {
+            cache.evictAll();
+        }
+        caches.clear();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    int cachedStatements() {
+        int size = 0;
+        for (ConnectionCache cache : caches.values()) {
+            size += cache.size();
+        }
+        return size;
+    }
+
+    private static void closeQuietly(final PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ex) {
+            LOG.debug("could not close cached statement: {}", ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,618 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.metrics.LatencyHistogram;
+import org.xipki.common.metrics.Metrics;
+import org.xipki.common.util.ParamUtil;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Opt-in instrumentation of the SQL statements of a datasource. It is activated by the
+ * datasource property {@code queryMetrics = true} and records
+ * <ul>
+ *  <li>the latency histogram, the number of rows and errors per SQL template,</li>
+ *  <li>the time waited for a connection from the pool and the pool occupancy, and</li>
+ *  <li>a sampled log of the slow queries.</li>
+ * </ul>
+ * The histograms and counters are registered in {@link Metrics} with the name prefix
+ * {@code datasource.<name>.}, a SQL template is identified there by the first 8 bytes of
+ * the hex-encoded SHA-256 hash of its text, followed by a sequence number if two templates
+ * share the same id. The statements of the datasource are wrapped by dynamic proxies, hence the
+ * instrumentation costs a few microseconds per statement.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public final class QueryMetrics {
+
+    public static final class SqlStats {
+
+        private final String id;
+
+        private final String sql;
+
+        private final LatencyHistogram histogram;
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final AtomicLong slowQueries = new AtomicLong();
+
+        private SqlStats(final String id, final String sql, final LatencyHistogram histogram) {
+            this.id = id;
+            this.sql = sql;
+            this.histogram = histogram;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String sql() {
+            return sql;
+        }
+
+        public LatencyHistogram histogram() {
+            return histogram;
+        }
+
+        public long rows() {
+            return rows.sum();
+        }
+
+        public long errors() {
+            return errors.sum();
+        }
+
+        public long slowQueries() {
+            return slowQueries.get();
+        }
+
+    } // class SqlStats
+
+    public static final class SlowQuery {
+
+        private final long time;
+
+        private final String sql;
+
+        private final long durationNanos;
+
+        private final long rows;
+
+        private SlowQuery(final long time, final String sql, final long durationNanos,
+                final long rows) {
+            this.time = time;
+            this.sql = sql;
+            this.durationNanos = durationNanos;
+            this.rows = rows;
+        }
+
+        public long time() {
+            return time;
+        }
+
+        public String sql() {
+            return sql;
+        }
+
+        public long durationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Returns the number of the modified rows.
+         *
+         * @return number of the modified rows, -1 for queries.
+         */
+        public long rows() {
+            return rows;
+        }
+
+        @Override
+        public String toString() {
+            return new Date(time) + " " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms"
+                    + ((rows == -1) ? "" : ", " + rows + " rows") + ": " + sql;
+        }
+
+    } // class SlowQuery
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+
+        private final String sql;
+
+        private String lastSql;
+
+        private StatementHandler(final Statement target, final String sql) {
+            this.target = target;
+            this.sql = sql;
+            this.lastSql = (sql == null) ? "<batch>" : sql;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "getResultSet":
+                    ResultSet rs = (ResultSet) invokeTarget(method, args);
+                    return (rs == null) ? null : countRows(rs, stats(lastSql));
+                default:
+                    return invokeTarget(method, args);
+                }
+            }
+
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                lastSql = (String) args[0];
+            }
+            SqlStats stats = stats(lastSql);
+
+            long start = System.nanoTime();
+            Object ret;
+            try {
+                ret = invokeTarget(method, args);
+            } catch (Throwable th) {
+                stats.errors.increment();
+                stats.histogram.record(System.nanoTime() - start);
+                throw th;
+            }
+
+            long rows = -1;
+            if (ret instanceof ResultSet) {
+                ret = countRows((ResultSet) ret, stats);
+            } else if (ret instanceof Integer || ret instanceof Long) {
+                rows = ((Number) ret).longValue();
+            } else if (ret instanceof int[]) {
+                rows = 0;
+                for (int count : (int[]) ret) {
+                    if (count > 0) {
+                        rows += count;
+                    }
+                }
+            }
+
+            if (rows > 0) {
+                stats.rows.add(rows);
+            }
+            executed(stats, System.nanoTime() - start, rows);
+            return ret;
+        }
+
+        private Object invokeTarget(final Method method, final Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+    } // class StatementHandler
+
+    private static final class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet target;
+
+        private final SqlStats stats;
+
+        private long rows;
+
+        private boolean closed;
+
+        private ResultSetHandler(final ResultSet target, final SqlStats stats) {
+            this.target = target;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    stats.rows.add(rows);
+                }
+                break;
+            default:
+                break;
+            }
+
+            Object ret;
+            try {
+                ret = method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+
+            if (Boolean.TRUE.equals(ret) && "next".equals(method.getName())) {
+                rows++;
+            }
+            return ret;
+        }
+
+    } // class ResultSetHandler
+
+    private final class Tracker implements IMetricsTracker {
+
+        @Override
+        public void recordConnectionAcquiredNanos(final long elapsedAcquiredNanos) {
+            poolWait.record(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            poolTimeouts.increment();
+        }
+
+        @Override
+        public void close() {
+        }
+
+    } // class Tracker
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryMetrics.class);
+
+    private static final Logger SLOW_LOG =
+            LoggerFactory.getLogger("org.xipki.datasource.slowquery");
+
+    private static final String PROP_QUERY_METRICS = "queryMetrics";
+
+    private static final String PROP_SLOW_QUERY_THRESHOLD = "slowQueryThreshold";
+
+    private static final String PROP_SLOW_QUERY_SAMPLING = "slowQuerySampling";
+
+    private static final int MAX_TEMPLATES = 500;
+
+    private static final int MAX_SLOW_QUERIES = 100;
+
+    private static final String OTHER_TEMPLATES = "<other>";
+
+    private static final ConcurrentHashMap<String, QueryMetrics> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final String prefix;
+
+    private final long slowQueryThresholdNanos;
+
+    private final int slowQuerySampling;
+
+    private final ConcurrentHashMap<String, SqlStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * SQL template by its id.
+     */
+    private final ConcurrentHashMap<String, String> templates = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram poolWait;
+
+    private final LongAdder poolTimeouts = new LongAdder();
+
+    private final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>(MAX_SLOW_QUERIES);
+
+    private final List<String> gauges = Collections.synchronizedList(new ArrayList<String>());
+
+    private QueryMetrics(final String name, final long slowQueryThresholdMillis,
+            final int slowQuerySampling) {
+        this.name = name;
+        this.prefix = "datasource." + name + ".";
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+        this.slowQuerySampling = slowQuerySampling;
+        this.poolWait = Metrics.histogram(prefix + "poolWait");
+        registerGauge("poolTimeouts", poolTimeouts::sum);
+    }
+
+    /**
+     * Creates the instrumentation of a datasource, and removes its properties from
+     * {@code props}.
+     *
+     * @param name
+     *          Name of the datasource.
+     * @param props
+     *          Properties of the datasource.
+     * @return the instrumentation, or {@code null} if not activated.
+     */
+    static QueryMetrics create(final String name, final Properties props) {
+        String enabled = (String) props.remove(PROP_QUERY_METRICS);
+        String threshold = (String) props.remove(PROP_SLOW_QUERY_THRESHOLD);
+        String sampling = (String) props.remove(PROP_SLOW_QUERY_SAMPLING);
+        if (enabled == null || !Boolean.parseBoolean(enabled.trim())) {
+            return null;
+        }
+
+        long thresholdMillis = (threshold == null) ? 1000 : Long.parseLong(threshold.trim());
+        int samplingRate = (sampling == null) ? 1 : Integer.parseInt(sampling.trim());
+        ParamUtil.requireMin(PROP_SLOW_QUERY_THRESHOLD, thresholdMillis, 0);
+        ParamUtil.requireMin(PROP_SLOW_QUERY_SAMPLING, samplingRate, 1);
+
+        String metricsName = (name == null) ? "default" : name;
+        QueryMetrics metrics = new QueryMetrics(metricsName, thresholdMillis, samplingRate);
+        QueryMetrics old = INSTANCES.put(metricsName, metrics);
+        if (old != null) {
+            old.unregisterGauges();
+        }
+        LOG.info("activated query metrics of datasource {}, slow query threshold {} ms",
+                metricsName, thresholdMillis);
+        return metrics;
+    }
+
+    /**
+     * Returns the instrumentations of all datasources.
+     *
+     * @return the instrumentations.
+     */
+    public static Collection<QueryMetrics> instances() {
+        return Collections.unmodifiableCollection(INSTANCES.values());
+    }
+
+    /**
+     * Returns the instrumentation of the given datasource.
+     *
+     * @param datasourceName
+     *          Name of the datasource.
+     * @return the instrumentation, or {@code null} if not activated for the datasource.
+     */
+    public static QueryMetrics instance(final String datasourceName) {
+        return INSTANCES.get(datasourceName);
+    }
+
+    public String datasourceName() {
+        return name;
+    }
+
+    public long slowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    public LatencyHistogram poolWait() {
+        return poolWait;
+    }
+
+    public long poolTimeouts() {
+        return poolTimeouts.sum();
+    }
+
+    /**
+     * Returns the statistics of the SQL templates, sorted by the total execution time in
+     * descending order.
+     *
+     * @return the statistics.
+     */
+    public List<SqlStats> sqlStats() {
+        List<SqlStats> ret = new ArrayList<>(stats.values());
+        Collections.sort(ret, (o1, o2) -> {
+            LatencyHistogram.Snapshot s1 = o1.histogram.snapshot();
+            LatencyHistogram.Snapshot s2 = o2.histogram.snapshot();
+            return Long.compare(s2.count() * s2.mean(), s1.count() * s1.mean());
+        });
+        return ret;
+    }
+
+    /**
+     * Returns the sampled slow queries, the latest one at first.
+     *
+     * @return the slow queries.
+     */
+    public List<SlowQuery> slowQueries() {
+        synchronized (slowQueries) {
+            List<SlowQuery> ret = new ArrayList<>(slowQueries);
+            Collections.reverse(ret);
+            return ret;
+        }
+    }
+
+    /**
+     * Resets the statistics of the SQL templates and the log of the slow queries.
+     */
+    public void reset() {
+        for (SqlStats entry : stats.values()) {
+            entry.histogram.reset();
+            entry.rows.reset();
+            entry.errors.reset();
+            entry.slowQueries.set(0);
+        }
+        poolWait.reset();
+        poolTimeouts.reset();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    MetricsTrackerFactory trackerFactory() {
+        return new MetricsTrackerFactory() {
+
+            @Override
+            public IMetricsTracker create(final String poolName, final PoolStats poolStats) {
+                registerGauge("pool.total", poolStats::getTotalConnections);
+                registerGauge("pool.active", poolStats::getActiveConnections);
+                registerGauge("pool.idle", poolStats::getIdleConnections);
+                registerGauge("pool.pending", poolStats::getPendingThreads);
+                return new Tracker();
+            }
+
+        };
+    }
+
+    PreparedStatement instrument(final PreparedStatement ps, final String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                new StatementHandler(ps, sql));
+    }
+
+    Statement instrument(final Statement stmt) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[]{Statement.class}, new StatementHandler(stmt, null));
+    }
+
+    void close() {
+        INSTANCES.remove(name, this);
+        unregisterGauges();
+    }
+
+    private SqlStats stats(final String sql) {
+        SqlStats entry = stats.get(sql);
+        if (entry != null) {
+            return entry;
+        }
+
+        // limit the number of templates, since plain statements may contain literal values
+        final String key = (stats.size() < MAX_TEMPLATES) ? sql : OTHER_TEMPLATES;
+        return stats.computeIfAbsent(key, k -> {
+            String id = templateId(k);
+            LOG.info("datasource {}: SQL template {}: {}", name, id, k);
+            SqlStats newEntry = new SqlStats(id, k, Metrics.histogram(prefix + "sql." + id));
+            registerGauge("sql." + id + ".rows", newEntry.rows::sum);
+            registerGauge("sql." + id + ".errors", newEntry.errors::sum);
+            return newEntry;
+        });
+    }
+
+    /**
+     * Returns the unique id of the SQL template.
+     */
+    private String templateId(final String sql) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(
+                    sql.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < 8; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16))
+                .append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+
+        final String baseId = sb.toString();
+        String id = baseId;
+        for (int i = 1; ; i++) {
+            String existing = templates.putIfAbsent(id, sql);
+            if (existing == null || existing.equals(sql)) {
+                return id;
+            }
+
+            LOG.warn("datasource {}: SQL templates {} and {} have the same id {}", name,
+                    existing, sql, id);
+            id = baseId + "-" + i;
+        }
+    }
+
+    private void executed(final SqlStats entry, final long durationNanos, final long rows) {
+        entry.histogram.record(durationNanos);
+        if (durationNanos < slowQueryThresholdNanos) {
+            return;
+        }
+
+        if ((entry.slowQueries.incrementAndGet() - 1) % slowQuerySampling != 0) {
+            return;
+        }
+
+        SlowQuery slowQuery = new SlowQuery(System.currentTimeMillis(), entry.sql,
+                durationNanos, rows);
+        synchronized (slowQueries) {
+            if (slowQueries.size() == MAX_SLOW_QUERIES) {
+                slowQueries.removeFirst();
+            }
+            slowQueries.addLast(slowQuery);
+        }
+        SLOW_LOG.warn("datasource {}: {}", name, slowQuery);
+    }
+
+    private ResultSet countRows(final ResultSet rs, final SqlStats entry) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, new ResultSetHandler(rs, entry));
+    }
+
+    private void registerGauge(final String suffix, final LongSupplier gauge) {
+        String gaugeName = prefix + suffix;
+        Metrics.registerGauge(gaugeName, gauge);
+        gauges.add(gaugeName);
+    }
+
+    private void unregisterGauges() {
+        synchronized (gauges) {
+            for (String gaugeName : gauges) {
+                Metrics.unregisterGauge(gaugeName);
+            }
+            gauges.clear();
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.datasource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.LogUtil;
+import org.xipki.common.util.StringUtil;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Read replicas of a datasource. They are configured in the properties of the datasource:
+ * <ul>
+ *   <li>replica.&lt;n&gt;.&lt;property&gt;: property of the n-th replica, n starts with 1.
+ *     Properties not specified for the replica are inherited from the primary, so usually
+ *     only jdbcUrl (or dataSource.url) is required.</li>
+ *   <li>replica.checkInterval: interval in seconds of the health check, default to 10.</li>
+ *   <li>replica.lagQuery: SQL query returning the replication lag in seconds, e.g. for
+ *     PostgreSQL {@code SELECT EXTRACT(EPOCH FROM (NOW() - pg_last_xact_replay_timestamp()))}.
+ *     Default to none.</li>
+ *   <li>replica.maxLag: maximal replication lag in seconds, a replica with larger lag is
+ *     not used till it has caught up. Default to 0 (not checked).</li>
+ * </ul>
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+final class ReadReplicas {
+
+    private static final class Replica {
+
+        private final String name;
+
+        private final HikariDataSource service;
+
+        private volatile boolean healthy;
+
+        private volatile long lag = -1;
+
+        private Replica(final String name, final HikariDataSource service) {
+            this.name = name;
+            this.service = service;
+        }
+
+    } // class Replica
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadReplicas.class);
+
+    private static final String PREFIX = "replica.";
+
+    private static final String PROP_CHECK_INTERVAL = "replica.checkInterval";
+
+    private static final String PROP_LAG_QUERY = "replica.lagQuery";
+
+    private static final String PROP_MAX_LAG = "replica.maxLag";
+
+    private static final long DFLT_CONNECTION_TIMEOUT = 2000;
+
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    private final Replica[] replicas;
+
+    private final String lagQuery;
+
+    private final long maxLag;
+
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    private final ScheduledExecutorService checker;
+
+    private ReadReplicas(final String name, final List<Replica> replicas, final String lagQuery,
+            final long maxLag, final int checkInterval) {
+        this.replicas = replicas.toArray(new Replica[0]);
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+
+        check();
+        this.checker = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "replica-check-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::check, checkInterval, checkInterval,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Removes the replica properties from the given properties and creates the replicas.
+     *
+     * @param name
+     *          Name of the datasource.
+     * @param props
+     *          Properties of the datasource. The replica properties will be removed.
+     * @return the replicas, or {@code null} if no replica is configured.
+     */
+    static ReadReplicas create(final String name, final Properties props) {
+        Properties primaryProps = new Properties();
+        TreeMap<Integer, Properties> replicaPropsMap = new TreeMap<>();
+        Properties options = new Properties();
+
+        for (String key : props.stringPropertyNames()) {
+            String value = props.getProperty(key);
+            if (!key.startsWith(PREFIX)) {
+                primaryProps.setProperty(key, value);
+                continue;
+            }
+
+            props.remove(key);
+            int idx = key.indexOf('.', PREFIX.length());
+            Integer no = null;
+            if (idx != -1) {
+                try {
+                    no = Integer.valueOf(key.substring(PREFIX.length(), idx));
+                } catch (NumberFormatException ex) {
+                    // not a property of an individual replica
+                }
+            }
+
+            if (no == null) {
+                options.setProperty(key, value);
+            } else {
+                Properties replicaProps = replicaPropsMap.get(no);
+                if (replicaProps == null) {
+                    replicaProps = new Properties();
+                    replicaPropsMap.put(no, replicaProps);
+                }
+                replicaProps.setProperty(key.substring(idx + 1), value);
+            }
+        }
+
+        if (replicaPropsMap.isEmpty()) {
+            return null;
+        }
+
+        List<Replica> replicas = new ArrayList<>(replicaPropsMap.size());
+        for (Integer no : replicaPropsMap.keySet()) {
+            Properties replicaProps = new Properties();
+            replicaProps.putAll(primaryProps);
+            // fail fast, so that the primary can be used instead
+            replicaProps.setProperty("connectionTimeout", Long.toString(DFLT_CONNECTION_TIMEOUT));
+            // the replica may be not available at the start
+            replicaProps.setProperty("initializationFailTimeout", "-1");
+            replicaProps.putAll(replicaPropsMap.get(no));
+
+            String replicaName = name + "-replica" + no;
+            replicaProps.setProperty("poolName", replicaName);
+            replicaProps.setProperty("readOnly", "true");
+
+            HikariDataSource service = new HikariDataSource(new HikariConfig(replicaProps));
+            replicas.add(new Replica(replicaName, service));
+        }
+
+        String lagQuery = options.getProperty(PROP_LAG_QUERY);
+        if (StringUtil.isBlank(lagQuery)) {
+            lagQuery = null;
+        }
+        long maxLag = Long.parseLong(options.getProperty(PROP_MAX_LAG, "0").trim());
+        int checkInterval = Integer.parseInt(
+                options.getProperty(PROP_CHECK_INTERVAL, "10").trim());
+        if (checkInterval < 1) {
+            throw new IllegalArgumentException(
+                    PROP_CHECK_INTERVAL + " must not be less than 1: " + checkInterval);
+        }
+
+        LOG.info("datasource {}: {} read replicas, maxLag={}s, checkInterval={}s",
+                name, replicas.size(), maxLag, checkInterval);
+        return new ReadReplicas(name, replicas, lagQuery, maxLag, checkInterval);
+    } // method create
+
+    /**
+     * Returns a connection of a healthy replica. The replicas are used in round-robin.
+     *
+     * @return the connection, or {@code null} if no healthy replica is available.
+     */
+    Connection getConnection() {
+        final int n = replicas.length;
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Replica replica = replicas[(start + i) % n];
+            if (!replica.healthy) {
+                continue;
+            }
+
+            try {
+                return replica.service.getConnection();
+            } catch (SQLException ex) {
+                replica.healthy = false;
+                LOG.warn("replica {} is unavailable: {}", replica.name, ex.getMessage());
+            }
+        }
+        return null;
+    }
+
+    int healthyReplicas() {
+        int count = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void check() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            long lag = -1;
+            try (Connection conn = replica.service.getConnection()) {
+                healthy = conn.isValid(VALIDATION_TIMEOUT);
+                if (healthy && lagQuery != null) {
+                    try (Statement stmt = conn.createStatement();
+                            ResultSet rs = stmt.executeQuery(lagQuery)) {
+                        lag = rs.next() ? (long) rs.getDouble(1) : 0;
+                    }
+                    healthy = maxLag < 1 || lag <= maxLag;
+                }
+            } catch (SQLException ex) {
+                LogUtil.warn(LOG, ex, "could not check replica " + replica.name);
+                healthy = false;
+            }
+
+            replica.lag = lag;
+            if (healthy != replica.healthy) {
+                LOG.info("replica {} is {} (lag {}s)", replica.name,
+                        healthy ? "healthy" : "not healthy", lag);
+                replica.healthy = healthy;
+            }
+        }
+    }
+
+    void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+
+        for (Replica replica : replicas) {
+            try {
+                replica.service.close();
+            } catch (Exception ex) {
+                LOG.warn("could not close replica {}: {}", replica.name, ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(100);
+        for (Replica replica : replicas) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(replica.name).append(replica.healthy ? " healthy" : " not healthy");
+            if (replica.lag >= 0) {
+                sb.append(" (lag ").append(replica.lag).append("s)");
+            }
+        }
+        return sb.toString();
+    }
+
+}
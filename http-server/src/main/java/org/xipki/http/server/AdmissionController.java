@@ -0,0 +1,259 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent requests of one servlet. A request which would exceed the
+ * limit is rejected at once, instead of waiting for a thread, signer or database connection
+ * till the timeout.
+ *
+ * <p>If the limit is adaptive, it is adjusted like TCP Vegas: the latency of a request is
+ * compared with the minimal latency observed in the last two windows. If the estimated number
+ * of queued requests {@code limit * (1 - minLatency / latency)} is small, the limit is
+ * increased by one per round trip, if it is large, the limit is decreased by one per round
+ * trip. Failed or rejected requests decrease the limit multiplicatively (AIMD).
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class AdmissionController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final boolean adaptive;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    private final LongAdder admitted = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile int limit;
+
+    // following fields are guarded by this
+    private double estimatedLimit;
+
+    private long windowStart;
+
+    private long windowMinLatency = Long.MAX_VALUE;
+
+    private long previousWindowMinLatency = Long.MAX_VALUE;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *          Name of the controller, used in the log.
+     * @param minLimit
+     *          Minimal concurrency limit. Must be at least 1.
+     * @param maxLimit
+     *          Maximal concurrency limit. Must not be less than minLimit.
+     * @param initialLimit
+     *          Initial concurrency limit. Will be adjusted to [minLimit, maxLimit].
+     * @param adaptive
+     *          Whether the limit is adjusted to the observed latency. If {@code false},
+     *          the limit is always maxLimit.
+     */
+    public AdmissionController(String name, int minLimit, int maxLimit, int initialLimit,
+            boolean adaptive) {
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("minLimit must not be less than 1: " + minLimit);
+        }
+
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("maxLimit must not be less than minLimit: "
+                    + maxLimit + " < " + minLimit);
+        }
+
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.adaptive = adaptive;
+        this.limit = adaptive ? Math.max(minLimit, Math.min(maxLimit, initialLimit)) : maxLimit;
+        this.estimatedLimit = limit;
+        this.windowStart = System.nanoTime();
+
+        LOG.info("created admission controller {}: minLimit={}, maxLimit={}, limit={}, "
+                + "adaptive={}", name, minLimit, maxLimit, limit, adaptive);
+    }
+
+    /**
+     * Tries to admit a request. If this method returns {@code true}, either
+     * {@link #release(long, boolean)} or {@link #drop()} must be called once the request
+     * is finished.
+     *
+     * @return whether the request is admitted.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+
+            if (inFlight.compareAndSet(current, current + 1)) {
+                admitted.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request.
+     *
+     * @param latencyNanos
+     *          Latency of the request in nanoseconds.
+     * @param successful
+     *          Whether the request has been processed successfully. A failure is interpreted
+     *          as sign of overload.
+     */
+    public void release(long latencyNanos, boolean successful) {
+        int current = inFlight.getAndDecrement();
+        if (!adaptive) {
+            return;
+        }
+
+        if (successful) {
+            sample(latencyNanos, current);
+        } else {
+            backoff();
+        }
+    }
+
+    /**
+     * Releases an admitted request which has been rejected by a downstream component,
+     * e.g. the executor.
+     */
+    public void drop() {
+        inFlight.decrementAndGet();
+        rejected.increment();
+        if (adaptive) {
+            backoff();
+        }
+    }
+
+    private synchronized void sample(long latencyNanos, int concurrency) {
+        long now = System.nanoTime();
+        if (now - windowStart > WINDOW_NANOS) {
+            previousWindowMinLatency = windowMinLatency;
+            windowMinLatency = Long.MAX_VALUE;
+            windowStart = now;
+        }
+
+        if (latencyNanos < windowMinLatency) {
+            windowMinLatency = Math.max(1, latencyNanos);
+        }
+
+        long minLatency = Math.min(windowMinLatency, previousWindowMinLatency);
+        double queueSize = estimatedLimit * (1 - (double) minLatency / Math.max(1, latencyNanos));
+
+        // the limit is changed by one per round trip, namely per limit samples
+        double log = Math.max(1, Math.log10(estimatedLimit));
+        if (queueSize < 3 * log) {
+            // only increase the limit if it is actually used
+            if (concurrency * 2 >= estimatedLimit) {
+                estimatedLimit += 1 / estimatedLimit;
+            }
+        } else if (queueSize > 6 * log) {
+            estimatedLimit -= 1 / estimatedLimit;
+        }
+
+        setLimit(estimatedLimit);
+    }
+
+    private synchronized void backoff() {
+        estimatedLimit *= BACKOFF_RATIO;
+        setLimit(estimatedLimit);
+    }
+
+    private void setLimit(double newEstimatedLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newEstimatedLimit));
+        int newLimit = (int) estimatedLimit;
+        if (newLimit != limit) {
+            LOG.debug("{}: concurrency limit {} -> {}", name, limit, newLimit);
+            limit = newLimit;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long admittedRequests() {
+        return admitted.sum();
+    }
+
+    public long rejectedRequests() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": limit=" + limit + ", inFlight=" + inFlight.get() + ", admitted="
+                + admitted.sum() + ", rejected=" + rejected.sum();
+    }
+
+}
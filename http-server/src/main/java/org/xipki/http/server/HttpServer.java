@@ -34,6 +34,11 @@
 
 package org.xipki.http.server;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
 import javax.net.ssl.SSLSession;
 
 import org.slf4j.Logger;
@@ -45,9 +50,11 @@ import org.xipki.http.servlet.SslReverseProxyMode;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
@@ -66,11 +73,29 @@ import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeEvent;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapter;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.ReferenceCountedOpenSslContext;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
 import io.netty.util.CharsetUtil;
 
 /**
@@ -88,38 +113,177 @@ public final class HttpServer {
         @Override
         public void initChannel(SocketChannel ch) {
             ChannelPipeline pipeline = ch.pipeline();
-            if (sslContext != null) {
-                pipeline.addLast("ssl", sslContext.newHandler(ch.alloc()));
+            if (sslContext == null) {
+                if (http2) {
+                    configureCleartextHttp2(pipeline);
+                } else {
+                    configureHttp1(pipeline);
+                }
+                return;
             }
-            pipeline.addLast(new HttpServerCodec())
-                .addLast(new HttpObjectAggregator(65536))
+
+            pipeline.addLast("ssl", sslContext.newHandler(ch.alloc()))
+                .addLast(new NettyTlsHandshakeHandler());
+            if (http2 && !sslContext.applicationProtocolNegotiator().protocols().isEmpty()) {
+                pipeline.addLast(new NettyAlpnHandler());
+            } else {
+                configureHttp1(pipeline);
+            }
+        }
+
+        /**
+         * HTTP/1.1, HTTP/1.1 upgrade to HTTP/2 and HTTP/2 with prior knowledge.
+         */
+        private void configureCleartextHttp2(ChannelPipeline pipeline) {
+            HttpServerCodec sourceCodec = new HttpServerCodec();
+            HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec,
+                (protocol) -> AsciiString.contentEquals(
+                        Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                    ? new Http2ServerUpgradeCodec(newHttp2Handler()) : null,
+                MAX_CONTENT_LENGTH);
+
+            pipeline.addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec,
+                    upgradeHandler, newHttp2Handler()))
+                .addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH))
                 .addLast(new ChunkedWriteHandler())
                 .addLast(new NettyHttpServerHandler());
         }
     }
 
+    /**
+     * Counts the full and abbreviated (resumed) TLS handshakes and removes itself from the
+     * pipeline once the handshake is completed. A handshake is considered to be resumed if
+     * the session has been created before the connection is accepted. OpenSSL records the
+     * creation time in seconds only, hence a session resumed within the second it has been
+     * created is counted as full handshake.
+     */
+    private class NettyTlsHandshakeHandler extends ChannelInboundHandlerAdapter {
+
+        private final long acceptedTime = System.currentTimeMillis() / timePrecision;
+
+        private NettyTlsHandshakeHandler() {
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof SslHandshakeCompletionEvent) {
+                if (((SslHandshakeCompletionEvent) evt).isSuccess()) {
+                    SSLSession session =
+                            ((SslHandler) ctx.pipeline().get("ssl")).engine().getSession();
+                    if (session.getCreationTime() / timePrecision < acceptedTime) {
+                        resumedHandshakes.increment();
+                    } else {
+                        fullHandshakes.increment();
+                    }
+                } else {
+                    failedHandshakes.increment();
+                }
+                ctx.pipeline().remove(this);
+            }
+            ctx.fireUserEventTriggered(evt);
+        }
+    }
+
+    private class NettyAlpnHandler extends ApplicationProtocolNegotiationHandler {
+
+        private NettyAlpnHandler() {
+            super(ApplicationProtocolNames.HTTP_1_1);
+        }
+
+        @Override
+        protected void configurePipeline(ChannelHandlerContext ctx, String protocol)
+                throws Exception {
+            if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                ctx.pipeline().addLast(newHttp2Handler())
+                    .addLast(new NettyHttpServerHandler());
+            } else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                configureHttp1(ctx.pipeline());
+            } else {
+                throw new IllegalStateException("unknown protocol: " + protocol);
+            }
+        }
+    }
+
     private class NettyHttpServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
         private NettyHttpServerHandler() {
-            super(true);
+            // the request is released after the response has been computed
+            super(false);
         }
 
         @Override
         public void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request)
                 throws Exception {
+            // HTTP/2 streams are converted to requests by the HttpToHttp2ConnectionHandler
+            boolean http2 = ctx.pipeline().get(HttpToHttp2ConnectionHandler.class) != null;
+            boolean release = true;
+            try {
+                release = processRequest(ctx, request, http2);
+            } finally {
+                if (release) {
+                    request.release();
+                }
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof UpgradeEvent) {
+                // the request which triggered the upgrade to HTTP/2 is answered in stream 1
+                FullHttpRequest request = ((UpgradeEvent) evt).upgradeRequest().retain();
+                request.headers().setInt(STREAM_ID_HEADER, 1);
+                boolean release = true;
+                try {
+                    release = processRequest(ctx, request, true);
+                } finally {
+                    if (release) {
+                        request.release();
+                    }
+                }
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        /**
+         * Processes the request.
+         *
+         * @return whether the request can be released.
+         */
+        private boolean processRequest(ChannelHandlerContext ctx, FullHttpRequest request,
+                boolean http2) throws Exception {
+            // The stream id is set by the HTTP/2 adapter. It is only trusted for HTTP/2
+            // connections, since any HTTP/1.x client could send the header as well.
+            final String streamId;
+            if (http2) {
+                streamId = request.headers().get(STREAM_ID_HEADER);
+            } else {
+                request.headers().remove(STREAM_ID_HEADER);
+                streamId = null;
+            }
+            final boolean keepAlive = (streamId != null) || HttpUtil.isKeepAlive(request);
+
             if (!request.decoderResult().isSuccess()) {
-                sendError(ctx, HttpResponseStatus.BAD_REQUEST);
-                return;
+                sendError(ctx, HttpResponseStatus.BAD_REQUEST, streamId);
+                return true;
             }
 
-            Object[] objs = servletListener.getServlet(request.uri());
-            if (objs== null) {
-                sendError(ctx, HttpResponseStatus.NOT_FOUND);
-                return;
+            ServletRoute route = (metricsRoute != null && isMetricsUri(request.uri()))
+                    ? metricsRoute : servletListener.getRoute(request.uri());
+            if (route == null) {
+                sendError(ctx, HttpResponseStatus.NOT_FOUND, streamId);
+                return true;
             }
 
-            ServletURI servletUri = (ServletURI) objs[0];
-            HttpServlet servlet = (HttpServlet) objs[1];
+            final long start = System.nanoTime();
+            ServletURI servletUri = route.servletUri(request.uri());
+            HttpServlet servlet = route.servlet();
+            ServletExecutor executor = route.executor();
+
+            final AdmissionController admission = route.admission();
+            if (admission != null && !admission.tryAcquire()) {
+                sendOverloadResponse(ctx, request, servlet, servletUri, streamId, keepAlive);
+                return true;
+            }
 
             SSLSession sslSession = null;
 
@@ -130,46 +294,172 @@ public final class HttpServer {
                 }
             }
 
-            FullHttpResponse response;
+            if (executor == null) {
+                FullHttpResponse response;
+                try {
+                    response = servlet.service(request, servletUri, sslSession,
+                            sslReverseProxyMode);
+                } catch (Exception ex) {
+                    if (admission != null) {
+                        admission.release(System.nanoTime() - start, false);
+                    }
+                    logException("exception raised while processing request", ex);
+                    sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, streamId);
+                    return true;
+                }
+
+                sendResponse(ctx, response, streamId, keepAlive);
+                long latency = System.nanoTime() - start;
+                route.latency().record(latency);
+                if (admission != null) {
+                    admission.release(latency, true);
+                }
+                return true;
+            }
+
+            // HTTP/1.1: Stop reading from this connection till the response is sent, so that
+            // the responses of pipelined requests are sent in the order of the requests.
+            // HTTP/2: The streams are processed concurrently.
+            final Channel channel = ctx.channel();
+            final boolean pauseReading = (streamId == null);
+            if (pauseReading) {
+                channel.config().setAutoRead(false);
+            }
+
+            CompletableFuture<FullHttpResponse> future;
             try {
-                response = servlet.service(request, servletUri, sslSession, sslReverseProxyMode);
-            } catch (Exception ex) {
-                logException("exception raised while processing request", ex);
-                sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+                future = executor.submit(servlet, request, servletUri, sslSession,
+                        sslReverseProxyMode);
+            } catch (RejectedExecutionException ex) {
+                LOG.warn("rejected request: {}", ex.getMessage());
+                if (pauseReading) {
+                    channel.config().setAutoRead(true);
+                }
+
+                if (admission == null) {
+                    sendError(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE, streamId);
+                } else {
+                    admission.drop();
+                    sendOverloadResponse(ctx, request, servlet, servletUri, streamId,
+                            keepAlive);
+                }
+                return true;
+            } catch (RuntimeException ex) {
+                if (pauseReading) {
+                    channel.config().setAutoRead(true);
+                }
+
+                if (admission != null) {
+                    admission.release(System.nanoTime() - start, false);
+                }
+                logException("exception raised while submitting request", ex);
+                sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, streamId);
+                return true;
+            }
+
+            future.whenComplete((response, th) -> {
+                long latency = System.nanoTime() - start;
+                if (admission != null) {
+                    admission.release(latency, th == null);
+                }
+
+                request.release();
+                if (th == null) {
+                    sendResponse(ctx, response, streamId, keepAlive);
+                    route.latency().record(latency);
+                } else {
+                    Throwable cause = (th instanceof CompletionException && th.getCause() != null)
+                            ? th.getCause() : th;
+                    logException("exception raised while processing request", cause);
+                    sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, streamId);
+                }
+
+                if (pauseReading) {
+                    channel.config().setAutoRead(true);
+                }
+            });
+            return false;
+        }
+
+        private void sendResponse(ChannelHandlerContext ctx, FullHttpResponse response,
+                String streamId, boolean keepAlive) {
+            sendResponse(ctx, response, streamId, keepAlive, true);
+        }
+
+        /**
+         * Sends the response.
+         *
+         * @param closeOnError
+         *          Whether the HTTP/1.x connection is closed after a response with status
+         *          other than 2xx. Overload responses keep the connection, otherwise each
+         *          rejected client would have to reconnect, which increases the load.
+         */
+        private void sendResponse(ChannelHandlerContext ctx, FullHttpResponse response,
+                String streamId, boolean keepAlive, boolean closeOnError) {
+            if (streamId != null) {
+                // HTTP/2: the connection is kept open
+                response.headers().set(STREAM_ID_HEADER, streamId);
+                ctx.writeAndFlush(response);
                 return;
             }
 
-            boolean keepAlive = true;
+            // HTTP/1.x: the connection is closed if the client does not want to keep it
+            // alive, as well as after a response with status other than 2xx if closeOnError
             int status = response.status().code();
-            if (status < 200 | status > 299) {
-                keepAlive = false;
-            }
+            boolean close = !keepAlive || (closeOnError && (status < 200 || status > 299));
+            HttpUtil.setKeepAlive(response, !close);
 
             ChannelFuture cf = ctx.writeAndFlush(response);
-            if (!keepAlive) {
+            if (close) {
                 cf.addListener(ChannelFutureListener.CLOSE);
             }
         }
 
+        private void sendOverloadResponse(ChannelHandlerContext ctx, FullHttpRequest request,
+                HttpServlet servlet, ServletURI servletUri, String streamId, boolean keepAlive) {
+            FullHttpResponse response = null;
+            try {
+                response = servlet.overloadResponse(request, servletUri);
+            } catch (RuntimeException ex) {
+                logException("exception raised while creating the overload response", ex);
+            }
+
+            if (response == null) {
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                        HttpResponseStatus.SERVICE_UNAVAILABLE);
+                response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, 0);
+                response.headers().setInt(HttpHeaderNames.RETRY_AFTER, 1);
+            }
+            sendResponse(ctx, response, streamId, keepAlive, false);
+        }
+
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
             if (ctx.channel().isActive()) {
-                sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+                sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, null);
             }
         }
 
-        private void sendError(ChannelHandlerContext ctx, HttpResponseStatus status) {
+        private void sendError(ChannelHandlerContext ctx, HttpResponseStatus status,
+                String streamId) {
             ByteBuf content = Unpooled.copiedBuffer("Failure: " + status + "\r\n",
                     CharsetUtil.UTF_8);
             FullHttpResponse response = new DefaultFullHttpResponse(
                     HttpVersion.HTTP_1_1, status, content);
             response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
 
+            if (streamId != null) {
+                // HTTP/2: only this stream is closed
+                response.headers().set(STREAM_ID_HEADER, streamId);
+                ctx.writeAndFlush(response);
+                return;
+            }
+
             // Close the connection as soon as the error message is sent.
             ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
         }
 
-        private void logException(String msg, Exception ex) {
+        private void logException(String msg, Throwable ex) {
             LOG.warn("{} - {}: {}", msg, ex.getClass().getName(), ex.getMessage());
             LOG.debug(msg, ex);
             return;
@@ -178,6 +468,13 @@ public final class HttpServer {
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpServer.class);
 
+    private static final int MAX_CONTENT_LENGTH = 65536;
+
+    static final String METRICS_ALIAS = "/metrics";
+
+    private static final String STREAM_ID_HEADER =
+            HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text().toString();
+
     private static boolean useEpollLinux;
 
     private final int port;
@@ -186,12 +483,23 @@ public final class HttpServer {
 
     private final int numThreads;
 
+    // precision in milliseconds of SSLSession.getCreationTime()
+    private final long timePrecision;
+
     private ServletListener servletListener;
 
+    private ServletRoute metricsRoute;
+
     private EventLoopGroup bossGroup;
 
     private EventLoopGroup workerGroup;
 
+    private final LongAdder fullHandshakes = new LongAdder();
+
+    private final LongAdder resumedHandshakes = new LongAdder();
+
+    private final LongAdder failedHandshakes = new LongAdder();
+
     static {
         boolean linux = System.getProperty("os.name").toLowerCase().contains("linux");
         useEpollLinux = linux ? Epoll.isAvailable() : false;
@@ -200,12 +508,24 @@ public final class HttpServer {
 
     private SslReverseProxyMode sslReverseProxyMode = SslReverseProxyMode.NONE;
 
+    private boolean http2;
+
     public void setSslReverseProxyMode(SslReverseProxyMode mode) {
         this.sslReverseProxyMode = (mode == null) ? SslReverseProxyMode.NONE : mode;
     }
 
+    /**
+     * Sets whether HTTP/2 is supported. With TLS, HTTP/2 is only used if it is negotiated via
+     * ALPN, see {@link HttpServers}. Without TLS, HTTP/2 is supported via the upgrade from
+     * HTTP/1.1 and with prior knowledge (h2c).
+     */
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
     public HttpServer(SslContext sslContext, int port, int numThreads) {
         this.sslContext = sslContext;
+        this.timePrecision = (sslContext instanceof ReferenceCountedOpenSslContext) ? 1000 : 1;
         this.port = port;
         if (numThreads > 0) {
             this.numThreads = numThreads;
@@ -218,6 +538,71 @@ public final class HttpServer {
         this.servletListener = servletListener;
     }
 
+    /**
+     * Sets the route of the metrics, which takes precedence over the servlets registered
+     * under {@link #METRICS_ALIAS}.
+     *
+     * @param metricsRoute
+     *          The route of the {@link MetricsServlet}. {@code null} if the metrics are
+     *          not served by this server.
+     */
+    void setMetricsRoute(ServletRoute metricsRoute) {
+        this.metricsRoute = metricsRoute;
+    }
+
+    private static boolean isMetricsUri(String uri) {
+        if (!uri.startsWith(METRICS_ALIAS)) {
+            return false;
+        }
+
+        if (uri.length() == METRICS_ALIAS.length()) {
+            return true;
+        }
+
+        char ch = uri.charAt(METRICS_ALIAS.length());
+        return ch == '?' || ch == '/';
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public SslContext sslContext() {
+        return sslContext;
+    }
+
+    public long fullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    public long resumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    public long failedHandshakes() {
+        return failedHandshakes.sum();
+    }
+
+    private void configureHttp1(ChannelPipeline pipeline) {
+        pipeline.addLast(new HttpServerCodec())
+            .addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH))
+            .addLast(new ChunkedWriteHandler())
+            .addLast(new NettyHttpServerHandler());
+    }
+
+    private static HttpToHttp2ConnectionHandler newHttp2Handler() {
+        Http2Connection connection = new DefaultHttp2Connection(true);
+        // converts the HTTP/2 streams to FullHttpRequest and the FullHttpResponse back
+        InboundHttp2ToHttpAdapter listener = new InboundHttp2ToHttpAdapterBuilder(connection)
+                .maxContentLength(MAX_CONTENT_LENGTH)
+                .propagateSettings(false)
+                .build();
+        return new HttpToHttp2ConnectionHandlerBuilder()
+                .frameListener(listener)
+                .connection(connection)
+                .build();
+    }
+
     public void start() {
         int numProcessors = Runtime.getRuntime().availableProcessors();
         Class<? extends ServerSocketChannel> channelClass;
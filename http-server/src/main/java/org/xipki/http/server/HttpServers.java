@@ -52,22 +52,36 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.common.metrics.Metrics;
+import org.xipki.http.servlet.ClientCertCache;
+import org.xipki.http.servlet.ServletURIPool;
 import org.xipki.http.servlet.SslReverseProxyMode;
 import org.xipki.httpserver.v1.FileOrValueType;
 import org.xipki.httpserver.v1.HttpserverType;
+import org.xipki.httpserver.v1.Httpservers;
 import org.xipki.httpserver.v1.KeystoreType;
 import org.xipki.httpserver.v1.TlsType;
 import org.xipki.httpserver.v1.TruststoreType;
 import org.xipki.password.PasswordResolver;
 
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
 import io.netty.handler.ssl.ClientAuth;
 import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionStats;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslProvider;
@@ -89,6 +103,10 @@ public final class HttpServers {
 
     private PasswordResolver passwordResolver;
 
+    private ScheduledExecutorService ticketKeyRotationService;
+
+    private ServletRoute metricsRoute;
+
     public void setServletListener(ServletListener servletListener) {
         this.servletListener = servletListener;
         for (HttpServer server : servers) {
@@ -113,7 +131,11 @@ public final class HttpServers {
             throw new IllegalStateException("servletListener is not set");
         }
 
-        List<HttpserverType> serverConfs = conf.getConf().getHttpserver();
+        Httpservers serversConf = conf.getConf();
+        ServletURIPool.setCacheSize(serversConf.getUriCacheSize());
+        ClientCertCache.setCacheSize(serversConf.getClientCertCacheSize());
+
+        List<HttpserverType> serverConfs = serversConf.getHttpserver();
         Set<Integer> ports = new HashSet<>();
         for (HttpserverType conf : serverConfs) {
             if (!conf.isEnabled()) {
@@ -137,10 +159,24 @@ public final class HttpServers {
                 throw new Exception("invalid reverseProxy " + str);
             }
 
-            HttpServer server = new HttpServer(buildSslContext(conf), port, numThreads);
+            boolean http2 = (conf.isHttp2() == null) ? false : conf.isHttp2().booleanValue();
+
+            SslContext sslContext = buildSslContext(conf, http2);
+            if (sslContext != null) {
+                configureTicketKeyRotation(sslContext, conf.getTls(), port);
+            }
+
+            HttpServer server = new HttpServer(sslContext, port, numThreads);
             server.setServletListener(servletListener);
+            if (conf.isMetrics() != null && conf.isMetrics().booleanValue()) {
+                server.setMetricsRoute(metricsRoute());
+                LOG.info("HTTP server on port {} serves the metrics under {}", port,
+                        HttpServer.METRICS_ALIAS);
+            }
             server.setSslReverseProxyMode(mode);
+            server.setHttp2(http2);
             servers.add(server);
+            registerTlsGauges(server);
         }
 
         for (HttpServer server : servers) {
@@ -154,15 +190,41 @@ public final class HttpServers {
             return;
         }
 
+        if (ticketKeyRotationService != null) {
+            ticketKeyRotationService.shutdownNow();
+            ticketKeyRotationService = null;
+        }
+
         for (HttpServer server : servers) {
             server.shutdown();
             LOG.info("shutdown HTTP server {}", server);
+            logTlsStatistics(server);
+            unregisterTlsGauges(server);
         }
 
         servers.clear();
+        if (metricsRoute != null) {
+            metricsRoute.executor().shutdown();
+            metricsRoute = null;
+        }
+        LOG.info("URI cache: {}", ServletURIPool.cache());
+        LOG.info("client certificate cache: {}", ClientCertCache.cache());
+    }
+
+    /**
+     * Returns the route of the metrics shared by all servers serving them. The metrics are
+     * computed by a single thread, so that a client polling them can neither block the
+     * event loop nor consume the threads of the other servlets.
+     */
+    private ServletRoute metricsRoute() {
+        if (metricsRoute == null) {
+            metricsRoute = new ServletRoute(HttpServer.METRICS_ALIAS, new MetricsServlet(),
+                    new ServletExecutor("servlet-metrics", 1, 10, false), null);
+        }
+        return metricsRoute;
     }
 
-    private SslContext buildSslContext(HttpserverType conf)
+    private SslContext buildSslContext(HttpserverType conf, boolean http2)
             throws Exception {
         TlsType tt = conf.getTls();
         if (tt == null) {
@@ -389,9 +451,129 @@ public final class HttpServers {
             builder.trustManager(trustcerts.toArray(new X509Certificate[0]));
         }
 
+        // HTTP/2 via ALPN
+        if (http2) {
+            if (sslProvider != SslProvider.JDK && OpenSsl.isAlpnSupported()) {
+                builder.applicationProtocolConfig(new ApplicationProtocolConfig(
+                        Protocol.ALPN, SelectorFailureBehavior.NO_ADVERTISE,
+                        SelectedListenerFailureBehavior.ACCEPT,
+                        ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1));
+                LOG.info("use ALPN protocols {}, {}", ApplicationProtocolNames.HTTP_2,
+                        ApplicationProtocolNames.HTTP_1_1);
+            } else {
+                LOG.warn("ALPN is not supported by the SSL provider {}, HTTP/2 is disabled",
+                        sslProvider);
+            }
+        }
+
+        // session cache
+        if (tt.getSessionCacheSize() != null) {
+            LOG.info("use TLS session cache size {}", tt.getSessionCacheSize());
+            builder.sessionCacheSize(tt.getSessionCacheSize().longValue());
+        }
+
+        if (tt.getSessionTimeout() != null) {
+            LOG.info("use TLS session timeout {} seconds", tt.getSessionTimeout());
+            builder.sessionTimeout(tt.getSessionTimeout().longValue());
+        }
+
         return builder.build();
     }
 
+    private void configureTicketKeyRotation(SslContext sslContext, TlsType tt, int port) {
+        int interval = (tt.getTicketKeyRotation() == null)
+                ? 3600 : tt.getTicketKeyRotation().intValue();
+        if (interval <= 0) {
+            return;
+        }
+
+        if (!(sslContext.sessionContext() instanceof OpenSslSessionContext)) {
+            LOG.info("SSL provider of HTTP server on port {} does not support the rotation "
+                    + "of TLS session ticket keys, ignore it", port);
+            return;
+        }
+
+        if (ticketKeyRotationService == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, (run) -> {
+                Thread thread = new Thread(run, "tls-ticket-key-rotation");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            ticketKeyRotationService = executor;
+        }
+
+        TlsTicketKeyRotator rotator = new TlsTicketKeyRotator(
+                (OpenSslSessionContext) sslContext.sessionContext(), port);
+        // set the first key before the server accepts connections
+        rotator.run();
+        ticketKeyRotationService.scheduleAtFixedRate(rotator, interval, interval,
+                TimeUnit.SECONDS);
+        LOG.info("rotate TLS session ticket keys of HTTP server on port {} every {} seconds",
+                port, interval);
+    }
+
+    private static String[] tlsGaugeNames(HttpServer server) {
+        String prefix = "http.server-" + server.port() + ".tls.";
+        return new String[]{prefix + "fullHandshakes", prefix + "resumedHandshakes",
+            prefix + "failedHandshakes", prefix + "sessions", prefix + "sessionHits",
+            prefix + "sessionMisses", prefix + "sessionTimeouts", prefix + "sessionCacheFull",
+            prefix + "ticketKeyResume", prefix + "ticketKeyFail"};
+    }
+
+    /**
+     * Registers the TLS handshake counters, and for the OpenSSL providers the statistics of
+     * the session cache and tickets, as gauges http.server-&lt;port&gt;.tls.*.
+     */
+    private static void registerTlsGauges(HttpServer server) {
+        if (server.sslContext() == null) {
+            return;
+        }
+
+        String[] names = tlsGaugeNames(server);
+        Metrics.registerGauge(names[0], server::fullHandshakes);
+        Metrics.registerGauge(names[1], server::resumedHandshakes);
+        Metrics.registerGauge(names[2], server::failedHandshakes);
+
+        if (server.sslContext().sessionContext() instanceof OpenSslSessionContext) {
+            OpenSslSessionStats stats =
+                    ((OpenSslSessionContext) server.sslContext().sessionContext()).stats();
+            Metrics.registerGauge(names[3], stats::number);
+            Metrics.registerGauge(names[4], stats::hits);
+            Metrics.registerGauge(names[5], stats::misses);
+            Metrics.registerGauge(names[6], stats::timeouts);
+            Metrics.registerGauge(names[7], stats::cacheFull);
+            Metrics.registerGauge(names[8], stats::ticketKeyResume);
+            Metrics.registerGauge(names[9], stats::ticketKeyFail);
+        }
+    }
+
+    private static void unregisterTlsGauges(HttpServer server) {
+        for (String name : tlsGaugeNames(server)) {
+            Metrics.unregisterGauge(name);
+        }
+    }
+
+    private static void logTlsStatistics(HttpServer server) {
+        if (server.sslContext() == null || !LOG.isInfoEnabled()) {
+            return;
+        }
+
+        LOG.info("TLS handshakes of HTTP server on port {}: full={}, resumed={}, failed={}",
+                server.port(), server.fullHandshakes(), server.resumedHandshakes(),
+                server.failedHandshakes());
+
+        if (server.sslContext().sessionContext() instanceof OpenSslSessionContext) {
+            OpenSslSessionStats stats =
+                    ((OpenSslSessionContext) server.sslContext().sessionContext()).stats();
+            LOG.info("TLS sessions of HTTP server on port {}: number={}, hits={}, misses={}, "
+                    + "timeouts={}, cacheFull={}, ticketKeyResume={}, ticketKeyFail={}",
+                    server.port(), stats.number(), stats.hits(), stats.misses(),
+                    stats.timeouts(), stats.cacheFull(), stats.ticketKeyResume(),
+                    stats.ticketKeyFail());
+        }
+    }
+
     private KeyStore loadKeyStore(String storeType, FileOrValueType store, char[] password)
             throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException
              {
@@ -0,0 +1,85 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.net.ssl.SSLSession;
+
+import org.xipki.common.metrics.Metrics;
+import org.xipki.http.servlet.AbstractHttpServlet;
+import org.xipki.http.servlet.ServletURI;
+import org.xipki.http.servlet.SslReverseProxyMode;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Returns the latency histograms and gauges of {@link Metrics} as text, one line per metric.
+ * It is only served by the HTTP servers configured with metrics enabled.
+ * The optional parameter prefix restricts the report to the metrics whose names start
+ * with it, e.g. /metrics?prefix=ocsp. The metrics can only be reset via the shell.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class MetricsServlet extends AbstractHttpServlet {
+
+    private static final String CT_RESPONSE = "text/plain; charset=UTF-8";
+
+    public MetricsServlet() {
+    }
+
+    @Override
+    public FullHttpResponse service(FullHttpRequest request, ServletURI servletUri,
+            SSLSession sslSession, SslReverseProxyMode sslReverseProxyMode) throws Exception {
+        if (request.method() != HttpMethod.GET) {
+            return createErrorResponse(request.protocolVersion(),
+                    HttpResponseStatus.METHOD_NOT_ALLOWED);
+        }
+
+        String prefix = servletUri.parameter("prefix");
+        if (prefix != null && prefix.isEmpty()) {
+            prefix = null;
+        }
+
+        byte[] content = Metrics.report(prefix).getBytes(StandardCharsets.UTF_8);
+        return createOKResponse(request.protocolVersion(), CT_RESPONSE, content);
+    }
+
+}
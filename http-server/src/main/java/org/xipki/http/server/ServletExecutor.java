@@ -0,0 +1,234 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.http.servlet.HttpServlet;
+import org.xipki.http.servlet.ServletURI;
+import org.xipki.http.servlet.SslReverseProxyMode;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+
+/**
+ * Executor for the blocking work of one servlet, so that the Netty event loop threads only
+ * do I/O. The number of waiting requests is bounded, further requests will be rejected.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class ServletExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServletExecutor.class);
+
+    private final String name;
+
+    private final ExecutorService executor;
+
+    private final boolean virtualThreads;
+
+    private final int maxPending;
+
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    private final AtomicLong submitted = new AtomicLong(0);
+
+    private final AtomicLong completed = new AtomicLong(0);
+
+    private final AtomicLong failed = new AtomicLong(0);
+
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *          Name of the executor, used as prefix of the thread names.
+     * @param threads
+     *          Number of the threads. Must be at least 1.
+     * @param queueSize
+     *          Maximal number of the requests waiting for a free thread.
+     * @param virtualThreads
+     *          Whether to use one virtual thread per request if available (Java 21+).
+     *          In this case at most threads + queueSize requests are processed concurrently.
+     */
+    public ServletExecutor(String name, int threads, int queueSize, boolean virtualThreads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must not be less than 1: " + threads);
+        }
+
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("queueSize must not be negative: " + queueSize);
+        }
+
+        this.name = name;
+        this.maxPending = threads + queueSize;
+
+        ExecutorService tmpExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = (tmpExecutor != null);
+        if (tmpExecutor == null) {
+            AtomicInteger threadIndex = new AtomicInteger(0);
+            tmpExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                    (runnable) -> {
+                        Thread thread = new Thread(runnable,
+                                name + "-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            ((ThreadPoolExecutor) tmpExecutor).allowCoreThreadTimeOut(true);
+        }
+        this.executor = tmpExecutor;
+
+        LOG.info("created executor {}: threads={}, queueSize={}, virtualThreads={}",
+                name, threads, queueSize, this.virtualThreads);
+    }
+
+    /**
+     * Submits the request to the servlet.
+     *
+     * @return the future of the response.
+     * @throws RejectedExecutionException
+     *          if too many requests are waiting.
+     * @throws RuntimeException
+     *          if the servlet fails to submit the request.
+     */
+    public CompletableFuture<FullHttpResponse> submit(HttpServlet servlet,
+            FullHttpRequest request, ServletURI servletUri, SSLSession sslSession,
+            SslReverseProxyMode sslReverseProxyMode) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("too many pending requests for " + name);
+        }
+
+        CompletableFuture<FullHttpResponse> future;
+        try {
+            future = servlet.serviceAsync(request, servletUri, sslSession,
+                    sslReverseProxyMode, executor);
+        } catch (RejectedExecutionException ex) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            throw ex;
+        } catch (RuntimeException ex) {
+            // thrown by a servlet which overwrites serviceAsync()
+            pending.decrementAndGet();
+            failed.incrementAndGet();
+            throw ex;
+        }
+
+        submitted.incrementAndGet();
+        return future.whenComplete((response, th) -> {
+            pending.decrementAndGet();
+            if (th == null) {
+                completed.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        LOG.info("shutdown executor {}: submitted={}, completed={}, failed={}, rejected={}",
+                name, submitted.get(), completed.get(), failed.get(), rejected.get());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Returns the number of the requests which are waiting for a free thread.
+     */
+    public int queueDepth() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of the requests which are waiting or in process.
+     */
+    public int pendingRequests() {
+        return pending.get();
+    }
+
+    public long submittedRequests() {
+        return submitted.get();
+    }
+
+    public long completedRequests() {
+        return completed.get();
+    }
+
+    public long failedRequests() {
+        return failed.get();
+    }
+
+    public long rejectedRequests() {
+        return rejected.get();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            LOG.warn("virtual threads are not available, use platform threads");
+            return null;
+        }
+    }
+
+}
@@ -34,8 +34,10 @@
 
 package org.xipki.http.server;
 
-import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -46,9 +48,8 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.common.metrics.Metrics;
 import org.xipki.http.servlet.HttpServlet;
-import org.xipki.http.servlet.ServletURI;
-import org.xipki.http.servlet.ServletURIPool;
 
 /**
  * @author Lijun Liao
@@ -59,12 +60,63 @@ public class ServletListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServletListener.class);
 
+    private static final String PROP_ALIAS = "alias";
+
+    private static final String PROP_THREADS = "threads";
+
+    private static final String PROP_QUEUE_SIZE = "queueSize";
+
+    private static final String PROP_VIRTUAL_THREADS = "virtualThreads";
+
+    private static final String PROP_MIN_CONCURRENCY = "minConcurrency";
+
+    private static final String PROP_MAX_CONCURRENCY = "maxConcurrency";
+
+    private static final String PROP_ADAPTIVE_CONCURRENCY = "adaptiveConcurrency";
+
+    private static final int DEFAULT_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
     private final ConcurrentMap<HttpServlet, String> servletAliasMap = new ConcurrentHashMap<>();
 
+    private final ConcurrentMap<HttpServlet, ServletExecutor> servletExecutorMap =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<HttpServlet, AdmissionController> servletAdmissionMap =
+            new ConcurrentHashMap<>();
+
     private final ConcurrentMap<String, HttpServlet> aliasServletMap = new ConcurrentHashMap<>();
 
     private final Set<String> aliases = new HashSet<>();
 
+    /**
+     * Routing table. It is rebuilt on each change of the registered servlets.
+     */
+    private volatile ServletRouter router = ServletRouter.EMPTY;
+
+    /**
+     * Register the servlet. Besides the property alias, the following optional properties
+     * configure the executor of the blocking work of the servlet:
+     * <ul>
+     *   <li>threads: number of the threads, default to 4 * number of processors. If 0,
+     *     the servlet is called directly in the Netty event loop.</li>
+     *   <li>queueSize: maximal number of the requests waiting for a free thread,
+     *     default to 1000. Further requests are rejected with the status 503.</li>
+     *   <li>virtualThreads: whether to use virtual threads if available,
+     *     default to false.</li>
+     * </ul>
+     * and the following optional properties configure the admission control:
+     * <ul>
+     *   <li>maxConcurrency: maximal number of the concurrent requests, default to 0.
+     *     If 0, the number is not limited. Further requests are rejected at once with the
+     *     overload response of the servlet.</li>
+     *   <li>minConcurrency: minimal number of the concurrent requests the adaptive
+     *     limit can be decreased to, default to 1.</li>
+     *   <li>adaptiveConcurrency: whether to adjust the limit between minConcurrency and
+     *     maxConcurrency to the observed latency, default to false.</li>
+     * </ul>
+     */
     // Don't change the method signature, exactly this is required by the OSGi blueprint service
     public void register(HttpServlet servlet, Map<?, ?> properties) {
         if (properties == null) {
@@ -72,18 +124,35 @@ public class ServletListener {
             return;
         }
 
-        Object propValue = properties.get("alias");
+        Object propValue = properties.get(PROP_ALIAS);
         if (!(propValue instanceof String)) {
             LOG.info("registerServlet invoked with invalid type ({}) of alias, ingore it",
                     propValue.getClass().getName());
             return;
         }
 
-        register(servlet, (String) propValue);
+        int threads;
+        int queueSize;
+        int minConcurrency;
+        int maxConcurrency;
+        try {
+            threads = getIntProperty(properties, PROP_THREADS, DEFAULT_THREADS);
+            queueSize = getIntProperty(properties, PROP_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+            minConcurrency = getIntProperty(properties, PROP_MIN_CONCURRENCY, 1);
+            maxConcurrency = getIntProperty(properties, PROP_MAX_CONCURRENCY, 0);
+        } catch (NumberFormatException ex) {
+            LOG.warn("registerServlet invoked with invalid executor properties, ignore it: {}",
+                    ex.getMessage());
+            return;
+        }
+
+        register(servlet, (String) propValue, threads, queueSize,
+                getBooleanProperty(properties, PROP_VIRTUAL_THREADS), minConcurrency,
+                maxConcurrency, getBooleanProperty(properties, PROP_ADAPTIVE_CONCURRENCY));
     }
 
     /**
-     * Register the servlet.
+     * Register the servlet with the default executor.
      *
      * @param servlet
      *          The servlet to be registered.
@@ -91,6 +160,54 @@ public class ServletListener {
      *          Comma or space separated list of aliases under which the servlet will be registered.
      */
     public void register(HttpServlet servlet, String aliasList) {
+        register(servlet, aliasList, DEFAULT_THREADS, DEFAULT_QUEUE_SIZE, false);
+    }
+
+    /**
+     * Register the servlet.
+     *
+     * @param servlet
+     *          The servlet to be registered.
+     * @param aliasList
+     *          Comma or space separated list of aliases under which the servlet will be registered.
+     * @param threads
+     *          Number of the threads to process the requests. If 0, the servlet is called
+     *          directly in the Netty event loop.
+     * @param queueSize
+     *          Maximal number of the requests waiting for a free thread.
+     * @param virtualThreads
+     *          Whether to use virtual threads if available.
+     */
+    public void register(HttpServlet servlet, String aliasList, int threads,
+            int queueSize, boolean virtualThreads) {
+        register(servlet, aliasList, threads, queueSize, virtualThreads, 1, 0, false);
+    }
+
+    /**
+     * Register the servlet.
+     *
+     * @param servlet
+     *          The servlet to be registered.
+     * @param aliasList
+     *          Comma or space separated list of aliases under which the servlet will be registered.
+     * @param threads
+     *          Number of the threads to process the requests. If 0, the servlet is called
+     *          directly in the Netty event loop.
+     * @param queueSize
+     *          Maximal number of the requests waiting for a free thread.
+     * @param virtualThreads
+     *          Whether to use virtual threads if available.
+     * @param minConcurrency
+     *          Minimal number of the concurrent requests the adaptive limit can be
+     *          decreased to.
+     * @param maxConcurrency
+     *          Maximal number of the concurrent requests. If 0, the number is not limited.
+     * @param adaptiveConcurrency
+     *          Whether to adjust the limit to the observed latency.
+     */
+    public synchronized void register(HttpServlet servlet, String aliasList, int threads,
+            int queueSize, boolean virtualThreads, int minConcurrency, int maxConcurrency,
+            boolean adaptiveConcurrency) {
         //might be null if dependency is optional
         if (servlet == null) {
             LOG.info("registerServlet invoked with null servlet, ingore it");
@@ -138,66 +255,124 @@ public class ServletListener {
                 LOG.info("register HttpServet {} for alias {}", servlet, alias);
             }
         }
+
+        String alias = servletAliasMap.get(servlet);
+        if (alias == null) {
+            return;
+        }
+
+        ServletExecutor executor = (threads < 1) ? null
+                : new ServletExecutor("servlet" + alias.replace('/', '-'), threads, queueSize,
+                        virtualThreads);
+        ServletExecutor previousExecutor = (executor == null)
+                ? servletExecutorMap.remove(servlet) : servletExecutorMap.put(servlet, executor);
+
+        AdmissionController admission = null;
+        if (maxConcurrency > 0) {
+            int minLimit = Math.max(1, Math.min(minConcurrency, maxConcurrency));
+            admission = new AdmissionController("admission" + alias.replace('/', '-'),
+                    minLimit, maxConcurrency, (threads < 1) ? maxConcurrency : threads,
+                    adaptiveConcurrency);
+            servletAdmissionMap.put(servlet, admission);
+        } else {
+            servletAdmissionMap.remove(servlet);
+        }
+
+        rebuildRouter();
+        if (previousExecutor != null) {
+            previousExecutor.shutdown();
+        }
+
+        String metricsName = ServletRoute.metricsName(alias);
+        unregisterGauges(metricsName);
+        if (executor != null) {
+            Metrics.registerGauge(metricsName + ".queueDepth", executor::queueDepth);
+            Metrics.registerGauge(metricsName + ".pending", executor::pendingRequests);
+            Metrics.registerGauge(metricsName + ".rejected", executor::rejectedRequests);
+            Metrics.registerGauge(metricsName + ".failed", executor::failedRequests);
+        }
+
+        if (admission != null) {
+            Metrics.registerGauge(metricsName + ".concurrencyLimit", admission::limit);
+            Metrics.registerGauge(metricsName + ".inFlight", admission::inFlight);
+            Metrics.registerGauge(metricsName + ".shed", admission::rejectedRequests);
+        }
     }
 
-    public void unregister(HttpServlet servlet) {
+    public synchronized void unregister(HttpServlet servlet) {
         //might be null if dependency is optional
         if (servlet == null) {
             LOG.debug("unregisterServlet invoked with null.");
             return;
         }
 
+        ServletExecutor executor = servletExecutorMap.remove(servlet);
+        servletAdmissionMap.remove(servlet);
         String alias = servletAliasMap.remove(servlet);
         if (alias != null) {
             aliases.remove(alias);
             aliasServletMap.remove(alias);
+            rebuildRouter();
+            unregisterGauges(ServletRoute.metricsName(alias));
             LOG.info("removed HttpServlet for {}", servlet);
         } else {
             LOG.info("no HttpServlet found to remove for {}", servlet);
         }
+
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 
-    public Object[] getServlet(String rawPath) throws URISyntaxException {
-        String alias = null;
-        String uriText = null;
+    private void rebuildRouter() {
+        Map<String, ServletRoute> routes = new HashMap<>();
+        for (String alias : aliases) {
+            HttpServlet servlet = aliasServletMap.get(alias);
+            routes.put(alias, new ServletRoute(alias, servlet, servletExecutorMap.get(servlet),
+                    servletAdmissionMap.get(servlet)));
+        }
+        this.router = new ServletRouter(routes);
+    }
 
-        for (String m : aliases) {
-            if (m.equals("/")) {
-                alias = m;
-                uriText = rawPath;
-                break;
-            }
+    /**
+     * Returns the route of the request URI.
+     *
+     * @param rawPath
+     *          The request URI. Must not be {@code null}.
+     * @return the route with the longest alias matching the request URI, or {@code null}
+     *          if no alias matches.
+     */
+    public ServletRoute getRoute(String rawPath) {
+        return router.match(rawPath);
+    }
 
-            if (rawPath.startsWith(m)) {
-                int len = rawPath.length();
-                int mLen = m.length();
-                if (len == mLen) {
-                    uriText = "/";
-                    alias = m;
-                } else {
-                    char ch = rawPath.charAt(mLen);
-                    if (ch == '/') {
-                        uriText = (len == mLen + 1) ? "/" : rawPath.substring(mLen);
-                        alias = m;
-                    } else if (ch == '?') {
-                        uriText = rawPath.substring(mLen);
-                        alias = m;
-                    }
-                }
-            }
+    /**
+     * Returns the executors of the servlets, for the statistics.
+     *
+     * @return the executors of the servlets.
+     */
+    public Collection<ServletExecutor> getServletExecutors() {
+        return Collections.unmodifiableCollection(servletExecutorMap.values());
+    }
 
-            if (alias != null) {
-                break;
-            }
-        }
+    private static void unregisterGauges(String metricsName) {
+        Metrics.unregisterGauge(metricsName + ".queueDepth");
+        Metrics.unregisterGauge(metricsName + ".pending");
+        Metrics.unregisterGauge(metricsName + ".rejected");
+        Metrics.unregisterGauge(metricsName + ".failed");
+        Metrics.unregisterGauge(metricsName + ".concurrencyLimit");
+        Metrics.unregisterGauge(metricsName + ".inFlight");
+        Metrics.unregisterGauge(metricsName + ".shed");
+    }
 
-        if (alias == null) {
-            return null;
-        }
+    private static int getIntProperty(Map<?, ?> properties, String name, int defaultValue) {
+        Object value = properties.get(name);
+        return (value == null) ? defaultValue : Integer.parseInt(value.toString().trim());
+    }
 
-        ServletURI servletUri = ServletURIPool.getServletURI(uriText);
-        HttpServlet servlet = aliasServletMap.get(alias);
-        return new Object[]{servletUri, servlet};
+    private static boolean getBooleanProperty(Map<?, ?> properties, String name) {
+        Object value = properties.get(name);
+        return value != null && Boolean.parseBoolean(value.toString().trim());
     }
 
 }
@@ -0,0 +1,135 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server;
+
+import java.net.URISyntaxException;
+
+import org.xipki.common.metrics.LatencyHistogram;
+import org.xipki.common.metrics.Metrics;
+import org.xipki.http.servlet.HttpServlet;
+import org.xipki.http.servlet.ServletURI;
+import org.xipki.http.servlet.ServletURIPool;
+
+/**
+ * Immutable entry of the routing table. The same object is returned for all requests
+ * to the alias.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public final class ServletRoute {
+
+    private final String alias;
+
+    private final HttpServlet servlet;
+
+    private final ServletExecutor executor;
+
+    private final AdmissionController admission;
+
+    private final LatencyHistogram latency;
+
+    ServletRoute(String alias, HttpServlet servlet, ServletExecutor executor,
+            AdmissionController admission) {
+        this.alias = alias;
+        this.servlet = servlet;
+        this.executor = executor;
+        this.admission = admission;
+        this.latency = Metrics.histogram(metricsName(alias));
+    }
+
+    public String alias() {
+        return alias;
+    }
+
+    public HttpServlet servlet() {
+        return servlet;
+    }
+
+    /**
+     * Returns the executor of the blocking work.
+     *
+     * @return the executor, or {@code null} if the servlet is called in the event loop.
+     */
+    public ServletExecutor executor() {
+        return executor;
+    }
+
+    /**
+     * Returns the admission controller.
+     *
+     * @return the admission controller, or {@code null} if the number of concurrent requests
+     *          is not limited.
+     */
+    public AdmissionController admission() {
+        return admission;
+    }
+
+    /**
+     * Returns the histogram of the time between the routing of a request and the sending
+     * of its response. The histogram is shared by all routes of the same alias.
+     *
+     * @return the latency histogram.
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    static String metricsName(String alias) {
+        return "http.servlet" + alias.replace('/', '-');
+    }
+
+    /**
+     * Returns the servlet URI (URI part after the alias).
+     *
+     * @param rawPath
+     *          The request URI matched by this route. Must not be {@code null}.
+     * @return the servlet URI.
+     */
+    public ServletURI servletUri(String rawPath) throws URISyntaxException {
+        if (alias.equals("/")) {
+            return ServletURIPool.getServletURI(rawPath);
+        }
+
+        int len = rawPath.length();
+        int aliasLen = alias.length();
+        if (len == aliasLen || (len == aliasLen + 1 && rawPath.charAt(aliasLen) == '/')) {
+            return ServletURIPool.getServletURI("/");
+        }
+        return ServletURIPool.getServletURI(rawPath.substring(aliasLen));
+    }
+
+}
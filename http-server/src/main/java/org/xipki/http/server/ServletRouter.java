@@ -0,0 +1,134 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable routing table. The aliases are stored in a trie of the path segments, so that
+ * matching a request costs one map lookup per path segment, independent of the number of
+ * aliases. If several aliases match, the longest one wins.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+final class ServletRouter {
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private ServletRoute route;
+
+    } // class Node
+
+    static final ServletRouter EMPTY = new ServletRouter(new HashMap<>());
+
+    private final Node root = new Node();
+
+    /**
+     * Constructor.
+     *
+     * @param routes
+     *          Map of the aliases to the routes. Each alias starts with '/' and
+     *          does not end with '/', except the alias "/" itself.
+     */
+    ServletRouter(Map<String, ServletRoute> routes) {
+        for (Map.Entry<String, ServletRoute> entry : routes.entrySet()) {
+            String alias = entry.getKey();
+            Node node = root;
+            if (alias.length() > 1) {
+                for (String segment : alias.substring(1).split("/", -1)) {
+                    Node child = node.children.get(segment);
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(segment, child);
+                    }
+                    node = child;
+                }
+            }
+            node.route = entry.getValue();
+        }
+    }
+
+    /**
+     * Returns the route of the request URI.
+     *
+     * @param rawPath
+     *          The request URI. Must not be {@code null}.
+     * @return the route with the longest alias matching the request URI, or {@code null}
+     *          if no alias matches.
+     */
+    ServletRoute match(String rawPath) {
+        ServletRoute route = root.route;
+        if (rawPath.isEmpty() || rawPath.charAt(0) != '/') {
+            return route;
+        }
+
+        Node node = root;
+        final int len = rawPath.length();
+        int start = 1;
+        while (start <= len) {
+            int end = start;
+            char ch = 0;
+            while (end < len) {
+                ch = rawPath.charAt(end);
+                if (ch == '/' || ch == '?') {
+                    break;
+                }
+                end++;
+            }
+
+            node = node.children.get(rawPath.substring(start, end));
+            if (node == null) {
+                break;
+            }
+
+            if (node.route != null) {
+                route = node.route;
+            }
+
+            if (end == len || ch == '?') {
+                break;
+            }
+            start = end + 1;
+        }
+
+        return route;
+    }
+
+}
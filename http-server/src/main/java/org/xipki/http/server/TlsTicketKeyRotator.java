@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server;
+
+import java.security.SecureRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+
+/**
+ * Rotates the keys used to encrypt the TLS session tickets of an OpenSSL context. The
+ * previous key is kept to decrypt the tickets issued before the last rotation, so that
+ * a ticket is valid for at most two rotation intervals.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+final class TlsTicketKeyRotator implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TlsTicketKeyRotator.class);
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final OpenSslSessionContext sessionContext;
+
+    private final int port;
+
+    private OpenSslSessionTicketKey currentKey;
+
+    TlsTicketKeyRotator(OpenSslSessionContext sessionContext, int port) {
+        if (sessionContext == null) {
+            throw new IllegalArgumentException("sessionContext must not be null");
+        }
+        this.sessionContext = sessionContext;
+        this.port = port;
+    }
+
+    @Override
+    public synchronized void run() {
+        try {
+            OpenSslSessionTicketKey newKey = new OpenSslSessionTicketKey(
+                    randomBytes(OpenSslSessionTicketKey.NAME_SIZE),
+                    randomBytes(OpenSslSessionTicketKey.HMAC_KEY_SIZE),
+                    randomBytes(OpenSslSessionTicketKey.AES_KEY_SIZE));
+            if (currentKey == null) {
+                sessionContext.setTicketKeys(newKey);
+            } else {
+                sessionContext.setTicketKeys(newKey, currentKey);
+            }
+            currentKey = newKey;
+            LOG.debug("rotated the TLS session ticket key of HTTP server on port {}", port);
+        } catch (Throwable th) {
+            // do not throw it, otherwise the rotation will not be scheduled any more
+            LOG.error("could not rotate the TLS session ticket key of HTTP server on port "
+                    + port, th);
+        }
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xipki.http.server.AdmissionController;
+
+import junit.framework.Assert;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class AdmissionControllerTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRejectAboveLimit() {
+        AdmissionController controller = new AdmissionController("test", 1, 10, 2, true);
+        Assert.assertTrue(controller.tryAcquire());
+        Assert.assertTrue(controller.tryAcquire());
+        Assert.assertFalse(controller.tryAcquire());
+        Assert.assertEquals(2, controller.inFlight());
+        Assert.assertEquals(2, controller.admittedRequests());
+        Assert.assertEquals(1, controller.rejectedRequests());
+
+        controller.release(LATENCY, true);
+        Assert.assertTrue(controller.tryAcquire());
+    }
+
+    @Test
+    public void testInitialLimitAdjusted() {
+        Assert.assertEquals(5, new AdmissionController("test", 5, 10, 1, true).limit());
+        Assert.assertEquals(10, new AdmissionController("test", 5, 10, 20, true).limit());
+        // not adaptive: always the maximal limit
+        Assert.assertEquals(10, new AdmissionController("test", 5, 10, 7, false).limit());
+    }
+
+    @Test
+    public void testInvalidLimits() {
+        try {
+            new AdmissionController("test", 0, 10, 5, true);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        try {
+            new AdmissionController("test", 5, 4, 5, true);
+            Assert.fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGrowWithoutQueueing() {
+        AdmissionController controller = new AdmissionController("test", 1, 100, 10, true);
+        for (int i = 0; i < 50; i++) {
+            fullRound(controller, LATENCY);
+        }
+        Assert.assertTrue("limit " + controller.limit(), controller.limit() > 10);
+
+        for (int i = 0; i < 1000; i++) {
+            fullRound(controller, LATENCY);
+            Assert.assertTrue("limit " + controller.limit(), controller.limit() <= 100);
+        }
+        Assert.assertEquals(100, controller.limit());
+    }
+
+    @Test
+    public void testNoGrowWithoutUsage() {
+        AdmissionController controller = new AdmissionController("test", 1, 100, 10, true);
+        for (int i = 0; i < 1000; i++) {
+            // only one request at a time
+            Assert.assertTrue(controller.tryAcquire());
+            controller.release(LATENCY, true);
+        }
+        Assert.assertEquals(10, controller.limit());
+    }
+
+    @Test
+    public void testShrinkUnderLatency() {
+        AdmissionController controller = new AdmissionController("test", 5, 100, 50, true);
+        // establish the minimal latency
+        fullRound(controller, LATENCY);
+        int limit = controller.limit();
+
+        for (int i = 0; i < 50; i++) {
+            fullRound(controller, 100 * LATENCY);
+        }
+        Assert.assertTrue("limit " + controller.limit(), controller.limit() < limit);
+
+        for (int i = 0; i < 1000; i++) {
+            fullRound(controller, 100 * LATENCY);
+            Assert.assertTrue("limit " + controller.limit(), controller.limit() >= 5);
+        }
+        // the limit is not decreased any more once less than 6 requests are estimated queued
+        Assert.assertEquals(6, controller.limit());
+    }
+
+    @Test
+    public void testShrinkOnDrop() {
+        AdmissionController controller = new AdmissionController("test", 5, 100, 50, true);
+        Assert.assertTrue(controller.tryAcquire());
+        controller.drop();
+        Assert.assertEquals(45, controller.limit());
+        Assert.assertEquals(0, controller.inFlight());
+        Assert.assertEquals(1, controller.rejectedRequests());
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(controller.tryAcquire());
+            controller.drop();
+        }
+        Assert.assertEquals(5, controller.limit());
+    }
+
+    @Test
+    public void testShrinkOnFailure() {
+        AdmissionController controller = new AdmissionController("test", 5, 100, 50, true);
+        Assert.assertTrue(controller.tryAcquire());
+        controller.release(LATENCY, false);
+        Assert.assertEquals(45, controller.limit());
+        Assert.assertEquals(0, controller.inFlight());
+    }
+
+    @Test
+    public void testNotAdaptive() {
+        AdmissionController controller = new AdmissionController("test", 5, 10, 5, false);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(controller.tryAcquire());
+            controller.drop();
+            fullRound(controller, 100 * LATENCY);
+        }
+        Assert.assertEquals(10, controller.limit());
+    }
+
+    /**
+     * Admits as many requests as the limit allows and releases them with the given latency.
+     */
+    private static void fullRound(final AdmissionController controller, final long latency) {
+        int num = 0;
+        while (controller.tryAcquire()) {
+            num++;
+        }
+
+        for (int i = 0; i < num; i++) {
+            controller.release(latency, true);
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.server.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.http.server.HttpServer;
+import org.xipki.http.server.ServletListener;
+import org.xipki.http.server.ServletRoute;
+import org.xipki.http.servlet.HttpServlet;
+import org.xipki.http.servlet.ServletURI;
+import org.xipki.http.servlet.SslReverseProxyMode;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import junit.framework.Assert;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class HttpServerTest {
+
+    private static final String ALIAS = "/test";
+
+    private static class BlockingServlet implements HttpServlet {
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private final CountDownLatch proceed = new CountDownLatch(1);
+
+        private volatile boolean block = true;
+
+        @Override
+        public boolean needsTlsSessionInfo() {
+            return false;
+        }
+
+        @Override
+        public FullHttpResponse service(FullHttpRequest request, ServletURI servletUri,
+                SSLSession sslSession, SslReverseProxyMode sslReverseProxyMode)
+                throws Exception {
+            if (block) {
+                block = false;
+                entered.countDown();
+                proceed.await(10, TimeUnit.SECONDS);
+            }
+
+            byte[] content = "OK".getBytes(StandardCharsets.US_ASCII);
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                    HttpResponseStatus.OK, Unpooled.wrappedBuffer(content));
+            response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, content.length);
+            return response;
+        }
+
+    }
+
+    private static class FailingServlet implements HttpServlet {
+
+        @Override
+        public boolean needsTlsSessionInfo() {
+            return false;
+        }
+
+        @Override
+        public FullHttpResponse service(FullHttpRequest request, ServletURI servletUri,
+                SSLSession sslSession, SslReverseProxyMode sslReverseProxyMode)
+                throws Exception {
+            throw new UnsupportedOperationException("only serviceAsync is supported");
+        }
+
+        @Override
+        public CompletableFuture<FullHttpResponse> serviceAsync(FullHttpRequest request,
+                ServletURI servletUri, SSLSession sslSession,
+                SslReverseProxyMode sslReverseProxyMode, Executor executor) {
+            throw new IllegalStateException("failure before submitting");
+        }
+
+    }
+
+    private ServletListener servletListener;
+
+    private HttpServer server;
+
+    private int port;
+
+    @Before
+    public void startServer() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        servletListener = new ServletListener();
+        server = new HttpServer(null, port, 2);
+        server.setServletListener(servletListener);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.shutdown();
+    }
+
+    @Test
+    public void testOverloadKeepsConnection() throws Exception {
+        BlockingServlet servlet = new BlockingServlet();
+        servletListener.register(servlet, ALIAS, 1, 10, false, 1, 1, false);
+
+        try (Socket busy = new Socket("localhost", port);
+                Socket shed = new Socket("localhost", port)) {
+            sendRequest(busy);
+            Assert.assertTrue("servlet not called",
+                    servlet.entered.await(10, TimeUnit.SECONDS));
+
+            // the only permit is taken by the blocked request
+            sendRequest(shed);
+            Assert.assertEquals(503, readStatus(shed.getInputStream()));
+
+            servlet.proceed.countDown();
+            Assert.assertEquals(200, readStatus(busy.getInputStream()));
+
+            // the connection of the rejected request is still usable
+            sendRequest(shed);
+            Assert.assertEquals(200, readStatus(shed.getInputStream()));
+        }
+        Assert.assertEquals(0, servletListener.getRoute(ALIAS).admission().inFlight());
+    }
+
+    @Test
+    public void testFailureWhileSubmitting() throws Exception {
+        servletListener.register(new FailingServlet(), ALIAS, 1, 10, false, 1, 1, false);
+
+        for (int i = 0; i < 3; i++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                sendRequest(socket);
+                Assert.assertEquals(500, readStatus(socket.getInputStream()));
+            }
+        }
+
+        // the permit and the pending counter are released, otherwise the second request
+        // would have been rejected with 503
+        ServletRoute route = servletListener.getRoute(ALIAS);
+        Assert.assertEquals(0, route.admission().inFlight());
+        Assert.assertEquals(0, route.executor().pendingRequests());
+        Assert.assertEquals(3, route.executor().failedRequests());
+    }
+
+    private static void sendRequest(Socket socket) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + ALIAS + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Reads one response and returns its status code.
+     */
+    private static int readStatus(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        Assert.assertNotNull("connection closed", statusLine);
+
+        int contentLength = 0;
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int idx = line.indexOf(':');
+            if (line.substring(0, idx).trim().equalsIgnoreCase("content-length")) {
+                contentLength = Integer.parseInt(line.substring(idx + 1).trim());
+            }
+        }
+
+        for (int i = 0; i < contentLength; i++) {
+            if (in.read() == -1) {
+                break;
+            }
+        }
+        return Integer.parseInt(statusLine.split(" ")[1]);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int ch;
+        while ((ch = in.read()) != '\n') {
+            if (ch == -1) {
+                return (line.size() == 0) ? null : line.toString("US-ASCII");
+            }
+
+            if (ch != '\r') {
+                line.write(ch);
+            }
+        }
+        return line.toString("US-ASCII");
+    }
+
+}
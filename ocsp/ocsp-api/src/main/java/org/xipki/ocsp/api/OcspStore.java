@@ -36,7 +36,9 @@ package org.xipki.ocsp.api;
 
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 import org.xipki.common.util.ParamUtil;
 import org.xipki.datasource.DataSourceWrapper;
@@ -65,6 +67,8 @@ public abstract class OcspStore {
 
     protected boolean ignoreNotYetValidCert;
 
+    protected Map<String, DataSourceWrapper> datasources = Collections.emptyMap();
+
     public OcspStore() {
     }
 
@@ -179,4 +183,18 @@ public abstract class OcspStore {
         this.ignoreNotYetValidCert = ignoreNotYetValidCert;
     }
 
+    /**
+     * Sets all datasources configured in the OCSP server, so that the store can refer to
+     * further datasources by name in its configuration. Must be called before
+     * {@link #init(String, DataSourceWrapper)}.
+     *
+     * @param datasources
+     *          Datasources by name. Could be {@code null}.
+     * @since 2.2.0
+     */
+    public void setDatasources(final Map<String, DataSourceWrapper> datasources) {
+        this.datasources = (datasources == null) ? Collections.emptyMap()
+                : Collections.unmodifiableMap(datasources);
+    }
+
 }
@@ -245,4 +245,12 @@ public class HttpOcspServlet extends AbstractHttpServlet {
         } // end external try
     } // method serviceGet
 
+    @Override
+    public FullHttpResponse overloadResponse(FullHttpRequest request, ServletURI servletUri) {
+        // RFC 6960 4.2.1: tryLater, the unsigned response does not require the signer
+        byte[] encodedOcspResp =
+                OcspServer.unsuccesfulResponse(OcspResponseStatus.tryLater).response();
+        return createOKResponse(request.protocolVersion(), CT_RESPONSE, encodedOcspResp);
+    }
+
 }
@@ -81,6 +81,9 @@ import org.xipki.common.HealthCheckResult;
 import org.xipki.common.InvalidConfException;
 import org.xipki.common.ObjectCreationException;
 import org.xipki.common.TripleState;
+import org.xipki.common.metrics.LatencyHistogram;
+import org.xipki.common.metrics.Metrics;
+import org.xipki.common.metrics.PhaseTimer;
 import org.xipki.common.util.CollectionUtil;
 import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.LogUtil;
@@ -187,6 +190,20 @@ public class OcspServer {
 
     private static final Logger LOG = LoggerFactory.getLogger(OcspServer.class);
 
+    private static final LatencyHistogram H_PARSE = Metrics.histogram("ocsp.answer.parse");
+
+    private static final LatencyHistogram H_CACHE_LOOKUP =
+            Metrics.histogram("ocsp.answer.cacheLookup");
+
+    private static final LatencyHistogram H_STATUS = Metrics.histogram("ocsp.answer.status");
+
+    private static final LatencyHistogram H_SIGN = Metrics.histogram("ocsp.answer.sign");
+
+    private static final LatencyHistogram H_CACHE_STORE =
+            Metrics.histogram("ocsp.answer.cacheStore");
+
+    private static final LatencyHistogram H_TOTAL = Metrics.histogram("ocsp.answer.total");
+
     private static final Map<OcspResponseStatus, OcspRespWithCacheInfo> unsuccesfulOCSPRespMap;
 
     private final DataSourceFactory datasourceFactory;
@@ -586,8 +603,29 @@ public class OcspServer {
         }
     }
 
+    /**
+     * Returns the pre-encoded unsigned response with the given unsuccessful status.
+     *
+     * @param status
+     *          Response status. Must not be {@link OcspResponseStatus#successful}.
+     * @return the response.
+     */
+    static OcspRespWithCacheInfo unsuccesfulResponse(final OcspResponseStatus status) {
+        return unsuccesfulOCSPRespMap.get(status);
+    }
+
     public OcspRespWithCacheInfo answer(final Responder responder, final byte[] request,
             final boolean viaGet) {
+        PhaseTimer timer = new PhaseTimer();
+        try {
+            return answer0(responder, request, viaGet, timer);
+        } finally {
+            timer.total(H_TOTAL);
+        }
+    }
+
+    private OcspRespWithCacheInfo answer0(final Responder responder, final byte[] request,
+            final boolean viaGet, final PhaseTimer timer) {
         RequestOption reqOpt = responder.requestOption();
 
         int version;
@@ -707,6 +745,8 @@ public class OcspServer {
                 concurrentSigner = signer.firstSigner();
             }
 
+            timer.phase(H_PARSE);
+
             AlgorithmCode cacheDbSigAlgCode = null;
             AlgorithmCode cacheDbCertHashAlgCode = null;
             BigInteger cacheDbSerialNumber = null;
@@ -743,6 +783,7 @@ public class OcspServer {
                     OcspRespWithCacheInfo cachedResp = responseCacher.getOcspResponse(
                             cacheDbIssuerId.intValue(), cacheDbSerialNumber, cacheDbSigAlgCode,
                             cacheDbCertHashAlgCode);
+                    timer.phase(H_CACHE_LOOKUP);
                     if (cachedResp != null) {
                         return cachedResp;
                     }
@@ -768,6 +809,7 @@ public class OcspServer {
 
             OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
+            timer.skip();
             for (int i = 0; i < requestsSize; i++) {
                 OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
                         builder, responder, reqOpt, repOpt, repControl);
@@ -776,6 +818,7 @@ public class OcspServer {
                     return failureOcspResp;
                 }
             }
+            timer.phase(H_STATUS);
 
             if (repControl.includeExtendedRevokeExtension) {
                 respExtensions.add(extension_pkix_ocsp_extendedRevoke);
@@ -798,9 +841,11 @@ public class OcspServer {
             }
 
             byte[] encodeOCSPResponse;
+            timer.skip();
             try {
                 encodeOCSPResponse = builder.buildOCSPResponse(concurrentSigner,
                         certsInResp, new Date());
+                timer.phase(H_SIGN);
             } catch (NoIdleSignerException ex) {
                 return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
             } catch (OCSPException ex) {
@@ -816,6 +861,7 @@ public class OcspServer {
                         cacheDbSerialNumber, repControl.cacheThisUpdate,
                         repControl.cacheNextUpdate, cacheDbSigAlgCode,
                         cacheDbCertHashAlgCode, encodeOCSPResponse);
+                timer.phase(H_CACHE_STORE);
             }
 
             if (viaGet && repControl.canCacheInfo) {
@@ -831,7 +877,7 @@ public class OcspServer {
             LogUtil.error(LOG, th);
             return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
         }
-    } // method ask
+    } // method answer0
 
     private OcspRespWithCacheInfo processCertReq(CertID certId,
             OCSPRespBuilder builder, Responder responder, RequestOption reqOpt,
@@ -1080,6 +1126,7 @@ public class OcspServer {
                         + "' not defined");
             }
         }
+        store.setDatasources(datasources);
         try {
             store.init(conf.getSource().getConf(), datasource);
         } catch (OcspStoreException ex) {
@@ -1155,6 +1202,17 @@ public class OcspServer {
 
     private static boolean canBuildCertpath(final X509CertificateHolder[] certsInReq,
             final RequestOption requestOption, final Date referenceTime) {
+        String fingerprint;
+        try {
+            fingerprint = HashAlgoType.SHA1.base64Hash(certsInReq[0].getEncoded());
+        } catch (IOException ex) {
+            return false;
+        }
+
+        if (requestOption.isCertpathValidated(fingerprint, referenceTime)) {
+            return true;
+        }
+
         X509Certificate target;
         try {
             target = X509Util.toX509Cert(certsInReq[0].toASN1Structure());
@@ -1189,10 +1247,10 @@ public class OcspServer {
         X509Certificate[] certpath = X509Util.buildCertPath(target, certstore);
         CertpathValidationModel model = requestOption.certpathValidationModel();
 
-        Date now = new Date();
         if (model == null || model == CertpathValidationModel.PKIX) {
             for (X509Certificate m : certpath) {
-                if (m.getNotBefore().after(now) || m.getNotAfter().before(now)) {
+                if (m.getNotBefore().after(referenceTime)
+                        || m.getNotAfter().before(referenceTime)) {
                     return false;
                 }
             }
@@ -1206,6 +1264,7 @@ public class OcspServer {
             X509Certificate targetCert = certpath[i];
             for (CertWithEncoded m : trustAnchors) {
                 if (m.equalsCert(targetCert)) {
+                    requestOption.cacheValidatedCertpath(fingerprint, certpath);
                     return true;
                 }
             }
@@ -46,11 +46,13 @@ import java.security.NoSuchProviderException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.xipki.common.InvalidConfException;
+import org.xipki.common.LruCache;
 import org.xipki.common.TripleState;
 import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.ParamUtil;
@@ -109,6 +111,14 @@ class RequestOption {
 
     private final CertpathValidationModel certpathValidationModel;
 
+    /**
+     * Validated certpaths of the request signers. The key is composed of the validation
+     * model and the fingerprint of the signer certificate, the value is the time (in ms)
+     * until which the validation result is valid. Since the trust anchors are bound to this
+     * RequestOption, reloading the configuration discards the cache.
+     */
+    private final LruCache<String, Long> validatedCertpaths;
+
     RequestOption(final RequestOptionType conf) throws InvalidConfException {
         ParamUtil.requireNonNull("conf", conf);
 
@@ -191,6 +201,7 @@ class RequestOption {
             trustAnchors = null;
             certs = null;
             certpathValidationModel = CertpathValidationModel.PKIX;
+            validatedCertpaths = null;
             return;
         }
 
@@ -224,6 +235,12 @@ class RequestOption {
             throw new InvalidConfException(
                     "could not initialize the certs: " + ex.getMessage(), ex);
         }
+
+        Integer cacheSize = certpathConf.getCacheSize();
+        if (cacheSize == null) {
+            cacheSize = 1000;
+        }
+        this.validatedCertpaths = (cacheSize < 1) ? null : new LruCache<String, Long>(cacheSize);
     } // constructor
 
     public Set<HashAlgoType> hashAlgos() {
@@ -278,6 +295,62 @@ class RequestOption {
         return certs;
     }
 
+    /**
+     * Checks whether the certpath of the signer certificate has been validated before.
+     *
+     * @param signerCertFingerprint
+     *          Fingerprint of the signer certificate. Must not be {@code null}.
+     * @param referenceTime
+     *          Reference time. Must not be {@code null}.
+     * @return whether a validated certpath which is still valid at the reference time
+     *          is cached.
+     */
+    public boolean isCertpathValidated(final String signerCertFingerprint,
+            final Date referenceTime) {
+        if (validatedCertpaths == null) {
+            return false;
+        }
+
+        String cacheKey = certpathCacheKey(signerCertFingerprint);
+        Long validUntil = validatedCertpaths.get(cacheKey);
+        if (validUntil == null) {
+            return false;
+        }
+
+        if (validUntil < referenceTime.getTime()) {
+            validatedCertpaths.remove(cacheKey);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Caches the validated certpath of the signer certificate.
+     *
+     * @param signerCertFingerprint
+     *          Fingerprint of the signer certificate. Must not be {@code null}.
+     * @param certpath
+     *          The validated certpath. Must not be {@code null}.
+     */
+    public void cacheValidatedCertpath(final String signerCertFingerprint,
+            final X509Certificate[] certpath) {
+        if (validatedCertpaths == null) {
+            return;
+        }
+
+        long validUntil = Long.MAX_VALUE;
+        if (certpathValidationModel != CertpathValidationModel.CHAIN) {
+            for (X509Certificate m : certpath) {
+                validUntil = Math.min(validUntil, m.getNotAfter().getTime());
+            }
+        }
+        validatedCertpaths.put(certpathCacheKey(signerCertFingerprint), validUntil);
+    }
+
+    private String certpathCacheKey(final String signerCertFingerprint) {
+        return certpathValidationModel.name() + ":" + signerCertFingerprint;
+    }
+
     public boolean isVersionAllowed(final Integer version) {
         return versions == null || versions.contains(version);
     }
@@ -275,7 +275,8 @@ class ResponseCacher {
         final String sql = sqlSelectOcsp;
         byte[] identBytes = buildIdent(serialNumber, sigAlg, certHashAlg);
         long id = deriveId(issuerId, identBytes);
-        PreparedStatement ps = prepareStatement(sql);
+        // a response missing in a lagging replica is just a cache miss
+        PreparedStatement ps = prepareReadOnlyStatement(sql);
         ResultSet rs = null;
 
         try {
@@ -571,6 +572,17 @@ class ResponseCacher {
         }
     }
 
+    private PreparedStatement prepareReadOnlyStatement(String sqlQuery)
+            throws DataAccessException {
+        Connection conn = datasource.getReadOnlyConnection();
+        try {
+            return datasource.prepareStatement(conn, sqlQuery);
+        } catch (DataAccessException ex) {
+            datasource.returnConnection(conn);
+            throw ex;
+        }
+    }
+
     private static byte[] buildIdent(BigInteger serialNumber,
             AlgorithmCode sigAlg, AlgorithmCode certHashAlg) {
         byte[] snBytes = serialNumber.toByteArray();
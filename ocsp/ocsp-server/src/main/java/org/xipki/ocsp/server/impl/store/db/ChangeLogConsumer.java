@@ -0,0 +1,876 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.ocsp.server.impl.store.db;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.Base64;
+import org.xipki.common.util.LogUtil;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.springframework.dao.DataAccessException;
+import org.xipki.security.HashAlgoType;
+import org.xipki.security.util.X509Util;
+
+/**
+ * Tails the table CHANGELOG of the CA database and its shards, and applies the changes to
+ * the database of the {@link DbCertStatusStore}. For each changed certificate the current
+ * state in the CA database is applied, so applying a change more than once is harmless.
+ * The position of each source is stored in the table DBSCHEMA of the OCSP database, in the
+ * same transaction as the applied changes.
+ *
+ * <p>Changes younger than the settle time are not applied yet, since the change log IDs are
+ * allocated before the transactions are committed, and a change with smaller ID may become
+ * visible after one with greater ID. Since neither this nor the clocks of the CA instances
+ * can be relied on, the changes whose time lies within the settle time plus the recheck time
+ * before the last applied change are read again on every poll, and the ones not applied
+ * yet are applied.
+ *
+ * <p>The CA records the greatest ID of the entries deleted after the retention period as
+ * CHANGELOG_PURGED in its table DBSCHEMA. If it is greater than the position, changes have
+ * been lost, and the store must be resynchronized with the CA database. This is logged as
+ * error and counted by {@link #numGaps()}.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+class ChangeLogConsumer implements Runnable {
+
+    private static class Change {
+
+        private final long id;
+
+        private final long time;
+
+        private final int caId;
+
+        private final String serialNumber;
+
+        Change(final long id, final long time, final int caId, final String serialNumber) {
+            this.id = id;
+            this.time = time;
+            this.caId = caId;
+            this.serialNumber = serialNumber;
+        }
+
+        String key() {
+            return caId + ":" + serialNumber;
+        }
+
+    } // class Change
+
+    private static class CertRow {
+
+        private long id;
+
+        private String subject;
+
+        private long lastUpdate;
+
+        private long notBefore;
+
+        private long notAfter;
+
+        private boolean revoked;
+
+        private int revReason;
+
+        private long revTime;
+
+        private long revInvTime;
+
+        private int profileId;
+
+        private byte[] encodedCert;
+
+    } // class CertRow
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeLogConsumer.class);
+
+    private static final String POSITION_PREFIX = "CHANGELOG_";
+
+    private static final String PURGED_NAME = "CHANGELOG_PURGED";
+
+    private static final String SQL_POSITION = "SELECT VALUE2 FROM DBSCHEMA WHERE NAME=?";
+
+    private static final String SQL_UPDATE_POSITION = "UPDATE DBSCHEMA SET VALUE2=? WHERE NAME=?";
+
+    private static final String SQL_ADD_POSITION =
+            "INSERT INTO DBSCHEMA (NAME,VALUE2) VALUES (?,?)";
+
+    private static final String SQL_RECENT_CHANGES =
+            "SELECT ID,CTIME,CA_ID,SN FROM CHANGELOG WHERE CTIME>=? AND ID<=? ORDER BY ID";
+
+    private static final String SQL_CA_CERT =
+            "SELECT CERT.ID,CERT.SUBJECT,CERT.LUPDATE,CERT.NBEFORE,CERT.NAFTER,CERT.REV,"
+            + "CERT.RR,CERT.RT,CERT.RIT,CERT.PID,CRAW.CERT FROM CERT INNER JOIN CRAW "
+            + "ON CERT.CA_ID=? AND CERT.SN=? AND CRAW.CID=CERT.ID";
+
+    private static final String SQL_CERT_ID = "SELECT ID FROM CERT WHERE IID=? AND SN=?";
+
+    private static final String SQL_UPDATE_CERT =
+            "UPDATE CERT SET LUPDATE=?,NBEFORE=?,NAFTER=?,REV=?,PN=?,RT=?,RIT=?,RR=? WHERE ID=?";
+
+    private static final String SQL_DELETE_CERT = "DELETE FROM CERT WHERE ID=?";
+
+    private static final String SQL_ADD_CERT =
+            "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,PN,RT,RIT,RR)"
+            + " VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+
+    private static final String SQL_ADD_CHASH =
+            "INSERT INTO CHASH (CID,S1,S224,S256,S384,S512) VALUES (?,?,?,?,?,?)";
+
+    private static final String SQL_ADD_CRAW = "INSERT INTO CRAW (CID,SUBJECT,CERT) VALUES (?,?,?)";
+
+    private static final String SQL_ADD_ISSUER =
+            "INSERT INTO ISSUER (ID,SUBJECT,NBEFORE,NAFTER,S1C,CERT) VALUES (?,?,?,?,?,?)";
+
+    private static final int NOT_SERVED = -1;
+
+    private final DataSourceWrapper datasource;
+
+    private final List<String> sourceNames;
+
+    private final List<DataSourceWrapper> sources;
+
+    private final String[] sqlChanges;
+
+    private final IssuerFilter issuerFilter;
+
+    private final int batchSize;
+
+    private final long settleTime;
+
+    private final long recheckTime;
+
+    private final Runnable issuersChangedListener;
+
+    private final long[] watermarks;
+
+    /**
+     * The greatest purged ID reported as gap for each source.
+     */
+    private final long[] reportedGaps;
+
+    /**
+     * Time of the change by the ID of the changes applied by this instance, which still lie
+     * within the recheck window, for each source.
+     */
+    private final List<Map<Long, Long>> recentlyApplied;
+
+    private int maxX500nameLen;
+
+    private final AtomicLong numApplied = new AtomicLong(0);
+
+    private final AtomicLong numGaps = new AtomicLong(0);
+
+    /**
+     * Id of the issuer in the OCSP database by the CA id, {@link #NOT_SERVED} if the CA is
+     * not considered by the store.
+     */
+    private final Map<Integer, Integer> issuerIds = new HashMap<>();
+
+    private final Map<Integer, String> profileNames = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param datasource
+     *          Datasource of the OCSP database. Must not be {@code null}.
+     * @param sourceNames
+     *          Names of the source datasources. Must not be {@code null}.
+     * @param sources
+     *          Source datasources, the first one is the CA database, the others are the
+     *          shards of the certificate store. Must not be {@code null}.
+     * @param issuerFilter
+     *          Filter of the issuers. Must not be {@code null}.
+     * @param batchSize
+     *          Maximal number of changes applied in one transaction.
+     * @param settleTime
+     *          Time in milliseconds a change must be old before it is applied. Must be
+     *          positive.
+     * @param recheckTime
+     *          Time in milliseconds, in addition to the settle time, before the last
+     *          applied change, within which the changes are read again.
+     * @param issuersChangedListener
+     *          Called after issuers have been added to the OCSP database. Must not be
+     *          {@code null}.
+     */
+    ChangeLogConsumer(final DataSourceWrapper datasource, final List<String> sourceNames,
+            final List<DataSourceWrapper> sources, final IssuerFilter issuerFilter,
+            final int batchSize, final long settleTime, final long recheckTime,
+            final Runnable issuersChangedListener) {
+        this.datasource = ParamUtil.requireNonNull("datasource", datasource);
+        this.sourceNames = ParamUtil.requireNonEmpty("sourceNames", sourceNames);
+        this.sources = ParamUtil.requireNonEmpty("sources", sources);
+        if (sourceNames.size() != sources.size()) {
+            throw new IllegalArgumentException("sourceNames and sources differ in size");
+        }
+        this.issuerFilter = ParamUtil.requireNonNull("issuerFilter", issuerFilter);
+        this.batchSize = ParamUtil.requireMin("batchSize", batchSize, 1);
+        this.settleTime = ParamUtil.requireMin("settleTime", settleTime, 1);
+        this.recheckTime = ParamUtil.requireMin("recheckTime", recheckTime, 0);
+        this.issuersChangedListener = ParamUtil.requireNonNull("issuersChangedListener",
+                issuersChangedListener);
+
+        final int n = sources.size();
+        this.sqlChanges = new String[n];
+        this.watermarks = new long[n];
+        this.reportedGaps = new long[n];
+        this.recentlyApplied = new ArrayList<>(n);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < n; i++) {
+            sqlChanges[i] = sources.get(i).buildSelectFirstSql(batchSize, "ID ASC",
+                    "ID,CTIME,CA_ID,SN FROM CHANGELOG WHERE ID>?");
+            watermarks[i] = now;
+            recentlyApplied.add(new HashMap<Long, Long>());
+        }
+    } // constructor
+
+    @Override
+    public void run() {
+        for (int i = 0; i < sources.size(); i++) {
+            try {
+                while (!Thread.currentThread().isInterrupted() && poll(i)) {
+                    // more changes available
+                }
+            } catch (Throwable th) {
+                LogUtil.error(LOG, th, "could not apply the change log of datasource "
+                        + sourceNames.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the lag of the store behind the change log.
+     *
+     * @return the time in milliseconds since the oldest change which has not been applied
+     *         yet, or since the last poll of all changes if there is none. Grows if the
+     *         change log could not be applied.
+     */
+    long lag() {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        for (long watermark : watermarks) {
+            lag = Math.max(lag, now - watermark);
+        }
+        return lag;
+    }
+
+    long numApplied() {
+        return numApplied.get();
+    }
+
+    /**
+     * Returns the number of detected gaps, namely how often entries of the change log have
+     * been found to be purged before they were applied.
+     */
+    long numGaps() {
+        return numGaps.get();
+    }
+
+    /**
+     * Applies the next changes of the given source.
+     *
+     * @return whether further changes are available.
+     */
+    private boolean poll(final int sourceIndex) throws DataAccessException, CertificateException {
+        String positionName = POSITION_PREFIX + sourceNames.get(sourceIndex);
+        long[] position = readPosition(positionName);
+        if (position[0] != 0) {
+            checkGap(sourceIndex, position[0]);
+        }
+
+        long now = System.currentTimeMillis();
+        List<Change> lateChanges = (position[0] == 0) ? Collections.<Change>emptyList()
+                : readLateChanges(sourceIndex, position);
+        List<Change> changes = readChanges(sourceIndex, position[0]);
+
+        List<Change> settledChanges = new ArrayList<>(lateChanges.size() + changes.size());
+        settledChanges.addAll(lateChanges);
+        Change pending = null;
+        for (Change change : changes) {
+            if (change.time > now - settleTime) {
+                pending = change;
+                break;
+            }
+            settledChanges.add(change);
+        }
+
+        if (!settledChanges.isEmpty()) {
+            apply(sourceIndex, settledChanges, positionName, position);
+            numApplied.addAndGet(settledChanges.size());
+        }
+
+        if (pending != null) {
+            watermarks[sourceIndex] = pending.time;
+            return false;
+        } else if (changes.size() == batchSize) {
+            watermarks[sourceIndex] = changes.get(changes.size() - 1).time;
+            return true;
+        } else {
+            watermarks[sourceIndex] = now;
+            return false;
+        }
+    } // method poll
+
+    /**
+     * Returns the ID and the time of the last applied change.
+     */
+    private long[] readPosition(final String positionName) throws DataAccessException {
+        String str = readDbSchema(positionName);
+        if (str == null) {
+            return new long[]{0, 0};
+        }
+
+        int idx = str.indexOf(',');
+        if (idx == -1) {
+            // written without the time, recheck the changes since now
+            return new long[]{Long.parseLong(str), System.currentTimeMillis()};
+        }
+        return new long[]{Long.parseLong(str.substring(0, idx)),
+            Long.parseLong(str.substring(idx + 1))};
+    }
+
+    /**
+     * Checks whether entries after the position have been deleted by the CA.
+     */
+    private void checkGap(final int sourceIndex, final long positionId)
+            throws DataAccessException {
+        String str = readDbSchema(sources.get(sourceIndex), PURGED_NAME);
+        if (str == null) {
+            return;
+        }
+
+        long purgedId = Long.parseLong(str);
+        if (purgedId > positionId && purgedId > reportedGaps[sourceIndex]) {
+            reportedGaps[sourceIndex] = purgedId;
+            numGaps.incrementAndGet();
+            LOG.error("entries of the change log of {} up to ID {} have been purged before they"
+                    + " were applied (position {}), the store must be resynchronized",
+                    sourceNames.get(sourceIndex), purgedId, positionId);
+        }
+    }
+
+    private String readDbSchema(final String name) throws DataAccessException {
+        return readDbSchema(datasource, name);
+    }
+
+    private static String readDbSchema(final DataSourceWrapper ds, final String name)
+            throws DataAccessException {
+        PreparedStatement ps = ds.prepareStatement(ds.getConnection(), SQL_POSITION);
+        ResultSet rs = null;
+        try {
+            ps.setString(1, name);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException ex) {
+            throw ds.translate(SQL_POSITION, ex);
+        } finally {
+            ds.releaseResources(ps, rs);
+        }
+    }
+
+    /**
+     * Reads the changes up to the position within the recheck window, which have not been
+     * applied by this instance, e.g. since their transactions were committed after the
+     * settle time. After a restart all changes within the window are applied once again.
+     */
+    private List<Change> readLateChanges(final int sourceIndex, final long[] position)
+            throws DataAccessException {
+        final long minTime = position[1] - settleTime - recheckTime;
+        Map<Long, Long> applied = recentlyApplied.get(sourceIndex);
+        Iterator<Long> it = applied.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() < minTime) {
+                it.remove();
+            }
+        }
+
+        DataSourceWrapper source = sources.get(sourceIndex);
+        List<Change> changes = new LinkedList<>();
+        PreparedStatement ps = source.prepareStatement(source.getConnection(),
+                SQL_RECENT_CHANGES);
+        ResultSet rs = null;
+        try {
+            ps.setLong(1, minTime);
+            ps.setLong(2, position[0]);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                long id = rs.getLong("ID");
+                if (!applied.containsKey(id)) {
+                    changes.add(new Change(id, rs.getLong("CTIME"), rs.getInt("CA_ID"),
+                            rs.getString("SN")));
+                }
+            }
+        } catch (SQLException ex) {
+            throw source.translate(SQL_RECENT_CHANGES, ex);
+        } finally {
+            source.releaseResources(ps, rs);
+        }
+
+        if (!changes.isEmpty() && !applied.isEmpty()) {
+            LOG.warn("found {} changes of {} committed after the settle time",
+                    changes.size(), sourceNames.get(sourceIndex));
+        }
+        return changes;
+    } // method readLateChanges
+
+    private List<Change> readChanges(final int sourceIndex, final long position)
+            throws DataAccessException {
+        DataSourceWrapper source = sources.get(sourceIndex);
+        String sql = sqlChanges[sourceIndex];
+        List<Change> changes = new ArrayList<>(batchSize);
+
+        PreparedStatement ps = source.prepareStatement(source.getConnection(), sql);
+        ResultSet rs = null;
+        try {
+            ps.setLong(1, position);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                changes.add(new Change(rs.getLong("ID"), rs.getLong("CTIME"),
+                        rs.getInt("CA_ID"), rs.getString("SN")));
+            }
+        } catch (SQLException ex) {
+            throw source.translate(sql, ex);
+        } finally {
+            source.releaseResources(ps, rs);
+        }
+        return changes;
+    }
+
+    private void apply(final int sourceIndex, final List<Change> changes,
+            final String positionName, final long[] position)
+            throws DataAccessException, CertificateException {
+        // only the last change of each certificate is relevant, since the current state of
+        // the certificate is applied
+        Map<String, Change> lastChanges = new LinkedHashMap<>();
+        long newPositionId = position[0];
+        long newPositionTime = position[1];
+        for (Change change : changes) {
+            lastChanges.remove(change.key());
+            lastChanges.put(change.key(), change);
+            newPositionId = Math.max(newPositionId, change.id);
+            newPositionTime = Math.max(newPositionTime, change.time);
+        }
+
+        for (Change change : lastChanges.values()) {
+            if (!issuerIds.containsKey(change.caId)) {
+                refreshCas();
+                break;
+            }
+        }
+
+        Map<String, CertRow> certRows = readCerts(sources.get(sourceIndex),
+                lastChanges.values());
+
+        for (CertRow row : certRows.values()) {
+            if (!profileNames.containsKey(row.profileId)) {
+                refreshCas();
+                break;
+            }
+        }
+
+        if (maxX500nameLen == 0) {
+            maxX500nameLen = Integer.parseInt(readDbSchema("X500NAME_MAXLEN"));
+        }
+
+        Connection conn = datasource.getConnection();
+        PreparedStatement psCertId = null;
+        PreparedStatement psUpdate = null;
+        PreparedStatement psDelete = null;
+        PreparedStatement psAddCert = null;
+        PreparedStatement psAddChash = null;
+        PreparedStatement psAddCraw = null;
+        String sql = null;
+        try {
+            final boolean origAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                psCertId = datasource.prepareStatement(conn, SQL_CERT_ID);
+                psUpdate = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
+                psDelete = datasource.prepareStatement(conn, SQL_DELETE_CERT);
+                psAddCert = datasource.prepareStatement(conn, SQL_ADD_CERT);
+                psAddChash = datasource.prepareStatement(conn, SQL_ADD_CHASH);
+                psAddCraw = datasource.prepareStatement(conn, SQL_ADD_CRAW);
+
+                int numUpdates = 0;
+                int numDeletes = 0;
+                int numAdds = 0;
+                for (Change change : lastChanges.values()) {
+                    Integer issuerId = issuerIds.get(change.caId);
+                    if (issuerId == null || issuerId == NOT_SERVED) {
+                        continue;
+                    }
+
+                    sql = SQL_CERT_ID;
+                    Long ocspCertId = readCertId(psCertId, issuerId, change.serialNumber);
+                    CertRow row = certRows.get(change.key());
+
+                    if (ocspCertId != null) {
+                        if (row != null && row.id == ocspCertId) {
+                            // same certificate, the hashes and the raw certificate are kept
+                            numUpdates++;
+                            bindCertUpdate(psUpdate, row);
+                            psUpdate.addBatch();
+                            continue;
+                        }
+
+                        // certificate has been removed, or replaced by another one with
+                        // the same serial number. CHASH and CRAW are deleted by cascade.
+                        numDeletes++;
+                        psDelete.setLong(1, ocspCertId);
+                        psDelete.addBatch();
+                    }
+
+                    if (row != null) {
+                        numAdds++;
+                        bindCert(psAddCert, issuerId, change.serialNumber, row);
+                        psAddCert.addBatch();
+                        bindCertHash(psAddChash, row);
+                        psAddChash.addBatch();
+                        bindCertRaw(psAddCraw, row);
+                        psAddCraw.addBatch();
+                    }
+                }
+
+                if (numDeletes > 0) {
+                    sql = SQL_DELETE_CERT;
+                    psDelete.executeBatch();
+                }
+
+                if (numUpdates > 0) {
+                    sql = SQL_UPDATE_CERT;
+                    psUpdate.executeBatch();
+                }
+
+                if (numAdds > 0) {
+                    sql = SQL_ADD_CERT;
+                    psAddCert.executeBatch();
+                    sql = SQL_ADD_CHASH;
+                    psAddChash.executeBatch();
+                    sql = SQL_ADD_CRAW;
+                    psAddCraw.executeBatch();
+                }
+
+                sql = SQL_UPDATE_POSITION;
+                savePosition(conn, positionName, newPositionId + "," + newPositionTime);
+
+                sql = "(commit changes of the change log)";
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(origAutoCommit);
+            }
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            datasource.releaseResources(psCertId, null, false);
+            datasource.releaseResources(psUpdate, null, false);
+            datasource.releaseResources(psDelete, null, false);
+            datasource.releaseResources(psAddCert, null, false);
+            datasource.releaseResources(psAddChash, null, false);
+            datasource.releaseResources(psAddCraw, null, false);
+            datasource.returnConnection(conn);
+        }
+
+        Map<Long, Long> applied = recentlyApplied.get(sourceIndex);
+        for (Change change : changes) {
+            applied.put(change.id, change.time);
+        }
+
+        LOG.debug("applied {} changes of {}, position {}", changes.size(),
+                sourceNames.get(sourceIndex), newPositionId);
+    } // method apply
+
+    private static Long readCertId(final PreparedStatement ps, final int issuerId,
+            final String serialNumber) throws SQLException {
+        ps.setInt(1, issuerId);
+        ps.setString(2, serialNumber);
+        ResultSet rs = ps.executeQuery();
+        try {
+            return rs.next() ? rs.getLong(1) : null;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private Map<String, CertRow> readCerts(final DataSourceWrapper source,
+            final Iterable<Change> changes) throws DataAccessException {
+        Map<String, CertRow> rows = new HashMap<>();
+        PreparedStatement ps = source.prepareStatement(source.getConnection(), SQL_CA_CERT);
+        ResultSet rs = null;
+        try {
+            for (Change change : changes) {
+                Integer issuerId = issuerIds.get(change.caId);
+                if (issuerId == null || issuerId == NOT_SERVED) {
+                    continue;
+                }
+
+                ps.setInt(1, change.caId);
+                ps.setString(2, change.serialNumber);
+                rs = ps.executeQuery();
+                if (rs.next()) {
+                    CertRow row = new CertRow();
+                    int idx = 1;
+                    row.id = rs.getLong(idx++);
+                    row.subject = rs.getString(idx++);
+                    row.lastUpdate = rs.getLong(idx++);
+                    row.notBefore = rs.getLong(idx++);
+                    row.notAfter = rs.getLong(idx++);
+                    row.revoked = rs.getBoolean(idx++);
+                    row.revReason = rs.getInt(idx++);
+                    row.revTime = rs.getLong(idx++);
+                    row.revInvTime = rs.getLong(idx++);
+                    row.profileId = rs.getInt(idx++);
+                    row.encodedCert = Base64.decodeFast(rs.getString(idx++));
+                    rows.put(change.key(), row);
+                }
+                rs.close();
+                rs = null;
+            }
+        } catch (SQLException ex) {
+            throw source.translate(SQL_CA_CERT, ex);
+        } finally {
+            source.releaseResources(ps, rs);
+        }
+        return rows;
+    } // method readCerts
+
+    private void bindCert(final PreparedStatement ps, final int issuerId,
+            final String serialNumber, final CertRow row) throws SQLException {
+        int idx = 1;
+        ps.setLong(idx++, row.id);
+        ps.setLong(idx++, row.lastUpdate);
+        ps.setString(idx++, serialNumber);
+        ps.setLong(idx++, row.notBefore);
+        ps.setLong(idx++, row.notAfter);
+        ps.setInt(idx++, row.revoked ? 1 : 0);
+        ps.setInt(idx++, issuerId);
+        ps.setString(idx++, profileNames.get(row.profileId));
+        bindRevocation(ps, idx, row);
+    }
+
+    private void bindCertUpdate(final PreparedStatement ps, final CertRow row)
+            throws SQLException {
+        int idx = 1;
+        ps.setLong(idx++, row.lastUpdate);
+        ps.setLong(idx++, row.notBefore);
+        ps.setLong(idx++, row.notAfter);
+        ps.setInt(idx++, row.revoked ? 1 : 0);
+        ps.setString(idx++, profileNames.get(row.profileId));
+        bindRevocation(ps, idx, row);
+        ps.setLong(idx + 3, row.id);
+    }
+
+    private static void bindRevocation(final PreparedStatement ps, final int offset,
+            final CertRow row) throws SQLException {
+        int idx = offset;
+        if (row.revoked) {
+            ps.setLong(idx++, row.revTime);
+            if (row.revInvTime == 0) {
+                ps.setNull(idx++, Types.BIGINT);
+            } else {
+                ps.setLong(idx++, row.revInvTime);
+            }
+            ps.setInt(idx++, row.revReason);
+        } else {
+            ps.setNull(idx++, Types.BIGINT);
+            ps.setNull(idx++, Types.BIGINT);
+            ps.setNull(idx++, Types.SMALLINT);
+        }
+    }
+
+    private void bindCertRaw(final PreparedStatement ps, final CertRow row)
+            throws SQLException {
+        int idx = 1;
+        ps.setLong(idx++, row.id);
+        ps.setString(idx++, X509Util.cutText(row.subject, maxX500nameLen));
+        ps.setString(idx++, Base64.encodeToString(row.encodedCert));
+    }
+
+    private static void bindCertHash(final PreparedStatement ps, final CertRow row)
+            throws SQLException {
+        int idx = 1;
+        ps.setLong(idx++, row.id);
+        ps.setString(idx++, HashAlgoType.SHA1.base64Hash(row.encodedCert));
+        ps.setString(idx++, HashAlgoType.SHA224.base64Hash(row.encodedCert));
+        ps.setString(idx++, HashAlgoType.SHA256.base64Hash(row.encodedCert));
+        ps.setString(idx++, HashAlgoType.SHA384.base64Hash(row.encodedCert));
+        ps.setString(idx++, HashAlgoType.SHA512.base64Hash(row.encodedCert));
+    }
+
+    private void savePosition(final Connection conn, final String positionName,
+            final String position) throws SQLException, DataAccessException {
+        PreparedStatement ps = datasource.prepareStatement(conn, SQL_UPDATE_POSITION);
+        try {
+            ps.setString(1, position);
+            ps.setString(2, positionName);
+            if (ps.executeUpdate() > 0) {
+                return;
+            }
+        } finally {
+            datasource.releaseResources(ps, null, false);
+        }
+
+        ps = datasource.prepareStatement(conn, SQL_ADD_POSITION);
+        try {
+            ps.setString(1, positionName);
+            ps.setString(2, position);
+            ps.executeUpdate();
+        } finally {
+            datasource.releaseResources(ps, null, false);
+        }
+    }
+
+    /**
+     * Reloads the CAs and certificate profiles from the CA database, and adds the issuers
+     * which are not yet in the OCSP database.
+     */
+    private void refreshCas() throws DataAccessException, CertificateException {
+        Map<String, Integer> ocspIssuerIds = new HashMap<>();
+        String sql = "SELECT ID,S1C FROM ISSUER";
+        PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+        ResultSet rs = null;
+        try {
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                ocspIssuerIds.put(rs.getString("S1C"), rs.getInt("ID"));
+            }
+        } catch (SQLException ex) {
+            throw datasource.translate(sql, ex);
+        } finally {
+            datasource.releaseResources(ps, rs);
+        }
+
+        DataSourceWrapper caDatasource = sources.get(0);
+        Map<Integer, byte[]> caCerts = new HashMap<>();
+        sql = "SELECT ID,CERT FROM CA";
+        ps = caDatasource.prepareStatement(caDatasource.getConnection(), sql);
+        rs = null;
+        try {
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                caCerts.put(rs.getInt("ID"), Base64.decodeFast(rs.getString("CERT")));
+            }
+        } catch (SQLException ex) {
+            throw caDatasource.translate(sql, ex);
+        } finally {
+            caDatasource.releaseResources(ps, rs);
+        }
+
+        sql = "SELECT ID,NAME FROM PROFILE";
+        ps = caDatasource.prepareStatement(caDatasource.getConnection(), sql);
+        rs = null;
+        try {
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                profileNames.put(rs.getInt("ID"), rs.getString("NAME"));
+            }
+        } catch (SQLException ex) {
+            throw caDatasource.translate(sql, ex);
+        } finally {
+            caDatasource.releaseResources(ps, rs);
+        }
+
+        boolean issuersAdded = false;
+        for (Integer caId : caCerts.keySet()) {
+            byte[] encodedCert = caCerts.get(caId);
+            String sha1Fp = HashAlgoType.SHA1.base64Hash(encodedCert);
+            if (!issuerFilter.includeIssuerWithSha1Fp(sha1Fp)) {
+                issuerIds.put(caId, NOT_SERVED);
+                continue;
+            }
+
+            Integer issuerId = ocspIssuerIds.get(sha1Fp);
+            if (issuerId == null) {
+                issuerId = addIssuer(encodedCert, sha1Fp);
+                issuersAdded = true;
+            }
+            issuerIds.put(caId, issuerId);
+        }
+
+        if (issuersAdded) {
+            issuersChangedListener.run();
+        }
+    } // method refreshCas
+
+    private int addIssuer(final byte[] encodedCert, final String sha1Fp)
+            throws DataAccessException, CertificateException {
+        X509Certificate cert = X509Util.parseCert(encodedCert);
+        int id = (int) datasource.getMax(null, "ISSUER", "ID") + 1;
+
+        PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(),
+                SQL_ADD_ISSUER);
+        try {
+            int idx = 1;
+            ps.setInt(idx++, id);
+            ps.setString(idx++, X509Util.getRfc4519Name(cert.getSubjectX500Principal()));
+            ps.setLong(idx++, cert.getNotBefore().getTime() / 1000);
+            ps.setLong(idx++, cert.getNotAfter().getTime() / 1000);
+            ps.setString(idx++, sha1Fp);
+            ps.setString(idx++, Base64.encodeToString(encodedCert));
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            throw datasource.translate(SQL_ADD_ISSUER, ex);
+        } finally {
+            datasource.releaseResources(ps, null);
+        }
+
+        LOG.info("added issuer {} with id {}", cert.getSubjectX500Principal(), id);
+        return id;
+    } // method addIssuer
+
+}
@@ -42,6 +42,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -57,6 +58,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.common.metrics.Metrics;
 import org.xipki.common.util.Base64;
 import org.xipki.common.util.CollectionUtil;
 import org.xipki.common.util.LogUtil;
@@ -140,6 +142,8 @@ public class DbCertStatusStore extends OcspStore {
 
     private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+    private ChangeLogConsumer changeLogConsumer;
+
     protected List<Runnable> getScheduledServices() {
         return Collections.emptyList();
     }
@@ -185,7 +189,7 @@ public class DbCertStatusStore extends OcspStore {
                         for (Integer id : newIds) {
                             IssuerEntry entry = issuerStore.getIssuerForId(id);
                             SimpleIssuerEntry newEntry = newIssuers.get(id);
-                            if (newEntry.match(entry)) {
+                            if (!newEntry.match(entry)) {
                                 issuersUnchanged = false;
                                 break;
                             }
@@ -250,10 +254,11 @@ public class DbCertStatusStore extends OcspStore {
                 releaseDbResources(ps, rs);
             }
         } catch (Throwable th) {
-            storeUpdateInProcess.set(false);
             LogUtil.error(LOG, th, "could not executing initIssuerStore()");
             initializationFailed = true;
             initialized = true;
+        } finally {
+            storeUpdateInProcess.set(false);
         }
     } // method initIssuerStore
 
@@ -319,7 +324,8 @@ public class DbCertStatusStore extends OcspStore {
             long revTime = 0;
             long invalTime = 0;
 
-            PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+            PreparedStatement ps = datasource.prepareStatement(
+                    datasource.getReadOnlyConnection(), sql);
 
             try {
                 ps.setInt(1, issuer.id());
@@ -450,13 +456,13 @@ public class DbCertStatusStore extends OcspStore {
     } // method getCertStatus
 
     /**
-     * Borrow Prepared Statement.
+     * Borrow Prepared Statement. The store only reads, it uses the read replicas if configured.
      * @return the next idle preparedStatement, {@code null} will be returned if no
      *     PreparedStatement can be created within 5 seconds.
      */
     private PreparedStatement preparedStatement(final String sqlQuery)
             throws DataAccessException {
-        return datasource.prepareStatement(datasource.getConnection(), sqlQuery);
+        return datasource.prepareStatement(datasource.getReadOnlyConnection(), sqlQuery);
     }
 
     @Override
@@ -541,13 +547,43 @@ public class DbCertStatusStore extends OcspStore {
             this.scheduledThreadPoolExecutor.shutdownNow();
         }
         StoreUpdateService storeUpdateService = new StoreUpdateService();
+
+        List<String> changeLogDatasourceNames = storeConf.changeLogDatasources();
+        if (CollectionUtil.isNonEmpty(changeLogDatasourceNames)) {
+            List<DataSourceWrapper> changeLogDatasources =
+                    new ArrayList<>(changeLogDatasourceNames.size());
+            for (String dsName : changeLogDatasourceNames) {
+                DataSourceWrapper ds = datasources.get(dsName);
+                if (ds == null) {
+                    throw new OcspStoreException("datasource named '" + dsName
+                            + "' not defined");
+                }
+                changeLogDatasources.add(ds);
+            }
+
+            changeLogConsumer = new ChangeLogConsumer(datasource, changeLogDatasourceNames,
+                    changeLogDatasources, issuerFilter, storeConf.changeLogBatchSize(),
+                    storeConf.changeLogSettleTime(), storeConf.changeLogRecheckTime(),
+                    storeUpdateService);
+            Metrics.registerGauge(changeLogMetricName("lag"), changeLogConsumer::lag);
+            Metrics.registerGauge(changeLogMetricName("applied"),
+                    changeLogConsumer::numApplied);
+            Metrics.registerGauge(changeLogMetricName("gap"), changeLogConsumer::numGaps);
+        }
+
         List<Runnable> scheduledServices = getScheduledServices();
-        int size = 1;
+        int size = (changeLogConsumer == null) ? 1 : 2;
         if (scheduledServices != null) {
             size += scheduledServices.size();
         }
         this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(size);
 
+        if (changeLogConsumer != null) {
+            this.scheduledThreadPoolExecutor.scheduleWithFixedDelay(changeLogConsumer,
+                    storeConf.changeLogInterval(), storeConf.changeLogInterval(),
+                    TimeUnit.MILLISECONDS);
+        }
+
         Random random = new Random();
         this.scheduledThreadPoolExecutor.scheduleAtFixedRate(storeUpdateService,
                 60 + random.nextInt(60), 60, TimeUnit.SECONDS);
@@ -566,6 +602,13 @@ public class DbCertStatusStore extends OcspStore {
             scheduledThreadPoolExecutor = null;
         }
 
+        if (changeLogConsumer != null) {
+            Metrics.unregisterGauge(changeLogMetricName("lag"));
+            Metrics.unregisterGauge(changeLogMetricName("applied"));
+            Metrics.unregisterGauge(changeLogMetricName("gap"));
+            changeLogConsumer = null;
+        }
+
         if (datasource != null) {
             datasource.close();
         }
@@ -582,6 +625,10 @@ public class DbCertStatusStore extends OcspStore {
         return (issuer == null) ? null : issuer.cert();
     }
 
+    private String changeLogMetricName(final String metric) {
+        return "ocsp.store." + name + ".changelog." + metric;
+    }
+
     protected boolean isInitialized() {
         return initialized;
     }
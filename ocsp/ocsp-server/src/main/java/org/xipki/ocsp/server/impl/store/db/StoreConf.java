@@ -36,7 +36,9 @@ package org.xipki.ocsp.server.impl.store.db;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -54,10 +56,30 @@ class StoreConf {
 
     private static final String KEY_cacerts_excludes = "cacerts.excludes";
 
+    private static final String KEY_changelog_datasources = "changelog.datasources";
+
+    private static final String KEY_changelog_interval = "changelog.interval";
+
+    private static final String KEY_changelog_batchSize = "changelog.batchSize";
+
+    private static final String KEY_changelog_settleTime = "changelog.settleTime";
+
+    private static final String KEY_changelog_recheckTime = "changelog.recheckTime";
+
     private final Set<String> caCertsIncludes = new HashSet<>();
 
     private final Set<String> caCertsExcludes = new HashSet<>();
 
+    private final List<String> changeLogDatasources = new ArrayList<>();
+
+    private final long changeLogInterval;
+
+    private final int changeLogBatchSize;
+
+    private final long changeLogSettleTime;
+
+    private final long changeLogRecheckTime;
+
     StoreConf(final String propsConf) throws OcspStoreException {
         Properties props = new Properties();
         try {
@@ -81,6 +103,39 @@ class StoreConf {
                 caCertsExcludes.add(st.nextToken());
             }
         }
+
+        str = props.getProperty(KEY_changelog_datasources);
+        if (str != null) {
+            StringTokenizer st = new StringTokenizer(str, ", ");
+            while (st.hasMoreTokens()) {
+                changeLogDatasources.add(st.nextToken());
+            }
+        }
+
+        changeLogInterval = getLong(props, KEY_changelog_interval, 1000, 10);
+        changeLogBatchSize = (int) getLong(props, KEY_changelog_batchSize, 1000, 1);
+        changeLogSettleTime = getLong(props, KEY_changelog_settleTime, 5000, 100);
+        changeLogRecheckTime = getLong(props, KEY_changelog_recheckTime, 60000, 0);
+    }
+
+    private static long getLong(final Properties props, final String key,
+            final long defaultValue, final long min) throws OcspStoreException {
+        String str = props.getProperty(key);
+        if (str == null) {
+            return defaultValue;
+        }
+
+        long value;
+        try {
+            value = Long.parseLong(str.trim());
+        } catch (NumberFormatException ex) {
+            throw new OcspStoreException("invalid " + key + ": " + str);
+        }
+
+        if (value < min) {
+            throw new OcspStoreException(key + " must not be less than " + min + ": " + value);
+        }
+        return value;
     }
 
     Set<String> caCertsIncludes() {
@@ -91,4 +146,28 @@ class StoreConf {
         return caCertsExcludes;
     }
 
+    /**
+     * Returns the names of the datasources whose change log is applied to the store, the
+     * first one is the CA database.
+     */
+    List<String> changeLogDatasources() {
+        return changeLogDatasources;
+    }
+
+    long changeLogInterval() {
+        return changeLogInterval;
+    }
+
+    int changeLogBatchSize() {
+        return changeLogBatchSize;
+    }
+
+    long changeLogSettleTime() {
+        return changeLogSettleTime;
+    }
+
+    long changeLogRecheckTime() {
+        return changeLogRecheckTime;
+    }
+
 }
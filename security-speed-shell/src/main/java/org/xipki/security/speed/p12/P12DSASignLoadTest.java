@@ -51,14 +51,30 @@ public class P12DSASignLoadTest extends P12SignLoadTest {
     public P12DSASignLoadTest(final SecurityFactory securityFactory,
             final String signatureAlgorithm, final int plength, final int qlength)
             throws Exception {
-        super(securityFactory, signatureAlgorithm,
-                generateKeystore(plength, qlength),
+        this(securityFactory, signatureAlgorithm, plength, qlength, null);
+    }
+
+    public P12DSASignLoadTest(final SecurityFactory securityFactory,
+            final String signatureAlgorithm, final int plength, final int qlength,
+            final String engines) throws Exception {
+        this(securityFactory, signatureAlgorithm, plength, qlength,
+                generateKeystore(plength, qlength), engines);
+    }
+
+    /**
+     * Constructor with given keystore, so that the same key can be tested with several
+     * engines.
+     */
+    public P12DSASignLoadTest(final SecurityFactory securityFactory,
+            final String signatureAlgorithm, final int plength, final int qlength,
+            final byte[] keystore, final String engines) throws Exception {
+        super("PKCS12", securityFactory, signatureAlgorithm, keystore, engines,
                 "PKCS#12 DSA signature creation\n"
                     + "plength: " + plength + "\n"
                     + "qlength: " + qlength);
     }
 
-    private static byte[] generateKeystore(final int plength, final int qlength) throws Exception {
+    public static byte[] generateKeystore(final int plength, final int qlength) throws Exception {
         byte[] keystoreBytes = getPrecomputedDSAKeystore(plength, qlength);
         if (keystoreBytes == null) {
             KeystoreGenerationParameters params = new KeystoreGenerationParameters(
@@ -50,11 +50,27 @@ public class P12ECSignLoadTest extends P12SignLoadTest {
 
     public P12ECSignLoadTest(final SecurityFactory securityFactory, final String signatureAlgorithm,
             final String curveNameOrOid) throws Exception {
-        super(securityFactory, signatureAlgorithm, generateKeystore(curveNameOrOid),
-                "PKCS#12 EC signature creation\ncurve: " + curveNameOrOid);
+        this(securityFactory, signatureAlgorithm, curveNameOrOid, null);
     }
 
-    private static byte[] generateKeystore(final String curveNameOrOid) throws Exception {
+    public P12ECSignLoadTest(final SecurityFactory securityFactory, final String signatureAlgorithm,
+            final String curveNameOrOid, final String engines) throws Exception {
+        this(securityFactory, signatureAlgorithm, curveNameOrOid,
+                generateKeystore(curveNameOrOid), engines);
+    }
+
+    /**
+     * Constructor with given keystore, so that the same key can be tested with several
+     * engines.
+     */
+    public P12ECSignLoadTest(final SecurityFactory securityFactory, final String signatureAlgorithm,
+            final String curveNameOrOid, final byte[] keystore, final String engines)
+            throws Exception {
+        super("PKCS12", securityFactory, signatureAlgorithm, keystore,
+                engines, "PKCS#12 EC signature creation\ncurve: " + curveNameOrOid);
+    }
+
+    public static byte[] generateKeystore(final String curveNameOrOid) throws Exception {
         byte[] keystoreBytes = getPrecomputedECKeystore(curveNameOrOid);
         if (keystoreBytes == null) {
             KeystoreGenerationParameters params = new KeystoreGenerationParameters(
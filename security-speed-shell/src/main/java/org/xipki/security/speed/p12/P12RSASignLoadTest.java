@@ -52,12 +52,29 @@ public class P12RSASignLoadTest extends P12SignLoadTest {
     public P12RSASignLoadTest(final SecurityFactory securityFactory,
             final String signatureAlgorithm, final int keysize, final BigInteger publicExponent)
             throws Exception {
-        super(securityFactory, signatureAlgorithm, generateKeystore(keysize, publicExponent),
+        this(securityFactory, signatureAlgorithm, keysize, publicExponent, null);
+    }
+
+    public P12RSASignLoadTest(final SecurityFactory securityFactory,
+            final String signatureAlgorithm, final int keysize, final BigInteger publicExponent,
+            final String engines) throws Exception {
+        this(securityFactory, signatureAlgorithm, keysize, publicExponent,
+                generateKeystore(keysize, publicExponent), engines);
+    }
+
+    /**
+     * Constructor with given keystore, so that the same key can be tested with several
+     * engines.
+     */
+    public P12RSASignLoadTest(final SecurityFactory securityFactory,
+            final String signatureAlgorithm, final int keysize, final BigInteger publicExponent,
+            final byte[] keystore, final String engines) throws Exception {
+        super("PKCS12", securityFactory, signatureAlgorithm, keystore, engines,
                 "PKCS#12 RSA signature creation\nkeysize: " + keysize + "\n"
                         + "public exponent: " + publicExponent);
     }
 
-    private static byte[] generateKeystore(final int keysize, final BigInteger publicExponent)
+    public static byte[] generateKeystore(final int keysize, final BigInteger publicExponent)
             throws Exception {
         byte[] keystoreBytes = getPrecomputedRSAKeystore(keysize, publicExponent);
         if (keystoreBytes == null) {
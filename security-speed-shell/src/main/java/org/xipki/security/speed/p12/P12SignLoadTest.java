@@ -91,7 +91,20 @@ public abstract class P12SignLoadTest extends LoadExecutor {
     public P12SignLoadTest(final String tokenType,
             final SecurityFactory securityFactory, final String signatureAlgorithm,
             final byte[] keystore, final String description) throws Exception {
-        super(description);
+        this(tokenType, securityFactory, signatureAlgorithm, keystore, null, description);
+    }
+
+    /**
+     *
+     * @param engines
+     *          Signing engines in the order of preference, separated by ':'.
+     *          Could be {@code null}.
+     */
+    public P12SignLoadTest(final String tokenType,
+            final SecurityFactory securityFactory, final String signatureAlgorithm,
+            final byte[] keystore, final String engines, final String description)
+            throws Exception {
+        super((engines == null) ? description : description + "\nengines: " + engines);
 
         ParamUtil.requireNonNull("securityFactory", securityFactory);
         ParamUtil.requireNonBlank("signatureAlgorithm", signatureAlgorithm);
@@ -99,6 +112,9 @@ public abstract class P12SignLoadTest extends LoadExecutor {
 
         SignerConf signerConf = SignerConf.getKeystoreSignerConf(
                 new ByteArrayInputStream(keystore), PASSWORD, signatureAlgorithm, 20);
+        if (engines != null) {
+            signerConf.putConfEntry("engines", engines);
+        }
         this.signer = securityFactory.createSigner(tokenType, signerConf, (X509Certificate) null);
     }
 
@@ -56,6 +56,10 @@ public class BSpeedP12DSASignCmd extends BSpeedP12SignCommandSupport {
 
     private final Queue<DSAControl> queue = new LinkedList<>();
 
+    private DSAControl control;
+
+    private byte[] keystore;
+
     public BSpeedP12DSASignCmd() {
         queue.add(new DSAControl(1024, 160));
         queue.add(new DSAControl(2048, 224));
@@ -65,16 +69,21 @@ public class BSpeedP12DSASignCmd extends BSpeedP12SignCommandSupport {
 
     @Override
     protected LoadExecutor nextTester() throws Exception {
-        DSAControl control = queue.poll();
-        if (control == null) {
-            return null;
+        if (control == null || !nextEngine()) {
+            control = queue.poll();
+            if (control == null) {
+                return null;
+            }
+            resetEngines();
+            keystore = P12DSASignLoadTest.generateKeystore(control.plen(), control.qlen());
         }
+
         if (control.plen() == 1024) {
             sigAlgo = "SHA1withDSA";
         }
 
         return new P12DSASignLoadTest(securityFactory, sigAlgo, control.plen(),
-                control.qlen());
+                control.qlen(), keystore, engine());
     }
 
 }
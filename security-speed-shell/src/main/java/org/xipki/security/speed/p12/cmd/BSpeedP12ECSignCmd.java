@@ -56,6 +56,10 @@ public class BSpeedP12ECSignCmd extends BSpeedP12SignCommandSupport {
 
     private final Queue<ECControl> queue = new LinkedList<>();
 
+    private ECControl control;
+
+    private byte[] keystore;
+
     public BSpeedP12ECSignCmd() {
         for (String curveName : getECCurveNames()) {
             queue.add(new ECControl(curveName));
@@ -64,12 +68,17 @@ public class BSpeedP12ECSignCmd extends BSpeedP12SignCommandSupport {
 
     @Override
     protected LoadExecutor nextTester() throws Exception {
-        ECControl control = queue.poll();
-        if (control == null) {
-            return null;
+        if (control == null || !nextEngine()) {
+            control = queue.poll();
+            if (control == null) {
+                return null;
+            }
+            resetEngines();
+            keystore = P12ECSignLoadTest.generateKeystore(control.curveName());
         }
 
-        return new P12ECSignLoadTest(securityFactory, sigAlgo, control.curveName());
+        return new P12ECSignLoadTest(securityFactory, sigAlgo, control.curveName(), keystore,
+                engine());
     }
 
 }
@@ -56,6 +56,10 @@ public class BSpeedP12RSASignCmd extends BSpeedP12SignCommandSupport {
 
     private final Queue<RSAControl> queue = new LinkedList<>();
 
+    private RSAControl control;
+
+    private byte[] keystore;
+
     public BSpeedP12RSASignCmd() {
         queue.add(new RSAControl(1024));
         queue.add(new RSAControl(2048));
@@ -65,12 +69,17 @@ public class BSpeedP12RSASignCmd extends BSpeedP12SignCommandSupport {
 
     @Override
     protected LoadExecutor nextTester() throws Exception {
-        RSAControl control = queue.poll();
-        if (control == null) {
-            return null;
+        if (control == null || !nextEngine()) {
+            control = queue.poll();
+            if (control == null) {
+                return null;
+            }
+            resetEngines();
+            keystore = P12RSASignLoadTest.generateKeystore(control.modulusLen(),
+                    toBigInt("0x10001"));
         }
 
         return new P12RSASignLoadTest(securityFactory, sigAlgo, control.modulusLen(),
-                        toBigInt("0x10001"));
+                        toBigInt("0x10001"), keystore, engine());
     }
 }
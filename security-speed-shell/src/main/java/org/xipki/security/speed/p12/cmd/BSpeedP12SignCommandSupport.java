@@ -34,6 +34,10 @@
 
 package org.xipki.security.speed.p12.cmd;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
 import org.apache.karaf.shell.api.action.Option;
 import org.xipki.security.speed.cmd.BatchSpeedCommandSupport;
 
@@ -50,4 +54,52 @@ public abstract class BSpeedP12SignCommandSupport extends BatchSpeedCommandSuppo
                     + "(required)")
     protected String sigAlgo;
 
+    @Option(name = "--engine",
+            multiValued = true,
+            description = "signing engine to be compared, JCA provider name or bc-lightweight\n"
+                    + "each key is tested with every engine\n"
+                    + "(multi-valued)")
+    private List<String> engines;
+
+    private final Queue<String> pendingEngines = new LinkedList<>();
+
+    private String engine;
+
+    /**
+     * Moves to the next engine to be tested with the current key.
+     *
+     * @return whether there is a further engine to be tested with the current key.
+     */
+    protected boolean nextEngine() {
+        if (pendingEngines.isEmpty()) {
+            return false;
+        }
+
+        engine = pendingEngines.poll();
+        return true;
+    }
+
+    /**
+     * Starts testing a new key with all engines, and moves to the first engine.
+     */
+    protected void resetEngines() {
+        pendingEngines.clear();
+        if (engines == null || engines.isEmpty()) {
+            // default engines
+            pendingEngines.add(null);
+        } else {
+            pendingEngines.addAll(engines);
+        }
+        nextEngine();
+    }
+
+    /**
+     * Returns the engine for the current test.
+     *
+     * @return the engine, or {@code null} to use the default engines.
+     */
+    protected String engine() {
+        return engine;
+    }
+
 }
@@ -68,12 +68,17 @@ public class SpeedP12DSASignCmd extends SpeedP12SignCommandSupport {
     @Completion(DSASigAlgCompleter.class)
     private String sigAlgo;
 
+    @Option(name = "--engines",
+            description = "signing engines in the order of preference, separated by ':'\n"
+                    + "each engine is a JCA provider name or bc-lightweight")
+    private String engines;
+
     @Override
     protected LoadExecutor getTester() throws Exception {
         if (qlen == null) {
             qlen = (plen >= 2048) ? 256 : 160;
         }
-        return new P12DSASignLoadTest(securityFactory, sigAlgo, plen, qlen);
+        return new P12DSASignLoadTest(securityFactory, sigAlgo, plen, qlen, engines);
     }
 
 }
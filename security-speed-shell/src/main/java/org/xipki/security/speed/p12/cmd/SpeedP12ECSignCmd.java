@@ -68,9 +68,14 @@ public class SpeedP12ECSignCmd extends SpeedP12SignCommandSupport {
     @Completion(ECDSASigAlgCompleter.class)
     private String sigAlgo;
 
+    @Option(name = "--engines",
+            description = "signing engines in the order of preference, separated by ':'\n"
+                    + "each engine is a JCA provider name or bc-lightweight")
+    private String engines;
+
     @Override
     protected LoadExecutor getTester() throws Exception {
-        return new P12ECSignLoadTest(securityFactory, sigAlgo, curveName);
+        return new P12ECSignLoadTest(securityFactory, sigAlgo, curveName, engines);
     }
 
 }
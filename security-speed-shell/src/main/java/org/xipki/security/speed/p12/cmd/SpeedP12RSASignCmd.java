@@ -68,9 +68,15 @@ public class SpeedP12RSASignCmd extends SpeedP12SignCommandSupport {
     @Completion(RSASigAlgCompleter.class)
     private String sigAlgo;
 
+    @Option(name = "--engines",
+            description = "signing engines in the order of preference, separated by ':'\n"
+                    + "each engine is a JCA provider name or bc-lightweight")
+    private String engines;
+
     @Override
     protected LoadExecutor getTester() throws Exception {
-        return new P12RSASignLoadTest(securityFactory, sigAlgo, keysize, toBigInt(publicExponent));
+        return new P12RSASignLoadTest(securityFactory, sigAlgo, keysize, toBigInt(publicExponent),
+                engines);
     }
 
 }
@@ -51,12 +51,13 @@ import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.crypto.RuntimeCryptoException;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
 import org.bouncycastle.operator.ContentVerifierProvider;
@@ -69,6 +70,7 @@ import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 import org.bouncycastle.pkcs.PKCSException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.common.LruCache;
 import org.xipki.common.ObjectCreationException;
 import org.xipki.common.util.LogUtil;
 import org.xipki.common.util.ParamUtil;
@@ -93,10 +95,19 @@ public class SecurityFactoryImpl extends AbstractSecurityFactory {
             new DefaultDigestAlgorithmIdentifierFinder();
 
     private static final Map<String, BcContentVerifierProviderBuilder> VERIFIER_PROVIDER_BUILDER
-        = new HashMap<>();
+        = new ConcurrentHashMap<>();
 
     private int defaultSignerParallelism = 32;
 
+    /**
+     * Cache of the ContentVerifierProviders, keyed by the SHA-256 digest of the
+     * DER-encoded SubjectPublicKeyInfo. The cached providers are thread-safe, since
+     * each call of {@link ContentVerifierProvider#get(AlgorithmIdentifier)} creates
+     * a new ContentVerifier.
+     */
+    private LruCache<String, ContentVerifierProvider> verifierProviderCache =
+            new LruCache<>(1000);
+
     private PasswordResolver passwordResolver;
 
     private SignerFactoryRegister signerFactoryRegister;
@@ -140,6 +151,54 @@ public class SecurityFactoryImpl extends AbstractSecurityFactory {
             throws InvalidKeyException {
         ParamUtil.requireNonNull("publicKey", publicKey);
 
+        LruCache<String, ContentVerifierProvider> cache = verifierProviderCache;
+        byte[] encodedKey = (cache == null) ? null : publicKey.getEncoded();
+        if (encodedKey == null) {
+            return buildContentVerifierProvider(publicKey);
+        }
+
+        String cacheKey = HashCalculator.base64Sha256(encodedKey);
+        ContentVerifierProvider provider = cache.get(cacheKey);
+        if (provider == null) {
+            provider = buildContentVerifierProvider(publicKey);
+            cache.put(cacheKey, provider);
+        }
+        return provider;
+    }
+
+    @Override
+    public ContentVerifierProvider getContentVerifierProvider(final X509CertificateHolder cert)
+            throws InvalidKeyException {
+        ParamUtil.requireNonNull("cert", cert);
+        return getContentVerifierProvider(cert.getSubjectPublicKeyInfo());
+    }
+
+    private ContentVerifierProvider getContentVerifierProvider(
+            final SubjectPublicKeyInfo publicKeyInfo) throws InvalidKeyException {
+        LruCache<String, ContentVerifierProvider> cache = verifierProviderCache;
+        if (cache == null) {
+            return buildContentVerifierProvider(generatePublicKey(publicKeyInfo));
+        }
+
+        String cacheKey;
+        try {
+            cacheKey = HashCalculator.base64Sha256(publicKeyInfo.getEncoded());
+        } catch (IOException ex) {
+            throw new InvalidKeyException("could not encode SubjectPublicKeyInfo: "
+                    + ex.getMessage(), ex);
+        }
+
+        // the PublicKey will only be generated if no provider is cached for this key
+        ContentVerifierProvider provider = cache.get(cacheKey);
+        if (provider == null) {
+            provider = buildContentVerifierProvider(generatePublicKey(publicKeyInfo));
+            cache.put(cacheKey, provider);
+        }
+        return provider;
+    }
+
+    private static ContentVerifierProvider buildContentVerifierProvider(
+            final PublicKey publicKey) throws InvalidKeyException {
         String keyAlg = publicKey.getAlgorithm().toUpperCase();
 
         BcContentVerifierProviderBuilder builder = VERIFIER_PROVIDER_BUILDER.get(keyAlg);
@@ -200,12 +259,10 @@ public class SecurityFactoryImpl extends AbstractSecurityFactory {
         }
 
         try {
-            SubjectPublicKeyInfo pkInfo = csr.getSubjectPublicKeyInfo();
-            PublicKey pk = KeyUtil.generatePublicKey(pkInfo);
-            ContentVerifierProvider cvp = getContentVerifierProvider(pk);
+            ContentVerifierProvider cvp = getContentVerifierProvider(
+                    csr.getSubjectPublicKeyInfo());
             return csr.isSignatureValid(cvp);
-        } catch (InvalidKeyException | PKCSException | NoSuchAlgorithmException
-                | InvalidKeySpecException ex) {
+        } catch (InvalidKeyException | PKCSException ex) {
             LogUtil.error(LOG, ex, "could not validate POPO of CSR");
             return false;
         }
@@ -221,6 +278,22 @@ public class SecurityFactoryImpl extends AbstractSecurityFactory {
                 defaultSignerParallelism, 1);
     }
 
+    /**
+     * Sets the maximal number of cached ContentVerifierProviders.
+     *
+     * @param verifierProviderCacheSize
+     *          Maximal number of cached providers. A value less than 1 disables the cache.
+     */
+    public void setVerifierProviderCacheSize(final int verifierProviderCacheSize) {
+        if (verifierProviderCacheSize < 1) {
+            this.verifierProviderCache = null;
+        } else if (verifierProviderCache == null) {
+            this.verifierProviderCache = new LruCache<>(verifierProviderCacheSize);
+        } else {
+            verifierProviderCache.resize(verifierProviderCacheSize);
+        }
+    }
+
     public void setSignerFactoryRegister(final SignerFactoryRegister signerFactoryRegister) {
         this.signerFactoryRegister = signerFactoryRegister;
     }
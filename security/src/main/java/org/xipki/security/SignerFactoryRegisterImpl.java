@@ -41,6 +41,7 @@ import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
 import javax.crypto.NoSuchPaddingException;
@@ -218,6 +219,20 @@ public class SignerFactoryRegisterImpl implements SignerFactoryRegister {
                 SoftTokenContentSignerBuilder signerBuilder = new SoftTokenContentSignerBuilder(
                         type, keystoreStream, password, keyLabel, password, certificateChain);
 
+                // signing engines in the order of preference, separated by ':'
+                str = conf.getConfValue("engines");
+                List<String> engines = (str == null) ? null : StringUtil.split(str, ":");
+
+                // number of the pre-computed nonces of ECDSA keys
+                str = conf.getConfValue("nonce-pool-size");
+                if (str != null) {
+                    try {
+                        signerBuilder.setNoncePoolSize(Integer.parseInt(str));
+                    } catch (NumberFormatException ex) {
+                        throw new ObjectCreationException("invalid nonce-pool-size " + str);
+                    }
+                }
+
                 AlgorithmIdentifier signatureAlgId;
                 if (conf.hashAlgo() == null) {
                     signatureAlgId = AlgorithmUtil.getSigAlgId(null, conf);
@@ -227,7 +242,7 @@ public class SignerFactoryRegisterImpl implements SignerFactoryRegister {
                 }
 
                 return signerBuilder.createSigner(signatureAlgId, parallelism,
-                        securityFactory.getRandom4Sign());
+                        securityFactory.getRandom4Sign(), engines);
             }
         } catch (NoSuchAlgorithmException | NoSuchPaddingException | XiSecurityException ex) {
             throw new ObjectCreationException(String.format("%s: %s", ex.getClass().getName(),
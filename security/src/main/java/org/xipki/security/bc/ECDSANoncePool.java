@@ -0,0 +1,217 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.security.bc;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.signers.DSAKCalculator;
+import org.bouncycastle.crypto.signers.RandomDSAKCalculator;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Pool of pre-computed ECDSA nonces of one EC domain. Each entry contains a random k and
+ * the corresponding r = (k·G).x mod n, so that the point multiplication is not computed
+ * while signing. The pool is refilled by a background thread with the lowest priority once
+ * it is half empty. Each nonce is handed out only once.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class ECDSANoncePool {
+
+    static final class Nonce {
+
+        private final BigInteger kinv;
+
+        private final BigInteger r;
+
+        private Nonce(final BigInteger kinv, final BigInteger r) {
+            this.kinv = kinv;
+            this.r = r;
+        }
+
+        BigInteger kinv() {
+            return kinv;
+        }
+
+        BigInteger r() {
+            return r;
+        }
+
+    } // class Nonce
+
+    private static final Logger LOG = LoggerFactory.getLogger(ECDSANoncePool.class);
+
+    private static final ExecutorService REFILLER = Executors.newSingleThreadExecutor(
+        (runnable) -> {
+            Thread thread = new Thread(runnable, "ecdsa-nonce-refiller");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+    private final ECDomainParameters domainParams;
+
+    private final DSAKCalculator kcalculator;
+
+    private final ECMultiplier multiplier = new FixedPointCombMultiplier();
+
+    private final int capacity;
+
+    private final int lowWatermark;
+
+    private final ConcurrentLinkedQueue<Nonce> nonces = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * Creates a pool and starts filling it in the background.
+     *
+     * @param domainParams
+     *          Domain parameters of the EC key. Must not be {@code null}.
+     * @param capacity
+     *          Maximal number of the pre-computed nonces. Must be at least 1.
+     * @param random
+     *          Secure random to generate k. Could be {@code null}.
+     */
+    public ECDSANoncePool(final ECDomainParameters domainParams, final int capacity,
+            final SecureRandom random) {
+        this.domainParams = ParamUtil.requireNonNull("domainParams", domainParams);
+        this.capacity = ParamUtil.requireMin("capacity", capacity, 1);
+        this.lowWatermark = Math.max(1, capacity / 2);
+        this.kcalculator = new RandomDSAKCalculator();
+        this.kcalculator.init(domainParams.getN(),
+                (random == null) ? new SecureRandom() : random);
+        triggerRefill();
+    }
+
+    public ECDomainParameters domainParams() {
+        return domainParams;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Removes a nonce from the pool.
+     *
+     * @return the nonce, or {@code null} if the pool is empty.
+     */
+    Nonce poll() {
+        Nonce nonce = nonces.poll();
+        if (nonce == null) {
+            misses.incrementAndGet();
+        } else {
+            size.decrementAndGet();
+            hits.incrementAndGet();
+        }
+
+        if (size.get() < lowWatermark) {
+            triggerRefill();
+        }
+        return nonce;
+    }
+
+    private void triggerRefill() {
+        if (refilling.compareAndSet(false, true)) {
+            try {
+                REFILLER.execute(this::refill);
+            } catch (RuntimeException ex) {
+                refilling.set(false);
+                LOG.warn("could not start refilling the ECDSA nonce pool: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            while (size.get() < capacity) {
+                nonces.offer(computeNonce());
+                size.incrementAndGet();
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn("error while refilling the ECDSA nonce pool: {}", ex.getMessage());
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    private Nonce computeNonce() {
+        BigInteger n = domainParams.getN();
+        BigInteger k;
+        BigInteger r;
+        do {
+            k = kcalculator.nextK();
+            ECPoint point = multiplier.multiply(domainParams.getG(), k).normalize();
+            r = point.getAffineXCoord().toBigInteger().mod(n);
+        } while (r.signum() == 0);
+
+        return new Nonce(k.modInverse(n), r);
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.security.bc;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DSA;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * ECDSA signer which takes the nonces from a {@link ECDSANoncePool}. If the pool is empty,
+ * the signature is computed with the deterministic nonce as specified in RFC 6979, so that
+ * signing never waits for the pool. Once initialized for signing, the signer is thread-safe.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+// CHECKSTYLE:SKIP
+public class XiECDSASigner implements DSA {
+
+    private final ECDSANoncePool noncePool;
+
+    private final ECDSASigner fallbackSigner;
+
+    private ECPrivateKeyParameters key;
+
+    public XiECDSASigner(final ECDSANoncePool noncePool) {
+        this.noncePool = ParamUtil.requireNonNull("noncePool", noncePool);
+        this.fallbackSigner = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+    }
+
+    @Override
+    public void init(final boolean forSigning, final CipherParameters param) {
+        CipherParameters tmpParam = param;
+        if (tmpParam instanceof ParametersWithRandom) {
+            tmpParam = ((ParametersWithRandom) tmpParam).getParameters();
+        }
+
+        if (forSigning) {
+            if (!(tmpParam instanceof ECPrivateKeyParameters)) {
+                throw new IllegalArgumentException("EC private key required for signing");
+            }
+
+            ECPrivateKeyParameters tmpKey = (ECPrivateKeyParameters) tmpParam;
+            if (!noncePool.domainParams().equals(tmpKey.getParameters())) {
+                throw new IllegalArgumentException(
+                        "the key and the nonce pool have different domain parameters");
+            }
+            this.key = tmpKey;
+        } else {
+            this.key = null;
+        }
+
+        fallbackSigner.init(forSigning, tmpParam);
+    }
+
+    @Override
+    public BigInteger[] generateSignature(final byte[] message) {
+        if (key == null) {
+            throw new IllegalStateException("the signer is not initialized for signing");
+        }
+
+        ECDSANoncePool.Nonce nonce = noncePool.poll();
+        if (nonce != null) {
+            BigInteger n = key.getParameters().getN();
+            BigInteger e = calculateE(n, message);
+            BigInteger r = nonce.r();
+            BigInteger s = nonce.kinv().multiply(e.add(key.getD().multiply(r))).mod(n);
+            if (s.signum() != 0) {
+                return new BigInteger[]{r, s};
+            }
+        }
+
+        // the HMAC-based nonce calculator keeps its state while signing
+        synchronized (fallbackSigner) {
+            return fallbackSigner.generateSignature(message);
+        }
+    }
+
+    @Override
+    public boolean verifySignature(final byte[] message, final BigInteger r,
+            final BigInteger s) {
+        return fallbackSigner.verifySignature(message, r, s);
+    }
+
+    private static BigInteger calculateE(final BigInteger n, final byte[] message) {
+        int log2n = n.bitLength();
+        int messageBitLength = message.length * 8;
+
+        BigInteger e = new BigInteger(1, message);
+        if (log2n < messageBitLength) {
+            e = e.shiftRight(messageBitLength - log2n);
+        }
+        return e;
+    }
+
+}
@@ -82,6 +82,8 @@ public class P11ModuleConf {
 
     private final long userType;
 
+    private final int noncePoolSize;
+
     public P11ModuleConf(final ModuleType moduleType, final PasswordResolver passwordResolver)
             throws InvalidConfException {
         ParamUtil.requireNonNull("moduleType", moduleType);
@@ -92,6 +94,8 @@ public class P11ModuleConf {
         if (maxMessageSize < 128) {
             throw new InvalidConfException("invalid maxMessageSize (< 128): " + maxMessageSize);
         }
+        this.noncePoolSize = (moduleType.getNoncePoolSize() == null) ? 0
+                : moduleType.getNoncePoolSize().intValue();
 
         // Mechanism filter
         mechanismFilter = new P11MechanismFilter();
@@ -195,6 +199,16 @@ public class P11ModuleConf {
         return userType;
     }
 
+    /**
+     * Returns the number of the pre-computed ECDSA nonces per EC key. It is only used by
+     * the emulator.
+     *
+     * @return the number of the pre-computed nonces, or 0 if disabled.
+     */
+    public int noncePoolSize() {
+        return noncePoolSize;
+    }
+
     public P11PasswordsRetriever passwordRetriever() {
         return passwordRetriever;
     }
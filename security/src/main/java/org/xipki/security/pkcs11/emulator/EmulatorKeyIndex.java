@@ -0,0 +1,266 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.security.pkcs11.emulator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Index of the private keys of an emulator slot. It is stored in a single file and
+ * contains the id, label and public key of each private key, so that the slot can be
+ * refreshed without opening the files of each key. The index is considered to be stale
+ * if the key directories have been modified after the index has been written. Keys which
+ * could not be indexed are recorded as invalid, so that they do not make the index stale;
+ * they are retried as soon as the key directories are modified.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+class EmulatorKeyIndex {
+
+    static class Entry {
+
+        private final String hexId;
+
+        private final String label;
+
+        private final byte[] encodedPublicKey;
+
+        private final boolean invalid;
+
+        Entry(final String hexId, final String label, final byte[] encodedPublicKey) {
+            this(hexId, label, encodedPublicKey, false);
+        }
+
+        private Entry(final String hexId, final String label, final byte[] encodedPublicKey,
+                final boolean invalid) {
+            this.hexId = ParamUtil.requireNonBlank("hexId", hexId);
+            this.label = label;
+            this.encodedPublicKey = encodedPublicKey;
+            this.invalid = invalid;
+        }
+
+        /**
+         * Returns the entry of a private key which could not be indexed.
+         */
+        static Entry invalid(final String hexId) {
+            return new Entry(hexId, null, null, true);
+        }
+
+        String hexId() {
+            return hexId;
+        }
+
+        String label() {
+            return label;
+        }
+
+        /**
+         * Returns the DER-encoded SubjectPublicKeyInfo.
+         *
+         * @return the encoded public key, or {@code null} if the key has no public key entry.
+         */
+        byte[] encodedPublicKey() {
+            return encodedPublicKey;
+        }
+
+        boolean isInvalid() {
+            return invalid;
+        }
+
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmulatorKeyIndex.class);
+
+    private static final String VERSION = "1";
+
+    private static final String PROP_VERSION = "version";
+
+    private static final String PROP_PRIVKEY_DIR_MODIFIED = "privkey.lastModified";
+
+    private static final String PROP_PUBKEY_DIR_MODIFIED = "pubkey.lastModified";
+
+    private static final String PROP_COUNT = "count";
+
+    private static final String PROP_ENTRY_PREFIX = "key.";
+
+    private static final String SUFFIX_ID = ".id";
+
+    private static final String SUFFIX_LABEL = ".label";
+
+    private static final String SUFFIX_PUBKEY = ".pubkey";
+
+    private static final String SUFFIX_INVALID = ".invalid";
+
+    private final File indexFile;
+
+    private final File privKeyDir;
+
+    private final File pubKeyDir;
+
+    EmulatorKeyIndex(final File indexFile, final File privKeyDir, final File pubKeyDir) {
+        this.indexFile = ParamUtil.requireNonNull("indexFile", indexFile);
+        this.privKeyDir = ParamUtil.requireNonNull("privKeyDir", privKeyDir);
+        this.pubKeyDir = ParamUtil.requireNonNull("pubKeyDir", pubKeyDir);
+    }
+
+    /**
+     * Loads the index.
+     *
+     * @param hexIds
+     *          Hex-encoded ids of the private keys currently stored in the slot.
+     *          Must not be {@code null}.
+     * @return the valid entries of the index, or {@code null} if the index does not exist
+     *          or is stale.
+     */
+    List<Entry> load(final Set<String> hexIds) {
+        ParamUtil.requireNonNull("hexIds", hexIds);
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream stream = new FileInputStream(indexFile)) {
+            props.load(stream);
+        } catch (IOException ex) {
+            return null;
+        }
+
+        if (!VERSION.equals(props.getProperty(PROP_VERSION))
+                || !Long.toString(privKeyDir.lastModified()).equals(
+                        props.getProperty(PROP_PRIVKEY_DIR_MODIFIED))
+                || !Long.toString(pubKeyDir.lastModified()).equals(
+                        props.getProperty(PROP_PUBKEY_DIR_MODIFIED))) {
+            return null;
+        }
+
+        int count;
+        try {
+            count = Integer.parseInt(props.getProperty(PROP_COUNT));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+
+        if (count != hexIds.size()) {
+            return null;
+        }
+
+        List<Entry> entries = new ArrayList<>(count);
+        Set<String> indexedIds = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String prefix = PROP_ENTRY_PREFIX + i;
+            String hexId = props.getProperty(prefix + SUFFIX_ID);
+            if (hexId == null || !hexIds.contains(hexId) || !indexedIds.add(hexId)) {
+                return null;
+            }
+
+            if (Boolean.parseBoolean(props.getProperty(prefix + SUFFIX_INVALID))) {
+                continue;
+            }
+
+            String label = props.getProperty(prefix + SUFFIX_LABEL);
+            String b64PublicKey = props.getProperty(prefix + SUFFIX_PUBKEY);
+            byte[] encodedPublicKey = (b64PublicKey == null || b64PublicKey.isEmpty()) ? null
+                    : Base64.getDecoder().decode(b64PublicKey);
+            entries.add(new Entry(hexId, label, encodedPublicKey));
+        }
+
+        return Collections.unmodifiableList(entries);
+    } // method load
+
+    void save(final List<Entry> entries) throws IOException {
+        ParamUtil.requireNonNull("entries", entries);
+        Properties props = new Properties();
+        props.setProperty(PROP_VERSION, VERSION);
+        props.setProperty(PROP_PRIVKEY_DIR_MODIFIED, Long.toString(privKeyDir.lastModified()));
+        props.setProperty(PROP_PUBKEY_DIR_MODIFIED, Long.toString(pubKeyDir.lastModified()));
+        props.setProperty(PROP_COUNT, Integer.toString(entries.size()));
+
+        int idx = 0;
+        for (Entry entry : entries) {
+            String prefix = PROP_ENTRY_PREFIX + idx++;
+            props.setProperty(prefix + SUFFIX_ID, entry.hexId());
+            if (entry.isInvalid()) {
+                props.setProperty(prefix + SUFFIX_INVALID, "true");
+                continue;
+            }
+
+            if (entry.label() != null) {
+                props.setProperty(prefix + SUFFIX_LABEL, entry.label());
+            }
+            if (entry.encodedPublicKey() != null) {
+                props.setProperty(prefix + SUFFIX_PUBKEY,
+                        Base64.getEncoder().encodeToString(entry.encodedPublicKey()));
+            }
+        }
+
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            props.store(out, null);
+        }
+
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("could not delete the old index " + indexFile.getPath());
+        }
+
+        if (!tmpFile.renameTo(indexFile)) {
+            throw new IOException("could not rename " + tmpFile.getPath() + " to "
+                    + indexFile.getPath());
+        }
+    } // method save
+
+    void invalidate() {
+        if (indexFile.exists() && !indexFile.delete()) {
+            LOG.warn("could not delete the key index {}", indexFile.getPath());
+        }
+    }
+
+}
@@ -34,6 +34,9 @@
 
 package org.xipki.security.pkcs11.emulator;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
@@ -56,12 +59,18 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 
 import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
+import org.bouncycastle.pkcs.PKCS8EncryptedPrivateKeyInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.common.concurrent.ConcurrentBag;
 import org.xipki.common.concurrent.ConcurrentBagEntry;
+import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.security.HashAlgoType;
+import org.xipki.security.bc.ECDSANoncePool;
+import org.xipki.security.bc.XiECDSASigner;
 import org.xipki.security.exception.P11TokenException;
 import org.xipki.security.exception.XiSecurityException;
 import org.xipki.security.pkcs11.P11EntityIdentifier;
@@ -83,7 +92,7 @@ public class EmulatorP11Identity extends P11Identity {
 
     private static final Logger LOG = LoggerFactory.getLogger(EmulatorP11Identity.class);
 
-    private final Key signingKey;
+    private Key signingKey;
 
     private final ConcurrentBag<ConcurrentBagEntry<Cipher>> rsaCiphers = new ConcurrentBag<>();
 
@@ -92,12 +101,35 @@ public class EmulatorP11Identity extends P11Identity {
 
     private final SecureRandom random;
 
+    private final int maxSessions;
+
+    private final int noncePoolSize;
+
+    /**
+     * ECDSA signer with pre-computed nonces. It is {@code null} if the key is not an EC key
+     * or the pre-computation is not activated.
+     */
+    private XiECDSASigner ecdsaSigner;
+
+    /**
+     * File containing the encrypted private key. It is {@code null} once the private key
+     * has been decrypted.
+     */
+    private File encryptedPrivateKeyFile;
+
+    private PrivateKeyCryptor privateKeyCryptor;
+
+    private volatile boolean privateKeyInitialized;
+
     public EmulatorP11Identity(final P11Slot slot, final P11EntityIdentifier identityId,
             final SecretKey signingKey, final int maxSessions, final SecureRandom random)
             throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
         super(slot, identityId, 0);
         this.signingKey = ParamUtil.requireNonNull("signingKey", signingKey);
         this.random = ParamUtil.requireNonNull("random", random);
+        this.maxSessions = maxSessions;
+        this.noncePoolSize = 0;
+        this.privateKeyInitialized = true;
     } // constructor
 
     public EmulatorP11Identity(final P11Slot slot, final P11EntityIdentifier identityId,
@@ -105,10 +137,85 @@ public class EmulatorP11Identity extends P11Identity {
             final X509Certificate[] certificateChain, final int maxSessions,
             final SecureRandom random)
             throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+        this(slot, identityId, privateKey, publicKey, certificateChain, maxSessions, 0, random);
+    } // constructor
+
+    /**
+     * Creates an identity. For EC keys, {@code noncePoolSize} nonces will be pre-computed in
+     * the background if it is positive.
+     */
+    EmulatorP11Identity(final P11Slot slot, final P11EntityIdentifier identityId,
+            final PrivateKey privateKey, final PublicKey publicKey,
+            final X509Certificate[] certificateChain, final int maxSessions,
+            final int noncePoolSize, final SecureRandom random)
+            throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
         super(slot, identityId, publicKey, certificateChain);
         this.signingKey = ParamUtil.requireNonNull("privateKey", privateKey);
         this.random = ParamUtil.requireNonNull("random", random);
+        this.maxSessions = maxSessions;
+        this.noncePoolSize = noncePoolSize;
+        initSigners(privateKey);
+        this.privateKeyInitialized = true;
+    } // constructor
 
+    /**
+     * Creates an identity whose private key will be decrypted on first use.
+     */
+    EmulatorP11Identity(final P11Slot slot, final P11EntityIdentifier identityId,
+            final File encryptedPrivateKeyFile, final PrivateKeyCryptor privateKeyCryptor,
+            final PublicKey publicKey, final X509Certificate[] certificateChain,
+            final int maxSessions, final int noncePoolSize, final SecureRandom random) {
+        super(slot, identityId, publicKey, certificateChain);
+        this.encryptedPrivateKeyFile = ParamUtil.requireNonNull("encryptedPrivateKeyFile",
+                encryptedPrivateKeyFile);
+        this.privateKeyCryptor = ParamUtil.requireNonNull("privateKeyCryptor",
+                privateKeyCryptor);
+        this.random = ParamUtil.requireNonNull("random", random);
+        this.maxSessions = maxSessions;
+        this.noncePoolSize = noncePoolSize;
+        this.privateKeyInitialized = false;
+
+        if (!(this.publicKey instanceof RSAPublicKey || this.publicKey instanceof ECPublicKey
+                || this.publicKey instanceof DSAPublicKey)) {
+            throw new IllegalArgumentException(
+                    "Currently only RSA, DSA and EC public key are supported, but not "
+                    + this.publicKey.getAlgorithm()
+                    + " (class: " + this.publicKey.getClass().getName() + ")");
+        }
+    } // constructor
+
+    private void initPrivateKey() throws P11TokenException {
+        if (privateKeyInitialized) {
+            return;
+        }
+
+        synchronized (this) {
+            if (privateKeyInitialized) {
+                return;
+            }
+
+            PrivateKey privateKey;
+            try {
+                byte[] encodedValue = IoUtil.read(encryptedPrivateKeyFile);
+                privateKey = privateKeyCryptor.decrypt(
+                        new PKCS8EncryptedPrivateKeyInfo(encodedValue));
+                initSigners(privateKey);
+            } catch (IOException | NoSuchAlgorithmException | NoSuchProviderException
+                    | InvalidKeyException ex) {
+                throw new P11TokenException("could not initialize the private key of "
+                        + identityId + ": " + ex.getMessage(), ex);
+            }
+
+            LOG.info("decrypted the private key of PKCS#11 key {}", identityId);
+            this.signingKey = privateKey;
+            this.encryptedPrivateKeyFile = null;
+            this.privateKeyCryptor = null;
+            this.privateKeyInitialized = true;
+        }
+    } // method initPrivateKey
+
+    private void initSigners(final PrivateKey privateKey)
+            throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
         if (this.publicKey instanceof RSAPublicKey) {
             String providerName = "BC";
             LOG.info("use provider {}", providerName);
@@ -136,6 +243,17 @@ public class EmulatorP11Identity extends P11Identity {
         } else {
             String algorithm;
             if (this.publicKey instanceof ECPublicKey) {
+                if (noncePoolSize > 0) {
+                    ECPrivateKeyParameters keyParam =
+                            (ECPrivateKeyParameters) ECUtil.generatePrivateKeyParameter(privateKey);
+                    ECDSANoncePool noncePool = new ECDSANoncePool(keyParam.getParameters(),
+                            noncePoolSize, random);
+                    XiECDSASigner signer = new XiECDSASigner(noncePool);
+                    signer.init(true, keyParam);
+                    this.ecdsaSigner = signer;
+                    LOG.info("use {} pre-computed ECDSA nonces", noncePoolSize);
+                    return;
+                }
                 algorithm = "NONEwithECDSA";
             } else if (this.publicKey instanceof DSAPublicKey) {
                 algorithm = "NONEwithDSA";
@@ -152,7 +270,7 @@ public class EmulatorP11Identity extends P11Identity {
                 dsaSignatures.add(new ConcurrentBagEntry<>(dsaSignature));
             }
         }
-    } // constructor
+    } // method initSigners
 
     @Override
     protected byte[] digestSecretKey0(long mechanism)
@@ -172,6 +290,7 @@ public class EmulatorP11Identity extends P11Identity {
     @Override
     protected byte[] sign0(final long mechanism, final P11Params parameters, final byte[] content)
             throws P11TokenException {
+        initPrivateKey();
         if (PKCS11Constants.CKM_ECDSA == mechanism) {
             return dsaAndEcdsaSign(content, null);
         } else if (PKCS11Constants.CKM_ECDSA_SHA1 == mechanism) {
@@ -366,6 +485,15 @@ public class EmulatorP11Identity extends P11Identity {
             throws P11TokenException {
         byte[] hash = (hashAlgo == null) ? dataToSign : hashAlgo.hash(dataToSign);
 
+        if (ecdsaSigner != null) {
+            BigInteger[] sig = ecdsaSigner.generateSignature(hash);
+            try {
+                return SignerUtil.convertDSASigToPlain(sig[0], sig[1], signatureKeyBitLength());
+            } catch (XiSecurityException ex) {
+                throw new P11TokenException("XiSecurityException: " + ex.getMessage(), ex);
+            }
+        }
+
         ConcurrentBagEntry<Signature> sig0;
         try {
             sig0 = dsaSignatures.borrow(5000, TimeUnit.MILLISECONDS);
@@ -392,7 +520,8 @@ public class EmulatorP11Identity extends P11Identity {
         }
     }
 
-    Key signingKey() {
+    Key signingKey() throws P11TokenException {
+        initPrivateKey();
         return signingKey;
     }
 
@@ -159,7 +159,7 @@ public class EmulatorP11Module extends AbstractP11Module {
             int maxSessions = 20;
             P11Slot slot = new EmulatorP11Slot(moduleConf.name(), slotDir, slotId,
                     moduleConf.isReadOnly(), firstPwd, privateKeyCryptor,
-                    moduleConf.p11MechanismFilter(), maxSessions);
+                    moduleConf.p11MechanismFilter(), maxSessions, moduleConf.noncePoolSize());
             slots.add(slot);
         }
 
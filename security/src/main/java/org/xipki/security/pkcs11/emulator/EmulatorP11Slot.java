@@ -61,10 +61,13 @@ import java.security.spec.DSAPublicKeySpec;
 import java.security.spec.ECParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -72,6 +75,7 @@ import javax.crypto.spec.SecretKeySpec;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x9.ECNamedCurveTable;
 import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.crypto.params.DSAParameters;
@@ -122,6 +126,8 @@ class EmulatorP11Slot extends AbstractP11Slot {
     private static final String FILE_SLOTINFO = "slot.info";
     private static final String PROP_NAMED_CURVE_SUPPORTED = "namedCurveSupported";
 
+    private static final String FILE_KEY_INDEX = "privkey.index";
+
     private static final String DIR_PRIV_KEY = "privkey";
     private static final String DIR_PUB_KEY = "pubkey";
     private static final String DIR_SEC_KEY = "seckey";
@@ -238,6 +244,8 @@ class EmulatorP11Slot extends AbstractP11Slot {
 
     private final File certDir;
 
+    private final EmulatorKeyIndex keyIndex;
+
     private final char[] password;
 
     private final PrivateKeyCryptor privateKeyCryptor;
@@ -247,19 +255,22 @@ class EmulatorP11Slot extends AbstractP11Slot {
 
     private final int maxSessions;
 
+    private final int noncePoolSize;
+
     private static final Logger LOG = LoggerFactory.getLogger(EmulatorP11Slot.class);
 
     EmulatorP11Slot(final String moduleName, final File slotDir, final P11SlotIdentifier slotId,
             final boolean readOnly, final char[] password,
             final PrivateKeyCryptor privateKeyCryptor,
-            final P11MechanismFilter mechanismFilter, final int maxSessions)
-            throws P11TokenException {
+            final P11MechanismFilter mechanismFilter, final int maxSessions,
+            final int noncePoolSize) throws P11TokenException {
         super(moduleName, slotId, readOnly, mechanismFilter);
 
         this.slotDir = ParamUtil.requireNonNull("slotDir", slotDir);
         this.password = ParamUtil.requireNonNull("password", password);
         this.privateKeyCryptor = ParamUtil.requireNonNull("privateKeyCryptor", privateKeyCryptor);
         this.maxSessions = ParamUtil.requireMin("maxSessions", maxSessions, 1);
+        this.noncePoolSize = noncePoolSize;
 
         this.privKeyDir = new File(slotDir, DIR_PRIV_KEY);
         if (!this.privKeyDir.exists()) {
@@ -281,6 +292,9 @@ class EmulatorP11Slot extends AbstractP11Slot {
             this.certDir.mkdirs();
         }
 
+        this.keyIndex = new EmulatorKeyIndex(new File(slotDir, FILE_KEY_INDEX), privKeyDir,
+                pubKeyDir);
+
         File slotInfoFile = new File(slotDir, FILE_SLOTINFO);
         if (slotInfoFile.exists()) {
             Properties props = loadProperties(slotInfoFile);
@@ -367,18 +381,22 @@ class EmulatorP11Slot extends AbstractP11Slot {
         File[] privKeyInfoFiles = privKeyDir.listFiles(INFO_FILENAME_FILTER);
 
         if (privKeyInfoFiles != null && privKeyInfoFiles.length != 0) {
-            for (File privKeyInfoFile : privKeyInfoFiles) {
-                byte[] id = getKeyIdFromInfoFilename(privKeyInfoFile.getName());
-                String hexId = Hex.toHexString(id);
+            for (EmulatorKeyIndex.Entry entry : loadKeyIndex(privKeyInfoFiles)) {
+                String hexId = entry.hexId();
+                byte[] id = Hex.decode(hexId);
 
                 try {
-                    Properties props = loadProperties(privKeyInfoFile);
-                    String label = props.getProperty(PROP_LABEL);
-
-                    P11ObjectIdentifier p11ObjId = new P11ObjectIdentifier(id, label);
+                    P11ObjectIdentifier p11ObjId = new P11ObjectIdentifier(id, entry.label());
                     X509Cert cert = ret.getCertForId(id);
-                    java.security.PublicKey publicKey = (cert == null) ? readPublicKey(id)
-                            : cert.cert().getPublicKey();
+                    java.security.PublicKey publicKey;
+                    if (cert != null) {
+                        publicKey = cert.cert().getPublicKey();
+                    } else if (entry.encodedPublicKey() != null) {
+                        publicKey = KeyUtil.generatePublicKey(
+                                SubjectPublicKeyInfo.getInstance(entry.encodedPublicKey()));
+                    } else {
+                        publicKey = null;
+                    }
 
                     if (publicKey == null) {
                         LOG.warn(
@@ -387,24 +405,19 @@ class EmulatorP11Slot extends AbstractP11Slot {
                         continue;
                     }
 
-                    byte[] encodedValue = IoUtil.read(
-                            new File(privKeyDir, hexId + VALUE_FILE_SUFFIX));
-
-                    PKCS8EncryptedPrivateKeyInfo epki =
-                            new PKCS8EncryptedPrivateKeyInfo(encodedValue);
-                    PrivateKey privateKey = privateKeyCryptor.decrypt(epki);
-
                     X509Certificate[] certs = (cert == null) ? null
                             : new X509Certificate[]{cert.cert()};
 
+                    // the private key will be decrypted on first use
                     EmulatorP11Identity identity = new EmulatorP11Identity(this,
-                            new P11EntityIdentifier(slotId, p11ObjId), privateKey, publicKey, certs,
-                            maxSessions, random);
+                            new P11EntityIdentifier(slotId, p11ObjId),
+                            new File(privKeyDir, hexId + VALUE_FILE_SUFFIX), privateKeyCryptor,
+                            publicKey, certs, maxSessions, noncePoolSize, random);
                     LOG.info("added PKCS#11 key {}", p11ObjId);
                     ret.addIdentity(identity);
-                } catch (InvalidKeyException ex) {
+                } catch (InvalidKeySpecException ex) {
                     LogUtil.warn(LOG, ex,
-                            "InvalidKeyException while initializing key with key-id " + hexId);
+                            "InvalidKeySpecException while initializing key with key-id " + hexId);
                     continue;
                 } catch (Throwable th) {
                     LOG.error("unexpected exception while initializing key with key-id " + hexId,
@@ -421,6 +434,54 @@ class EmulatorP11Slot extends AbstractP11Slot {
         return slotDir;
     }
 
+    /**
+     * Returns the index entries of the private keys. If the index is missing or stale, it
+     * will be rebuilt from the info files of the private and public keys.
+     */
+    private List<EmulatorKeyIndex.Entry> loadKeyIndex(final File[] privKeyInfoFiles) {
+        Set<String> hexIds = new HashSet<>();
+        for (File infoFile : privKeyInfoFiles) {
+            hexIds.add(Hex.toHexString(getKeyIdFromInfoFilename(infoFile.getName())));
+        }
+
+        List<EmulatorKeyIndex.Entry> entries = keyIndex.load(hexIds);
+        if (entries != null) {
+            LOG.info("loaded index of {} private keys", entries.size());
+            return entries;
+        }
+
+        entries = new ArrayList<>(privKeyInfoFiles.length);
+        // the keys which could not be indexed are saved too, otherwise the index would be
+        // considered as stale and rebuilt on each refresh
+        List<EmulatorKeyIndex.Entry> indexEntries = new ArrayList<>(privKeyInfoFiles.length);
+        for (File infoFile : privKeyInfoFiles) {
+            byte[] id = getKeyIdFromInfoFilename(infoFile.getName());
+            String hexId = Hex.toHexString(id);
+            try {
+                Properties props = loadProperties(infoFile);
+                byte[] encodedPublicKey = null;
+                if (new File(pubKeyDir, hexId + INFO_FILE_SUFFIX).exists()) {
+                    encodedPublicKey = readPublicKey(id).getEncoded();
+                }
+                EmulatorKeyIndex.Entry entry = new EmulatorKeyIndex.Entry(hexId,
+                        props.getProperty(PROP_LABEL), encodedPublicKey);
+                entries.add(entry);
+                indexEntries.add(entry);
+            } catch (P11TokenException ex) {
+                LogUtil.warn(LOG, ex, "could not index private key with key-id " + hexId);
+                indexEntries.add(EmulatorKeyIndex.Entry.invalid(hexId));
+            }
+        }
+
+        try {
+            keyIndex.save(indexEntries);
+            LOG.info("rebuilt index of {} private keys", entries.size());
+        } catch (IOException ex) {
+            LogUtil.warn(LOG, ex, "could not save the index of private keys");
+        }
+        return entries;
+    } // method loadKeyIndex
+
     private PublicKey readPublicKey(final byte[] keyId) throws P11TokenException {
         String hexKeyId = Hex.toHexString(keyId);
         File pubKeyFile = new File(pubKeyDir, hexKeyId + INFO_FILE_SUFFIX);
@@ -625,6 +686,7 @@ class EmulatorP11Slot extends AbstractP11Slot {
 
     private void savePkcs11PrivateKey(final byte[] id, final String label,
             final PrivateKey privateKey) throws P11TokenException {
+        keyIndex.invalidate();
         PKCS8EncryptedPrivateKeyInfo encryptedPrivKeyInfo = privateKeyCryptor.encrypt(privateKey);
         byte[] encoded;
         try {
@@ -638,6 +700,7 @@ class EmulatorP11Slot extends AbstractP11Slot {
 
     private void savePkcs11PublicKey(final byte[] id, final String label, final PublicKey publicKey)
             throws P11TokenException {
+        keyIndex.invalidate();
         String hexId = Hex.toHexString(id).toLowerCase();
 
         StringBuilder sb = new StringBuilder(100);
@@ -787,6 +850,8 @@ class EmulatorP11Slot extends AbstractP11Slot {
             throw new IllegalArgumentException("at least one of id and label must not be null");
         }
 
+        keyIndex.invalidate();
+
         int num = deletePkcs11Entry(privKeyDir, id, label);
         num += deletePkcs11Entry(pubKeyDir, id, label);
         num += deletePkcs11Entry(certDir, id, label);
@@ -796,6 +861,7 @@ class EmulatorP11Slot extends AbstractP11Slot {
 
     @Override
     protected void removeIdentity0(final P11ObjectIdentifier objectId) throws P11TokenException {
+        keyIndex.invalidate();
         boolean b1 = removePkcs11Entry(certDir, objectId);
         boolean b2 = removePkcs11Entry(privKeyDir, objectId);
         boolean b3 = removePkcs11Entry(pubKeyDir, objectId);
@@ -919,7 +985,7 @@ class EmulatorP11Slot extends AbstractP11Slot {
                 new P11ObjectIdentifier(id, label));
         try {
             return new EmulatorP11Identity(this,identityId, keypair.getPrivate(),
-                    keypair.getPublic(), null, maxSessions, random);
+                    keypair.getPublic(), null, maxSessions, noncePoolSize, random);
         } catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchProviderException ex) {
             throw new P11TokenException(
                     "could not construct KeyStoreP11Identity: " + ex.getMessage(), ex);
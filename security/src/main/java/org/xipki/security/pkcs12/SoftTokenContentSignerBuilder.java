@@ -54,6 +54,8 @@ import java.security.interfaces.DSAPrivateKey;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -63,9 +65,11 @@ import javax.crypto.NoSuchPaddingException;
 
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.crypto.DSA;
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.Signer;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECKeyParameters;
 import org.bouncycastle.crypto.signers.DSADigestSigner;
 import org.bouncycastle.crypto.signers.DSASigner;
 import org.bouncycastle.crypto.signers.ECDSASigner;
@@ -75,12 +79,17 @@ import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.bc.BcContentSignerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xipki.common.util.CollectionUtil;
+import org.xipki.common.util.LogUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.DefaultConcurrentContentSigner;
 import org.xipki.security.SignatureSigner;
+import org.xipki.security.bc.ECDSANoncePool;
 import org.xipki.security.bc.XiContentSigner;
+import org.xipki.security.bc.XiECDSASigner;
 import org.xipki.security.bc.XiWrappedContentSigner;
 import org.xipki.security.exception.XiSecurityException;
 import org.xipki.security.util.AlgorithmUtil;
@@ -95,6 +104,16 @@ import org.xipki.security.util.X509Util;
 
 public class SoftTokenContentSignerBuilder {
 
+    /**
+     * Name of the signing engine based on the BouncyCastle lightweight API.
+     */
+    public static final String ENGINE_BC_LIGHTWEIGHT = "bc-lightweight";
+
+    private static final List<String> DEFAULT_ENGINES =
+            Collections.unmodifiableList(Arrays.asList("SunJCE", ENGINE_BC_LIGHTWEIGHT));
+
+    private static final Logger LOG = LoggerFactory.getLogger(SoftTokenContentSignerBuilder.class);
+
     // CHECKSTYLE:SKIP
     private static class RSAContentSignerBuilder extends BcContentSignerBuilder {
 
@@ -157,10 +176,14 @@ public class SoftTokenContentSignerBuilder {
 
         private final boolean plain;
 
+        private final ECDSANoncePool noncePool;
+
         private ECDSAContentSignerBuilder(final AlgorithmIdentifier signatureAlgId,
-                final boolean plain) throws NoSuchAlgorithmException {
+                final boolean plain, final ECDSANoncePool noncePool)
+                throws NoSuchAlgorithmException {
             super(signatureAlgId, AlgorithmUtil.extractDigesetAlgFromSigAlg(signatureAlgId));
             this.plain = plain;
+            this.noncePool = noncePool;
         }
 
         protected Signer createSigner(final AlgorithmIdentifier sigAlgId,
@@ -172,7 +195,8 @@ public class SoftTokenContentSignerBuilder {
             }
 
             Digest dig = digestProvider.get(digAlgId);
-            ECDSASigner dsaSigner = new ECDSASigner();
+            DSA dsaSigner = (noncePool == null) ? new ECDSASigner()
+                    : new XiECDSASigner(noncePool);
 
             return plain ? new DSAPlainDigestSigner(dsaSigner, dig)
                     : new DSADigestSigner(dsaSigner, dig);
@@ -186,6 +210,8 @@ public class SoftTokenContentSignerBuilder {
 
     private final X509Certificate[] certificateChain;
 
+    private int noncePoolSize;
+
     public SoftTokenContentSignerBuilder(final PrivateKey privateKey, final PublicKey publicKey)
             throws XiSecurityException {
         this.key = ParamUtil.requireNonNull("privateKey", privateKey);
@@ -265,74 +291,64 @@ public class SoftTokenContentSignerBuilder {
     public ConcurrentContentSigner createSigner(final AlgorithmIdentifier signatureAlgId,
             final int parallelism, final SecureRandom random)
             throws XiSecurityException, NoSuchPaddingException {
+        return createSigner(signatureAlgId, parallelism, random, null);
+    }
+
+    /**
+     * Creates a signer with the first engine of the given list which supports the
+     * signature algorithm.
+     *
+     * @param signatureAlgId
+     *          Signature algorithm. Must not be {@code null}.
+     * @param parallelism
+     *          Number of the underlying signers. Must be at least 1.
+     * @param random
+     *          Secure random. Could be {@code null}.
+     * @param engines
+     *          Signing engines in the order of preference. An engine is either the name of a
+     *          JCA provider or {@link #ENGINE_BC_LIGHTWEIGHT}. If {@code null} or empty,
+     *          the default engines (SunJCE, followed by the BouncyCastle lightweight API)
+     *          will be used.
+     * @return the new signer
+     */
+    public ConcurrentContentSigner createSigner(final AlgorithmIdentifier signatureAlgId,
+            final int parallelism, final SecureRandom random, final List<String> engines)
+            throws XiSecurityException, NoSuchPaddingException {
         ParamUtil.requireNonNull("signatureAlgId", signatureAlgId);
         ParamUtil.requireMin("parallelism", parallelism, 1);
 
-        List<XiContentSigner> signers = new ArrayList<>(parallelism);
-
-        final String provName = "SunJCE";
-        if (Security.getProvider(provName) != null) {
-            String algoName;
-            try {
-                algoName = AlgorithmUtil.getSignatureAlgoName(signatureAlgId);
-            } catch (NoSuchAlgorithmException ex) {
-                throw new XiSecurityException(ex.getMessage());
-            }
+        String algoName;
+        try {
+            algoName = AlgorithmUtil.getSignatureAlgoName(signatureAlgId);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new XiSecurityException(ex.getMessage());
+        }
 
-            try {
-                for (int i = 0; i < parallelism; i++) {
-                    Signature signature = Signature.getInstance(algoName, provName);
-                    signature.initSign(key);
-                    if (i == 0) {
-                        signature.update(new byte[]{1, 2, 3, 4});
-                        signature.sign();
-                    }
-                    XiContentSigner signer = new SignatureSigner(signatureAlgId, signature, key);
-                    signers.add(signer);
-                }
-            } catch (Exception ex) {
-                signers.clear();
-            }
+        List<String> tmpEngines = engines;
+        if (CollectionUtil.isEmpty(tmpEngines)) {
+            // the pre-computed nonces are only supported by the BouncyCastle lightweight API
+            tmpEngines = (noncePoolSize > 0 && key instanceof ECPrivateKey)
+                    ? Arrays.asList(ENGINE_BC_LIGHTWEIGHT) : DEFAULT_ENGINES;
         }
 
-        if (CollectionUtil.isEmpty(signers)) {
-            BcContentSignerBuilder signerBuilder;
-            AsymmetricKeyParameter keyparam;
-            try {
-                if (key instanceof RSAPrivateKey) {
-                    keyparam = SignerUtil.generateRSAPrivateKeyParameter((RSAPrivateKey) key);
-                    signerBuilder = new RSAContentSignerBuilder(signatureAlgId);
-                } else if (key instanceof DSAPrivateKey) {
-                    keyparam = DSAUtil.generatePrivateKeyParameter(key);
-                    signerBuilder = new DSAContentSignerBuilder(signatureAlgId,
-                            AlgorithmUtil.isDSAPlainSigAlg(signatureAlgId));
-                } else if (key instanceof ECPrivateKey) {
-                    keyparam = ECUtil.generatePrivateKeyParameter(key);
-                    signerBuilder = new ECDSAContentSignerBuilder(signatureAlgId,
-                            AlgorithmUtil.isDSAPlainSigAlg(signatureAlgId));
-                } else {
-                    throw new XiSecurityException("unsupported key "
-                            + key.getClass().getName());
-                }
-            } catch (InvalidKeyException ex) {
-                throw new XiSecurityException("invalid key", ex);
-            } catch (NoSuchAlgorithmException ex) {
-                throw new XiSecurityException("no such algorithm", ex);
+        List<XiContentSigner> signers = null;
+        for (String engine : tmpEngines) {
+            if (ENGINE_BC_LIGHTWEIGHT.equalsIgnoreCase(engine)) {
+                signers = createBcSigners(signatureAlgId, parallelism, random);
+            } else {
+                signers = createJcaSigners(engine, signatureAlgId, algoName, parallelism);
             }
 
-            for (int i = 0; i < parallelism; i++) {
-                if (random != null) {
-                    signerBuilder.setSecureRandom(random);
-                }
-
-                ContentSigner signer;
-                try {
-                    signer = signerBuilder.build(keyparam);
-                } catch (OperatorCreationException ex) {
-                    throw new XiSecurityException("operator creation error", ex);
-                }
-                signers.add(new XiWrappedContentSigner(signer, true));
+            if (signers != null) {
+                LOG.info("use signing engine {} for {}", engine, algoName);
+                break;
             }
+            LOG.info("signing engine {} does not support {}", engine, algoName);
+        }
+
+        if (signers == null) {
+            throw new XiSecurityException("none of the signing engines " + tmpEngines
+                    + " supports " + algoName);
         }
 
         final boolean mac = false;
@@ -351,6 +367,108 @@ public class SoftTokenContentSignerBuilder {
         return concurrentSigner;
     } // createSigner
 
+    private List<XiContentSigner> createJcaSigners(final String provName,
+            final AlgorithmIdentifier signatureAlgId, final String algoName,
+            final int parallelism) {
+        if (Security.getProvider(provName) == null) {
+            return null;
+        }
+
+        List<XiContentSigner> signers = new ArrayList<>(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                Signature signature = Signature.getInstance(algoName, provName);
+                signature.initSign(key);
+                if (i == 0) {
+                    signature.update(new byte[]{1, 2, 3, 4});
+                    signature.sign();
+                }
+                XiContentSigner signer = new SignatureSigner(signatureAlgId, signature, key);
+                signers.add(signer);
+            }
+        } catch (Exception ex) {
+            return null;
+        }
+        return signers;
+    }
+
+    /**
+     * Creates the signers of the BouncyCastle lightweight API.
+     *
+     * @return the signers, or {@code null} if the key or the algorithm is not supported,
+     *          so that the next engine can be tried.
+     */
+    private List<XiContentSigner> createBcSigners(final AlgorithmIdentifier signatureAlgId,
+            final int parallelism, final SecureRandom random) {
+        BcContentSignerBuilder signerBuilder;
+        AsymmetricKeyParameter keyparam;
+        try {
+            if (key instanceof RSAPrivateKey) {
+                // CRT parameters are used if available
+                keyparam = SignerUtil.generateRSAPrivateKeyParameter((RSAPrivateKey) key);
+                signerBuilder = new RSAContentSignerBuilder(signatureAlgId);
+            } else if (key instanceof DSAPrivateKey) {
+                keyparam = DSAUtil.generatePrivateKeyParameter(key);
+                signerBuilder = new DSAContentSignerBuilder(signatureAlgId,
+                        AlgorithmUtil.isDSAPlainSigAlg(signatureAlgId));
+            } else if (key instanceof ECPrivateKey) {
+                keyparam = ECUtil.generatePrivateKeyParameter(key);
+                // all signers share the same pool
+                ECDSANoncePool noncePool = (noncePoolSize < 1) ? null
+                        : new ECDSANoncePool(((ECKeyParameters) keyparam).getParameters(),
+                                noncePoolSize, random);
+                signerBuilder = new ECDSAContentSignerBuilder(signatureAlgId,
+                        AlgorithmUtil.isDSAPlainSigAlg(signatureAlgId), noncePool);
+            } else {
+                LOG.info("signing engine {} does not support the key {}",
+                        ENGINE_BC_LIGHTWEIGHT, key.getClass().getName());
+                return null;
+            }
+        } catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException ex) {
+            LogUtil.warn(LOG, ex, "could not create the signer builder of engine "
+                    + ENGINE_BC_LIGHTWEIGHT);
+            return null;
+        }
+
+        List<XiContentSigner> signers = new ArrayList<>(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                if (random != null) {
+                    signerBuilder.setSecureRandom(random);
+                }
+
+                ContentSigner signer = signerBuilder.build(keyparam);
+                if (i == 0) {
+                    // All signers share the same key parameters. Signing once computes the
+                    // fixed-base table of the EC base point in advance, so that it is not
+                    // computed during the first request.
+                    signer.getOutputStream().write(new byte[]{1, 2, 3, 4});
+                    signer.getSignature();
+                }
+                signers.add(new XiWrappedContentSigner(signer, true));
+            }
+        } catch (OperatorCreationException | IOException | XiSecurityException
+                | RuntimeException ex) {
+            LogUtil.warn(LOG, ex, "could not create the signers of engine "
+                    + ENGINE_BC_LIGHTWEIGHT);
+            return null;
+        }
+        return signers;
+    } // method createBcSigners
+
+    /**
+     * Sets the number of the pre-computed nonces of the ECDSA signers. It is only used by the
+     * engine {@link #ENGINE_BC_LIGHTWEIGHT}. If the engines are not specified while creating
+     * an ECDSA signer, this engine will be used.
+     *
+     * @param noncePoolSize
+     *          Number of the pre-computed nonces. Values less than 1 disable the
+     *          pre-computation.
+     */
+    public void setNoncePoolSize(final int noncePoolSize) {
+        this.noncePoolSize = noncePoolSize;
+    }
+
     public X509Certificate certificate() {
         return (certificateChain != null && certificateChain.length > 0)
                 ? certificateChain[0] : null;
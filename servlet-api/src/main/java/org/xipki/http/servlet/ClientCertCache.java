@@ -36,6 +36,8 @@ package org.xipki.http.servlet;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -52,7 +54,7 @@ import io.netty.util.CharsetUtil;
  * @since 2.1.0
  */
 
-class ClientCertCache {
+public class ClientCertCache {
     private static CertificateFactory cf;
 
     static {
@@ -63,8 +65,35 @@ class ClientCertCache {
         }
     }
 
-    private static final SimpleLruCache<String, X509Certificate> clientCerts =
-            new SimpleLruCache<>(100);
+    /**
+     * Cache of the certificates forwarded by the reverse proxy, the key is the
+     * Base64-encoded SHA-256 fingerprint of the header value.
+     */
+    private static volatile ConcurrentLruCache<String, X509Certificate> clientCerts =
+            new ConcurrentLruCache<>(100);
+
+    private ClientCertCache() {
+    }
+
+    /**
+     * Sets the maximal number of the cached client certificates. The cached certificates
+     * are discarded.
+     *
+     * @param cacheSize
+     *          Maximal number of the cached certificates. Must be at least 1.
+     */
+    public static void setCacheSize(int cacheSize) {
+        clientCerts = new ConcurrentLruCache<>(cacheSize);
+    }
+
+    /**
+     * Returns the cache of the client certificates, for the statistics.
+     *
+     * @return the cache of the client certificates.
+     */
+    public static ConcurrentLruCache<String, X509Certificate> cache() {
+        return clientCerts;
+    }
 
     public static X509Certificate getTlsClientCert(
             final HttpRequest request, final SSLSession session, final SslReverseProxyMode mode)
@@ -104,7 +133,8 @@ class ClientCertCache {
             return null;
         }
 
-        X509Certificate clientCert = clientCerts.get(pemClientCert);
+        String cacheKey = fingerprint(pemClientCert);
+        X509Certificate clientCert = clientCerts.get(cacheKey);
         if (clientCert != null) {
             return clientCert;
         }
@@ -120,8 +150,19 @@ class ClientCertCache {
             throw new IOException("could not parse Certificate", ex);
         }
 
-        clientCerts.put(pemClientCert, clientCert);
+        clientCerts.put(cacheKey, clientCert);
         return clientCert;
     }
 
+    private static String fingerprint(String pemClientCert) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+        byte[] hash = md.digest(pemClientCert.getBytes(CharsetUtil.US_ASCII));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
 }
@@ -0,0 +1,199 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.http.servlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent cache with bounded size. Reads do not lock, the least recently used entries
+ * are approximated with the CLOCK (second chance) algorithm: an entry read since the last
+ * eviction round is kept once more instead of being evicted.
+ *
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+public class ConcurrentLruCache<K, V> {
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private volatile boolean referenced;
+
+        private Entry(V value) {
+            this.value = value;
+        }
+
+    } // class Entry
+
+    private final ConcurrentHashMap<K, Entry<V>> map;
+
+    /** Keys in the order of insertion, the head will be evicted first. */
+    private final ConcurrentLinkedQueue<K> clock = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    private final int maxSize;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxSize maximal number of entries in the cache.
+     */
+    public ConcurrentLruCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must not be less than 1");
+        }
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache.
+     */
+    public V get(final K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hitCount.increment();
+        return entry.value;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public V put(final K key, final V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        Entry<V> previous = map.put(key, new Entry<>(value));
+        if (previous != null) {
+            return previous.value;
+        }
+
+        clock.offer(key);
+        if (size.incrementAndGet() > maxSize) {
+            evict();
+        }
+        return null;
+    }
+
+    private void evict() {
+        // each entry gets at most one second chance, so that this loop terminates
+        int rounds = 2 * maxSize + 1;
+        while (size.get() > maxSize && rounds-- > 0) {
+            K key = clock.poll();
+            if (key == null) {
+                return;
+            }
+
+            Entry<V> entry = map.get(key);
+            if (entry == null) {
+                continue;
+            }
+
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.offer(key);
+            } else if (map.remove(key, entry)) {
+                size.decrementAndGet();
+                evictionCount.increment();
+            } else {
+                // replaced concurrently
+                clock.offer(key);
+            }
+        }
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the rate of the hits.
+     *
+     * @return the rate of the hits in percent.
+     */
+    public int hitRate() {
+        long hits = hitCount.sum();
+        long accesses = hits + missCount.sum();
+        return (accesses == 0) ? 0 : (int) (100 * hits / accesses);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LruCache[maxSize=%d,size=%d,hits=%d,misses=%d,evictions=%d,"
+                + "hitRate=%d%%]", maxSize, size.get(), hitCount.sum(), missCount.sum(),
+                evictionCount.sum(), hitRate());
+    }
+
+}
@@ -34,6 +34,11 @@
 
 package org.xipki.http.servlet;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.net.ssl.SSLSession;
 
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -63,4 +68,52 @@ public interface HttpServlet {
     FullHttpResponse service(FullHttpRequest request, ServletURI servletUri,
             SSLSession sslSession, SslReverseProxyMode sslReverseProxyMode) throws Exception;
 
+    /**
+     * Processes the request asynchronously. The default implementation calls
+     * {@link #service(FullHttpRequest, ServletURI, SSLSession, SslReverseProxyMode)} in the
+     * given executor. Servlets which do not block could overwrite this method.
+     *
+     * @param request
+     *          The request. Must not be {@code null}. It will not be released before the
+     *          returned future is completed.
+     * @param servletUri
+     *          The servlet URI (URI part after the servlet alias). Must not be {@code null}.
+     * @param sslSession
+     *          SSLSession associated with this connection. Could be {@code null}.
+     * @param sslReverseProxyMode
+     *          Mode of the SSL reverse proxy. Must not be {@code null}.
+     * @param executor
+     *          Executor for the blocking work. Must not be {@code null}.
+     * @return the future of the response.
+     * @throws RejectedExecutionException
+     *          if the executor does not accept more tasks.
+     */
+    default CompletableFuture<FullHttpResponse> serviceAsync(FullHttpRequest request,
+            ServletURI servletUri, SSLSession sslSession,
+            SslReverseProxyMode sslReverseProxyMode, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return service(request, servletUri, sslSession, sslReverseProxyMode);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Returns the response to a request which is rejected because the servlet is overloaded,
+     * e.g. OCSP tryLater. It is called in the Netty event loop and must not block.
+     *
+     * @param request
+     *          The request. Must not be {@code null}.
+     * @param servletUri
+     *          The servlet URI (URI part after the servlet alias). Must not be {@code null}.
+     * @return the response, or {@code null} to send the HTTP status 503.
+     */
+    default FullHttpResponse overloadResponse(FullHttpRequest request, ServletURI servletUri) {
+        return null;
+    }
+
 }
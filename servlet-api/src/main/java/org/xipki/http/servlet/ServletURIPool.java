@@ -46,7 +46,8 @@ public class ServletURIPool {
 
     private static final ServletURI SLASH_URI;
 
-    private static SimpleLruCache<String, ServletURI> uriMap = new SimpleLruCache<>(100);
+    private static volatile ConcurrentLruCache<String, ServletURI> uriMap =
+            new ConcurrentLruCache<>(1000);
 
     static {
         try {
@@ -60,6 +61,25 @@ public class ServletURIPool {
     private ServletURIPool() {
     }
 
+    /**
+     * Sets the maximal number of the cached URIs. The cached URIs are discarded.
+     *
+     * @param cacheSize
+     *          Maximal number of the cached URIs. Must be at least 1.
+     */
+    public static void setCacheSize(int cacheSize) {
+        uriMap = new ConcurrentLruCache<>(cacheSize);
+    }
+
+    /**
+     * Returns the cache of the URIs, for the statistics.
+     *
+     * @return the cache of the URIs.
+     */
+    public static ConcurrentLruCache<String, ServletURI> cache() {
+        return uriMap;
+    }
+
     public static ServletURI getServletURI(String uri) throws URISyntaxException {
         if (uri == null || uri.isEmpty() || uri.equals("/")) {
             return SLASH_URI;
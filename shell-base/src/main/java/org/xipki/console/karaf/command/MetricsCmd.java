@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright (c) 2013 - 2017 Lijun Liao
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ *
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * THE AUTHOR LIJUN LIAO. LIJUN LIAO DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the XiPKI software without
+ * disclosing the source code of your own applications.
+ *
+ * For more information, please contact Lijun Liao at this
+ * address: lijun.liao@gmail.com
+ */
+
+package org.xipki.console.karaf.command;
+
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.xipki.common.metrics.Metrics;
+import org.xipki.console.karaf.XipkiCommandSupport;
+
+/**
+ * @author Lijun Liao
+ * @since 2.2.0
+ */
+
+@Command(scope = "xipki-cmd", name = "metrics",
+        description = "show the latency histograms and gauges")
+@Service
+public class MetricsCmd extends XipkiCommandSupport {
+
+    @Option(name = "--prefix",
+            description = "only show the metrics whose names start with the prefix")
+    private String prefix;
+
+    @Option(name = "--reset",
+            description = "reset the histograms after showing them")
+    private Boolean reset = Boolean.FALSE;
+
+    @Override
+    protected Object execute0() throws Exception {
+        String report = Metrics.report(prefix);
+        if (reset.booleanValue()) {
+            Metrics.reset();
+        }
+
+        print(report.isEmpty() ? "no metrics\n" : report);
+        return null;
+    }
+
+}